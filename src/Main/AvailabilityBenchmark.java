@@ -0,0 +1,117 @@
+package Main;
+
+import model.AppointmentRepository;
+import model.AppointmentSchedule;
+import model.AvailabilityEngine;
+import model.OpeningHours;
+import util.IntervalTree;
+
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Speed of the free-slot search (AvailabilityEngine.nextFreeMinute over IntervalTree) at a
+// size no CSV file would hold: every clinician gets an interval tree of bookings filled the
+// way a busy clinic is - 15 and 30 minute appointments, 8:00-18:00 on weekdays, about 85%
+// of the day booked - and then "next N free slots of length D" is asked for random
+// clinicians from random days.
+//
+// The trees are built directly rather than through Appointment objects (50M of those
+// wouldn't fit), but the search is the engine's own. The defaults, 10k clinicians x 5k
+// bookings, need about 1.5 GB of heap, e.g. -Xmx4g.
+//
+// Usage: java Main.AvailabilityBenchmark [clinicians] [bookingsEach] [slotMinutes] [slotsPerAnswer] [queries]
+//        (defaults 10000, 5000, 15, 5 and 200000)
+public class AvailabilityBenchmark {
+
+    private static final OpeningHours HOURS = OpeningHours.parse("Mon-Fri: 8:00-18:00");
+    private static final int OPEN_MINUTE = 8 * 60;
+    private static final int CLOSE_MINUTE = 18 * 60;
+    private static final int FREE_PERCENT = 15;
+
+    public static void main(String[] args) throws Exception {
+        int clinicians = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int bookingsEach = args.length > 1 ? Integer.parseInt(args[1]) : 5_000;
+        int slotMinutes = args.length > 2 ? Integer.parseInt(args[2]) : 15;
+        int slotsPerAnswer = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        int queries = args.length > 4 ? Integer.parseInt(args[4]) : 200_000;
+
+        // The engine only needs a repository for its schedule; an empty one will do
+        Path folder = Files.createTempDirectory("hms-availability");
+        try (PrintWriter out = new PrintWriter(folder.resolve("appointments.csv").toFile(), "UTF-8")) {
+            out.println("appointment_id,patient_id,clinician_id,facility_id,appointment_date,appointment_time,"
+                + "duration_minutes,appointment_type,status,reason_for_visit,notes,created_date,last_modified,version");
+        }
+        AvailabilityEngine engine = new AvailabilityEngine(
+            new AppointmentRepository(folder.resolve("appointments.csv").toString()), null, null);
+
+        Random random = new Random(7);
+        LocalDate firstDay = LocalDate.now().plusDays(1);
+        long started = System.nanoTime();
+        List<IntervalTree<Object>> trees = new ArrayList<>(clinicians);
+        int lastDay = 0;
+        for (int c = 0; c < clinicians; c++) {
+            IntervalTree<Object> tree = new IntervalTree<>(bookingsEach);
+            trees.add(tree);
+            LocalDate day = nextWeekday(firstDay);
+            int minute = OPEN_MINUTE;
+            for (int i = 0; i < bookingsEach; i++) {
+                int length = 15 + 15 * random.nextInt(2);
+                if (random.nextInt(100) < FREE_PERCENT) {
+                    minute += 15;
+                }
+                if (minute + length > CLOSE_MINUTE) {
+                    day = nextWeekday(day.plusDays(1));
+                    minute = OPEN_MINUTE;
+                }
+                int start = dayStart(day) + minute;
+                tree.add(start, start + length, null);
+                minute += length;
+            }
+            lastDay = Math.max(lastDay, (int) (day.toEpochDay() - firstDay.toEpochDay()));
+        }
+        Runtime runtime = Runtime.getRuntime();
+        System.out.printf("%,d bookings for %,d clinicians over %d days built in %.1fs, %dMB heap%n",
+            (long) clinicians * bookingsEach, clinicians, lastDay, (System.nanoTime() - started) / 1e9,
+            (runtime.totalMemory() - runtime.freeMemory()) >> 20);
+
+        int[] probes = new int[1];
+        long answers = 0;
+        started = System.nanoTime();
+        for (int q = 0; q < queries; q++) {
+            IntervalTree<Object> tree = trees.get(random.nextInt(clinicians));
+            int from = dayStart(firstDay.plusDays(random.nextInt(Math.max(1, lastDay)))) + OPEN_MINUTE;
+            for (int n = 0; n < slotsPerAnswer; n++) {
+                int start = engine.nextFreeMinute(HOURS, slotMinutes, from, (s, e) -> {
+                    probes[0]++;
+                    return tree.latestOverlapEnd(s, e);
+                });
+                if (start < 0) {
+                    break;
+                }
+                answers++;
+                from = start + slotMinutes;
+            }
+        }
+        long nanos = System.nanoTime() - started;
+        System.out.printf("%,d free %d-minute slots found, %.2fus and %.1f tree probes per slot%n",
+            answers, slotMinutes, nanos / 1e3 / answers, probes[0] / (double) answers);
+        System.exit(0);
+    }
+
+    private static LocalDate nextWeekday(LocalDate day) {
+        while (day.getDayOfWeek() == DayOfWeek.SATURDAY || day.getDayOfWeek() == DayOfWeek.SUNDAY) {
+            day = day.plusDays(1);
+        }
+        return day;
+    }
+
+    private static int dayStart(LocalDate day) {
+        return AppointmentSchedule.startMinute(day.toString(), "00:00");
+    }
+}
@@ -0,0 +1,225 @@
+package Main;
+
+import model.Appointment;
+import model.AppointmentRepository;
+import model.BookingConflictException;
+import model.Clinician;
+import model.ClinicianRepository;
+import model.FacilityRepository;
+import model.Referral;
+import model.ReferralRepository;
+import model.VersionConflictException;
+import model.Waitlist;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+// Throughput of the cancellation backfill (Waitlist): cancels booked appointments one after
+// another and books the best waiting referral into each freed slot, CSV writes included.
+//
+// Writes a synthetic data set to a temporary folder first - 400 clinicians over 40
+// facilities and 10 specialities, the given number of waiting referrals and booked
+// appointments - so the numbers don't depend on src/data. Every 50th decision is checked
+// against a plain scan of all the referrals by the same rules.
+//
+// Prints the time per decision (findBackfill alone), per delete and per booking, and the
+// cancellations per minute that adds up to.
+//
+// Usage: java Main.BackfillBenchmark [referrals] [appointments] [cancellations]
+//        (defaults 20000, 20000 and 1000)
+public class BackfillBenchmark {
+
+    private static final int CLINICIANS = 400;
+    private static final int FACILITIES = 40;
+    private static final int PATIENTS = 50_000;
+    private static final String[] SPECIALITIES = {"Cardiology", "Neurology", "Orthopaedics", "Dermatology",
+        "Oncology", "Pediatrics", "Radiology", "Urology", "ENT", "Rheumatology"};
+    private static final String[] URGENCIES = {"Urgent", "Routine", "Routine", "Routine", "Non-urgent"};
+    private static final int CHECK_EVERY = 50;
+
+    public static void main(String[] args) throws Exception {
+        int referrals = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int appointments = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+        int cancellations = args.length > 2 ? Integer.parseInt(args[2]) : 1_000;
+
+        Path folder = Files.createTempDirectory("hms-backfill");
+        Random random = new Random(5);
+        LocalDate firstDay = LocalDate.now().plusDays(14);
+        writeData(folder, referrals, appointments, firstDay, random);
+
+        AppointmentRepository appointmentRepo = new AppointmentRepository(folder.resolve("appointments.csv").toString());
+        ClinicianRepository clinicianRepo = new ClinicianRepository(folder.resolve("clinicians.csv").toString());
+        FacilityRepository facilityRepo = new FacilityRepository(folder.resolve("facilities.csv").toString());
+        appointmentRepo.setFacilityRepository(facilityRepo);
+        ReferralRepository referralRepo = ReferralRepository.getInstance(folder.resolve("referrals.csv").toString());
+
+        long started = System.nanoTime();
+        Waitlist waitlist = new Waitlist(appointmentRepo, referralRepo, clinicianRepo);
+        System.out.printf("Waitlist of %d built in %.1fms%n", waitlist.size(), (System.nanoTime() - started) / 1e6);
+
+        List<Appointment> booked = new ArrayList<>(appointmentRepo.getAll());
+        Collections.shuffle(booked, random);
+        cancellations = Math.min(cancellations, booked.size());
+        long findNanos = 0;
+        long deleteNanos = 0;
+        long bookNanos = 0;
+        int filled = 0;
+        int checked = 0;
+        int mismatches = 0;
+
+        for (int i = 0; i < cancellations; i++) {
+            Appointment freed = booked.get(i);
+            long t = System.nanoTime();
+            appointmentRepo.delete(freed.getId());
+            deleteNanos += System.nanoTime() - t;
+
+            t = System.nanoTime();
+            Waitlist.Offer offer = waitlist.findBackfill(freed, null);
+            findNanos += System.nanoTime() - t;
+
+            if (i % CHECK_EVERY == 0) {
+                Referral expected = bruteForce(freed, appointmentRepo, referralRepo, clinicianRepo);
+                Referral got = offer != null ? offer.getReferral() : null;
+                if (expected != got) {
+                    System.err.println("Slot of " + freed.getId() + ": expected "
+                        + (expected != null ? expected.getReferralId() : "nobody") + ", got "
+                        + (got != null ? got.getReferralId() : "nobody"));
+                    mismatches++;
+                }
+                checked++;
+            }
+
+            if (offer != null) {
+                t = System.nanoTime();
+                try {
+                    waitlist.book(offer);
+                    filled++;
+                } catch (BookingConflictException | VersionConflictException ex) {
+                    System.err.println("Could not book " + offer.getReferral().getReferralId() + ": " + ex.getMessage());
+                }
+                bookNanos += System.nanoTime() - t;
+            }
+        }
+
+        double totalSeconds = (findNanos + deleteNanos + bookNanos) / 1e9;
+        System.out.printf("%d cancellations, %d slots filled, %d still waiting%n", cancellations, filled, waitlist.size());
+        System.out.printf("decision %.1fus, delete %.2fms, booking %.2fms on average%n",
+            findNanos / 1e3 / cancellations, deleteNanos / 1e6 / cancellations, bookNanos / 1e6 / Math.max(filled, 1));
+        System.out.printf("%.0f cancellations per minute end to end, %.0f per minute for the decisions alone%n",
+            cancellations / totalSeconds * 60, cancellations / (findNanos / 1e9) * 60);
+        System.out.println(checked + " decisions checked against a full scan, " + mismatches + " different");
+        System.exit(mismatches == 0 ? 0 : 1);
+    }
+
+    // The referral the backfill should pick, found by looking at every referral: the freed
+    // clinician's own best, unless someone more urgent waits for the same speciality
+    private static Referral bruteForce(Appointment freed, AppointmentRepository appointmentRepo,
+                                       ReferralRepository referralRepo, ClinicianRepository clinicianRepo) {
+        String speciality = clinicianRepo.findById(freed.getClinicianId()).getSpeciality();
+        Referral own = null;
+        Referral any = null;
+        for (Referral referral : referralRepo.getAll()) {
+            String appointmentId = referral.getAppointmentId();
+            if (appointmentId != null && !appointmentId.isEmpty() && appointmentRepo.findById(appointmentId) != null) {
+                continue;
+            }
+            if (referral.getReferralDate().compareTo(freed.getAppointmentDate()) > 0
+                    || referral.getPatientId().equals(freed.getPatientId())) {
+                continue;
+            }
+            boolean mine = referral.getReferredToClinicianId().equals(freed.getClinicianId());
+            Clinician clinician = clinicianRepo.findById(referral.getReferredToClinicianId());
+            if (!mine && !clinician.getSpeciality().equals(speciality)) {
+                continue;
+            }
+            Appointment candidate = new Appointment("", referral.getPatientId(), freed.getClinicianId(),
+                freed.getFacilityId(), freed.getAppointmentDate(), freed.getAppointmentTime(), freed.getDurationMinutes(),
+                "Referral", "Scheduled", "", "", "", "");
+            try {
+                appointmentRepo.checkBooking(candidate);
+            } catch (BookingConflictException ex) {
+                continue;
+            }
+            if (mine && (own == null || before(referral, own))) {
+                own = referral;
+            }
+            if (any == null || before(referral, any)) {
+                any = referral;
+            }
+        }
+        return any != null && (own == null || rank(any) < rank(own)) ? any : own;
+    }
+
+    private static boolean before(Referral a, Referral b) {
+        if (rank(a) != rank(b)) {
+            return rank(a) < rank(b);
+        }
+        int byDate = a.getReferralDate().compareTo(b.getReferralDate());
+        return byDate != 0 ? byDate < 0 : a.getReferralId().compareTo(b.getReferralId()) < 0;
+    }
+
+    private static int rank(Referral referral) {
+        String urgency = referral.getUrgencyLevel().toLowerCase();
+        return urgency.startsWith("non") ? 2 : urgency.contains("urgent") ? 0 : 1;
+    }
+
+    private static void writeData(Path folder, int referrals, int appointments, LocalDate firstDay, Random random)
+            throws IOException {
+        try (PrintWriter out = new PrintWriter(folder.resolve("facilities.csv").toFile(), "UTF-8")) {
+            out.println("facility_id,facility_name,facility_type,address,postcode,phone_number,email,opening_hours,"
+                + "manager_name,capacity,specialities_offered");
+            for (int f = 0; f < FACILITIES; f++) {
+                out.printf("H%03d,Hospital %d,Hospital,Address,B1,0,e,\"Mon-Fri: 8:00-18:00\",Manager,30,All%n", f, f);
+            }
+        }
+        try (PrintWriter out = new PrintWriter(folder.resolve("clinicians.csv").toFile(), "UTF-8")) {
+            out.println("clinician_id,first_name,last_name,title,speciality,gmc_number,phone_number,email,workplace_id,"
+                + "workplace_type,employment_status,start_date");
+            for (int c = 0; c < CLINICIANS; c++) {
+                out.printf("C%04d,Dr. A%d,B,Consultant,%s,1,0,e,H%03d,Hospital,Full-time,2018-01-01%n",
+                    c, c, SPECIALITIES[c % SPECIALITIES.length], c % FACILITIES);
+            }
+        }
+        // Half-hour appointments between 8:00 and 18:00 on weekdays over 60 days, at most one
+        // per clinician per slot
+        Set<String> taken = new HashSet<>();
+        try (PrintWriter out = new PrintWriter(folder.resolve("appointments.csv").toFile(), "UTF-8")) {
+            out.println("appointment_id,patient_id,clinician_id,facility_id,appointment_date,appointment_time,"
+                + "duration_minutes,appointment_type,status,reason_for_visit,notes,created_date,last_modified,version");
+            for (int n = 0; n < appointments; ) {
+                int c = random.nextInt(CLINICIANS);
+                LocalDate day = firstDay.plusDays(random.nextInt(60));
+                int slot = random.nextInt(20);
+                if (day.getDayOfWeek() == DayOfWeek.SATURDAY || day.getDayOfWeek() == DayOfWeek.SUNDAY
+                        || !taken.add(c + "/" + day + "/" + slot)) {
+                    continue;
+                }
+                out.printf("A%06d,P%05d,C%04d,H%03d,%s,%02d:%02d,30,Consultation,Scheduled,Reason,,2026-01-01,2026-01-01,1%n",
+                    n, PATIENTS + n % 10_000, c, c % FACILITIES, day, 8 + slot / 2, slot % 2 * 30);
+                n++;
+            }
+        }
+        try (PrintWriter out = new PrintWriter(folder.resolve("referrals.csv").toFile(), "UTF-8")) {
+            out.println("referral_id,patient_id,referring_clinician_id,referred_to_clinician_id,referring_facility_id,"
+                + "referred_to_facility_id,referral_date,urgency_level,referral_reason,clinical_summary,"
+                + "requested_investigations,status,appointment_id,notes,created_date,last_updated,version");
+            LocalDate oldest = LocalDate.now().minusDays(80);
+            for (int i = 0; i < referrals; i++) {
+                int c = random.nextInt(CLINICIANS);
+                out.printf("R%06d,P%05d,C0000,C%04d,S001,H%03d,%s,%s,Reason,Summary,None,Pending,,,2026-01-01,2026-01-01,1%n",
+                    i, random.nextInt(PATIENTS), c, c % FACILITIES, oldest.plusDays(random.nextInt(75)),
+                    URGENCIES[random.nextInt(URGENCIES.length)]);
+            }
+        }
+    }
+}
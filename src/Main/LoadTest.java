@@ -0,0 +1,93 @@
+package Main;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Small load driver for ServerMain: N threads each send their share of GET requests as fast
+// as they can, going round the given paths, then the latency percentiles are printed.
+//
+// Usage: java Main.LoadTest [baseUrl] [threads] [requests] [path ...]
+//        (defaults http://localhost:8080/api, 32 threads, 100000 requests, /patients/P001
+//        /appointments?patientId=P001 /referrals)
+public class LoadTest {
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args.length > 0 ? args[0] : "http://localhost:8080/api";
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        int requests = args.length > 2 ? Integer.parseInt(args[2]) : 100_000;
+        String[] paths = args.length > 3
+            ? Arrays.copyOfRange(args, 3, args.length)
+            : new String[]{"/patients/P001", "/appointments?patientId=P001", "/referrals"};
+
+        HttpClient client = HttpClient.newBuilder()
+            .executor(Executors.newFixedThreadPool(threads))
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+        List<HttpRequest> targets = new ArrayList<>();
+        for (String path : paths) {
+            targets.add(HttpRequest.newBuilder(URI.create(baseUrl + path)).GET().build());
+        }
+
+        // A short warm-up so the JIT and the connection pool aren't in the numbers
+        run(client, targets, threads, Math.min(requests / 10, 5_000));
+
+        long started = System.nanoTime();
+        long[] latencies = run(client, targets, threads, requests);
+        double seconds = (System.nanoTime() - started) / 1e9;
+
+        Arrays.sort(latencies);
+        System.out.printf("%d requests on %d threads in %.2fs (%.0f req/s)%n",
+            latencies.length, threads, seconds, latencies.length / seconds);
+        System.out.printf("p50 %.2fms  p90 %.2fms  p99 %.2fms  max %.2fms%n",
+            percentile(latencies, 50), percentile(latencies, 90), percentile(latencies, 99),
+            latencies[latencies.length - 1] / 1e6);
+        System.exit(0);
+    }
+
+    // Latency of each request in nanoseconds. Anything but a 200 counts as a failure and stops the run.
+    private static long[] run(HttpClient client, List<HttpRequest> targets, int threads, int requests)
+            throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<long[]>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int count = requests / threads + (t < requests % threads ? 1 : 0);
+            int offset = t;
+            results.add(pool.submit(() -> {
+                long[] latencies = new long[count];
+                for (int i = 0; i < count; i++) {
+                    HttpRequest request = targets.get((offset + i) % targets.size());
+                    long start = System.nanoTime();
+                    HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+                    latencies[i] = System.nanoTime() - start;
+                    if (response.statusCode() != 200) {
+                        throw new IllegalStateException(request.uri() + " returned " + response.statusCode());
+                    }
+                }
+                return latencies;
+            }));
+        }
+        long[] all = new long[requests];
+        int n = 0;
+        for (Future<long[]> result : results) {
+            long[] latencies = result.get();
+            System.arraycopy(latencies, 0, all, n, latencies.length);
+            n += latencies.length;
+        }
+        pool.shutdown();
+        return all;
+    }
+
+    private static double percentile(long[] sorted, int p) {
+        int index = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+}
@@ -3,11 +3,23 @@ package Main;
 import model.*;
 import view.LoginView;
 import controller.LoginController;
+import util.ChangeJournal;
+import util.CsvFileWatcher;
+import util.CsvUtils;
+import util.EdtStallMonitor;
+import java.util.List;
+import java.util.function.Consumer;
 import javax.swing.SwingUtilities;
 
 public class Main {
 
+    // How long the UI can be unresponsive before it is logged as a stall
+    private static final long EDT_STALL_THRESHOLD_MS = 250;
+
     public static void main(String[] args) {
+        // Watches for the UI freezing - results are on the Developer "Performance" screen
+        EdtStallMonitor.start(EDT_STALL_THRESHOLD_MS);
+        
         SwingUtilities.invokeLater(() -> {
             try {
                 // Setting up all the repositories that hold our data
@@ -16,8 +28,16 @@ public class Main {
                 ClinicianRepository clinicianRepo = new ClinicianRepository("src/data/clinicians.csv");
                 AppointmentRepository appointmentRepo = new AppointmentRepository("src/data/appointments.csv");
                 FacilityRepository facilityRepo = new FacilityRepository("src/data/facilities.csv");
+                // New bookings are checked against each facility's capacity
+                appointmentRepo.setFacilityRepository(facilityRepo);
+                // Repeating appointments - one row per series, checked against the same schedule
+                AppointmentSeriesRepository seriesRepo = new AppointmentSeriesRepository("src/data/appointment_series.csv", appointmentRepo);
                 PrescriptionRepository prescriptionRepo = new PrescriptionRepository("src/data/prescriptions.csv");
                 StaffRepository staffRepo = StaffRepository.getInstance("src/data/staff.csv", "src/data/clinicians.csv");
+                ReferralRepository referralRepo = ReferralRepository.getInstance("src/data/referrals.csv");
+
+                // Picking up changes that other users or batch jobs make to the shared CSV files
+                startDataWatcher(appointmentRepo, seriesRepo, referralRepo, SwingUtilities::invokeLater);
 
                 // Creating the login screen 
                 LoginView loginScreen = new LoginView();
@@ -50,4 +70,70 @@ public class Main {
             }
         });
     }
+
+    // Other processes' changes arrive through the shared change journal, which is applied
+    // record by record. The CSV files themselves are only re-read if they were changed by
+    // something that didn't write to the journal (e.g. a batch job).
+    // Files are read on the watcher thread, but the changes themselves are handed to applyOn -
+    // the desktop app runs them on the EDT because the repositories and their listeners are
+    // only ever touched from there.
+    static void startDataWatcher(AppointmentRepository appointmentRepo, AppointmentSeriesRepository seriesRepo,
+                                 ReferralRepository referralRepo, Consumer<Runnable> applyOn) {
+        CsvFileWatcher watcher = new CsvFileWatcher("src/data");
+        ChangeJournal journal = ChangeJournal.forDirectory("src/data");
+
+        journal.subscribe("appointments.csv",
+            entry -> applyOn.accept(() -> appointmentRepo.applyJournalEntry(entry)));
+        journal.subscribe("appointment_series.csv",
+            entry -> applyOn.accept(() -> seriesRepo.applyJournalEntry(entry)));
+        journal.subscribe("referrals.csv",
+            entry -> applyOn.accept(() -> referralRepo.applyJournalEntry(entry)));
+        watcher.register(journal.getJournalFileName(), journal::poll);
+
+        watcher.register("appointments.csv", () -> {
+            journal.poll();
+            if (journal.isUpToDate("src/data/appointments.csv")) {
+                return;
+            }
+            try {
+                List<String[]> rows = CsvUtils.readCsv("src/data/appointments.csv");
+                applyOn.accept(() -> appointmentRepo.applyExternalChanges(rows));
+            } catch (java.io.IOException ex) {
+                System.err.println("Could not reload appointments: " + ex.getMessage());
+            }
+        });
+
+        watcher.register("appointment_series.csv", () -> {
+            journal.poll();
+            if (journal.isUpToDate("src/data/appointment_series.csv")) {
+                return;
+            }
+            try {
+                List<String[]> rows = CsvUtils.readCsv("src/data/appointment_series.csv");
+                applyOn.accept(() -> seriesRepo.applyExternalChanges(rows));
+            } catch (java.io.IOException ex) {
+                System.err.println("Could not reload appointment series: " + ex.getMessage());
+            }
+        });
+
+        watcher.register("referrals.csv", () -> {
+            journal.poll();
+            if (journal.isUpToDate("src/data/referrals.csv")) {
+                return;
+            }
+            try {
+                List<String[]> rows = CsvUtils.readCsv("src/data/referrals.csv");
+                applyOn.accept(() -> referralRepo.applyExternalChanges(rows));
+            } catch (java.io.IOException ex) {
+                System.err.println("Could not reload referrals: " + ex.getMessage());
+            }
+        });
+
+        try {
+            watcher.start();
+        } catch (java.io.IOException ex) {
+            // Not fatal - the app still works, it just won't see other people's changes live
+            System.err.println("Could not start the data file watcher: " + ex.getMessage());
+        }
+    }
 }
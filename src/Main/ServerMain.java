@@ -0,0 +1,79 @@
+package Main;
+
+import com.sun.net.httpserver.HttpServer;
+import controller.ApiController;
+import model.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Headless entry point: loads the repositories once and serves them as JSON over HTTP,
+// so several clients can share one in-memory copy instead of each parsing the CSV files.
+//
+// There is no authentication, so it only listens on this machine unless told otherwise -
+// give a bind address (e.g. 0.0.0.0) only on a network you trust.
+//
+// Usage: java Main.ServerMain [port] [threads] [bindAddress]
+//        (defaults 8080, 4 per CPU core and the loopback address)
+public class ServerMain {
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        int threads = args.length > 1
+            ? Integer.parseInt(args[1])
+            : Runtime.getRuntime().availableProcessors() * 4;
+        InetAddress bindAddress = args.length > 2
+            ? InetAddress.getByName(args[2])
+            : InetAddress.getLoopbackAddress();
+
+        PatientRepository patientRepo = new PatientRepository("src/data/patients.csv");
+        AppointmentRepository appointmentRepo = new AppointmentRepository("src/data/appointments.csv");
+        AppointmentSeriesRepository seriesRepo = new AppointmentSeriesRepository("src/data/appointment_series.csv", appointmentRepo);
+        PrescriptionRepository prescriptionRepo = new PrescriptionRepository("src/data/prescriptions.csv");
+        ReferralRepository referralRepo = ReferralRepository.getInstance("src/data/referrals.csv");
+        ClinicianRepository clinicianRepo = new ClinicianRepository("src/data/clinicians.csv");
+        // Kept in step with the referrals by their change events, so under the same lock
+        TriageQueue triageQueue = new TriageQueue(referralRepo, clinicianRepo);
+        FacilityRepository facilityRepo = new FacilityRepository("src/data/facilities.csv");
+        CalendarExporter calendarExporter = new CalendarExporter(appointmentRepo, patientRepo, clinicianRepo, facilityRepo);
+
+        // Requests read under the read lock, changes made by other processes are applied
+        // under the write lock
+        ReadWriteLock storeLock = new ReentrantReadWriteLock();
+        Main.startDataWatcher(appointmentRepo, seriesRepo, referralRepo, change -> {
+            storeLock.writeLock().lock();
+            try {
+                change.run();
+            } finally {
+                storeLock.writeLock().unlock();
+            }
+        });
+
+        // Requests are blocking (small files, in-memory lookups) so a fixed pool of plain
+        // threads is enough
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        // The JDK server writes the headers and the body separately; without TCP_NODELAY the
+        // body waits on the client's delayed ACK, about 40ms per request. Must be set before
+        // the server is created.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        HttpServer server = HttpServer.create(new InetSocketAddress(bindAddress, port), 0);
+        server.createContext("/api", new ApiController(
+            patientRepo, appointmentRepo, prescriptionRepo, referralRepo, triageQueue, calendarExporter, storeLock));
+        server.setExecutor(executor);
+        server.start();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(1);
+            executor.shutdown();
+        }));
+
+        System.out.println("Healthcare Management System API listening on http://"
+            + bindAddress.getHostAddress() + ":" + port + "/api (" + threads + " worker threads)");
+    }
+}
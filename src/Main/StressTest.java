@@ -0,0 +1,239 @@
+package Main;
+
+import model.Appointment;
+import model.AppointmentRepository;
+import model.BookingConflictException;
+import model.VersionConflictException;
+import util.CsvUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+// Several processes booking and editing appointments in one data folder at the same time,
+// to check the file lock, the per-row versions and the journal hold up between processes.
+//
+// Starts N worker JVMs on a copy of src/data (or the given folder). Each worker books new
+// appointments and edits random ones (its own and the other workers'), re-reading the file
+// now and then, and reports every booking and every saved edit. When they have all finished
+// the appointments file is checked:
+//   - every booking is in the file exactly once, and no ID appears twice
+//   - no two saved edits got the same version of a row (that would be a lost update)
+//   - each row's version went up by exactly one per saved edit
+//
+// Usage: java Main.StressTest [processes] [operations] [dataFolder]
+//        (defaults 4 processes, 200 operations each, a temporary copy of src/data)
+public class StressTest {
+
+    private static final String WORKER = "--worker";
+    // Lines starting with this are the worker's report; anything else is passed through
+    private static final String REPORT = "STRESS ";
+    private static final int EDIT_RETRIES = 5;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals(WORKER)) {
+            worker(Paths.get(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+            return;
+        }
+        int processes = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int operations = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        Path folder = args.length > 2 ? Paths.get(args[2]) : copyOfData();
+        Path csv = folder.resolve("appointments.csv");
+
+        Map<String, Long> startVersions = versions(CsvUtils.readCsv(csv.toString()));
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        List<Process> workers = new ArrayList<>();
+        for (int w = 0; w < processes; w++) {
+            ProcessBuilder pb = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                StressTest.class.getName(), WORKER, folder.toString(), String.valueOf(w), String.valueOf(operations));
+            pb.redirectErrorStream(true);
+            workers.add(pb.start());
+        }
+
+        // Read every worker's output as it comes, so none of them blocks on a full pipe
+        List<String> booked = new ArrayList<>();
+        Map<String, List<Long>> editVersions = new HashMap<>();
+        List<Thread> readers = new ArrayList<>();
+        for (Process p : workers) {
+            Thread reader = new Thread(() -> {
+                try (BufferedReader in = new BufferedReader(new InputStreamReader(p.getInputStream(), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        if (!line.startsWith(REPORT)) {
+                            continue;
+                        }
+                        String[] parts = line.substring(REPORT.length()).split(" ");
+                        synchronized (booked) {
+                            if (parts[0].equals("BOOKED")) {
+                                booked.add(parts[1]);
+                            } else if (parts[0].equals("EDITED")) {
+                                editVersions.computeIfAbsent(parts[1], k -> new ArrayList<>()).add(Long.parseLong(parts[2]));
+                            } else {
+                                System.err.println(line);
+                            }
+                        }
+                    }
+                } catch (IOException ex) {
+                    System.err.println("Lost a worker's output: " + ex.getMessage());
+                }
+            });
+            reader.start();
+            readers.add(reader);
+        }
+        long started = System.currentTimeMillis();
+        boolean ok = true;
+        for (Process p : workers) {
+            if (p.waitFor() != 0) {
+                System.err.println("A worker exited with " + p.exitValue());
+                ok = false;
+            }
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        long millis = System.currentTimeMillis() - started;
+
+        List<String[]> rows = CsvUtils.readCsv(csv.toString());
+        Map<String, Integer> copies = new HashMap<>();
+        for (String[] row : rows) {
+            if (row.length > 0 && !row[0].trim().isEmpty()) {
+                copies.merge(row[0].trim(), 1, Integer::sum);
+            }
+        }
+        Map<String, Long> endVersions = versions(rows);
+        int problems = 0;
+
+        for (Map.Entry<String, Integer> entry : copies.entrySet()) {
+            if (entry.getValue() > 1) {
+                System.err.println(entry.getKey() + " is in the file " + entry.getValue() + " times");
+                problems++;
+            }
+        }
+        Set<String> bookedIds = new HashSet<>();
+        for (String id : booked) {
+            if (!bookedIds.add(id)) {
+                System.err.println(id + " was handed to two bookings");
+                problems++;
+            }
+            if (!copies.containsKey(id)) {
+                System.err.println(id + " was booked but is missing from the file");
+                problems++;
+            }
+        }
+        int edits = 0;
+        for (Map.Entry<String, List<Long>> entry : editVersions.entrySet()) {
+            String id = entry.getKey();
+            List<Long> versions = entry.getValue();
+            edits += versions.size();
+            if (new HashSet<>(versions).size() != versions.size()) {
+                System.err.println(id + ": two edits were saved as the same version " + versions);
+                problems++;
+            }
+            long start = startVersions.getOrDefault(id, 1L);
+            Long end = endVersions.get(id);
+            if (end == null || end != start + versions.size()) {
+                System.err.println(id + ": version " + start + " -> " + end + " after " + versions.size() + " saved edits");
+                problems++;
+            }
+        }
+
+        System.out.printf("%d processes, %d bookings and %d saved edits in %.1fs, %d rows in %s%n",
+            processes, booked.size(), edits, millis / 1000.0, copies.size(), csv);
+        System.out.println(problems == 0 && ok ? "OK - no rows lost or duplicated, versions all in step"
+            : problems + " problem(s) found");
+        System.exit(problems == 0 && ok ? 0 : 1);
+    }
+
+    private static void worker(Path folder, int index, int operations) throws IOException {
+        AppointmentRepository repository = new AppointmentRepository(folder.resolve("appointments.csv").toString());
+        Random random = new Random(index);
+        // A day of its own for each booking, so workers never clash over a slot
+        LocalDate firstDay = LocalDate.of(2030, 1, 1).plusDays((long) index * operations);
+
+        for (int i = 0; i < operations; i++) {
+            if (i % 10 == 0) {
+                repository.reloadChanges();
+            }
+            if (random.nextBoolean()) {
+                String today = LocalDate.now().toString();
+                Appointment a = new Appointment(repository.generateNewId(), "PSTRESS" + index, "CSTRESS" + index, "",
+                    firstDay.plusDays(i).toString(), "09:00", "15", "Stress test", "Scheduled", "", "", today, today);
+                try {
+                    repository.add(a);
+                    System.out.println(REPORT + "BOOKED " + a.getId());
+                } catch (BookingConflictException ex) {
+                    System.out.println(REPORT + "ERROR booking refused: " + ex.getMessage());
+                }
+            } else {
+                List<Appointment> all = repository.getAll();
+                if (all.isEmpty()) {
+                    continue;
+                }
+                String id = all.get(random.nextInt(all.size())).getId();
+                edit(repository, id, "edit " + index + "-" + i);
+            }
+        }
+        System.out.flush();
+    }
+
+    // Another worker may have saved the row first - then the repository has loaded the latest
+    // copy and the edit is tried again on that
+    private static void edit(AppointmentRepository repository, String id, String notes) {
+        for (int attempt = 0; attempt < EDIT_RETRIES; attempt++) {
+            Appointment a = repository.findById(id);
+            if (a == null) {
+                return;
+            }
+            a.setNotes(notes);
+            try {
+                repository.updateAppointment(a);
+                System.out.println(REPORT + "EDITED " + id + " " + a.getVersion());
+                return;
+            } catch (VersionConflictException ex) {
+                // try again on the latest copy
+            } catch (BookingConflictException ex) {
+                System.out.println(REPORT + "ERROR edit refused: " + ex.getMessage());
+                return;
+            }
+        }
+    }
+
+    private static Map<String, Long> versions(List<String[]> rows) {
+        Map<String, Long> versions = new HashMap<>();
+        for (String[] row : rows) {
+            if (row.length == 0 || row[0].trim().isEmpty()) {
+                continue;
+            }
+            long version = 1;
+            if (row.length > 13) {
+                try {
+                    version = Long.parseLong(row[13].trim());
+                } catch (NumberFormatException ex) {
+                    // rows from before the version column count as version 1
+                }
+            }
+            versions.put(row[0].trim(), version);
+        }
+        return versions;
+    }
+
+    private static Path copyOfData() throws IOException {
+        Path folder = Files.createTempDirectory("hms-stress");
+        Files.copy(Paths.get("src/data/appointments.csv"), folder.resolve("appointments.csv"),
+            StandardCopyOption.REPLACE_EXISTING);
+        return folder;
+    }
+}
@@ -0,0 +1,375 @@
+package controller;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import model.*;
+import util.JsonUtils;
+import java.io.IOException;
+import java.io.BufferedWriter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+
+// Handles the read-only JSON endpoints for the headless server (Main.ServerMain).
+//
+//   GET /api/patients                       all patients
+//   GET /api/patients/{id}                  one patient
+//   GET /api/appointments[?patientId=..]    appointments, optionally for one patient
+//   GET /api/appointments/{id}
+//   GET /api/prescriptions[?patientId=..]
+//   GET /api/prescriptions/{id}
+//   GET /api/referrals[?patientId=..]
+//   GET /api/referrals/{id}
+//   GET /api/triage[?speciality=..|facilityId=..|clinicianId=..][&after=..][&limit=..]
+//                                           open referrals, soonest target date first, a page
+//                                           at a time (after = the last row's cursor)
+//   GET /api/calendar/clinicians/{id}.ics[?from=..&to=..&since=..]
+//   GET /api/calendar/facilities/{id}.ics[?from=..&to=..&since=..]
+//                                           iCalendar diary, streamed (since = only appointments
+//                                           modified on or after that date)
+//
+// Requests run on many threads at once but the repositories aren't thread safe, so every
+// request reads under the shared read lock and changes from other processes are applied
+// under the write lock.
+public class ApiController implements HttpHandler {
+
+    private final PatientRepository patientRepository;
+    private final AppointmentRepository appointmentRepository;
+    private final PrescriptionRepository prescriptionRepository;
+    private final ReferralRepository referralRepository;
+    private final TriageQueue triageQueue;
+    private final CalendarExporter calendarExporter;
+    private final ReadWriteLock storeLock;
+
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 1000;
+    // Calendar range when none is given, and the longest one allowed
+    private static final int DEFAULT_CALENDAR_DAYS = 365;
+    private static final int MAX_CALENDAR_DAYS = 10 * 366;
+
+    public ApiController(PatientRepository patientRepository,
+                         AppointmentRepository appointmentRepository,
+                         PrescriptionRepository prescriptionRepository,
+                         ReferralRepository referralRepository,
+                         TriageQueue triageQueue,
+                         CalendarExporter calendarExporter,
+                         ReadWriteLock storeLock) {
+        this.patientRepository = patientRepository;
+        this.appointmentRepository = appointmentRepository;
+        this.prescriptionRepository = prescriptionRepository;
+        this.referralRepository = referralRepository;
+        this.triageQueue = triageQueue;
+        this.calendarExporter = calendarExporter;
+        this.storeLock = storeLock;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                sendError(exchange, 405, "Only GET is supported");
+                return;
+            }
+
+            // "/api/patients/P001" -> ["patients", "P001"]
+            String path = exchange.getRequestURI().getPath().replaceFirst("^/api/?", "");
+            String[] parts = path.split("/");
+            String resource = parts[0];
+            String id = parts.length > 1 ? URLDecoder.decode(parts[1], StandardCharsets.UTF_8) : null;
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+
+            if (resource.equals("calendar")) {
+                sendCalendar(exchange, parts, query);
+                return;
+            }
+
+            String body;
+            storeLock.readLock().lock();
+            try {
+                body = route(resource, id, query);
+            } finally {
+                storeLock.readLock().unlock();
+            }
+
+            if (body == null) {
+                sendError(exchange, 404, "Not found: " + exchange.getRequestURI().getPath());
+            } else {
+                send(exchange, 200, body);
+            }
+        } catch (Exception ex) {
+            System.err.println("Error handling " + exchange.getRequestURI() + ": " + ex.getMessage());
+            sendError(exchange, 500, "Internal error");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // Returns the JSON for a request, or null if there is nothing at that path
+    private String route(String resource, String id, Map<String, String> query) {
+        String patientId = query.get("patientId");
+        switch (resource) {
+            case "patients":
+                if (id != null) {
+                    Patient p = patientRepository.findById(id);
+                    return p != null ? patientJson(p) : null;
+                }
+                List<String> patients = new ArrayList<>();
+                for (Patient p : patientRepository.getAll()) {
+                    patients.add(patientJson(p));
+                }
+                return JsonUtils.array(patients);
+
+            case "appointments":
+                if (id != null) {
+                    Appointment a = appointmentRepository.findById(id);
+                    return a != null ? appointmentJson(a) : null;
+                }
+                List<String> appointments = new ArrayList<>();
+                List<Appointment> appointmentSource = patientId != null
+                    ? appointmentRepository.getByPatientId(patientId)
+                    : appointmentRepository.getAll();
+                for (Appointment a : appointmentSource) {
+                    appointments.add(appointmentJson(a));
+                }
+                return JsonUtils.array(appointments);
+
+            case "prescriptions":
+                if (id != null) {
+                    Prescription p = prescriptionRepository.findById(id);
+                    return p != null ? prescriptionJson(p) : null;
+                }
+                List<String> prescriptions = new ArrayList<>();
+                List<Prescription> prescriptionSource = patientId != null
+                    ? prescriptionRepository.getByPatientId(patientId)
+                    : prescriptionRepository.getAll();
+                for (Prescription p : prescriptionSource) {
+                    prescriptions.add(prescriptionJson(p));
+                }
+                return JsonUtils.array(prescriptions);
+
+            case "referrals":
+                if (id != null) {
+                    Referral r = referralRepository.findById(id);
+                    return r != null ? referralJson(r) : null;
+                }
+                List<String> referrals = new ArrayList<>();
+                List<Referral> referralSource = patientId != null
+                    ? referralRepository.findByPatientId(patientId)
+                    : referralRepository.getAll();
+                for (Referral r : referralSource) {
+                    referrals.add(referralJson(r));
+                }
+                return JsonUtils.array(referrals);
+
+            case "triage":
+                return id == null ? triageJson(query) : null;
+
+            default:
+                return null;
+        }
+    }
+
+    private String patientJson(Patient p) {
+        Map<String, Object> f = new LinkedHashMap<>();
+        f.put("patientId", p.getPatientId());
+        f.put("firstName", p.getFirstName());
+        f.put("lastName", p.getLastName());
+        f.put("dateOfBirth", p.getDateOfBirth());
+        f.put("nhsNumber", p.getNhsNumber());
+        f.put("gender", p.getGender());
+        f.put("phoneNumber", p.getPhoneNumber());
+        f.put("email", p.getEmail());
+        f.put("address", p.getAddress());
+        f.put("postcode", p.getPostcode());
+        f.put("emergencyContactName", p.getEmergencyContactName());
+        f.put("emergencyContactPhone", p.getEmergencyContactPhone());
+        f.put("registrationDate", p.getRegistrationDate());
+        f.put("gpSurgeryId", p.getGpSurgeryId());
+        return JsonUtils.object(f);
+    }
+
+    private String appointmentJson(Appointment a) {
+        Map<String, Object> f = new LinkedHashMap<>();
+        f.put("appointmentId", a.getId());
+        f.put("patientId", a.getPatientId());
+        f.put("clinicianId", a.getClinicianId());
+        f.put("facilityId", a.getFacilityId());
+        f.put("appointmentDate", a.getAppointmentDate());
+        f.put("appointmentTime", a.getAppointmentTime());
+        f.put("durationMinutes", a.getDurationMinutes());
+        f.put("appointmentType", a.getAppointmentType());
+        f.put("status", a.getStatus());
+        f.put("reasonForVisit", a.getReasonForVisit());
+        f.put("notes", a.getNotes());
+        f.put("createdDate", a.getCreatedDate());
+        f.put("lastModified", a.getLastModified());
+        f.put("version", a.getVersion());
+        return JsonUtils.object(f);
+    }
+
+    private String prescriptionJson(Prescription p) {
+        Map<String, Object> f = new LinkedHashMap<>();
+        f.put("prescriptionId", p.getId());
+        f.put("patientId", p.getPatientId());
+        f.put("clinicianId", p.getClinicianId());
+        f.put("appointmentId", p.getAppointmentId());
+        f.put("prescriptionDate", p.getPrescriptionDate());
+        f.put("medication", p.getMedication());
+        f.put("dosage", p.getDosage());
+        f.put("frequency", p.getFrequency());
+        f.put("durationDays", p.getDurationDays());
+        f.put("quantity", p.getQuantity());
+        f.put("instructions", p.getInstructions());
+        f.put("pharmacyName", p.getPharmacyName());
+        f.put("status", p.getStatus());
+        f.put("issueDate", p.getIssueDate());
+        f.put("collectionDate", p.getCollectionDate());
+        return JsonUtils.object(f);
+    }
+
+    private String referralJson(Referral r) {
+        Map<String, Object> f = new LinkedHashMap<>();
+        f.put("referralId", r.getReferralId());
+        f.put("patientId", r.getPatientId());
+        f.put("referringClinicianId", r.getReferringClinicianId());
+        f.put("referredToClinicianId", r.getReferredToClinicianId());
+        f.put("referringFacilityId", r.getReferringFacilityId());
+        f.put("referredToFacilityId", r.getReferredToFacilityId());
+        f.put("referralDate", r.getReferralDate());
+        f.put("urgencyLevel", r.getUrgencyLevel());
+        f.put("referralReason", r.getReferralReason());
+        f.put("clinicalSummary", r.getClinicalSummary());
+        f.put("requestedInvestigations", r.getRequestedInvestigations());
+        f.put("status", r.getStatus());
+        f.put("appointmentId", r.getAppointmentId());
+        f.put("notes", r.getNotes());
+        f.put("createdDate", r.getCreatedDate());
+        f.put("lastUpdated", r.getLastUpdated());
+        f.put("version", r.getVersion());
+        return JsonUtils.object(f);
+    }
+
+    // One page of a triage worklist: the referral fields plus its target date, days over it
+    // and the cursor to pass as 'after' for the next page
+    private String triageJson(Map<String, String> query) {
+        TriageQueue.Partition partition = TriageQueue.Partition.ALL;
+        String key = "";
+        if (query.containsKey("clinicianId")) {
+            partition = TriageQueue.Partition.CLINICIAN;
+            key = query.get("clinicianId");
+        } else if (query.containsKey("facilityId")) {
+            partition = TriageQueue.Partition.FACILITY;
+            key = query.get("facilityId");
+        } else if (query.containsKey("speciality")) {
+            partition = TriageQueue.Partition.SPECIALITY;
+            key = query.get("speciality");
+        }
+        int limit = DEFAULT_PAGE_SIZE;
+        try {
+            if (query.containsKey("limit")) {
+                limit = Math.max(1, Math.min(Integer.parseInt(query.get("limit")), MAX_PAGE_SIZE));
+            }
+        } catch (NumberFormatException ex) {
+            // Keep the default
+        }
+
+        LocalDate today = LocalDate.now();
+        List<String> rows = new ArrayList<>();
+        for (TriageQueue.Entry entry : triageQueue.page(partition, key, TriageQueue.fromCursor(query.get("after")), limit)) {
+            String json = referralJson(entry.getReferral());
+            Map<String, Object> f = new LinkedHashMap<>();
+            f.put("speciality", entry.getSpeciality());
+            f.put("targetDate", entry.getDueDate().toString());
+            f.put("daysOverdue", entry.getDaysOverdue(today));
+            f.put("cursor", entry.getCursor());
+            // Add the triage fields onto the end of the referral object
+            rows.add(json.substring(0, json.length() - 1) + "," + JsonUtils.object(f).substring(1));
+        }
+        return JsonUtils.array(rows);
+    }
+
+    // Streams the .ics into the response a month at a time (chunked), rather than building it
+    // up as a string first like the JSON endpoints do. The read lock is only held while each
+    // month is put together, not while it's being sent, so a slow client can't hold up the
+    // writer (and every request queued behind it).
+    private void sendCalendar(HttpExchange exchange, String[] parts, Map<String, String> query) throws IOException {
+        boolean clinician = parts.length == 3 && parts[1].equals("clinicians");
+        boolean facility = parts.length == 3 && parts[1].equals("facilities");
+        if (!clinician && !facility) {
+            sendError(exchange, 404, "Not found: " + exchange.getRequestURI().getPath());
+            return;
+        }
+        String id = URLDecoder.decode(parts[2], StandardCharsets.UTF_8).replaceFirst("\\.ics$", "");
+
+        LocalDate from;
+        LocalDate to;
+        try {
+            from = query.containsKey("from") ? LocalDate.parse(query.get("from")) : LocalDate.now();
+            to = query.containsKey("to") ? LocalDate.parse(query.get("to")) : from.plusDays(DEFAULT_CALENDAR_DAYS);
+            if (query.containsKey("since")) {
+                LocalDate.parse(query.get("since"));
+            }
+        } catch (java.time.format.DateTimeParseException ex) {
+            sendError(exchange, 400, "Dates must be yyyy-MM-dd");
+            return;
+        }
+        if (to.isBefore(from) || to.toEpochDay() - from.toEpochDay() > MAX_CALENDAR_DAYS) {
+            sendError(exchange, 400, "'to' must be after 'from' and at most " + MAX_CALENDAR_DAYS + " days later");
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "text/calendar; charset=utf-8");
+        exchange.getResponseHeaders().set("Content-Disposition", "attachment; filename=\"" + id + ".ics\"");
+        exchange.sendResponseHeaders(200, 0);
+        // The headers have gone, so an error from here on can't be sent as an error response -
+        // the calendar just stops short (without END:VCALENDAR) and handle() closes the exchange
+        try {
+            Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8));
+            if (clinician) {
+                calendarExporter.exportClinician(id, from, to, query.get("since"), out, storeLock.readLock());
+            } else {
+                calendarExporter.exportFacility(id, from, to, query.get("since"), out, storeLock.readLock());
+            }
+        } catch (IOException | RuntimeException ex) {
+            System.err.println("Calendar export stopped for " + exchange.getRequestURI() + ": " + ex.getMessage());
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) return params;
+
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                           URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        Map<String, Object> f = new LinkedHashMap<>();
+        f.put("error", message);
+        send(exchange, status, JsonUtils.object(f));
+    }
+}
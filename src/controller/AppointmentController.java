@@ -1,12 +1,26 @@
 package controller;
 
 import model.*;
+import util.ActionTimer;
+import util.PrefixIndex;
+import util.PrimitiveSort;
 import view.AppointmentPanel;
+import view.AutocompleteField;
 import javax.swing.*;
 import java.awt.*;
+import java.time.DayOfWeek;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.TextStyle;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 
 public class AppointmentController {
 
@@ -15,8 +29,58 @@ public class AppointmentController {
     private final PatientRepository patientRepository;
     private final ClinicianRepository clinicianRepository;
     private final FacilityRepository facilityRepository;
+    private final AvailabilityEngine availability;
+    private final AppointmentSeriesRepository seriesRepository;
+    // Referrals waiting for an appointment - offered slots that are cancelled
+    private final Waitlist waitlist;
+    // Booked minutes per clinician per day - suggests the least busy clinician when booking
+    private final WorkloadBalancer workload;
+    
+    // Lengths offered when booking, in minutes
+    private static final String[] DURATIONS = {"15", "20", "30", "45", "60"};
+    // Repeat options when booking - frequency and interval for each (null = a one-off booking)
+    private static final String[] REPEATS = {"Does not repeat", "Weekly", "Every 2 weeks", "Every 4 weeks", "Monthly"};
+    private static final String[] REPEAT_FREQUENCIES = {null, AppointmentSeries.WEEKLY, AppointmentSeries.WEEKLY,
+        AppointmentSeries.WEEKLY, AppointmentSeries.MONTHLY};
+    private static final int[] REPEAT_INTERVALS = {0, 1, 2, 4, 1};
+    // Clinicians listed by Least Busy
+    private static final int SUGGESTION_LIMIT = 10;
+    // Repeating appointments are listed from this many days back to this many ahead - they
+    // go on for ever, so only a window of them is ever worked out
+    private static final int SERIES_DAYS_BEFORE = 28;
+    private static final int SERIES_DAYS_AHEAD = 84;
     
     private List<Appointment> allAppointments = new ArrayList<>();
+    // Set by every appointment / series change; searches reuse the list until then. The list
+    // is replaced rather than changed, so a running search can keep reading it.
+    private boolean appointmentsStale = true;
+    
+    // The search that is currently applied to the table (empty text = show everything)
+    private String activeSearchText = "";
+    private String activeFilterType = null;
+    
+    // Search-as-you-type: waits for a pause in typing, then filters on a background thread
+    private static final int SEARCH_DELAY_MS = 250;
+    private static final int SEARCH_PAGE_SIZE = 500;
+    private final Timer searchTimer;
+    private SearchWorker currentSearch;
+    
+    // Utilization tab: the Monday of the week shown. Redrawn shortly after appointments
+    // change (one redraw for a burst of changes, e.g. auto-scheduling)
+    private LocalDate utilizationWeek = LocalDate.now().with(DayOfWeek.MONDAY);
+    private static final int UTILIZATION_REFRESH_DELAY_MS = 200;
+    private final Timer utilizationTimer;
+    
+    // Referral worklist tab: built the first time the tab is opened. One page at a time;
+    // worklistAfter is the referral just before the page shown (null = the top).
+    private static final int WORKLIST_PAGE_SIZE = 50;
+    private TriageQueue triageQueue;
+    private final List<TriageQueue.Partition> worklistPartitions = new ArrayList<>();
+    private final List<String> worklistKeys = new ArrayList<>();
+    private TriageQueue.Entry worklistAfter;
+    private List<TriageQueue.Entry> worklistPage = new ArrayList<>();
+    private int worklistOffset;
+    private final Timer worklistTimer;
     
     public AppointmentController(AppointmentPanel view,
                                 AppointmentRepository appointmentRepository,
@@ -28,20 +92,109 @@ public class AppointmentController {
         this.patientRepository = patientRepository;
         this.clinicianRepository = clinicianRepository;
         this.facilityRepository = facilityRepository;
+        this.availability = new AvailabilityEngine(appointmentRepository, clinicianRepository, facilityRepository);
+        this.seriesRepository = AppointmentSeriesRepository.getInstance("src/data/appointment_series.csv", appointmentRepository);
+        this.waitlist = new Waitlist(appointmentRepository, ReferralRepository.getInstance("src/data/referrals.csv"), clinicianRepository);
+        this.workload = new WorkloadBalancer(appointmentRepository, seriesRepository, clinicianRepository, facilityRepository);
         
+        searchTimer = new Timer(SEARCH_DELAY_MS, e -> ActionTimer.time("AppointmentController.filterAppointments", this::filterAppointments));
+        searchTimer.setRepeats(false);
+        utilizationTimer = new Timer(UTILIZATION_REFRESH_DELAY_MS, e -> refreshUtilization());
+        utilizationTimer.setRepeats(false);
+        worklistTimer = new Timer(UTILIZATION_REFRESH_DELAY_MS, e -> refreshWorklist());
+        worklistTimer.setRepeats(false);
+        
+        view.setCellResolver(this::cellValue);
+        // Date and time columns sort as packed numbers; the date column includes the time
+        // so one click gives chronological order
+        view.setNumericSortKey(1, a -> PrimitiveSort.packDateTime(a.getAppointmentDate(), a.getAppointmentTime()));
+        view.setNumericSortKey(2, a -> PrimitiveSort.packTime(a.getAppointmentTime()));
+        // Patients sort by surname, then first name
+        view.setTextSortKey(3, a -> {
+            Patient patient = patientRepository.findById(a.getPatientId());
+            return patient != null ? patient.getLastName() + ", " + patient.getFirstName() : "";
+        });
         bind();
         refreshAppointmentsTable();
+        
+        // Apply each repository change to just the affected row
+        appointmentRepository.addChangeListener(this::onAppointmentChanged);
+        // A series change can add or remove any number of rows, so the list is rebuilt (rare)
+        seriesRepository.addChangeListener(e -> {
+            appointmentsStale = true;
+            filterAppointments();
+        });
+        appointmentRepository.addChangeListener(e -> utilizationChanged());
+        seriesRepository.addChangeListener(e -> utilizationChanged());
+        ReferralRepository.getInstance("src/data/referrals.csv").addChangeListener(e -> worklistChanged());
+        
+        // Build the picker indexes once the screen is up, so the booking dialog opens instantly
+        SwingUtilities.invokeLater(() -> {
+            PickerIndexes.patients(patientRepository);
+            PickerIndexes.clinicians(clinicianRepository);
+            PickerIndexes.patientSearchNames(patientRepository);
+            PickerIndexes.clinicianSearchNames(clinicianRepository);
+            facilityIndex();
+        });
     }
     
     private void bind() {
         loadAllAppointments();
         
-        view.getSearchButton().addActionListener(e -> filterAppointments());
-        view.getSearchField().addActionListener(e -> filterAppointments());
-        view.getBookNewButton().addActionListener(e -> bookNewAppointment());
-        view.getRescheduleButton().addActionListener(e -> rescheduleAppointment());
-        view.getEditButton().addActionListener(e -> editAppointment());
-        view.getCancelButton().addActionListener(e -> cancelAppointment());
+        view.getSearchButton().addActionListener(e -> ActionTimer.time("AppointmentController.filterAppointments", this::filterAppointments));
+        view.getSearchField().addActionListener(e -> ActionTimer.time("AppointmentController.filterAppointments", this::filterAppointments));
+        view.getSearchField().getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) { searchTimer.restart(); }
+            @Override
+            public void removeUpdate(DocumentEvent e) { searchTimer.restart(); }
+            @Override
+            public void changedUpdate(DocumentEvent e) { searchTimer.restart(); }
+        });
+        view.getFilterComboBox().addActionListener(e -> searchTimer.restart());
+        // Each action is timed for the Developer performance screen
+        view.getBookNewButton().addActionListener(e -> ActionTimer.time("AppointmentController.bookNewAppointment", this::bookNewAppointment));
+        view.getRescheduleButton().addActionListener(e -> ActionTimer.time("AppointmentController.rescheduleAppointment", this::rescheduleAppointment));
+        view.getEditButton().addActionListener(e -> ActionTimer.time("AppointmentController.editAppointment", this::editAppointment));
+        view.getCancelButton().addActionListener(e -> ActionTimer.time("AppointmentController.cancelAppointment", this::cancelAppointment));
+        view.getAutoScheduleButton().addActionListener(e -> ActionTimer.time("AppointmentController.autoScheduleReferrals", this::autoScheduleReferrals));
+        
+        view.getTabs().addChangeListener(e -> utilizationChanged());
+        view.getTabs().addChangeListener(e -> worklistChanged());
+        view.getWorklistComboBox().addActionListener(e -> {
+            worklistAfter = null;
+            worklistOffset = 0;
+            worklistChanged();
+        });
+        view.getNextPageButton().addActionListener(e -> {
+            if (!worklistPage.isEmpty()) {
+                worklistAfter = worklistPage.get(worklistPage.size() - 1);
+                worklistOffset += worklistPage.size();
+            }
+            refreshWorklist();
+        });
+        view.getPreviousPageButton().addActionListener(e -> {
+            List<TriageQueue.Entry> previous = worklistPage.isEmpty() ? new ArrayList<>()
+                : triageQueue.pageBefore(worklistPartition(), worklistKey(), worklistPage.get(0), WORKLIST_PAGE_SIZE);
+            if (previous.size() < WORKLIST_PAGE_SIZE) {
+                worklistAfter = null;
+                worklistOffset = 0;
+            } else {
+                List<TriageQueue.Entry> before = triageQueue.pageBefore(worklistPartition(), worklistKey(), previous.get(0), 1);
+                worklistAfter = before.isEmpty() ? null : before.get(0);
+                worklistOffset = Math.max(worklistOffset - previous.size(), 0);
+            }
+            refreshWorklist();
+        });
+        view.getUtilizationFacilityComboBox().addActionListener(e -> utilizationChanged());
+        view.getPreviousWeekButton().addActionListener(e -> {
+            utilizationWeek = utilizationWeek.minusWeeks(1);
+            refreshUtilization();
+        });
+        view.getNextWeekButton().addActionListener(e -> {
+            utilizationWeek = utilizationWeek.plusWeeks(1);
+            refreshUtilization();
+        });
         
         view.getTable().getSelectionModel().addListSelectionListener(e -> {
             if (!e.getValueIsAdjusting()) {
@@ -54,86 +207,388 @@ public class AppointmentController {
     }
     
     private void loadAllAppointments() {
-        allAppointments.clear();
-        allAppointments.addAll(appointmentRepository.getAll());
+        List<Appointment> list = new ArrayList<>(appointmentRepository.getAll());
+        LocalDate today = LocalDate.now();
+        list.addAll(seriesRepository.occurrencesBetween(
+            today.minusDays(SERIES_DAYS_BEFORE), today.plusDays(SERIES_DAYS_AHEAD + 1)));
+        allAppointments = Collections.unmodifiableList(list);
+        appointmentsStale = false;
     }
     
+    // Starts a new search with whatever is in the search box, cancelling one that is still running
     private void filterAppointments() {
-        String searchText = view.getSearchField().getText().toLowerCase().trim();
-        String filterType = (String) view.getFilterComboBox().getSelectedItem();
+        searchTimer.stop();
+        cancelSearch();
         
+        activeSearchText = view.getSearchField().getText().toLowerCase().trim();
+        activeFilterType = (String) view.getFilterComboBox().getSelectedItem();
+        
+        // Typing doesn't change the appointments, so only reload after they have changed
+        if (appointmentsStale) {
+            loadAllAppointments();
+        }
         view.clearTable();
-        loadAllAppointments();
+        view.setRescheduleButtonEnabled(false);
+        view.setEditButtonEnabled(false);
+        view.setCancelButtonEnabled(false);
         
-        for (Appointment appointment : allAppointments) {
-            boolean matches = true;
-            
-            if (!searchText.isEmpty()) {
-                boolean searchMatches = false;
-                
-                if ("Patient ID".equals(filterType)) {
-                    searchMatches = appointment.getPatientId().toLowerCase().contains(searchText);
-                } else if ("Patient Name".equals(filterType)) {
-                    Patient patient = patientRepository.findById(appointment.getPatientId());
-                    if (patient != null) {
-                        searchMatches = patient.getFullName().toLowerCase().contains(searchText);
-                    }
-                } else if ("Clinician ID".equals(filterType)) {
-                    searchMatches = appointment.getClinicianId().toLowerCase().contains(searchText);
-                } else if ("Clinician Name".equals(filterType)) {
-                    Clinician apptClinician = clinicianRepository.findById(appointment.getClinicianId());
-                    if (apptClinician != null) {
-                        searchMatches = apptClinician.getFullName().toLowerCase().contains(searchText);
+        if (activeSearchText.isEmpty()) {
+            view.setAppointments(allAppointments);
+            return;
+        }
+        
+        currentSearch = new SearchWorker(allAppointments, activeSearchText, activeFilterType);
+        currentSearch.execute();
+    }
+    
+    private void cancelSearch() {
+        if (currentSearch != null) {
+            currentSearch.cancel(false);
+            currentSearch = null;
+        }
+    }
+    
+    // Filters the appointments off the EDT and streams the matches into the table a page at
+    // a time. The list and the name maps it is given are never changed (changes replace
+    // them), so nothing has to be copied when a search starts.
+    private class SearchWorker extends SwingWorker<Void, Appointment> {
+        private final List<Appointment> snapshot;
+        private final String searchText;
+        private final String filterType;
+        private final Map<String, String> patientNames;
+        private final Map<String, String> clinicianNames;
+        
+        SearchWorker(List<Appointment> snapshot, String searchText, String filterType) {
+            this.snapshot = snapshot;
+            this.searchText = searchText;
+            this.filterType = filterType;
+            this.patientNames = PickerIndexes.patientSearchNames(patientRepository);
+            this.clinicianNames = PickerIndexes.clinicianSearchNames(clinicianRepository);
+        }
+        
+        @Override
+        protected Void doInBackground() {
+            List<Appointment> page = new ArrayList<>();
+            for (Appointment appointment : snapshot) {
+                if (isCancelled()) {
+                    return null;
+                }
+                if (matches(appointment)) {
+                    page.add(appointment);
+                    if (page.size() == SEARCH_PAGE_SIZE) {
+                        publish(page.toArray(new Appointment[0]));
+                        page.clear();
                     }
                 }
-                
-                matches = searchMatches;
             }
-            
-            if (matches) {
-                addAppointmentRow(appointment);
+            if (!page.isEmpty()) {
+                publish(page.toArray(new Appointment[0]));
             }
+            return null;
         }
         
-        view.setRescheduleButtonEnabled(false);
-        view.setEditButtonEnabled(false);
-        view.setCancelButtonEnabled(false);
+        @Override
+        protected void process(List<Appointment> matches) {
+            // A newer search may have started since these were published
+            if (!isCancelled() && currentSearch == this) {
+                view.addAppointments(matches);
+            }
+        }
+        
+        @Override
+        protected void done() {
+            if (currentSearch == this) {
+                currentSearch = null;
+            }
+        }
+        
+        private boolean matches(Appointment appointment) {
+            if ("Patient ID".equals(filterType)) {
+                return appointment.getPatientId().toLowerCase().contains(searchText);
+            } else if ("Patient Name".equals(filterType)) {
+                String name = patientNames.get(PickerIndexes.searchKey(appointment.getPatientId()));
+                return name != null && name.contains(searchText);
+            } else if ("Clinician ID".equals(filterType)) {
+                return appointment.getClinicianId().toLowerCase().contains(searchText);
+            } else if ("Clinician Name".equals(filterType)) {
+                String name = clinicianNames.get(PickerIndexes.searchKey(appointment.getClinicianId()));
+                return name != null && name.contains(searchText);
+            }
+            return false;
+        }
     }
     
-    private void addAppointmentRow(Appointment appointment) {
-        Patient patient = patientRepository.findById(appointment.getPatientId());
-        String patientName = patient != null ? patient.getFullName() : "Unknown";
+    // Checks one appointment against the search that is currently applied
+    private boolean matchesFilter(Appointment appointment) {
+        String searchText = activeSearchText;
+        String filterType = activeFilterType;
         
-        Clinician apptClinician = clinicianRepository.findById(appointment.getClinicianId());
-        String clinicianName = apptClinician != null ? apptClinician.getFullName() : appointment.getClinicianId();
+        if (searchText.isEmpty()) {
+            return true;
+        }
         
-        String facilityName = appointment.getFacilityId();
-        if (facilityRepository != null) {
-            Facility facility = facilityRepository.findById(appointment.getFacilityId());
-            if (facility != null) {
-                facilityName = facility.getFacilityName();
-            }
+        boolean searchMatches = false;
+        
+        if ("Patient ID".equals(filterType)) {
+            searchMatches = appointment.getPatientId().toLowerCase().contains(searchText);
+        } else if ("Patient Name".equals(filterType)) {
+            String name = PickerIndexes.patientSearchNames(patientRepository).get(PickerIndexes.searchKey(appointment.getPatientId()));
+            searchMatches = name != null && name.contains(searchText);
+        } else if ("Clinician ID".equals(filterType)) {
+            searchMatches = appointment.getClinicianId().toLowerCase().contains(searchText);
+        } else if ("Clinician Name".equals(filterType)) {
+            String name = PickerIndexes.clinicianSearchNames(clinicianRepository).get(PickerIndexes.searchKey(appointment.getClinicianId()));
+            searchMatches = name != null && name.contains(searchText);
         }
         
-        view.addRow(new Object[]{
-            appointment.getId(),
-            appointment.getAppointmentDate(),
-            appointment.getAppointmentTime(),
-            patientName,
-            clinicianName,
-            facilityName,
-            appointment.getReasonForVisit(),
-            appointment.getStatus()
+        return searchMatches;
+    }
+    
+    // --- Utilization tab ---
+    
+    private void utilizationChanged() {
+        if (view.isUtilizationShown()) {
+            utilizationTimer.restart();
+        }
+    }
+    
+    // Fills the heatmap for the selected facility and week: one row per day, one column per
+    // hour the facility is open, each cell the booked minutes over the minutes it could hold.
+    // All of it comes from the schedule's running counters rather than the appointment list.
+    private void refreshUtilization() {
+        ActionTimer.time("AppointmentController.refreshUtilization", () -> {
+            JComboBox<String> combo = view.getUtilizationFacilityComboBox();
+            if (combo.getItemCount() == 0 && facilityRepository != null) {
+                for (Facility f : facilityRepository.getAll()) {
+                    combo.addItem(f.getFacilityId() + " - " + f.getFacilityName());
+                }
+            }
+            String selected = (String) combo.getSelectedItem();
+            Facility facility = selected != null && facilityRepository != null
+                ? facilityRepository.findById(selected.split(" - ")[0]) : null;
+            LocalDate weekEnd = utilizationWeek.plusDays(6);
+            String week = utilizationWeek + " to " + weekEnd;
+            if (facility == null) {
+                view.setUtilization(week, "No facilities to show.", new String[0], new String[0], new double[0][0]);
+                return;
+            }
+            
+            AppointmentSchedule schedule = appointmentRepository.getSchedule();
+            int capacity = Math.max(facility.getCapacity(), 1);
+            int[][] open = new int[7][];
+            int[][] booked = new int[7][];
+            int firstHour = 24;
+            int lastHour = -1;
+            for (int d = 0; d < 7; d++) {
+                LocalDate day = utilizationWeek.plusDays(d);
+                open[d] = FacilityUtilization.openMinutesByHour(facility.getParsedOpeningHours(), day.getDayOfWeek());
+                booked[d] = schedule.facilityBookedMinutesByHour(facility.getFacilityId(), day);
+                for (int h = 0; h < 24; h++) {
+                    if (open[d][h] > 0 || booked[d][h] > 0) {
+                        firstHour = Math.min(firstHour, h);
+                        lastHour = Math.max(lastHour, h);
+                    }
+                }
+            }
+            if (lastHour < 0) {
+                firstHour = 0;
+                lastHour = 23;
+            }
+            
+            String[] rowLabels = new String[7];
+            String[] columnLabels = new String[lastHour - firstHour + 1];
+            double[][] values = new double[7][columnLabels.length];
+            for (int c = 0; c < columnLabels.length; c++) {
+                columnLabels[c] = String.format("%02d", firstHour + c);
+            }
+            for (int d = 0; d < 7; d++) {
+                LocalDate day = utilizationWeek.plusDays(d);
+                rowLabels[d] = day.getDayOfWeek().getDisplayName(TextStyle.SHORT, Locale.UK) + " " + day.getDayOfMonth();
+                for (int c = 0; c < columnLabels.length; c++) {
+                    int h = firstHour + c;
+                    // Bookings outside opening hours are measured against the whole hour
+                    int minutes = open[d][h] > 0 ? open[d][h] : (booked[d][h] > 0 ? 60 : 0);
+                    values[d][c] = minutes > 0 ? (double) booked[d][h] / (capacity * minutes) : -1;
+                }
+            }
+            
+            double used = schedule.facilityUtilization(facility, utilizationWeek, weekEnd);
+            long bookedMinutes = schedule.facilityBookedMinutes(facility.getFacilityId(), utilizationWeek, weekEnd);
+            String summary = used < 0
+                ? facility.getFacilityName() + " is closed this week (" + bookedMinutes + " minutes booked)."
+                : String.format("%s: %d minutes booked, %.1f%% of capacity (%d appointments at a time).",
+                    facility.getFacilityName(), bookedMinutes, used * 100, capacity);
+            view.setUtilization(week, summary, rowLabels, columnLabels, values);
         });
     }
     
-    public void refreshAppointmentsTable() {
-        view.clearTable();
-        loadAllAppointments();
+    // --- Referral worklist tab ---
+    
+    private void worklistChanged() {
+        if (view.isWorklistShown()) {
+            worklistTimer.restart();
+        }
+    }
+    
+    private TriageQueue.Partition worklistPartition() {
+        int i = view.getWorklistComboBox().getSelectedIndex();
+        return i >= 0 && i < worklistPartitions.size() ? worklistPartitions.get(i) : TriageQueue.Partition.ALL;
+    }
+    
+    private String worklistKey() {
+        int i = view.getWorklistComboBox().getSelectedIndex();
+        return i >= 0 && i < worklistKeys.size() ? worklistKeys.get(i) : "";
+    }
+    
+    // Shows one page of open referrals, soonest target date first. The queue keeps itself
+    // sorted as referrals change, so this only ever reads the page it shows.
+    private void refreshWorklist() {
+        ActionTimer.time("AppointmentController.refreshWorklist", () -> {
+            if (triageQueue == null) {
+                triageQueue = new TriageQueue(ReferralRepository.getInstance("src/data/referrals.csv"), clinicianRepository);
+                fillWorklistChoices();
+            }
+            TriageQueue.Partition partition = worklistPartition();
+            String key = worklistKey();
+            worklistPage = triageQueue.page(partition, key, worklistAfter, WORKLIST_PAGE_SIZE);
+            if (worklistPage.isEmpty() && worklistAfter != null) {
+                // Everything after the page we were on has gone - back to the top
+                worklistAfter = null;
+                worklistOffset = 0;
+                worklistPage = triageQueue.page(partition, key, null, WORKLIST_PAGE_SIZE);
+            }
+            
+            LocalDate today = LocalDate.now();
+            List<Object[]> rows = new ArrayList<>();
+            for (TriageQueue.Entry entry : worklistPage) {
+                Referral referral = entry.getReferral();
+                Patient patient = patientRepository.findById(referral.getPatientId());
+                long overdue = entry.getDaysOverdue(today);
+                rows.add(new Object[]{
+                    referral.getReferralId(),
+                    patient != null ? patient.getFullName() : referral.getPatientId(),
+                    referral.getUrgencyLevel(),
+                    referral.getReferralDate(),
+                    entry.getDueDate() + (overdue > 0 ? " (" + overdue + " days over)" : ""),
+                    entry.getDaysWaiting(today),
+                    entry.getSpeciality(),
+                    referral.getStatus()
+                });
+            }
+            
+            int total = triageQueue.size(partition, key);
+            String pageText = total == 0 ? "No open referrals"
+                : (worklistOffset + 1) + "-" + (worklistOffset + worklistPage.size()) + " of " + total;
+            boolean hasNext = !worklistPage.isEmpty()
+                && !triageQueue.page(partition, key, worklistPage.get(worklistPage.size() - 1), 1).isEmpty();
+            view.setWorklistPage(pageText, rows, worklistAfter != null, hasNext);
+        });
+    }
+    
+    // Everyone's referrals, then one worklist per speciality, facility and clinician that has any
+    private void fillWorklistChoices() {
+        List<String> labels = new ArrayList<>();
+        worklistPartitions.add(TriageQueue.Partition.ALL);
+        worklistKeys.add("");
+        labels.add("All open referrals");
+        for (String speciality : triageQueue.keys(TriageQueue.Partition.SPECIALITY)) {
+            worklistPartitions.add(TriageQueue.Partition.SPECIALITY);
+            worklistKeys.add(speciality);
+            labels.add("Speciality: " + speciality);
+        }
+        for (String facilityId : triageQueue.keys(TriageQueue.Partition.FACILITY)) {
+            Facility facility = facilityRepository != null ? facilityRepository.findById(facilityId) : null;
+            worklistPartitions.add(TriageQueue.Partition.FACILITY);
+            worklistKeys.add(facilityId);
+            labels.add("Facility: " + facilityId + (facility != null ? " - " + facility.getFacilityName() : ""));
+        }
+        for (String clinicianId : triageQueue.keys(TriageQueue.Partition.CLINICIAN)) {
+            Clinician clinician = clinicianRepository.findById(clinicianId);
+            worklistPartitions.add(TriageQueue.Partition.CLINICIAN);
+            worklistKeys.add(clinicianId);
+            labels.add("Clinician: " + clinicianId + (clinician != null ? " - " + clinician.getFullName() : ""));
+        }
+        for (String label : labels) {
+            view.getWorklistComboBox().addItem(label);
+        }
+    }
+    
+    // Row-level update for a single insert/update/delete instead of rebuilding the table
+    private void onAppointmentChanged(RepositoryChangeEvent<Appointment> event) {
+        appointmentsStale = true;
+        if (currentSearch != null) {
+            // The running search is working from an older snapshot - run it again
+            // rather than trying to merge this change into half-streamed results
+            searchTimer.restart();
+            return;
+        }
+        
+        Appointment appointment = event.getEntity();
+        String appointmentId = appointment.getId();
         
-        for (Appointment appointment : allAppointments) {
-            addAppointmentRow(appointment);
+        switch (event.getType()) {
+            case INSERTED:
+                if (matchesFilter(appointment)) {
+                    view.addAppointment(appointment);
+                }
+                break;
+            case UPDATED:
+                boolean shown = view.findRow(appointmentId) >= 0;
+                boolean matches = matchesFilter(appointment);
+                if (shown && matches) {
+                    view.updateAppointment(appointment);
+                } else if (shown) {
+                    view.removeRow(appointmentId);
+                } else if (matches) {
+                    view.addAppointment(appointment);
+                }
+                break;
+            case DELETED:
+                view.removeRow(appointmentId);
+                break;
         }
+    }
+    
+    // Called by the table for each cell it paints, so names are only looked up for
+    // rows that are actually on screen
+    private Object cellValue(Appointment appointment, int column) {
+        switch (column) {
+            case 0:
+                return appointment.getId();
+            case 1:
+                return appointment.getAppointmentDate();
+            case 2:
+                return appointment.getAppointmentTime();
+            case 3:
+                Patient patient = patientRepository.findById(appointment.getPatientId());
+                return patient != null ? patient.getFullName() : "Unknown";
+            case 4:
+                Clinician apptClinician = clinicianRepository.findById(appointment.getClinicianId());
+                return apptClinician != null ? apptClinician.getFullName() : appointment.getClinicianId();
+            case 5:
+                if (facilityRepository != null) {
+                    Facility facility = facilityRepository.findById(appointment.getFacilityId());
+                    if (facility != null) {
+                        return facility.getFacilityName();
+                    }
+                }
+                return appointment.getFacilityId();
+            case 6:
+                return appointment.getReasonForVisit();
+            case 7:
+                return appointment.getStatus();
+            default:
+                return "";
+        }
+    }
+    
+    public void refreshAppointmentsTable() {
+        searchTimer.stop();
+        cancelSearch();
+        activeSearchText = "";
+        activeFilterType = null;
+        loadAllAppointments();
+        view.setAppointments(allAppointments);
         
         view.setRescheduleButtonEnabled(false);
         view.setEditButtonEnabled(false);
@@ -147,7 +602,9 @@ public class AppointmentController {
             return;
         }
         
-        Appointment appointment = appointmentRepository.findById(appointmentId);
+        // One date of a repeating appointment becomes a one-off booking at the new time
+        boolean occurrence = AppointmentSeries.isOccurrenceId(appointmentId);
+        Appointment appointment = occurrence ? findOccurrence(appointmentId) : appointmentRepository.findById(appointmentId);
         if (appointment == null) {
             JOptionPane.showMessageDialog(view, "Appointment not found.", "Error", JOptionPane.ERROR_MESSAGE);
             return;
@@ -189,12 +646,35 @@ public class AppointmentController {
                 return;
             }
             
+            if (occurrence) {
+                try {
+                    seriesRepository.moveOccurrence(appointmentId, newDate, newTime);
+                } catch (VersionConflictException ex) {
+                    showConflict(ex);
+                    return;
+                } catch (BookingConflictException ex) {
+                    showBookingConflict(view, ex, appointment.getClinicianId(), newDate, newTime,
+                        AppointmentSchedule.durationOf(appointment));
+                    return;
+                }
+                System.out.println("[Success]: Appointment moved out of its series and rescheduled!");
+                return;
+            }
+            
             appointment.setAppointmentDate(newDate);
             appointment.setAppointmentTime(newTime);
             appointment.setLastModified(LocalDate.now().toString());
             
-            appointmentRepository.updateAppointment(appointment);
-            filterAppointments();
+            try {
+                appointmentRepository.updateAppointment(appointment);
+            } catch (VersionConflictException ex) {
+                showConflict(ex);
+                return;
+            } catch (BookingConflictException ex) {
+                showBookingConflict(view, ex, appointment.getClinicianId(), newDate, newTime,
+                    AppointmentSchedule.durationOf(appointment));
+                return;
+            }
             
             System.out.println("[Success]: Appointment rescheduled successfully!");
         }
@@ -209,25 +689,20 @@ public class AppointmentController {
         gbc.anchor = GridBagConstraints.WEST;
         gbc.fill = GridBagConstraints.HORIZONTAL;
         
-        JComboBox<String> patientCombo = new JComboBox<>();
-        for (Patient p : patientRepository.getAll()) {
-            patientCombo.addItem(p.getPatientId() + " - " + p.getFullName());
-        }
-        
-        JComboBox<String> clinicianCombo = new JComboBox<>();
-        for (Clinician c : clinicianRepository.getAll()) {
-            clinicianCombo.addItem(c.getClinicianId() + " - " + c.getFullName());
-        }
-        
-        JComboBox<String> facilityCombo = new JComboBox<>();
-        if (facilityRepository != null) {
-            for (Facility f : facilityRepository.getAll()) {
-                facilityCombo.addItem(f.getFacilityId() + " - " + f.getFacilityName());
-            }
-        }
+        // Type-ahead pickers - they only look up the top matches as you type
+        AutocompleteField patientPicker = pickerField(PickerIndexes.patients(patientRepository));
+        AutocompleteField clinicianPicker = pickerField(PickerIndexes.clinicians(clinicianRepository));
+        AutocompleteField facilityPicker = pickerField(facilityIndex());
         
         JTextField dateField = new JTextField(20);
         JTextField timeField = new JTextField(20);
+        JComboBox<String> durationCombo = new JComboBox<>(DURATIONS);
+        JButton nextSlotButton = new JButton("Next Free Slot");
+        JButton leastBusyButton = new JButton("Least Busy");
+        JComboBox<String> repeatCombo = new JComboBox<>(REPEATS);
+        JTextField timesField = new JTextField("12", 5);
+        timesField.setEnabled(false);
+        repeatCombo.addActionListener(e -> timesField.setEnabled(repeatCombo.getSelectedIndex() > 0));
         JTextField reasonField = new JTextField(25);
         JComboBox<String> statusCombo = new JComboBox<>(new String[]{"Scheduled", "Completed", "Cancelled", "No Show"});
         
@@ -236,19 +711,22 @@ public class AppointmentController {
         gbc.gridx = 0; gbc.gridy = row;
         panel.add(new JLabel("Patient:"), gbc);
         gbc.gridx = 1; gbc.weightx = 1.0;
-        panel.add(patientCombo, gbc);
+        panel.add(patientPicker, gbc);
         
         row++;
         gbc.gridx = 0; gbc.gridy = row; gbc.weightx = 0;
         panel.add(new JLabel("Clinician:"), gbc);
         gbc.gridx = 1; gbc.weightx = 1.0;
-        panel.add(clinicianCombo, gbc);
+        JPanel clinicianPanel = new JPanel(new BorderLayout(8, 0));
+        clinicianPanel.add(clinicianPicker, BorderLayout.CENTER);
+        clinicianPanel.add(leastBusyButton, BorderLayout.EAST);
+        panel.add(clinicianPanel, gbc);
         
         row++;
         gbc.gridx = 0; gbc.gridy = row; gbc.weightx = 0;
         panel.add(new JLabel("Facility:"), gbc);
         gbc.gridx = 1; gbc.weightx = 1.0;
-        panel.add(facilityCombo, gbc);
+        panel.add(facilityPicker, gbc);
         
         row++;
         gbc.gridx = 0; gbc.gridy = row; gbc.weightx = 0;
@@ -262,6 +740,27 @@ public class AppointmentController {
         gbc.gridx = 1; gbc.weightx = 1.0;
         panel.add(timeField, gbc);
         
+        row++;
+        gbc.gridx = 0; gbc.gridy = row; gbc.weightx = 0;
+        panel.add(new JLabel("Duration (min):"), gbc);
+        gbc.gridx = 1; gbc.weightx = 1.0;
+        JPanel durationPanel = new JPanel(new BorderLayout(8, 0));
+        durationPanel.add(durationCombo, BorderLayout.CENTER);
+        durationPanel.add(nextSlotButton, BorderLayout.EAST);
+        panel.add(durationPanel, gbc);
+        
+        row++;
+        gbc.gridx = 0; gbc.gridy = row; gbc.weightx = 0;
+        panel.add(new JLabel("Repeat:"), gbc);
+        gbc.gridx = 1; gbc.weightx = 1.0;
+        JPanel repeatPanel = new JPanel(new BorderLayout(8, 0));
+        repeatPanel.add(repeatCombo, BorderLayout.CENTER);
+        JPanel timesPanel = new JPanel(new BorderLayout(4, 0));
+        timesPanel.add(timesField, BorderLayout.CENTER);
+        timesPanel.add(new JLabel("times (blank = no end)"), BorderLayout.EAST);
+        repeatPanel.add(timesPanel, BorderLayout.EAST);
+        panel.add(repeatPanel, gbc);
+        
         row++;
         gbc.gridx = 0; gbc.gridy = row; gbc.weightx = 0;
         panel.add(new JLabel("Reason:"), gbc);
@@ -287,9 +786,19 @@ public class AppointmentController {
         
         // Save button action
         saveButton.addActionListener(e -> {
-            String patientId = ((String) patientCombo.getSelectedItem()).split(" - ")[0];
-            String clinicianId = ((String) clinicianCombo.getSelectedItem()).split(" - ")[0];
-            String facilityId = ((String) facilityCombo.getSelectedItem()).split(" - ")[0];
+            String patientId = patientPicker.getSelectedId();
+            String clinicianId = clinicianPicker.getSelectedId();
+            String facilityId = facilityPicker.getSelectedId();
+            if (!checkPickedIds(dialog, patientId, clinicianId, facilityId)) {
+                return;
+            }
+            
+            int repeat = repeatCombo.getSelectedIndex();
+            if (repeat > 0) {
+                bookSeries(dialog, patientId, clinicianId, facilityId, dateField.getText().trim(), timeField.getText().trim(),
+                    (String) durationCombo.getSelectedItem(), reasonField.getText(), repeat, timesField.getText().trim());
+                return;
+            }
             
             Appointment newAppt = new Appointment(
                 appointmentRepository.generateNewId(),
@@ -298,7 +807,7 @@ public class AppointmentController {
                 facilityId,
                 dateField.getText(),
                 timeField.getText(),
-                "15",
+                (String) durationCombo.getSelectedItem(),
                 "Routine Consultation",
                 (String) statusCombo.getSelectedItem(),
                 reasonField.getText(),
@@ -307,12 +816,38 @@ public class AppointmentController {
                 LocalDate.now().toString()
             );
             
-            appointmentRepository.add(newAppt);
-            refreshAppointmentsTable();
+            try {
+                appointmentRepository.add(newAppt);
+            } catch (BookingConflictException ex) {
+                // Leave the dialog open so the time can be changed
+                showBookingConflict(dialog, ex, clinicianId, dateField.getText(), timeField.getText(),
+                    AppointmentSchedule.durationOf(newAppt));
+                return;
+            }
             dialog.dispose();
             System.out.println("[Success]: Appointment booked successfully!");
         });
         
+        nextSlotButton.addActionListener(ActionTimer.timed("AppointmentController.findNextFreeSlot", e -> {
+            String clinicianId = clinicianPicker.getSelectedId();
+            if (PickerIndexes.clinicians(clinicianRepository).getLabel(clinicianId) == null) {
+                JOptionPane.showMessageDialog(dialog, "Please pick a clinician first.", "Validation Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            int duration = Integer.parseInt((String) durationCombo.getSelectedItem());
+            List<LocalDateTime> slots = availability.nextFreeSlotsForClinician(
+                clinicianId, duration, searchFrom(dateField.getText(), timeField.getText()), 1);
+            if (slots.isEmpty()) {
+                JOptionPane.showMessageDialog(dialog, "No free slot found in the next year.", "No Slots", JOptionPane.INFORMATION_MESSAGE);
+                return;
+            }
+            dateField.setText(slots.get(0).toLocalDate().toString());
+            timeField.setText(slots.get(0).toLocalTime().toString());
+        }));
+        
+        leastBusyButton.addActionListener(e -> suggestClinician(dialog, clinicianPicker, facilityPicker.getSelectedId(),
+            dateField.getText(), timeField.getText(), Integer.parseInt((String) durationCombo.getSelectedItem())));
+        
         cancelButton.addActionListener(e -> dialog.dispose());
         
         dialog.add(panel);
@@ -322,6 +857,173 @@ public class AppointmentController {
         dialog.setVisible(true);
     }
     
+    // Lists the clinicians at the facility with the most time left that day (of the picked
+    // clinician's speciality to start with) and puts the one chosen into the picker
+    private void suggestClinician(JDialog dialog, AutocompleteField clinicianPicker, String facilityId,
+                                  String date, String time, int duration) {
+        if (facilityRepository == null || facilityIndex().getLabel(facilityId) == null) {
+            JOptionPane.showMessageDialog(dialog, "Please pick a facility first.", "Validation Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        int typed = AppointmentSchedule.startMinute(date, "00:00");
+        LocalDate day = typed >= 0 ? AppointmentSchedule.toDateTime(typed).toLocalDate() : LocalDate.now();
+        int start = AppointmentSchedule.startMinute(date, time);
+        
+        List<WorkloadBalancer.Candidate> everyone = workload.rank(facilityId, "", day, Integer.MAX_VALUE);
+        if (everyone.isEmpty()) {
+            JOptionPane.showMessageDialog(dialog, "No clinicians work at this facility.", "Least Busy", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        // Specialities of the clinicians there, for narrowing the list down
+        List<String> specialities = new ArrayList<>();
+        for (WorkloadBalancer.Candidate c : everyone) {
+            String speciality = c.getClinician().getSpeciality() != null ? c.getClinician().getSpeciality().trim() : "";
+            if (!speciality.isEmpty() && !specialities.contains(speciality)) {
+                specialities.add(speciality);
+            }
+        }
+        specialities.sort(String.CASE_INSENSITIVE_ORDER);
+        specialities.add(0, "Any speciality");
+        JComboBox<String> specialityCombo = new JComboBox<>(specialities.toArray(new String[0]));
+        Clinician picked = clinicianRepository.findById(clinicianPicker.getSelectedId());
+        if (picked != null && picked.getSpeciality() != null && specialities.contains(picked.getSpeciality().trim())) {
+            specialityCombo.setSelectedItem(picked.getSpeciality().trim());
+        }
+        
+        DefaultListModel<String> listModel = new DefaultListModel<>();
+        List<String> listedIds = new ArrayList<>();
+        JList<String> list = new JList<>(listModel);
+        list.setVisibleRowCount(SUGGESTION_LIMIT);
+        Runnable fill = () -> {
+            listModel.clear();
+            listedIds.clear();
+            String speciality = specialityCombo.getSelectedIndex() > 0 ? (String) specialityCombo.getSelectedItem() : "";
+            for (WorkloadBalancer.Candidate c : workload.rank(facilityId, speciality, day, SUGGESTION_LIMIT)) {
+                Clinician clinician = c.getClinician();
+                String text = clinician.getClinicianId() + " - " + clinician.getFullName()
+                    + " (" + clinician.getSpeciality() + "): " + hoursAndMinutes(c.getRemainingMinutes())
+                    + " free of " + hoursAndMinutes(c.getCapacityMinutes());
+                if (start >= 0 && !availability.isClinicianFree(clinician.getClinicianId(), AppointmentSchedule.toDateTime(start), duration)) {
+                    text += " - not free at " + time.trim();
+                }
+                listModel.addElement(text);
+                listedIds.add(clinician.getClinicianId());
+            }
+            if (!listModel.isEmpty()) {
+                list.setSelectedIndex(0);
+            }
+        };
+        specialityCombo.addActionListener(e -> ActionTimer.time("AppointmentController.suggestClinician", fill));
+        ActionTimer.time("AppointmentController.suggestClinician", fill);
+        
+        JPanel panel = new JPanel(new BorderLayout(0, 8));
+        panel.add(specialityCombo, BorderLayout.NORTH);
+        panel.add(new JScrollPane(list), BorderLayout.CENTER);
+        panel.add(new JLabel("Most time left on " + day + " first"), BorderLayout.SOUTH);
+        int choice = JOptionPane.showConfirmDialog(dialog, panel, "Least Busy Clinicians",
+            JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        if (choice == JOptionPane.OK_OPTION && list.getSelectedIndex() >= 0) {
+            String clinicianId = listedIds.get(list.getSelectedIndex());
+            clinicianPicker.setSelectedLabel(labelOrId(PickerIndexes.clinicians(clinicianRepository), clinicianId));
+        }
+    }
+    
+    // 135 -> "2h 15m"
+    private static String hoursAndMinutes(int minutes) {
+        return (minutes < 0 ? "-" : "") + Math.abs(minutes) / 60 + "h " + Math.abs(minutes) % 60 + "m";
+    }
+    
+    // Saves a repeating appointment as one series record. The dialog is closed once it's saved
+    // and left open if something needs changing.
+    private void bookSeries(JDialog dialog, String patientId, String clinicianId, String facilityId, String date,
+                            String time, String duration, String reason, int repeat, String timesText) {
+        int times;
+        try {
+            times = timesText.isEmpty() ? 0 : Integer.parseInt(timesText);
+        } catch (NumberFormatException ex) {
+            times = -1;
+        }
+        if (times < 0 || (times == 0 && !timesText.isEmpty())) {
+            JOptionPane.showMessageDialog(dialog, "Number of times must be a whole number, or blank for no end.", "Validation Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        
+        AppointmentSeries series = new AppointmentSeries(
+            null, patientId, clinicianId, facilityId, date, time, duration,
+            "Routine Consultation", reason, "",
+            REPEAT_FREQUENCIES[repeat], REPEAT_INTERVALS[repeat], "", times, "",
+            LocalDate.now().toString(), LocalDate.now().toString()
+        );
+        if (series.getFirstDate() == null) {
+            JOptionPane.showMessageDialog(dialog, "Please enter the first date (YYYY-MM-DD) and time (HH:MM).", "Validation Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        
+        try {
+            seriesRepository.add(series);
+        } catch (BookingConflictException ex) {
+            showBookingConflict(dialog, ex, clinicianId, date, time, AppointmentSchedule.durationOf(series.occurrence(series.getFirstDate())));
+            return;
+        }
+        dialog.dispose();
+        System.out.println("[Success]: Repeating appointment booked: " + series);
+    }
+    
+    // The occurrence of a repeating appointment with this ID, or null if it's gone
+    private Appointment findOccurrence(String occurrenceId) {
+        AppointmentSeries series = seriesRepository.findById(AppointmentSeries.seriesIdOf(occurrenceId));
+        LocalDate date = AppointmentSeries.dateOf(occurrenceId);
+        return series != null && date != null && series.occursOn(date) ? series.occurrence(date) : null;
+    }
+    
+    // Where to start looking for a free slot: the date/time already typed in (pressing the
+    // button again then finds the slot after it), or now if that's blank or in the past
+    private LocalDateTime searchFrom(String date, String time) {
+        LocalDateTime now = LocalDateTime.now();
+        int typed = AppointmentSchedule.startMinute(date, time.trim().isEmpty() ? "00:00" : time);
+        if (typed < 0) {
+            return now;
+        }
+        LocalDateTime from = AppointmentSchedule.toDateTime(typed);
+        if (!time.trim().isEmpty()) {
+            from = from.plusMinutes(1);
+        }
+        return from.isAfter(now) ? from : now;
+    }
+    
+    private AutocompleteField pickerField(PrefixIndex index) {
+        AutocompleteField field = new AutocompleteField(25);
+        field.setSource(index::search);
+        return field;
+    }
+    
+    // Facilities are optional in this controller, so fall back to an empty index
+    private PrefixIndex facilityIndex() {
+        return facilityRepository != null ? PickerIndexes.facilities(facilityRepository) : new PrefixIndex();
+    }
+    
+    private String labelOrId(PrefixIndex index, String id) {
+        String label = index.getLabel(id);
+        return label != null ? label : id;
+    }
+    
+    // The pickers accept typed text, so make sure each ID is one we actually know about
+    private boolean checkPickedIds(JDialog dialog, String patientId, String clinicianId, String facilityId) {
+        String problem = null;
+        if (PickerIndexes.patients(patientRepository).getLabel(patientId) == null) {
+            problem = "Please pick a patient from the list.";
+        } else if (PickerIndexes.clinicians(clinicianRepository).getLabel(clinicianId) == null) {
+            problem = "Please pick a clinician from the list.";
+        } else if (facilityRepository != null && facilityIndex().getLabel(facilityId) == null) {
+            problem = "Please pick a facility from the list.";
+        }
+        if (problem != null) {
+            JOptionPane.showMessageDialog(dialog, problem, "Validation Error", JOptionPane.ERROR_MESSAGE);
+            return false;
+        }
+        return true;
+    }
+    
     private void editAppointment() {
         String appointmentId = view.getSelectedAppointmentId();
         if (appointmentId == null) {
@@ -329,6 +1031,14 @@ public class AppointmentController {
             return;
         }
         
+        if (AppointmentSeries.isOccurrenceId(appointmentId)) {
+            JOptionPane.showMessageDialog(view,
+                "This appointment is part of a repeating series.\n" +
+                "Use Reschedule to move just this one, or Cancel to remove it or the whole series.",
+                "Repeating Appointment", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        
         Appointment appointment = appointmentRepository.findById(appointmentId);
         if (appointment == null) {
             JOptionPane.showMessageDialog(view, "Appointment not found.", "Error", JOptionPane.ERROR_MESSAGE);
@@ -343,34 +1053,14 @@ public class AppointmentController {
         gbc.anchor = GridBagConstraints.WEST;
         gbc.fill = GridBagConstraints.HORIZONTAL;
         
-        JComboBox<String> patientCombo = new JComboBox<>();
-        String currentPatientId = appointment.getPatientId();
-        for (Patient p : patientRepository.getAll()) {
-            patientCombo.addItem(p.getPatientId() + " - " + p.getFullName());
-            if (p.getPatientId().equals(currentPatientId)) {
-                patientCombo.setSelectedItem(p.getPatientId() + " - " + p.getFullName());
-            }
-        }
+        AutocompleteField patientPicker = pickerField(PickerIndexes.patients(patientRepository));
+        patientPicker.setSelectedLabel(labelOrId(PickerIndexes.patients(patientRepository), appointment.getPatientId()));
         
-        JComboBox<String> clinicianCombo = new JComboBox<>();
-        String currentClinicianId = appointment.getClinicianId();
-        for (Clinician c : clinicianRepository.getAll()) {
-            clinicianCombo.addItem(c.getClinicianId() + " - " + c.getFullName());
-            if (c.getClinicianId().equals(currentClinicianId)) {
-                clinicianCombo.setSelectedItem(c.getClinicianId() + " - " + c.getFullName());
-            }
-        }
+        AutocompleteField clinicianPicker = pickerField(PickerIndexes.clinicians(clinicianRepository));
+        clinicianPicker.setSelectedLabel(labelOrId(PickerIndexes.clinicians(clinicianRepository), appointment.getClinicianId()));
         
-        JComboBox<String> facilityCombo = new JComboBox<>();
-        String currentFacilityId = appointment.getFacilityId();
-        if (facilityRepository != null) {
-            for (Facility f : facilityRepository.getAll()) {
-                facilityCombo.addItem(f.getFacilityId() + " - " + f.getFacilityName());
-                if (f.getFacilityId().equals(currentFacilityId)) {
-                    facilityCombo.setSelectedItem(f.getFacilityId() + " - " + f.getFacilityName());
-                }
-            }
-        }
+        AutocompleteField facilityPicker = pickerField(facilityIndex());
+        facilityPicker.setSelectedLabel(labelOrId(facilityIndex(), appointment.getFacilityId()));
         
         JTextField dateField = new JTextField(appointment.getAppointmentDate(), 20);
         JTextField timeField = new JTextField(appointment.getAppointmentTime(), 20);
@@ -383,19 +1073,19 @@ public class AppointmentController {
         gbc.gridx = 0; gbc.gridy = row; gbc.weightx = 0;
         panel.add(new JLabel("Patient:"), gbc);
         gbc.gridx = 1; gbc.weightx = 1.0;
-        panel.add(patientCombo, gbc);
+        panel.add(patientPicker, gbc);
         
         row++;
         gbc.gridx = 0; gbc.gridy = row; gbc.weightx = 0;
         panel.add(new JLabel("Clinician:"), gbc);
         gbc.gridx = 1; gbc.weightx = 1.0;
-        panel.add(clinicianCombo, gbc);
+        panel.add(clinicianPicker, gbc);
         
         row++;
         gbc.gridx = 0; gbc.gridy = row; gbc.weightx = 0;
         panel.add(new JLabel("Facility:"), gbc);
         gbc.gridx = 1; gbc.weightx = 1.0;
-        panel.add(facilityCombo, gbc);
+        panel.add(facilityPicker, gbc);
         
         row++;
         gbc.gridx = 0; gbc.gridy = row; gbc.weightx = 0;
@@ -434,9 +1124,12 @@ public class AppointmentController {
         
         // Save button action
         saveButton.addActionListener(e -> {
-            String patientId = ((String) patientCombo.getSelectedItem()).split(" - ")[0];
-            String clinicianId = ((String) clinicianCombo.getSelectedItem()).split(" - ")[0];
-            String facilityId = ((String) facilityCombo.getSelectedItem()).split(" - ")[0];
+            String patientId = patientPicker.getSelectedId();
+            String clinicianId = clinicianPicker.getSelectedId();
+            String facilityId = facilityPicker.getSelectedId();
+            if (!checkPickedIds(dialog, patientId, clinicianId, facilityId)) {
+                return;
+            }
             
             appointment.setPatientId(patientId);
             appointment.setClinicianId(clinicianId);
@@ -447,8 +1140,18 @@ public class AppointmentController {
             appointment.setStatus((String) statusCombo.getSelectedItem());
             appointment.setLastModified(LocalDate.now().toString());
             
-            appointmentRepository.updateAppointment(appointment);
-            refreshAppointmentsTable();
+            try {
+                appointmentRepository.updateAppointment(appointment);
+            } catch (VersionConflictException ex) {
+                dialog.dispose();
+                showConflict(ex);
+                return;
+            } catch (BookingConflictException ex) {
+                dialog.dispose();
+                showBookingConflict(view, ex, clinicianId, appointment.getAppointmentDate(),
+                    appointment.getAppointmentTime(), AppointmentSchedule.durationOf(appointment));
+                return;
+            }
             dialog.dispose();
             System.out.println("[Success]: Appointment updated successfully!");
         });
@@ -469,6 +1172,11 @@ public class AppointmentController {
             return;
         }
         
+        if (AppointmentSeries.isOccurrenceId(appointmentId)) {
+            cancelOccurrence(appointmentId);
+            return;
+        }
+        
         int confirm = JOptionPane.showConfirmDialog(
             view,
             "Are you sure you want to cancel this appointment?",
@@ -477,10 +1185,195 @@ public class AppointmentController {
         );
         
         if (confirm == JOptionPane.YES_OPTION) {
-            appointmentRepository.delete(appointmentId);
-            refreshAppointmentsTable();
+            Appointment cancelled = appointmentRepository.findById(appointmentId);
+            try {
+                appointmentRepository.delete(appointmentId);
+            } catch (VersionConflictException ex) {
+                showConflict(ex);
+                return;
+            }
             System.out.println("[Success]: Appointment cancelled successfully!");
+            if (cancelled != null) {
+                backfill(cancelled);
+            }
+        }
+    }
+    
+    // Cancelling part of a repeating appointment - just this date, or the whole series
+    private void cancelOccurrence(String occurrenceId) {
+        AppointmentSeries series = seriesRepository.findById(AppointmentSeries.seriesIdOf(occurrenceId));
+        if (series == null) {
+            JOptionPane.showMessageDialog(view, "Appointment not found.", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        
+        String[] options = {"Just This One", "Whole Series", "Keep"};
+        int choice = JOptionPane.showOptionDialog(
+            view,
+            "This appointment repeats (" + series.getSummary() + ").\nCancel just this date, or every appointment in the series?",
+            "Confirm Cancellation",
+            JOptionPane.DEFAULT_OPTION,
+            JOptionPane.QUESTION_MESSAGE,
+            null,
+            options,
+            options[2]
+        );
+        
+        // Only a single freed date is offered to the waitlist, not a whole series
+        Appointment cancelled = choice == 0 ? findOccurrence(occurrenceId) : null;
+        try {
+            if (choice == 0) {
+                seriesRepository.cancelOccurrence(occurrenceId);
+            } else if (choice == 1) {
+                seriesRepository.delete(series.getId());
+            } else {
+                return;
+            }
+        } catch (VersionConflictException ex) {
+            showConflict(ex);
+            return;
+        }
+        System.out.println("[Success]: Appointment cancelled successfully!");
+        if (cancelled != null) {
+            backfill(cancelled);
+        }
+    }
+    
+    // Offers a cancelled slot to the referrals on the waitlist, best first, until one is
+    // booked into it or the user leaves it empty. With "Auto-fill cancellations" ticked the
+    // first one that fits is booked without asking.
+    private void backfill(Appointment cancelled) {
+        Set<String> passedOver = new HashSet<>();
+        while (true) {
+            Waitlist.Offer offer = waitlist.findBackfill(cancelled, passedOver);
+            if (offer == null) {
+                return;
+            }
+            Referral referral = offer.getReferral();
+            passedOver.add(referral.getReferralId());
+            
+            if (!view.isAutoFillSelected()) {
+                Patient patient = patientRepository.findById(offer.getEntry().getPatientId());
+                String name = patient != null ? patient.getFullName() : offer.getEntry().getPatientId();
+                StringBuilder message = new StringBuilder();
+                message.append("The slot on ").append(cancelled.getAppointmentDate()).append(" at ")
+                       .append(cancelled.getAppointmentTime()).append(" is now free.\n\n");
+                message.append("Next on the waitlist: ").append(name).append("\n");
+                message.append("Referral ").append(referral.getReferralId()).append(" (")
+                       .append(referral.getUrgencyLevel() != null ? referral.getUrgencyLevel() : "").append("), waiting ")
+                       .append(offer.getEntry().getDaysWaiting(LocalDate.now())).append(" days\n");
+                if (referral.getReferralReason() != null && !referral.getReferralReason().trim().isEmpty()) {
+                    message.append("Reason: ").append(referral.getReferralReason()).append("\n");
+                }
+                if (!offer.isReferredClinician()) {
+                    Clinician referredTo = clinicianRepository.findById(offer.getEntry().getClinicianId());
+                    Clinician slotWith = clinicianRepository.findById(cancelled.getClinicianId());
+                    message.append("Referred to ").append(referredTo != null ? referredTo.getFullName() : offer.getEntry().getClinicianId())
+                           .append(" - this slot is with ").append(slotWith != null ? slotWith.getFullName() : cancelled.getClinicianId()).append("\n");
+                }
+                
+                String[] options = {"Book", "Next Patient", "Leave Empty"};
+                int choice = JOptionPane.showOptionDialog(
+                    view,
+                    message.toString(),
+                    "Fill Cancelled Slot",
+                    JOptionPane.DEFAULT_OPTION,
+                    JOptionPane.QUESTION_MESSAGE,
+                    null,
+                    options,
+                    options[0]
+                );
+                if (choice == 1) {
+                    continue;
+                }
+                if (choice != 0) {
+                    return;
+                }
+            }
+            
+            try {
+                Appointment booked = waitlist.book(offer);
+                System.out.println("[Success]: Cancelled slot given to referral " + referral.getReferralId()
+                    + " (appointment " + booked.getId() + ")");
+                return;
+            } catch (BookingConflictException ex) {
+                // Taken by another user in the meantime - try the next one
+                System.err.println("Could not fill cancelled slot for " + referral.getReferralId() + ": " + ex.getMessage());
+            } catch (VersionConflictException ex) {
+                showConflict(ex);
+            }
+        }
+    }
+    
+    // Books every referral still waiting for an appointment. Finding the slots runs in the
+    // background; reading and saving the repositories stays on the EDT.
+    private void autoScheduleReferrals() {
+        int confirm = JOptionPane.showConfirmDialog(
+            view,
+            "Book the earliest free appointment for every referral that is still waiting for one?",
+            "Auto-Schedule Referrals",
+            JOptionPane.YES_NO_OPTION
+        );
+        if (confirm != JOptionPane.YES_OPTION) {
+            return;
+        }
+        
+        ReferralScheduler scheduler = new ReferralScheduler(appointmentRepository,
+            ReferralRepository.getInstance("src/data/referrals.csv"), clinicianRepository, facilityRepository);
+        ReferralScheduler.Batch batch = scheduler.prepare(LocalDateTime.now());
+        view.getAutoScheduleButton().setEnabled(false);
+        
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() {
+                scheduler.plan(batch);
+                return null;
+            }
+            
+            @Override
+            protected void done() {
+                view.getAutoScheduleButton().setEnabled(true);
+                try {
+                    get();
+                } catch (InterruptedException | java.util.concurrent.ExecutionException ex) {
+                    System.err.println("Error scheduling referrals: " + ex.getMessage());
+                    JOptionPane.showMessageDialog(view, "Scheduling failed: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                
+                ReferralScheduler.Result result = scheduler.commit(batch);
+                StringBuilder message = new StringBuilder(result.getSummary());
+                List<String> problems = result.getProblems();
+                for (int i = 0; i < Math.min(problems.size(), 10); i++) {
+                    message.append("\n  ").append(problems.get(i));
+                }
+                if (problems.size() > 10) {
+                    message.append("\n  ...and ").append(problems.size() - 10).append(" more");
+                }
+                System.out.println(result.getSummary());
+                JOptionPane.showMessageDialog(view, message.toString(), "Auto-Schedule Referrals", JOptionPane.INFORMATION_MESSAGE);
+            }
+        }.execute();
+    }
+    
+    // Another user saved this appointment first - the table already shows their version
+    private void showConflict(VersionConflictException ex) {
+        JOptionPane.showMessageDialog(view, ex.getMessage(), "Update Conflict", JOptionPane.WARNING_MESSAGE);
+    }
+    
+    // The time asked for is taken - say why, and if it was the clinician who is busy, offer
+    // their next free slot after it
+    private void showBookingConflict(Component parent, BookingConflictException ex, String clinicianId,
+                                     String date, String time, int durationMinutes) {
+        String message = ex.getMessage();
+        if (ex.getReason() == BookingConflictException.Reason.CLINICIAN_BUSY) {
+            List<LocalDateTime> slots = availability.nextFreeSlotsForClinician(
+                clinicianId, durationMinutes, searchFrom(date, time), 1);
+            if (!slots.isEmpty()) {
+                message += "\nTheir next free slot is " + slots.get(0).toLocalDate() + " at " + slots.get(0).toLocalTime() + ".";
+            }
         }
+        JOptionPane.showMessageDialog(parent, message, "Time Not Available", JOptionPane.WARNING_MESSAGE);
     }
     
     public void refreshAppointments() {
@@ -0,0 +1,106 @@
+package controller;
+
+import util.ActionTimer;
+import util.EdtStallMonitor;
+import util.PerformanceReport;
+import view.DeveloperPanel;
+import javax.swing.*;
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+public class DeveloperController {
+
+    private static final int REFRESH_INTERVAL_MS = 2000;
+
+    private final DeveloperPanel view;
+    private List<EdtStallMonitor.Stall> shownStalls = new ArrayList<>();
+
+    public DeveloperController(DeveloperPanel view) {
+        this.view = view;
+
+        bind();
+        refresh();
+
+        // Keep the numbers live while the screen is open
+        Timer refreshTimer = new Timer(REFRESH_INTERVAL_MS, e -> {
+            if (view.isShowing()) {
+                refresh();
+            }
+        });
+        refreshTimer.start();
+    }
+
+    private void bind() {
+        view.getRefreshButton().addActionListener(e -> refresh());
+        view.getResetButton().addActionListener(e -> {
+            ActionTimer.reset();
+            EdtStallMonitor monitor = EdtStallMonitor.getInstance();
+            if (monitor != null) {
+                monitor.clear();
+            }
+            refresh();
+        });
+        view.getDumpButton().addActionListener(e -> saveReport());
+
+        view.getStallsList().addListSelectionListener(e -> {
+            if (!e.getValueIsAdjusting()) {
+                int index = view.getStallsList().getSelectedIndex();
+                view.setStackTrace(index >= 0 && index < shownStalls.size()
+                    ? shownStalls.get(index).getStackTrace() : "");
+            }
+        });
+    }
+
+    private void refresh() {
+        List<Object[]> rows = new ArrayList<>();
+        for (ActionTimer.Histogram h : ActionTimer.getHistograms()) {
+            rows.add(new Object[]{
+                h.getAction(),
+                h.getCount(),
+                String.format("%.1f", h.getMeanMs()),
+                h.getPercentileMs(50),
+                h.getPercentileMs(95),
+                String.format("%.1f", h.getMaxMs())
+            });
+        }
+        view.setTimingRows(rows);
+
+        EdtStallMonitor monitor = EdtStallMonitor.getInstance();
+        if (monitor == null) {
+            shownStalls = new ArrayList<>();
+            view.setStalls(new ArrayList<>());
+            view.setStatusText("Stall monitor is not running");
+            return;
+        }
+
+        shownStalls = monitor.getStalls();
+        List<String> lines = new ArrayList<>();
+        for (EdtStallMonitor.Stall stall : shownStalls) {
+            lines.add(stall.getStartedAt() + "  " + stall.getDurationMs() + "ms"
+                + (stall.isFinished() ? "" : " (still blocked)") + "  " + stall.getAction());
+        }
+        view.setStalls(lines);
+        view.setStatusText(monitor.getStallCount() + " stalls over " + monitor.getThresholdMs() + "ms");
+    }
+
+    private void saveReport() {
+        JFileChooser chooser = new JFileChooser();
+        String stamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+        chooser.setSelectedFile(new File("performance-report-" + stamp + ".txt"));
+        if (chooser.showSaveDialog(view) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+
+        try {
+            PerformanceReport.writeTo(chooser.getSelectedFile().toPath());
+            JOptionPane.showMessageDialog(view, "Report saved to " + chooser.getSelectedFile().getPath());
+        } catch (IOException ex) {
+            System.err.println("Error saving performance report: " + ex.getMessage());
+            JOptionPane.showMessageDialog(view, "Could not save the report:\n" + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+}
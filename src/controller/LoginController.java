@@ -1,6 +1,7 @@
 package controller;
 
 import model.*;
+import util.ActionTimer;
 import view.*;
 import javax.swing.*;
 import java.awt.*;
@@ -34,8 +35,8 @@ public class LoginController {
     }
     
     private void connectButtonsToActions() {
-        loginScreen.getLoginButton().addActionListener(e -> handleLogin());
-        loginScreen.getPasswordField().addActionListener(e -> handleLogin());
+        loginScreen.getLoginButton().addActionListener(e -> ActionTimer.time("LoginController.handleLogin", this::handleLogin));
+        loginScreen.getPasswordField().addActionListener(e -> ActionTimer.time("LoginController.handleLogin", this::handleLogin));
     }
     
     private void handleLogin() {
@@ -121,45 +122,60 @@ public class LoginController {
         NavigationCard navigationCard = new NavigationCard(role);
         mainWindow.setContentPane(navigationCard);
         
-        // Initialize all controllers with the shared repositories
-        setupAllTheControllers(navigationCard, role, patientId);
+        // Each card's controller is created with the shared repositories the first time
+        // the card is opened, so only the first screen is built before the window appears
+        navigationCard.setCardInitializer((cardName, panel) -> setupController(cardName, panel, role, patientId));
+        navigationCard.showFirstCard();
         
         mainWindow.setSize(1300, 850);
         mainWindow.setLocationRelativeTo(null);
         mainWindow.setVisible(true);
+        
+        // Build the other cards in the background so they open instantly later
+        navigationCard.prewarmCards();
     }
     
-    private void setupAllTheControllers(NavigationCard nav, String role, String patientId) {
-        // Patient Management (Visible to Admin, Receptionist, Clinician, Developer)
-        if (nav.getPatientManagementPanel() != null) {
-            new PatientManagementController(nav.getPatientManagementPanel(), patientRepository);
-        }
-        
-        // Appointments
-        if (nav.getAppointmentPanel() != null) {
-            new AppointmentController(nav.getAppointmentPanel(), appointmentRepository, 
-                patientRepository, clinicianRepository, facilityRepository);
-        }
-        
-        // Medical Records
-        if (nav.getMedicalRecordPanel() != null) {
-            new MedicalRecordController(nav.getMedicalRecordPanel(), patientRepository, 
-                appointmentRepository, prescriptionRepository, clinicianRepository, facilityRepository);
-        }
-        
-        // Staff Management
-        if (nav.getStaffManagementPanel() != null) {
-            new StaffManagementController(nav.getStaffManagementPanel(), staffRepository, clinicianRepository);
-        }
-        
-        // Patient Dashboard (Specific to logged-in Patient)
-        if (nav.getPatientDashboardPanel() != null) {
-            if ("Patient".equalsIgnoreCase(role) && patientId != null) {
-                new PatientDashboardController(nav.getPatientDashboardPanel(), appointmentRepository, 
-                    prescriptionRepository, patientRepository, clinicianRepository, facilityRepository, patientId);
-            } else if ("Developer".equalsIgnoreCase(role)) {
-                nav.getPatientDashboardPanel().setPatientName("Developer Mode");
-            }
+    private void setupController(String cardName, JPanel panel, String role, String patientId) {
+        switch (cardName) {
+            // Patient Management (Visible to Admin, Receptionist, Clinician, Developer)
+            case NavigationCard.CARD_PATIENT_MGMT:
+                new PatientManagementController((PatientManagementPanel) panel, patientRepository);
+                break;
+            
+            // Appointments
+            case NavigationCard.CARD_APPOINTMENTS:
+                new AppointmentController((AppointmentPanel) panel, appointmentRepository, 
+                    patientRepository, clinicianRepository, facilityRepository);
+                break;
+            
+            // Medical Records
+            case NavigationCard.CARD_MEDICAL:
+                new MedicalRecordController((MedicalRecordPanel) panel, patientRepository, 
+                    appointmentRepository, prescriptionRepository, clinicianRepository, facilityRepository);
+                break;
+            
+            // Staff Management
+            case NavigationCard.CARD_STAFF:
+                new StaffManagementController((StaffManagementPanel) panel, staffRepository, clinicianRepository);
+                break;
+            
+            // Patient Dashboard (Specific to logged-in Patient)
+            case NavigationCard.CARD_PATIENT_DASH:
+                if ("Patient".equalsIgnoreCase(role) && patientId != null) {
+                    new PatientDashboardController((PatientDashboardPanel) panel, appointmentRepository, 
+                        prescriptionRepository, patientRepository, clinicianRepository, facilityRepository, patientId);
+                } else if ("Developer".equalsIgnoreCase(role)) {
+                    ((PatientDashboardPanel) panel).setPatientName("Developer Mode");
+                }
+                break;
+            
+            // Performance screen (Developer only)
+            case NavigationCard.CARD_DEVELOPER:
+                new DeveloperController((DeveloperPanel) panel);
+                break;
+            
+            default:
+                break;
         }
     }
 }
\ No newline at end of file
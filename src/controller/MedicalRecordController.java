@@ -1,6 +1,7 @@
 package controller;
 
 import model.*;
+import util.ActionTimer;
 import view.*;
 import javax.swing.*;
 import java.awt.event.ActionEvent;
@@ -9,6 +10,10 @@ import java.io.PrintWriter;
 import java.io.File;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 
 public class MedicalRecordController {
     
@@ -19,9 +24,15 @@ public class MedicalRecordController {
     private final ClinicianRepository clinicianRepository;
     private final FacilityRepository facilityRepository;
     private final ReferralRepository referralRepo;
+    // Specialities -> clinicians/facilities, for the referral dialog and the referral rows
+    private final SpecialityDirectory specialityDirectory;
     
     private Patient currentPatient = null;
     
+    // Rows for recently opened charts, so switching between patients is instant
+    private static final int CHART_CACHE_SIZE = 50;
+    private final PatientChartCache chartCache = new PatientChartCache(CHART_CACHE_SIZE);
+    
     public MedicalRecordController(MedicalRecordPanel view,
                                   PatientRepository patientRepository,
                                   AppointmentRepository appointmentRepository,
@@ -35,20 +46,51 @@ public class MedicalRecordController {
         this.clinicianRepository = clinicianRepository;
         this.facilityRepository = facilityRepository;
         this.referralRepo = ReferralRepository.getInstance("src/data/referrals.csv");
+        this.specialityDirectory = new SpecialityDirectory(clinicianRepository, facilityRepository);
         
         bind();
+        
+        // Refresh the open record if someone else changes this patient's appointments or referrals
+        appointmentRepository.addChangeListener(this::onAppointmentChanged);
+        referralRepo.addChangeListener(this::onReferralChanged);
+        // Clinician names are baked into the cached rows
+        clinicianRepository.addChangeListener(e -> chartCache.clear());
+        
+        prefetchTodaysCharts();
+        // The prescription/referral dialogs' clinician pickers share this index
+        SwingUtilities.invokeLater(() -> PickerIndexes.clinicians(clinicianRepository));
+    }
+    
+    private void onAppointmentChanged(RepositoryChangeEvent<Appointment> event) {
+        chartCache.invalidateEncounters(event.getEntity().getPatientId());
+        if (isCurrentPatient(event.getEntity().getPatientId())) {
+            loadEncounters(currentPatient.getPatientId());
+        }
+    }
+    
+    private void onReferralChanged(RepositoryChangeEvent<Referral> event) {
+        chartCache.invalidateReferrals(event.getEntity().getPatientId());
+        if (isCurrentPatient(event.getEntity().getPatientId())) {
+            loadReferrals(currentPatient.getPatientId());
+        }
+    }
+    
+    private boolean isCurrentPatient(String patientId) {
+        return currentPatient != null && patientId != null
+            && currentPatient.getPatientId().equalsIgnoreCase(patientId.trim());
     }
     
     public void bind() {
-        view.getSearchButton().addActionListener(new SearchButtonListener());
-        view.getIssuePrescriptionButton().addActionListener(new IssuePrescriptionButtonListener());
+        // Each action is timed for the Developer performance screen
+        view.getSearchButton().addActionListener(ActionTimer.timed("MedicalRecordController.handleSearch", new SearchButtonListener()));
+        view.getIssuePrescriptionButton().addActionListener(ActionTimer.timed("MedicalRecordController.handleIssuePrescription", new IssuePrescriptionButtonListener()));
         
         // Added Listeners for Edit and Delete
-        view.getEditPrescriptionButton().addActionListener(e -> handleEditPrescription());
-        view.getDeletePrescriptionButton().addActionListener(e -> handleDeletePrescription());
+        view.getEditPrescriptionButton().addActionListener(e -> ActionTimer.time("MedicalRecordController.handleEditPrescription", this::handleEditPrescription));
+        view.getDeletePrescriptionButton().addActionListener(e -> ActionTimer.time("MedicalRecordController.handleDeletePrescription", this::handleDeletePrescription));
         
-        view.getGenerateReferralButton().addActionListener(new GenerateReferralButtonListener());
-        view.getBtnPatientNote().addActionListener(e -> handleViewEditClinicalNote());
+        view.getGenerateReferralButton().addActionListener(ActionTimer.timed("MedicalRecordController.handleGenerateReferral", new GenerateReferralButtonListener()));
+        view.getBtnPatientNote().addActionListener(e -> ActionTimer.time("MedicalRecordController.handleViewEditClinicalNote", this::handleViewEditClinicalNote));
     }
     
     private void handleSearch() {
@@ -61,8 +103,9 @@ public class MedicalRecordController {
         if (!patientId.isEmpty()) {
             foundPatient = patientRepository.findById(patientId);
         } else if (!patientName.isEmpty()) {
+            String nameSearch = patientName.toLowerCase();
             for (Patient p : patientRepository.findAll()) {
-                if (p.getFullName().toLowerCase().contains(patientName.toLowerCase())) {
+                if (p.getSearchName().contains(nameSearch)) {
                     foundPatient = p;
                     break;
                 }
@@ -110,38 +153,116 @@ public class MedicalRecordController {
     
     private void loadEncounters(String patientId) {
         view.clearEncounters();
-        
-        for (Appointment appointment : appointmentRepository.getAll()) {
-            if (patientId.equals(appointment.getPatientId())) {
-                Clinician clinician = clinicianRepository.findById(appointment.getClinicianId());
-                String clinicianName = clinician != null ? clinician.getFullName() : appointment.getClinicianId();
+        for (String[] row : encounterRows(patientId)) {
+            view.addEncounterRow(row[0], row[1], row[2], row[3]);
+        }
+    }
+    
+    private void loadMedications(String patientId) {
+        view.clearMedications();
+        for (String[] row : medicationRows(patientId)) {
+            view.addMedicationRow(row[0], row[1], row[2], row[3]);
+        }
+    }
+    
+    // --- Chart rows (built once per patient, then served from chartCache) ---
+    
+    private List<String[]> encounterRows(String patientId) {
+        PatientChartCache.Chart chart = chartCache.get(patientId);
+        if (chart.getEncounters() == null) {
+            List<String[]> rows = new ArrayList<>();
+            for (Appointment appointment : appointmentRepository.getAll()) {
+                if (patientId.equals(appointment.getPatientId())) {
+                    Clinician clinician = clinicianRepository.findById(appointment.getClinicianId());
+                    String clinicianName = clinician != null ? clinician.getFullName() : appointment.getClinicianId();
+                    
+                    String notes = appointment.getNotes() != null ? appointment.getNotes() : "";
+                    
+                    rows.add(new String[]{
+                        appointment.getAppointmentDate(),
+                        clinicianName,
+                        appointment.getReasonForVisit(),
+                        notes
+                    });
+                }
+            }
+            chart.setEncounters(rows);
+        }
+        return chart.getEncounters();
+    }
+    
+    private List<String[]> medicationRows(String patientId) {
+        PatientChartCache.Chart chart = chartCache.get(patientId);
+        if (chart.getMedications() == null) {
+            List<String[]> rows = new ArrayList<>();
+            for (Prescription prescription : prescriptionRepository.getAll()) {
+                if (patientId.equals(prescription.getPatientId())) {
+                    // FIXED: Added ID as first argument
+                    rows.add(new String[]{
+                        prescription.getId(),
+                        prescription.getMedication(),
+                        prescription.getDosage(),
+                        prescription.getStatus()
+                    });
+                }
+            }
+            chart.setMedications(rows);
+        }
+        return chart.getMedications();
+    }
+    
+    private List<String[]> referralRows(String patientId) {
+        PatientChartCache.Chart chart = chartCache.get(patientId);
+        if (chart.getReferrals() == null) {
+            List<String[]> rows = new ArrayList<>();
+            for (Referral referral : referralRepo.findByPatientId(patientId)) {
+                String specialty = referral.getRequestedInvestigations();
+                if (specialty == null || specialty.isEmpty()) {
+                    specialty = specialityDirectory.specialityOf(referral.getReferredToClinicianId());
+                    if (specialty == null) {
+                        specialty = "N/A";
+                    }
+                }
                 
-                String notes = appointment.getNotes() != null ? appointment.getNotes() : "";
+                Facility facility = specialityDirectory.facility(referral.getReferredToFacilityId());
+                String facilityName = facility != null ? facility.getFacilityName() : referral.getReferredToFacilityId();
                 
-                view.addEncounterRow(
-                    appointment.getAppointmentDate(),
-                    clinicianName,
-                    appointment.getReasonForVisit(),
-                    notes
-                );
+                rows.add(new String[]{
+                    referral.getReferralDate(),
+                    specialty,
+                    facilityName,
+                    referral.getStatus()
+                });
             }
+            chart.setReferrals(rows);
         }
+        return chart.getReferrals();
     }
     
-    private void loadMedications(String patientId) {
-        view.clearMedications();
-        
-        for (Prescription prescription : prescriptionRepository.getAll()) {
-            if (patientId.equals(prescription.getPatientId())) {
-                // FIXED: Added ID as first argument
-                view.addMedicationRow(
-                    prescription.getId(),
-                    prescription.getMedication(),
-                    prescription.getDosage(),
-                    prescription.getStatus()
-                );
+    // Builds the charts of patients with an appointment today so they are ready before the
+    // clinician opens them. The repositories are only safe to use on the EDT, so this runs
+    // there one patient per event-queue turn rather than on a separate thread.
+    private void prefetchTodaysCharts() {
+        String today = LocalDate.now().toString();
+        Set<String> patientIds = new LinkedHashSet<>();
+        for (Appointment appointment : appointmentRepository.getAll()) {
+            if (today.equals(appointment.getAppointmentDate()) && appointment.getPatientId() != null) {
+                patientIds.add(appointment.getPatientId());
+                if (patientIds.size() == CHART_CACHE_SIZE) break;
             }
         }
+        prefetchNext(new ArrayList<>(patientIds));
+    }
+    
+    private void prefetchNext(List<String> patientIds) {
+        if (patientIds.isEmpty()) return;
+        SwingUtilities.invokeLater(() -> {
+            String patientId = patientIds.remove(0);
+            encounterRows(patientId);
+            medicationRows(patientId);
+            referralRows(patientId);
+            prefetchNext(patientIds);
+        });
     }
     
     private void handleIssuePrescription() {
@@ -155,6 +276,7 @@ public class MedicalRecordController {
             parentFrame,
             currentPatient
         );
+        dialog.setClinicianSource(PickerIndexes.clinicians(clinicianRepository)::search);
         
         dialog.getConfirmButton().addActionListener(e -> {
             String medication = dialog.getMedication();
@@ -170,7 +292,7 @@ public class MedicalRecordController {
             }
             
             if (clinicianId.isEmpty()) {
-                JOptionPane.showMessageDialog(dialog, "Please fill in Clinician ID.", "Validation Error", JOptionPane.ERROR_MESSAGE);
+                JOptionPane.showMessageDialog(dialog, "Please pick a clinician.", "Validation Error", JOptionPane.ERROR_MESSAGE);
                 return;
             }
             
@@ -201,6 +323,7 @@ public class MedicalRecordController {
             String clinicianName = clinician != null ? clinician.getFullName() : clinicianId;
             prescriptionRepository.generatePrescriptionFile(newPrescription, clinicianName, clinicianId);
             
+            chartCache.invalidateMedications(currentPatient.getPatientId());
             loadMedications(currentPatient.getPatientId());
             
             dialog.dispose();
@@ -220,6 +343,7 @@ public class MedicalRecordController {
 
         JFrame parentFrame = (JFrame) SwingUtilities.getWindowAncestor(view);
         NewPrescriptionDialog dialog = new NewPrescriptionDialog(parentFrame, currentPatient);
+        dialog.setClinicianSource(PickerIndexes.clinicians(clinicianRepository)::search);
         
         // Fill dialog with existing data
         dialog.setMedication(existing.getMedication());
@@ -227,7 +351,7 @@ public class MedicalRecordController {
         dialog.setFrequency(existing.getFrequency());
         dialog.setDuration(existing.getDurationDays());
         dialog.setInstructions(existing.getInstructions());
-        dialog.setClinicianId(existing.getClinicianId());
+        dialog.setClinicianId(PickerIndexes.clinicianLabel(clinicianRepository, existing.getClinicianId()));
 
         dialog.getConfirmButton().addActionListener(e -> {
             existing.setMedication(dialog.getMedication());
@@ -237,6 +361,7 @@ public class MedicalRecordController {
             existing.setInstructions(dialog.getInstructions());
             
             prescriptionRepository.update(existing);
+            chartCache.invalidateMedications(currentPatient.getPatientId());
             loadMedications(currentPatient.getPatientId());
             dialog.dispose();
         });
@@ -255,6 +380,7 @@ public class MedicalRecordController {
         
         if (confirm == JOptionPane.YES_OPTION) {
             prescriptionRepository.removeById(prescriptionId);
+            chartCache.invalidateMedications(currentPatient.getPatientId());
             loadMedications(currentPatient.getPatientId());
         }
     }
@@ -268,23 +394,8 @@ public class MedicalRecordController {
     
     private void loadReferrals(String patientId) {
         view.clearReferrals();
-        
-        for (Referral referral : referralRepo.findByPatientId(patientId)) {
-            String specialty = referral.getRequestedInvestigations();
-            if (specialty == null || specialty.isEmpty()) {
-                Clinician referredTo = clinicianRepository.findById(referral.getReferredToClinicianId());
-                specialty = referredTo != null ? referredTo.getSpeciality() : "N/A";
-            }
-            
-            Facility facility = facilityRepository.findById(referral.getReferredToFacilityId());
-            String facilityName = facility != null ? facility.getFacilityName() : referral.getReferredToFacilityId();
-            
-            view.addReferralRow(
-                referral.getReferralDate(),
-                specialty,
-                facilityName,
-                referral.getStatus()
-            );
+        for (String[] row : referralRows(patientId)) {
+            view.addReferralRow(row[0], row[1], row[2], row[3]);
         }
     }
     
@@ -299,6 +410,13 @@ public class MedicalRecordController {
             parentFrame,
             currentPatient
         );
+        dialog.setClinicianSource(PickerIndexes.clinicians(clinicianRepository)::search);
+        // Only clinicians who have the chosen speciality can be picked, nearest the patient's GP surgery first
+        dialog.setSpecialities(specialityDirectory.specialities());
+        Runnable fillReferredTo = () -> dialog.setReferredToChoices(
+            referralTargets(dialog.getSpeciality(), currentPatient.getGpSurgeryId()));
+        dialog.getSpecialityComboBox().addActionListener(e -> ActionTimer.time("MedicalRecordController.referralTargets", fillReferredTo));
+        fillReferredTo.run();
         
         dialog.getConfirmButton().addActionListener(e -> {
             String urgency = dialog.getUrgency();
@@ -314,10 +432,16 @@ public class MedicalRecordController {
             }
             
             if (referringClinicianId.isEmpty() || referredToClinicianId.isEmpty()) {
-                JOptionPane.showMessageDialog(dialog, "Please fill in both Referring Clinician ID and Referred To Clinician ID.", "Validation Error", JOptionPane.ERROR_MESSAGE);
+                JOptionPane.showMessageDialog(dialog, "Please pick both the Referring Clinician and the Referred To Clinician.", "Validation Error", JOptionPane.ERROR_MESSAGE);
                 return;
             }
             
+            // Each clinician's workplace is the facility the referral is from / to
+            Clinician referringClinician = specialityDirectory.clinician(referringClinicianId);
+            Clinician referredTo = specialityDirectory.clinician(referredToClinicianId);
+            String referringFacilityId = referringClinician != null ? referringClinician.getWorkplaceId() : "";
+            String referredToFacilityId = referredTo != null ? referredTo.getWorkplaceId() : "";
+            
             String referralId = referralRepo.generateNewId();
             String today = LocalDate.now().toString();
             
@@ -326,8 +450,8 @@ public class MedicalRecordController {
                 currentPatient.getPatientId(),
                 referringClinicianId,
                 referredToClinicianId,
-                "",
-                "",
+                referringFacilityId,
+                referredToFacilityId,
                 today,
                 urgency,
                 referralReason,
@@ -342,7 +466,6 @@ public class MedicalRecordController {
             
             referralRepo.addAndAppend(newReferral);
             
-            Clinician referringClinician = clinicianRepository.findById(referringClinicianId);
             String referringClinicianName = referringClinician != null ? referringClinician.getFullName() : referringClinicianId;
             generateReferralLetter(newReferral, referringClinicianName);
             loadReferrals(currentPatient.getPatientId());
@@ -355,6 +478,17 @@ public class MedicalRecordController {
         dialog.setVisible(true);
     }
     
+    // "C005 - Dr. Name (Heartlands Hospital)" for each clinician with the speciality, nearest first
+    private List<String> referralTargets(String speciality, String nearFacilityId) {
+        List<String> choices = new ArrayList<>();
+        for (SpecialityDirectory.Specialist s : specialityDirectory.specialists(speciality, nearFacilityId)) {
+            Facility workplace = s.getWorkplace();
+            choices.add(PickerIndexes.label(s.getClinician())
+                + " (" + (workplace != null ? workplace.getFacilityName() : s.getClinician().getWorkplaceId()) + ")");
+        }
+        return choices;
+    }
+    
     private void generateReferralLetter(Referral referral, String practitionerName) {
         Patient patient = patientRepository.findById(referral.getPatientId());
         Facility referredToFacility = facilityRepository.findById(referral.getReferredToFacilityId());
@@ -496,7 +630,13 @@ public class MedicalRecordController {
             String today = java.time.LocalDate.now().toString();
             latestRecord.setLastModified(today);
             
-            appointmentRepository.updateAppointment(latestRecord);
+            try {
+                appointmentRepository.updateAppointment(latestRecord);
+            } catch (VersionConflictException | BookingConflictException ex) {
+                JOptionPane.showMessageDialog(view, ex.getMessage(), "Update Conflict", JOptionPane.WARNING_MESSAGE);
+                loadEncounters(currentPatientId);
+                return;
+            }
             
             JOptionPane.showMessageDialog(null, 
                 "Clinical note saved to the patient's record!", 
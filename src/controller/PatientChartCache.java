@@ -0,0 +1,77 @@
+package controller;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Keeps the table rows for the most recently opened patient charts so flipping back to a
+// patient doesn't rescan the appointment, prescription and referral repositories.
+//
+// Least recently used charts are dropped once there are more than maxCharts. Each section
+// (encounters / medications / referrals) is cleared on its own when that data changes, and
+// rebuilt the next time it is shown. Only used on the EDT.
+public class PatientChartCache {
+
+    // The rows for one patient's chart. A null section hasn't been built yet (or was cleared).
+    public static class Chart {
+        private List<String[]> encounters;
+        private List<String[]> medications;
+        private List<String[]> referrals;
+
+        public List<String[]> getEncounters() { return encounters; }
+        public void setEncounters(List<String[]> encounters) { this.encounters = encounters; }
+        public List<String[]> getMedications() { return medications; }
+        public void setMedications(List<String[]> medications) { this.medications = medications; }
+        public List<String[]> getReferrals() { return referrals; }
+        public void setReferrals(List<String[]> referrals) { this.referrals = referrals; }
+
+        public boolean isComplete() {
+            return encounters != null && medications != null && referrals != null;
+        }
+    }
+
+    private final Map<String, Chart> charts;
+
+    public PatientChartCache(int maxCharts) {
+        // accessOrder = true makes iteration order least-recently-used first
+        this.charts = new LinkedHashMap<String, Chart>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Chart> eldest) {
+                return size() > maxCharts;
+            }
+        };
+    }
+
+    // The chart for a patient, creating an empty one if it isn't cached
+    public Chart get(String patientId) {
+        return charts.computeIfAbsent(key(patientId), k -> new Chart());
+    }
+
+    public boolean contains(String patientId) {
+        return charts.containsKey(key(patientId));
+    }
+
+    public void invalidateEncounters(String patientId) {
+        Chart chart = charts.get(key(patientId));
+        if (chart != null) chart.setEncounters(null);
+    }
+
+    public void invalidateMedications(String patientId) {
+        Chart chart = charts.get(key(patientId));
+        if (chart != null) chart.setMedications(null);
+    }
+
+    public void invalidateReferrals(String patientId) {
+        Chart chart = charts.get(key(patientId));
+        if (chart != null) chart.setReferrals(null);
+    }
+
+    // For changes that affect every chart (e.g. a clinician was renamed)
+    public void clear() {
+        charts.clear();
+    }
+
+    private static String key(String patientId) {
+        return patientId == null ? "" : patientId.trim().toUpperCase();
+    }
+}
@@ -1,31 +1,70 @@
 package controller;
 
 import model.*;
+import util.ActionTimer;
+import util.PrimitiveSort;
 import model.PatientRepository; // Ensure this import is correct
 import view.PatientFormDialog;
 import view.PatientManagementPanel;
 import javax.swing.*;
 import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class PatientManagementController {
     
     private final PatientManagementPanel view;
     private final PatientRepository patientRepository;
     
+    // The grid loads PAGE_SIZE patients at a time as the user scrolls. When browsing, each
+    // page is "the next PAGE_SIZE after the last key shown" (keyset paging), so opening the
+    // screen never touches the whole patient list.
+    private static final int PAGE_SIZE = 200;
+    private PatientRepository.SortOrder sortOrder = PatientRepository.SortOrder.ID;
+    private final List<Patient> shownPatients = new ArrayList<>(); // same order as the table rows
+    // Index in shownPatients by upper-case ID. Pages added at the end go straight in; an
+    // insert in the middle or a remove marks it stale, to be rebuilt on the next lookup.
+    private final Map<String, Integer> shownIndex = new HashMap<>();
+    private boolean shownIndexStale = true;
+    private String lastKey;                   // sort key of the last row loaded (browsing)
+    private List<Patient> searchResults;      // null when browsing
+    private int searchOffset;
+    private List<Patient> prefetchedPage;     // next page, fetched before it is needed
+    private boolean endReached;
+    private int totalCount;
+    
     public PatientManagementController(PatientManagementPanel view, PatientRepository patientRepository) {
         this.view = view;
         this.patientRepository = patientRepository;
         
         bind();
         refreshUI(); // Initial load
+        
+        // After the initial load, edits only touch the affected row
+        patientRepository.addChangeListener(this::onPatientChanged);
     }
     
     private void bind() {
-        view.getSearchButton().addActionListener(e -> handleSearch());
-        view.getRegisterButton().addActionListener(e -> handleRegisterPatient());
-        view.getEditButton().addActionListener(e -> handleEditPatient());
-        view.getDeleteButton().addActionListener(e -> handleDeletePatient());
+        // Each action is timed for the Developer performance screen
+        view.getSearchButton().addActionListener(e -> ActionTimer.time("PatientManagementController.handleSearch", this::handleSearch));
+        view.getSortComboBox().addActionListener(e -> {
+            sortOrder = "Name".equals(view.getSortComboBox().getSelectedItem())
+                ? PatientRepository.SortOrder.NAME : PatientRepository.SortOrder.ID;
+            ActionTimer.time("PatientManagementController.changeSort", this::handleSearch);
+        });
+        
+        // Load the next page once the user scrolls to within a screen of the bottom
+        view.getTableScrollPane().getVerticalScrollBar().addAdjustmentListener(e -> {
+            JScrollBar bar = view.getTableScrollPane().getVerticalScrollBar();
+            if (bar.getValue() + 2 * bar.getVisibleAmount() >= bar.getMaximum()) {
+                ActionTimer.time("PatientManagementController.loadNextPage", this::loadNextPage);
+            }
+        });
+        view.getRegisterButton().addActionListener(e -> ActionTimer.time("PatientManagementController.handleRegisterPatient", this::handleRegisterPatient));
+        view.getEditButton().addActionListener(e -> ActionTimer.time("PatientManagementController.handleEditPatient", this::handleEditPatient));
+        view.getDeleteButton().addActionListener(e -> ActionTimer.time("PatientManagementController.handleDeletePatient", this::handleDeletePatient));
         
         // Selection listener to enable/disable buttons
         view.getPatientTable().getSelectionModel().addListSelectionListener(e -> {
@@ -36,20 +75,209 @@ public class PatientManagementController {
         });
     }
 
+    // Shows the first page of all patients
     private void refreshUI() {
-        List<Patient> allPatients = patientRepository.findAll();
-        view.updateTable(allPatients);
+        searchResults = null;
+        totalCount = patientRepository.count(); // worked out once, then kept up to date by events
+        showFirstPage();
+    }
+    
+    private void showFirstPage() {
+        shownPatients.clear();
+        shownIndexStale = true;
+        lastKey = null;
+        searchOffset = 0;
+        prefetchedPage = null;
+        endReached = false;
+        
+        List<Patient> page = fetchPage();
+        view.updateTable(page);
+        pageLoaded(page);
         view.setEditDeleteButtonsEnabled(false);
     }
+    
+    private void loadNextPage() {
+        if (endReached) return;
+        
+        List<Patient> page = prefetchedPage != null ? prefetchedPage : fetchPage();
+        prefetchedPage = null;
+        view.appendRows(page);
+        pageLoaded(page);
+    }
+    
+    private void pageLoaded(List<Patient> page) {
+        int first = shownPatients.size();
+        shownPatients.addAll(page);
+        indexShown(first);
+        if (searchResults != null) {
+            searchOffset += page.size();
+        } else if (!page.isEmpty()) {
+            lastKey = PatientRepository.sortKey(page.get(page.size() - 1), sortOrder);
+        }
+        if (page.size() < PAGE_SIZE) {
+            endReached = true;
+        } else {
+            // Get the next page ready once this one has been painted
+            SwingUtilities.invokeLater(() -> {
+                if (prefetchedPage == null && !endReached) {
+                    prefetchedPage = fetchPage();
+                }
+            });
+        }
+        updateStatus();
+    }
+    
+    // The page after what is currently loaded
+    private List<Patient> fetchPage() {
+        if (searchResults != null) {
+            int end = Math.min(searchOffset + PAGE_SIZE, searchResults.size());
+            return new ArrayList<>(searchResults.subList(searchOffset, end));
+        }
+        return patientRepository.getPage(sortOrder, lastKey, PAGE_SIZE);
+    }
+    
+    private void updateStatus() {
+        if (searchResults != null) {
+            view.setStatusText("Showing " + shownPatients.size() + " of " + searchResults.size() + " matching patients");
+        } else {
+            view.setStatusText("Showing " + shownPatients.size() + " of " + totalCount + " patients");
+        }
+    }
+
+    private void onPatientChanged(RepositoryChangeEvent<Patient> event) {
+        Patient p = event.getEntity();
+        // The prefetched page may now be out of date
+        prefetchedPage = null;
+        
+        if (searchResults != null) {
+            // Search results are a fixed list - just keep the rows that are shown in step
+            switch (event.getType()) {
+                case UPDATED:
+                    view.updatePatientRow(p);
+                    break;
+                case DELETED:
+                    removeShown(p.getPatientId());
+                    break;
+                default:
+                    break;
+            }
+            return;
+        }
+        
+        switch (event.getType()) {
+            case INSERTED:
+                totalCount++;
+                placeRow(p);
+                break;
+            case UPDATED:
+                int index = indexOfShown(p.getPatientId());
+                if (index >= 0 && staysInPlace(index, p)) {
+                    shownPatients.set(index, p);
+                    view.updatePatientRow(p);
+                } else {
+                    // Its sort position changed (e.g. renamed while sorted by name)
+                    removeShown(p.getPatientId());
+                    placeRow(p);
+                }
+                break;
+            case DELETED:
+                totalCount--;
+                removeShown(p.getPatientId());
+                break;
+        }
+        updateStatus();
+    }
+    
+    // Puts a patient in its sorted position if that is within the pages already loaded.
+    // Anything after the last loaded row will turn up in a later page anyway.
+    private void placeRow(Patient p) {
+        String key = PatientRepository.sortKey(p, sortOrder);
+        if (!endReached && (lastKey == null || key.compareTo(lastKey) > 0)) {
+            return;
+        }
+        
+        int low = 0, high = shownPatients.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (PatientRepository.sortKey(shownPatients.get(mid), sortOrder).compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        shownPatients.add(low, p);
+        if (low == shownPatients.size() - 1) {
+            indexShown(low);
+        } else {
+            shownIndexStale = true;
+        }
+        view.insertPatientRow(low, p);
+        if (lastKey == null || key.compareTo(lastKey) > 0) {
+            lastKey = key;
+        }
+    }
+    
+    private boolean staysInPlace(int index, Patient p) {
+        String key = PatientRepository.sortKey(p, sortOrder);
+        boolean afterPrevious = index == 0
+            || PatientRepository.sortKey(shownPatients.get(index - 1), sortOrder).compareTo(key) < 0;
+        boolean beforeNext = index == shownPatients.size() - 1
+            || PatientRepository.sortKey(shownPatients.get(index + 1), sortOrder).compareTo(key) > 0;
+        return afterPrevious && beforeNext;
+    }
+    
+    private int indexOfShown(String patientId) {
+        if (patientId == null) return -1;
+        if (shownIndexStale) {
+            shownIndex.clear();
+            shownIndexStale = false;
+            indexShown(0);
+        }
+        Integer index = shownIndex.get(patientId.toUpperCase());
+        return index != null ? index : -1;
+    }
+    
+    // Adds the rows from 'first' to the end to the index (unless it is waiting to be rebuilt)
+    private void indexShown(int first) {
+        if (shownIndexStale) return;
+        for (int i = first; i < shownPatients.size(); i++) {
+            shownIndex.putIfAbsent(shownPatients.get(i).getPatientId().toUpperCase(), i);
+        }
+    }
+    
+    private void removeShown(String patientId) {
+        int index = indexOfShown(patientId);
+        if (index >= 0) {
+            shownPatients.remove(index);
+            shownIndexStale = true;
+            view.removePatientRow(patientId);
+        }
+    }
 
     private void handleSearch() {
         String id = view.getPatientIdField().getText().trim();
         String name = view.getPatientNameField().getText().trim();
         String nhs = view.getNhsNumberField().getText().trim();
         
-        // Using the search method we added to the Repository
-        List<Patient> results = patientRepository.search(id, name, nhs);
-        view.updateTable(results);
+        if (id.isEmpty() && name.isEmpty() && nhs.isEmpty()) {
+            refreshUI();
+            return;
+        }
+        
+        // Using the search method we added to the Repository, sorted the same way as the grid.
+        // Each patient's sort key is built once and ranked, rather than rebuilt in every comparison.
+        List<Patient> matches = patientRepository.search(id, name, nhs);
+        String[] keys = new String[matches.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = PatientRepository.sortKey(matches.get(i), sortOrder);
+        }
+        int[] order = PrimitiveSort.order(keys.length, new int[][]{PrimitiveSort.ranks(keys, null)}, new boolean[]{false});
+        List<Patient> results = new ArrayList<>(keys.length);
+        for (int i : order) {
+            results.add(matches.get(i));
+        }
+        searchResults = results;
+        showFirstPage();
     }
 
     private void handleRegisterPatient() {
@@ -57,7 +285,7 @@ public class PatientManagementController {
         PatientFormDialog dialog = new PatientFormDialog(parent, "Register New Patient");
         
         // Generate a simple ID based on list size or timestamp
-        String newId = "P" + (patientRepository.findAll().size() + 1001);
+        String newId = "P" + (patientRepository.count() + 1001);
         dialog.setPatientId(newId);
         
         dialog.getSaveButton().addActionListener(e -> {
@@ -65,7 +293,6 @@ public class PatientManagementController {
             p.setPatientId(newId);
             
             patientRepository.add(p);
-            refreshUI(); 
             dialog.dispose();
             JOptionPane.showMessageDialog(view, "Patient registered successfully.");
         });
@@ -90,7 +317,6 @@ public class PatientManagementController {
             updated.setPatientId(id); 
             
             patientRepository.update(updated); // Matched to Repository.update()
-            refreshUI();
             dialog.dispose();
             JOptionPane.showMessageDialog(view, "Patient updated successfully.");
         });
@@ -109,7 +335,6 @@ public class PatientManagementController {
         
         if (confirm == JOptionPane.YES_OPTION) {
             patientRepository.delete(id); // Matched to Repository.delete()
-            refreshUI();
             JOptionPane.showMessageDialog(view, "Patient deleted.");
         }
     }
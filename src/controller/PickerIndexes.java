@@ -0,0 +1,159 @@
+package controller;
+
+import model.Clinician;
+import model.ClinicianRepository;
+import model.Facility;
+import model.FacilityRepository;
+import model.Patient;
+import model.PatientRepository;
+import model.RepositoryChangeEvent;
+import util.PrefixIndex;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+// The prefix indexes behind the patient / clinician / facility picker fields.
+//
+// Each repository's index is built the first time it is asked for and then kept up to
+// date from the repository's change events, so it is shared by every dialog and opening a
+// dialog never walks the whole list. AppointmentController asks for them in an
+// invokeLater once its screen is up, so the one-off build happens before the first dialog
+// is opened. Only used on the EDT.
+public class PickerIndexes {
+
+    private static final Map<Object, PrefixIndex> indexes = new IdentityHashMap<>();
+    // Lower-case ID -> search name, for the appointment search. Each map is never changed once
+    // made (a change event swaps in a new copy), so a search can take it off the EDT as it is.
+    private static final Map<Object, Map<String, String>> searchNames = new IdentityHashMap<>();
+
+    private PickerIndexes() {
+    }
+
+    public static PrefixIndex patients(PatientRepository repository) {
+        PrefixIndex index = indexes.get(repository);
+        if (index == null) {
+            index = new PrefixIndex();
+            for (Patient p : repository.getAll()) {
+                index.put(p.getPatientId(), label(p));
+            }
+            PrefixIndex built = index;
+            repository.addChangeListener(event -> {
+                Patient p = event.getEntity();
+                if (event.getType() == RepositoryChangeEvent.Type.DELETED) {
+                    built.remove(p.getPatientId());
+                } else {
+                    built.put(p.getPatientId(), label(p));
+                }
+            });
+            indexes.put(repository, index);
+        }
+        return index;
+    }
+
+    public static PrefixIndex clinicians(ClinicianRepository repository) {
+        PrefixIndex index = indexes.get(repository);
+        if (index == null) {
+            index = new PrefixIndex();
+            for (Clinician c : repository.getAll()) {
+                index.put(c.getClinicianId(), label(c));
+            }
+            PrefixIndex built = index;
+            repository.addChangeListener(event -> {
+                Clinician c = event.getEntity();
+                if (event.getType() == RepositoryChangeEvent.Type.DELETED) {
+                    built.remove(c.getClinicianId());
+                } else {
+                    built.put(c.getClinicianId(), label(c));
+                }
+            });
+            indexes.put(repository, index);
+        }
+        return index;
+    }
+
+    // Facilities are read-only (no change events), so this is built once
+    public static PrefixIndex facilities(FacilityRepository repository) {
+        PrefixIndex index = indexes.get(repository);
+        if (index == null) {
+            index = new PrefixIndex();
+            for (Facility f : repository.getAll()) {
+                index.put(f.getFacilityId(), label(f));
+            }
+            indexes.put(repository, index);
+        }
+        return index;
+    }
+
+    // Every patient's getSearchName(), by lower-case ID
+    public static Map<String, String> patientSearchNames(PatientRepository repository) {
+        Map<String, String> names = searchNames.get(repository);
+        if (names == null) {
+            names = new HashMap<>();
+            for (Patient p : repository.getAll()) {
+                names.put(searchKey(p.getPatientId()), p.getSearchName());
+            }
+            names = Collections.unmodifiableMap(names);
+            repository.addChangeListener(event -> {
+                Patient p = event.getEntity();
+                changeSearchName(repository, p.getPatientId(),
+                    event.getType() == RepositoryChangeEvent.Type.DELETED ? null : p.getSearchName());
+            });
+            searchNames.put(repository, names);
+        }
+        return names;
+    }
+
+    // Every clinician's getSearchName(), by lower-case ID
+    public static Map<String, String> clinicianSearchNames(ClinicianRepository repository) {
+        Map<String, String> names = searchNames.get(repository);
+        if (names == null) {
+            names = new HashMap<>();
+            for (Clinician c : repository.getAll()) {
+                names.put(searchKey(c.getClinicianId()), c.getSearchName());
+            }
+            names = Collections.unmodifiableMap(names);
+            repository.addChangeListener(event -> {
+                Clinician c = event.getEntity();
+                changeSearchName(repository, c.getClinicianId(),
+                    event.getType() == RepositoryChangeEvent.Type.DELETED ? null : c.getSearchName());
+            });
+            searchNames.put(repository, names);
+        }
+        return names;
+    }
+
+    public static String searchKey(String id) {
+        return id != null ? id.trim().toLowerCase() : "";
+    }
+
+    // Copies the map with one name changed (null = removed). Edits are rare next to searches.
+    private static void changeSearchName(Object repository, String id, String name) {
+        Map<String, String> names = new HashMap<>(searchNames.get(repository));
+        if (name == null) {
+            names.remove(searchKey(id));
+        } else {
+            names.put(searchKey(id), name);
+        }
+        searchNames.put(repository, Collections.unmodifiableMap(names));
+    }
+
+    // The "ID - Name" text shown in the pickers, or just the ID if it isn't known
+    public static String clinicianLabel(ClinicianRepository repository, String clinicianId) {
+        String label = clinicians(repository).getLabel(clinicianId);
+        return label != null ? label : clinicianId;
+    }
+
+    public static String label(Patient p) {
+        return p.getPatientId() + " - " + p.getFullName();
+    }
+
+    public static String label(Clinician c) {
+        return c.getClinicianId() + " - " + c.getFullName();
+    }
+
+    public static String label(Facility f) {
+        return f.getFacilityId() + " - " + f.getFacilityName();
+    }
+}
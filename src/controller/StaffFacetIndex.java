@@ -0,0 +1,282 @@
+package controller;
+
+import model.Clinician;
+import model.GP;
+import model.Nurse;
+import model.Specialist;
+import model.Staff;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Index over the staff + clinician lists for the Staff Management filters.
+//
+// Every person gets a slot number, and each facet value (e.g. Department = "Cardiology")
+// keeps a BitSet of the slots that have it. A filter is then just ANDing a few BitSets,
+// and the count next to each value is the size of (that value's BitSet AND the other
+// selections) - so nothing is rescanned or lowercased when the user changes a filter.
+// The lowercased search text is also worked out once per person when they are added.
+//
+// Slots aren't reused after a removal, so the results stay in the order people were
+// added (same order as the CSV files). Only used on the EDT.
+public class StaffFacetIndex {
+
+    public enum Facet {
+        ROLE("Role"),
+        DEPARTMENT("Department"),
+        FACILITY("Facility"),
+        STATUS("Status"),
+        TYPE("Type");
+
+        private final String label;
+
+        Facet(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    // Type facet value for staff that aren't clinicians
+    public static final String TYPE_ADMIN = "Admin Staff";
+
+    // What a query returns: the matching people (split by table) and, for every facet,
+    // how many people each value would give if it was picked with the other selections
+    public static class Result {
+        private final List<Staff> adminStaff = new ArrayList<>();
+        private final List<Clinician> clinicians = new ArrayList<>();
+        private final Map<Facet, Map<String, Integer>> counts = new EnumMap<>(Facet.class);
+
+        public List<Staff> getAdminStaff() { return adminStaff; }
+        public List<Clinician> getClinicians() { return clinicians; }
+        public Map<String, Integer> getCounts(Facet facet) { return counts.get(facet); }
+    }
+
+    private final List<Staff> slots = new ArrayList<>();
+    private final List<String> searchText = new ArrayList<>();
+    private final Map<String, Integer> slotById = new HashMap<>();
+    private final BitSet live = new BitSet();
+    private final Map<Facet, Map<String, BitSet>> facets = new EnumMap<>(Facet.class);
+
+    // The last search term and who matched it (cleared whenever anyone changes)
+    private String lastTerm;
+    private BitSet lastTextMatches;
+
+    public StaffFacetIndex() {
+        for (Facet facet : Facet.values()) {
+            // TreeMap so the values come out sorted for the combo boxes
+            facets.put(facet, new TreeMap<>(String.CASE_INSENSITIVE_ORDER));
+        }
+    }
+
+    public void clear() {
+        lastTerm = null;
+        slots.clear();
+        searchText.clear();
+        slotById.clear();
+        live.clear();
+        for (Map<String, BitSet> values : facets.values()) {
+            values.clear();
+        }
+    }
+
+    // Adds a person, or re-indexes them in place if their ID is already here
+    public void put(Staff staff) {
+        lastTerm = null;
+        String id = key(staff.getId());
+        Integer slot = slotById.get(id);
+        if (slot == null) {
+            slot = slots.size();
+            slots.add(staff);
+            searchText.add(null);
+            slotById.put(id, slot);
+        } else {
+            unindex(slot);
+            slots.set(slot, staff);
+        }
+
+        live.set(slot);
+        searchText.set(slot, searchTextFor(staff));
+        for (Facet facet : Facet.values()) {
+            facets.get(facet).computeIfAbsent(valueOf(staff, facet), v -> new BitSet()).set(slot);
+        }
+    }
+
+    public void remove(String staffId) {
+        lastTerm = null;
+        Integer slot = slotById.remove(key(staffId));
+        if (slot != null) {
+            unindex(slot);
+            live.clear(slot);
+            slots.set(slot, null);
+            searchText.set(slot, null);
+        }
+    }
+
+    // Filters by the selected values (a missing facet means "All") and the search text,
+    // and works out the counts for every facet value
+    public Result query(Map<Facet, String> selected, String searchTerm) {
+        BitSet textMatches = textMatches(searchTerm);
+
+        // Each facet's own selection as a BitSet (null = not filtered)
+        Map<Facet, BitSet> selectedSets = new EnumMap<>(Facet.class);
+        for (Facet facet : Facet.values()) {
+            String value = selected.get(facet);
+            if (value != null) {
+                BitSet set = facets.get(facet).get(value);
+                selectedSets.put(facet, set != null ? set : new BitSet());
+            }
+        }
+
+        Result result = new Result();
+        for (Facet facet : Facet.values()) {
+            // Counts for a facet ignore that facet's own selection, so the other values
+            // show how many you'd get by switching to them
+            BitSet others = (BitSet) textMatches.clone();
+            for (Map.Entry<Facet, BitSet> entry : selectedSets.entrySet()) {
+                if (entry.getKey() != facet) {
+                    others.and(entry.getValue());
+                }
+            }
+
+            Map<String, Integer> counts = new LinkedHashMap<>();
+            for (Map.Entry<String, BitSet> value : facets.get(facet).entrySet()) {
+                BitSet both = (BitSet) value.getValue().clone();
+                both.and(others);
+                int count = both.cardinality();
+                if (count > 0 || value.getKey().equalsIgnoreCase(selected.get(facet))) {
+                    counts.put(value.getKey(), count);
+                }
+            }
+            result.counts.put(facet, counts);
+        }
+
+        BitSet matches = textMatches;
+        for (BitSet set : selectedSets.values()) {
+            matches.and(set);
+        }
+        for (int slot = matches.nextSetBit(0); slot >= 0; slot = matches.nextSetBit(slot + 1)) {
+            Staff staff = slots.get(slot);
+            if (staff instanceof Clinician) {
+                result.clinicians.add((Clinician) staff);
+            } else {
+                result.adminStaff.add(staff);
+            }
+        }
+        return result;
+    }
+
+    // Whether one (already indexed) person passes the current filters - used when a
+    // single row changes so the whole query doesn't need running
+    public boolean matches(String staffId, Map<Facet, String> selected, String searchTerm) {
+        Integer slot = slotById.get(key(staffId));
+        if (slot == null) {
+            return false;
+        }
+        for (Map.Entry<Facet, String> entry : selected.entrySet()) {
+            BitSet set = facets.get(entry.getKey()).get(entry.getValue());
+            if (set == null || !set.get(slot)) {
+                return false;
+            }
+        }
+        String term = normalise(searchTerm);
+        return term.isEmpty() || searchText.get(slot).contains(term);
+    }
+
+    // The Type facet value - which of the subclasses this person is
+    public static String typeOf(Staff staff) {
+        if (staff instanceof GP) {
+            return "GP";
+        } else if (staff instanceof Nurse) {
+            return "Nurse";
+        } else if (staff instanceof Specialist) {
+            return "Specialist";
+        } else if (staff instanceof Clinician) {
+            return "Clinician";
+        }
+        return TYPE_ADMIN;
+    }
+
+    private BitSet textMatches(String searchTerm) {
+        String term = normalise(searchTerm);
+        if (term.isEmpty()) {
+            return (BitSet) live.clone();
+        }
+        if (term.equals(lastTerm)) {
+            // Only a facet changed - the text matches are the same as last time
+            return (BitSet) lastTextMatches.clone();
+        }
+
+        // While typing, each term contains the last one, so only last time's matches
+        // can still match
+        BitSet candidates = lastTerm != null && term.contains(lastTerm) ? lastTextMatches : live;
+        BitSet matches = new BitSet(slots.size());
+        for (int slot = candidates.nextSetBit(0); slot >= 0; slot = candidates.nextSetBit(slot + 1)) {
+            if (searchText.get(slot).contains(term)) {
+                matches.set(slot);
+            }
+        }
+        lastTerm = term;
+        lastTextMatches = matches;
+        return (BitSet) matches.clone();
+    }
+
+    private void unindex(int slot) {
+        Staff old = slots.get(slot);
+        for (Facet facet : Facet.values()) {
+            Map<String, BitSet> values = facets.get(facet);
+            String value = valueOf(old, facet);
+            BitSet set = values.get(value);
+            if (set != null) {
+                set.clear(slot);
+                if (set.isEmpty()) {
+                    values.remove(value);
+                }
+            }
+        }
+    }
+
+    private static String valueOf(Staff staff, Facet facet) {
+        String value;
+        switch (facet) {
+            case ROLE:
+                value = staff.getRole();
+                break;
+            case DEPARTMENT:
+                value = staff.getDepartment();
+                break;
+            case FACILITY:
+                value = staff.getFacilityId();
+                break;
+            case STATUS:
+                value = staff.getEmploymentStatus();
+                break;
+            default:
+                value = typeOf(staff);
+                break;
+        }
+        return value == null || value.trim().isEmpty() ? "(none)" : value.trim();
+    }
+
+    // ID, names and email joined together so one contains() checks all four
+    private static String searchTextFor(Staff staff) {
+        return normalise(staff.getId()) + "\u0000" + normalise(staff.getFirstName()) + "\u0000"
+            + normalise(staff.getLastName()) + "\u0000" + normalise(staff.getEmail());
+    }
+
+    private static String normalise(String text) {
+        return text == null ? "" : text.toLowerCase().trim();
+    }
+
+    private static String key(String id) {
+        return id == null ? "" : id.trim().toUpperCase();
+    }
+}
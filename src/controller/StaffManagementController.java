@@ -1,6 +1,7 @@
 package controller;
 
 import model.*;
+import util.ActionTimer;
 import view.StaffFormDialog;
 import view.ClinicianFormDialog;
 import view.StaffManagementPanel;
@@ -10,8 +11,8 @@ import javax.swing.event.ListSelectionListener;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.time.LocalDate;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.EnumMap;
+import java.util.Map;
 
 public class StaffManagementController {
     
@@ -28,20 +29,34 @@ public class StaffManagementController {
         
         bind();
         loadStaffTable();
+        
+        // After the first load, each add/edit/remove only touches its own row
+        staffRepository.addStaffChangeListener(this::onStaffChanged);
+        clinicianRepository.addChangeListener(this::onClinicianChanged);
     }
     
-    private List<Staff> allStaffList = new ArrayList<>();
-    private List<Staff> adminStaffList = new ArrayList<>();
-    private List<Clinician> clinicianList = new ArrayList<>();
+    // Role/department/facility/status/type filters and the search box all go through this
+    private final StaffFacetIndex facetIndex = new StaffFacetIndex();
+    private boolean updatingFacets; // true while the combos are being refilled
     
     private void bind() {
-        view.getAddAdminStaffButton().addActionListener(new AddStaffListener());
-        view.getAddClinicianButton().addActionListener(new AddClinicianListener());
-        view.getEditStaffButton().addActionListener(new EditStaffListener());
-        view.getRemoveStaffButton().addActionListener(new RemoveStaffListener());
-        view.getSearchButton().addActionListener(new SearchFilterListener());
+        // Each action is timed for the Developer performance screen
+        view.getAddAdminStaffButton().addActionListener(ActionTimer.timed("StaffManagementController.addStaff", new AddStaffListener()));
+        view.getAddClinicianButton().addActionListener(ActionTimer.timed("StaffManagementController.addClinician", new AddClinicianListener()));
+        view.getEditStaffButton().addActionListener(ActionTimer.timed("StaffManagementController.editStaff", new EditStaffListener()));
+        view.getRemoveStaffButton().addActionListener(ActionTimer.timed("StaffManagementController.removeStaff", new RemoveStaffListener()));
+        view.getSearchButton().addActionListener(ActionTimer.timed("StaffManagementController.filterStaff", new SearchFilterListener()));
         
-        view.getSearchField().addActionListener(new SearchFilterListener());
+        view.getSearchField().addActionListener(ActionTimer.timed("StaffManagementController.filterStaff", new SearchFilterListener()));
+        
+        // Picking a facet value filters straight away
+        for (StaffFacetIndex.Facet facet : StaffFacetIndex.Facet.values()) {
+            view.getFacetComboBox(facet.getLabel()).addActionListener(e -> {
+                if (!updatingFacets) {
+                    ActionTimer.time("StaffManagementController.filterStaff", this::filterStaff);
+                }
+            });
+        }
         
         // Add listeners to both tables
         view.getTopStaffTable().getSelectionModel().addListSelectionListener(new StaffSelectionListener());
@@ -49,119 +64,103 @@ public class StaffManagementController {
     }
     
     // Loads staff into two separate tables
-    // Using 'instanceof' to figure out which table the person belongs to
+    // The index uses 'instanceof' to figure out which table the person belongs to
     public void loadStaffTable() {
-        allStaffList.clear();
-        adminStaffList.clear();
-        clinicianList.clear();
-        
-        // Get all staff from repository
-        allStaffList.addAll(staffRepository.getAllStaff());
-        allStaffList.addAll(clinicianRepository.getAll());
-        
-        // Loop through the staff list and separate them
-        for (Staff staff : allStaffList) {
-            // If an object is an instanceof Clinician, send it to the bottom table
-            if (staff instanceof Clinician) {
-                clinicianList.add((Clinician) staff);
-            } else {
-                // Otherwise, send it to the top table (Administrative Staff)
-                adminStaffList.add(staff);
-            }
+        facetIndex.clear();
+        for (Staff staff : staffRepository.getAllStaff()) {
+            facetIndex.put(staff);
+        }
+        for (Clinician clinician : clinicianRepository.getAll()) {
+            facetIndex.put(clinician);
         }
         
-        // Update both tables
-        view.setAdminStaff(adminStaffList);
-        view.setClinicians(clinicianList);
+        filterStaff();
     }
     
     private void filterStaff() {
-        String searchTerm = view.getSearchField().getText().toLowerCase().trim();
-        String selectedRole = (String) view.getFilterComboBox().getSelectedItem();
-        
-        List<Staff> filteredAdminStaffList = new ArrayList<>();
-        List<Clinician> filteredClinicianList = new ArrayList<>();
+        StaffFacetIndex.Result result = facetIndex.query(selectedFacets(), view.getSearchField().getText());
         
-        // Filter Administrative Staff
-        for (Staff staff : adminStaffList) {
-            boolean roleMatches = false;
-            if ("All".equals(selectedRole)) {
-                roleMatches = true;
-            } else {
-                String staffRole = staff.getRole();
-                if (staffRole != null && selectedRole.equals(staffRole)) {
-                    roleMatches = true;
-                }
-            }
-            
-            if (!roleMatches) {
-                continue;
-            }
-            
-            if (searchTerm.isEmpty()) {
-                filteredAdminStaffList.add(staff);
-            } else {
-                String staffId = staff.getStaffId() != null ? staff.getStaffId().toLowerCase() : "";
-                String firstName = staff.getFirstName() != null ? staff.getFirstName().toLowerCase() : "";
-                String lastName = staff.getLastName() != null ? staff.getLastName().toLowerCase() : "";
-                String email = staff.getEmail() != null ? staff.getEmail().toLowerCase() : "";
-                
-                if (staffId.contains(searchTerm) || 
-                    firstName.contains(searchTerm) || 
-                    lastName.contains(searchTerm) ||
-                    email.contains(searchTerm)) {
-                    filteredAdminStaffList.add(staff);
-                }
+        // Update both tables with filtered results
+        view.setAdminStaff(result.getAdminStaff());
+        view.setClinicians(result.getClinicians());
+        updateFacetCounts(result);
+    }
+    
+    // The facet values picked in the combo boxes ("All" is left out)
+    private Map<StaffFacetIndex.Facet, String> selectedFacets() {
+        Map<StaffFacetIndex.Facet, String> selected = new EnumMap<>(StaffFacetIndex.Facet.class);
+        for (StaffFacetIndex.Facet facet : StaffFacetIndex.Facet.values()) {
+            String value = view.getSelectedFacetValue(facet.getLabel());
+            if (value != null) {
+                selected.put(facet, value);
             }
         }
-        
-        // Filter Clinicians
-        for (Clinician clinician : clinicianList) {
-            boolean roleMatches = false;
-            if ("All".equals(selectedRole)) {
-                roleMatches = true;
-            } else {
-                // Check if clinician type matches
-                String clinicianType = "Clinician";
-                if (clinician instanceof model.GP) {
-                    clinicianType = "GP";
-                } else if (clinician instanceof model.Nurse) {
-                    clinicianType = "Nurse";
-                } else if (clinician instanceof model.Specialist) {
-                    clinicianType = "Consultant";
-                }
-                
-                if (selectedRole.equals(clinicianType) || 
-                    (selectedRole.equals("Nurse") && clinicianType.equals("Nurse")) ||
-                    (selectedRole.equals("Consultant") && clinicianType.equals("Consultant"))) {
-                    roleMatches = true;
-                }
-            }
-            
-            if (!roleMatches) {
-                continue;
-            }
-            
-            if (searchTerm.isEmpty()) {
-                filteredClinicianList.add(clinician);
-            } else {
-                String clinicianId = clinician.getClinicianId() != null ? clinician.getClinicianId().toLowerCase() : "";
-                String firstName = clinician.getFirstName() != null ? clinician.getFirstName().toLowerCase() : "";
-                String lastName = clinician.getLastName() != null ? clinician.getLastName().toLowerCase() : "";
-                String email = clinician.getEmail() != null ? clinician.getEmail().toLowerCase() : "";
-                
-                if (clinicianId.contains(searchTerm) || 
-                    firstName.contains(searchTerm) || 
-                    lastName.contains(searchTerm) ||
-                    email.contains(searchTerm)) {
-                    filteredClinicianList.add(clinician);
-                }
+        return selected;
+    }
+    
+    private void updateFacetCounts(StaffFacetIndex.Result result) {
+        updatingFacets = true;
+        try {
+            for (StaffFacetIndex.Facet facet : StaffFacetIndex.Facet.values()) {
+                String selected = view.getSelectedFacetValue(facet.getLabel());
+                view.setFacetOptions(facet.getLabel(), result.getCounts(facet), selected);
             }
+        } finally {
+            updatingFacets = false;
+        }
+    }
+    
+    // Keeps the index in step with the repository and updates only the affected row
+    private void onStaffChanged(RepositoryChangeEvent<Staff> event) {
+        Staff staff = event.getEntity();
+        if (staff instanceof Clinician) {
+            // Clinicians are shown from the clinician repository's events
+            return;
         }
         
-        // Update both tables with filtered results
-        view.setAdminStaff(filteredAdminStaffList);
-        view.setClinicians(filteredClinicianList);
+        String staffId = staff.getStaffId();
+        boolean matches = indexChange(staff, event.getType());
+        boolean shown = view.isAdminStaffShown(staffId);
+        if (shown && matches) {
+            view.updateAdminStaffRow(staff);
+        } else if (shown) {
+            view.removeAdminStaffRow(staffId);
+        } else if (matches) {
+            view.addAdminStaffRow(staff);
+        }
+        refreshFacetCounts();
+    }
+    
+    // Same as onStaffChanged but for the bottom clinician table
+    private void onClinicianChanged(RepositoryChangeEvent<Clinician> event) {
+        Clinician clinician = event.getEntity();
+        String clinicianId = clinician.getId();
+        boolean matches = indexChange(clinician, event.getType());
+        boolean shown = view.isClinicianShown(clinicianId);
+        if (shown && matches) {
+            view.updateClinicianRow(clinician);
+        } else if (shown) {
+            view.removeClinicianRow(clinicianId);
+        } else if (matches) {
+            view.addClinicianRow(clinician);
+        }
+        refreshFacetCounts();
+    }
+    
+    // Applies one insert/update/delete to the index and says whether the person should
+    // now be in the table
+    private boolean indexChange(Staff staff, RepositoryChangeEvent.Type type) {
+        if (type == RepositoryChangeEvent.Type.DELETED) {
+            facetIndex.remove(staff.getId());
+            return false;
+        }
+        facetIndex.put(staff);
+        return facetIndex.matches(staff.getId(), selectedFacets(), view.getSearchField().getText());
+    }
+    
+    // The counts change with every add/edit/remove even though the other rows don't
+    private void refreshFacetCounts() {
+        updateFacetCounts(facetIndex.query(selectedFacets(), view.getSearchField().getText()));
     }
     
     private class SearchFilterListener implements ActionListener {
@@ -205,9 +204,6 @@ public class StaffManagementController {
                 }
                 
                 staffRepository.addStaff(newStaff);
-                loadStaffTable();
-                filterStaff();
-                
                 dialog.dispose();
                 System.out.println("[Success]: Staff member added successfully!");
             });
@@ -248,9 +244,6 @@ public class StaffManagementController {
                 //staffRepository.addStaff(newClinician);
                 clinicianRepository.addAndAppend(newClinician);
                 
-                loadStaffTable();
-                filterStaff();
-                
                 dialog.dispose();
                 System.out.println("[Success]: Clinician added successfully!");
             });
@@ -316,9 +309,6 @@ public class StaffManagementController {
                     staffRepository.updateStaff(updatedClinician);
                     clinicianRepository.updateClinician(updatedClinician);
                     
-                    loadStaffTable();
-                    filterStaff();
-                    
                     dialog.dispose();
                     System.out.println("[Success]: Clinician updated successfully!");
                 });
@@ -355,9 +345,6 @@ public class StaffManagementController {
                     updatedStaff.setLineManager(staff.getLineManager());
                     
                     staffRepository.updateStaff(updatedStaff);
-                    loadStaffTable();
-                    filterStaff();
-                    
                     dialog.dispose();
                     System.out.println("[Success]: Staff member updated successfully!");
                 });
@@ -416,9 +403,6 @@ public class StaffManagementController {
                     }
                 }
                 
-                loadStaffTable();
-                filterStaff();
-                
                 System.out.println("[Success]: Staff member removed successfully.");
             }
         }
@@ -16,6 +16,8 @@ public class Appointment {
     private String notes;
     private String createdDate;
     private String lastModified;
+    // Row version - goes up by one on every saved change (used to detect conflicting edits)
+    private long version = 1;
     
     public Appointment() {
     }
@@ -170,4 +172,12 @@ public class Appointment {
     public void setLastModified(String lastModified) {
         this.lastModified = lastModified;
     }
-}
+    
+    public long getVersion() {
+        return version;
+    }
+    
+    public void setVersion(long version) {
+        this.version = version;
+    }
+}
\ No newline at end of file
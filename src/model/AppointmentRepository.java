@@ -1,24 +1,53 @@
 package model;
 
+import util.ChangeJournal;
 import util.CsvUtils;
+import util.DataFileLock;
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
 
 public class AppointmentRepository {
 
     private static AppointmentRepository instance;
     private final List<Appointment> appointments = new ArrayList<>();
+    // Index by appointment ID so lookups don't scan the whole list
+    private final Map<String, Appointment> byId = new HashMap<>();
     private final String csvPath;
+    private final RepositoryEventSupport<Appointment> events = new RepositoryEventSupport<>();
+    private final ChangeJournal journal;
+    // Our own place in the journal, so a booking can pick up other users' changes without
+    // re-reading the whole file (see catchUp())
+    private final ChangeJournal.Cursor journalCursor;
+    // Booked times per clinician/patient/facility, kept in step with 'appointments'
+    private final AppointmentSchedule schedule = new AppointmentSchedule();
+    // Only used for facility capacity when checking new bookings (optional)
+    private FacilityRepository facilityRepository;
+
+    private static final String HEADER =
+            "appointment_id,patient_id,clinician_id,facility_id,appointment_date," +
+            "appointment_time,duration_minutes,appointment_type,status,reason_for_visit," +
+            "notes,created_date,last_modified,version";
+    private static final int COLUMN_COUNT = 14;
+    private static final int VERSION_COLUMN = 13;
 
     public AppointmentRepository(String csvPath) {
         this.csvPath = csvPath;
+        this.journal = ChangeJournal.forDataFile(csvPath);
+        this.journalCursor = journal.cursor(csvPath);
         load();
+        // Added first so the schedule is already up to date when other listeners hear about a change
+        events.addListener(this::updateSchedule);
         if (instance == null) {
             instance = this;
         }
     }
-    
+
     public static synchronized AppointmentRepository getInstance(String csvPath) {
         if (instance == null) {
             instance = new AppointmentRepository(csvPath);
@@ -33,22 +62,129 @@ public class AppointmentRepository {
                 if (row == null || row.length == 0 || (row.length == 1 && row[0].trim().isEmpty())) {
                     continue;
                 }
-                
-                Appointment a = new Appointment(
-                        row[0], row[1], row[2], row[3], row[4], row[5],
-                        row[6], row[7], row[8], row[9], row[10], row[11], row[12]
-                );
+
+                Appointment a = fromRow(row);
                 appointments.add(a);
+                byId.put(key(a.getId()), a);
+                schedule.put(a);
             }
         } catch (IOException ex) {
             System.err.println("Failed to load appointments: " + ex.getMessage());
         }
     }
 
+    // Builds an appointment from one CSV row (rows written before the version column existed count as version 1)
+    private Appointment fromRow(String[] row) {
+        String[] safe = new String[COLUMN_COUNT];
+        for (int i = 0; i < COLUMN_COUNT; i++) {
+            safe[i] = (i < row.length) ? row[i] : "";
+        }
+
+        Appointment a = new Appointment(
+                safe[0], safe[1], safe[2], safe[3], safe[4], safe[5],
+                safe[6], safe[7], safe[8], safe[9], safe[10], safe[11], safe[12]
+        );
+        a.setVersion(parseVersion(row));
+        return a;
+    }
+
+    private String[] toRow(Appointment a) {
+        return new String[]{
+                a.getId(), a.getPatientId(), a.getClinicianId(), a.getFacilityId(),
+                a.getAppointmentDate(), a.getAppointmentTime(), a.getDurationMinutes(),
+                a.getAppointmentType(), a.getStatus(), a.getReasonForVisit(),
+                a.getNotes(), a.getCreatedDate(), a.getLastModified(),
+                String.valueOf(a.getVersion())
+        };
+    }
+
+    private static long parseVersion(String[] row) {
+        if (row.length <= VERSION_COLUMN) return 1;
+        try {
+            return Long.parseLong(row[VERSION_COLUMN].trim());
+        } catch (NumberFormatException ex) {
+            return 1;
+        }
+    }
+
+    // Position of an appointment ID in rows read straight from the file, or -1
+    private static int indexOfRow(List<String[]> rows, String id) {
+        for (int i = 0; i < rows.size(); i++) {
+            if (rows.get(i).length > 0 && rows.get(i)[0].trim().equals(id.trim())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String key(String id) {
+        return id != null ? id.trim() : "";
+    }
+
+    // Puts another user's copy in place of ours. The old object is left as it was (version
+    // included), so a dialog still editing it gets a version conflict when it saves instead
+    // of quietly overwriting the other user's change.
+    private void replace(Appointment current, Appointment fresh) {
+        appointments.set(appointments.indexOf(current), fresh);
+        byId.put(key(fresh.getId()), fresh);
+    }
+
     public List<Appointment> getAll() {
         return appointments;
     }
 
+    public AppointmentSchedule getSchedule() {
+        return schedule;
+    }
+
+    public void setFacilityRepository(FacilityRepository facilityRepository) {
+        this.facilityRepository = facilityRepository;
+    }
+
+    private int capacityOf(String facilityId) {
+        Facility facility = facilityRepository != null ? facilityRepository.findById(facilityId) : null;
+        return facility != null ? facility.getCapacity() : 0;
+    }
+
+    // Throws if 'a' would clash with what is booked now, without saving anything (used for
+    // checking the occurrences of a new repeating appointment)
+    public void checkBooking(Appointment a) throws BookingConflictException {
+        schedule.checkBooking(a, capacityOf(a.getFacilityId()));
+    }
+
+    // True if the change from what's on disk moves the appointment in time or to different people/places
+    private static boolean changesBooking(String[] diskRow, Appointment a) {
+        String[] row = new String[COLUMN_COUNT];
+        for (int i = 0; i < COLUMN_COUNT; i++) {
+            row[i] = (i < diskRow.length && diskRow[i] != null) ? diskRow[i].trim() : "";
+        }
+        return !row[1].equals(trim(a.getPatientId())) || !row[2].equals(trim(a.getClinicianId()))
+                || !row[3].equals(trim(a.getFacilityId())) || !row[4].equals(trim(a.getAppointmentDate()))
+                || !row[5].equals(trim(a.getAppointmentTime())) || !row[6].equals(trim(a.getDurationMinutes()))
+                || !row[8].equals(trim(a.getStatus()));
+    }
+
+    private static String trim(String text) {
+        return text != null ? text.trim() : "";
+    }
+
+    private void updateSchedule(RepositoryChangeEvent<Appointment> event) {
+        if (event.getType() == RepositoryChangeEvent.Type.DELETED) {
+            schedule.remove(event.getEntity().getId());
+        } else {
+            schedule.put(event.getEntity());
+        }
+    }
+
+    // Listeners are told about every appointment that is added, updated or deleted
+    public void addChangeListener(RepositoryChangeListener<Appointment> listener) {
+        events.addListener(listener);
+    }
+
+    public void removeChangeListener(RepositoryChangeListener<Appointment> listener) {
+        events.removeListener(listener);
+    }
+
     public String generateNewId() {
         int max = 0;
         for (Appointment a : appointments) {
@@ -60,74 +196,260 @@ public class AppointmentRepository {
         return String.format("A%03d", max + 1);
     }
 
-    public void add(Appointment a) {
-        appointments.add(a);
-        saveAll();
+    // Brings memory up to date with the file before a change is checked against it (call with
+    // the file lock held). Other users' changes since last time come from the journal, so a
+    // booking costs the few lines written since rather than a read of the whole file; the
+    // file is only re-read when the journal can't account for everything on disk.
+    private void catchUp() throws IOException {
+        List<ChangeJournal.Entry> entries = journalCursor.read();
+        if (entries == null) {
+            applyExternalChanges(CsvUtils.readCsv(csvPath), null);
+            if (journalCursor.sawUnjournalledWrite()) {
+                journal.append(csvPath, ChangeJournal.RELOAD, null);
+            }
+            journalCursor.markUpToDate();
+            return;
+        }
+        for (ChangeJournal.Entry entry : entries) {
+            applyJournalEntry(entry);
+        }
     }
 
-    public void addAndAppend(Appointment a) {
-        appointments.add(a);
+    // Appends just this row to the file (other users' rows on disk are left alone).
+    // Rejected if the clinician or patient is already booked then, or the facility is full.
+    // The check and the write happen under the file lock, after picking up anything other
+    // users wrote, so two people can't both book the same slot. If the row can't be written
+    // nothing changes in memory either.
+    public synchronized void add(Appointment a) throws BookingConflictException {
+        // Quick check against what we already know before touching the file
+        schedule.checkBooking(a, capacityOf(a.getFacilityId()));
+
+        DataFileLock lock = DataFileLock.forFile(csvPath);
         try {
-            CsvUtils.appendLine(csvPath, new String[]{
-                    a.getId(), a.getPatientId(), a.getClinicianId(), a.getFacilityId(),
-                    a.getAppointmentDate(), a.getAppointmentTime(), a.getDurationMinutes(),
-                    a.getAppointmentType(), a.getStatus(), a.getReasonForVisit(),
-                    a.getNotes(), a.getCreatedDate(), a.getLastModified()
-            });
+            lock.acquire();
+            try {
+                catchUp();
+                if (byId.containsKey(key(a.getId()))) {
+                    // Another user booked with this ID since we loaded - take the next free one
+                    // (before the check, which would otherwise take their booking for ours)
+                    a.setId(generateNewId());
+                }
+                schedule.checkBooking(a, capacityOf(a.getFacilityId()));
+                CsvUtils.appendLine(csvPath, CsvUtils.escapeRow(toRow(a)));
+                journal.append(csvPath, ChangeJournal.UPSERT, toRow(a));
+            } finally {
+                lock.release();
+            }
         } catch (IOException ex) {
             System.err.println("Failed to append appointment: " + ex.getMessage());
+            return;
         }
+        appointments.add(a);
+        byId.put(key(a.getId()), a);
+        events.fireInserted(a);
     }
 
-    public void update(Appointment updated) {
+    // Books a whole batch with one lock, one read and one append, instead of one of each per
+    // appointment. Each one is checked like add() - including against the ones before it in
+    // the batch - and any that clash are left out and handed back. IDs are given out here,
+    // replacing whatever the appointments had. If the rows can't be written the whole batch
+    // is handed back.
+    public synchronized List<Appointment> addAll(List<Appointment> batch) {
+        List<Appointment> added = new ArrayList<>();
+        List<Appointment> rejected = new ArrayList<>();
+
+        DataFileLock lock = DataFileLock.forFile(csvPath);
+        try {
+            lock.acquire();
+            try {
+                catchUp();
+                int nextId = Integer.parseInt(generateNewId().substring(1));
+
+                List<String[]> newRows = new ArrayList<>();
+                for (Appointment a : batch) {
+                    try {
+                        schedule.checkBooking(a, capacityOf(a.getFacilityId()));
+                    } catch (BookingConflictException ex) {
+                        rejected.add(a);
+                        continue;
+                    }
+                    a.setId(String.format("A%03d", nextId++));
+                    // Into the schedule now so the rest of the batch is checked against it
+                    schedule.put(a);
+                    added.add(a);
+                    newRows.add(CsvUtils.escapeRow(toRow(a)));
+                }
+
+                if (!newRows.isEmpty()) {
+                    CsvUtils.appendLines(csvPath, newRows);
+                    // One "reload" instead of an entry per appointment - other users re-read the file
+                    journal.append(csvPath, ChangeJournal.RELOAD, null);
+                }
+            } finally {
+                lock.release();
+            }
+        } catch (IOException ex) {
+            System.err.println("Failed to append appointments: " + ex.getMessage());
+            // Not saved - take them back out of the schedule
+            for (Appointment a : added) {
+                schedule.remove(a.getId());
+            }
+            return new ArrayList<>(batch);
+        }
+
+        for (Appointment a : added) {
+            appointments.add(a);
+            byId.put(key(a.getId()), a);
+            events.fireInserted(a);
+        }
+        return rejected;
+    }
+
+    public void addAndAppend(Appointment a) throws BookingConflictException {
+        add(a);
+    }
+
+    public void update(Appointment updated) throws VersionConflictException, BookingConflictException {
         updateAppointment(updated);
     }
-    
-    public void updateAppointment(Appointment updated) {
+
+    // Optimistic concurrency: the row is only written if its version on disk is still the
+    // version we loaded. Otherwise the latest copy is loaded into memory and the save is rejected.
+    // A change of time, people or place is also checked for double-booking like add() is.
+    public synchronized void updateAppointment(Appointment updated) throws VersionConflictException, BookingConflictException {
         if (updated == null) {
             System.err.println("Cannot update null appointment.");
             return;
         }
-        
-        for (int i = 0; i < appointments.size(); i++) {
-            if (appointments.get(i).getId().equals(updated.getId())) {
-                appointments.set(i, updated);
-                saveAll();
-                System.out.println("Successfully updated appointment " + updated.getId());
-                return;
+
+        if (findById(updated.getId()) == null) {
+            System.err.println("Appointment with ID " + updated.getId() + " not found for update.");
+            return;
+        }
+
+        // The lock is held from reading the version until the new row is written, so no
+        // other process can slip a write in between
+        DataFileLock lock = DataFileLock.forFile(csvPath);
+        String[] savedRow = null;
+        try {
+            lock.acquire();
+            try {
+                // Other users' changes first, so the booking check below sees them
+                catchUp();
+                List<String[]> diskRows = CsvUtils.readCsv(csvPath);
+                int row = indexOfRow(diskRows, updated.getId());
+                if (row < 0) {
+                    Appointment removed = byId.remove(key(updated.getId()));
+                    if (removed != null) {
+                        appointments.remove(removed);
+                        events.fireDeleted(removed);
+                    }
+                    throw new VersionConflictException(updated.getId(),
+                            "Appointment " + updated.getId() + " was deleted by another user. Your changes were not saved.");
+                }
+
+                long diskVersion = parseVersion(diskRows.get(row));
+                if (diskVersion != updated.getVersion()) {
+                    Appointment latest = fromRow(diskRows.get(row));
+                    replace(findById(updated.getId()), latest);
+                    events.fireUpdated(latest);
+                    throw new VersionConflictException(updated.getId(),
+                            "Appointment " + updated.getId() + " was changed by another user. " +
+                            "Your changes were not saved and the latest version has been loaded.");
+                }
+
+                if (changesBooking(diskRows.get(row), updated)) {
+                    try {
+                        schedule.checkBooking(updated, capacityOf(updated.getFacilityId()));
+                    } catch (BookingConflictException ex) {
+                        // The caller may have changed our in-memory copy already - put it back
+                        Appointment saved = fromRow(diskRows.get(row));
+                        replace(findById(saved.getId()), saved);
+                        events.fireUpdated(saved);
+                        throw ex;
+                    }
+                }
+
+                savedRow = diskRows.get(row);
+                updated.setVersion(diskVersion + 1);
+                diskRows.set(row, toRow(updated));
+                CsvUtils.writeCsv(csvPath, HEADER, diskRows);
+                journal.append(csvPath, ChangeJournal.UPSERT, toRow(updated));
+            } finally {
+                lock.release();
+            }
+        } catch (IOException ex) {
+            System.err.println("Failed to save appointments: " + ex.getMessage());
+            if (savedRow != null) {
+                // Not saved - memory goes back to what is on disk, as for a rejected change
+                updated.setVersion(parseVersion(savedRow));
+                Appointment saved = fromRow(savedRow);
+                replace(findById(saved.getId()), saved);
+                events.fireUpdated(saved);
             }
+            return;
         }
-        
-        System.err.println("Appointment with ID " + updated.getId() + " not found for update.");
+
+        replace(findById(updated.getId()), updated);
+        events.fireUpdated(updated);
+        System.out.println("Successfully updated appointment " + updated.getId());
     }
 
-    public void delete(String appointmentId) {
-        Appointment toRemove = null;
-        for (Appointment a : appointments) {
-            if (a.getId().equals(appointmentId)) {
-                toRemove = a;
-                break;
+    // Deleting is rejected too if someone else changed the appointment since we loaded it
+    public synchronized void delete(String appointmentId) throws VersionConflictException {
+        Appointment toRemove = findById(appointmentId);
+        if (toRemove == null) {
+            return;
+        }
+
+        DataFileLock lock = DataFileLock.forFile(csvPath);
+        try {
+            lock.acquire();
+            try {
+                catchUp();
+                List<String[]> diskRows = CsvUtils.readCsv(csvPath);
+                int row = indexOfRow(diskRows, appointmentId);
+                if (row >= 0) {
+                    long diskVersion = parseVersion(diskRows.get(row));
+                    if (diskVersion != toRemove.getVersion()) {
+                        Appointment latest = fromRow(diskRows.get(row));
+                        replace(findById(appointmentId), latest);
+                        events.fireUpdated(latest);
+                        throw new VersionConflictException(appointmentId,
+                                "Appointment " + appointmentId + " was changed by another user. " +
+                                "Please check the latest version before cancelling it.");
+                    }
+                    diskRows.remove(row);
+                    CsvUtils.writeCsv(csvPath, HEADER, diskRows);
+                    journal.append(csvPath, ChangeJournal.DELETE, new String[]{appointmentId});
+                }
+            } finally {
+                lock.release();
             }
+        } catch (IOException ex) {
+            System.err.println("Failed to save appointments: " + ex.getMessage());
+            return;
         }
-        if (toRemove != null) {
-            appointments.remove(toRemove);
-            saveAll();
+
+        // Already gone if catchUp() took out another user's delete
+        Appointment removed = byId.remove(key(appointmentId));
+        if (removed != null) {
+            appointments.remove(removed);
+            events.fireDeleted(removed);
         }
     }
 
-    public void remove(Appointment a) {
-        appointments.remove(a);
-        saveAll();
+    public void remove(Appointment a) throws VersionConflictException {
+        if (a != null) {
+            delete(a.getId());
+        }
     }
 
     public Appointment findById(String id) {
         if (id == null) return null;
-        String tid = id.trim();
-        for (Appointment a : appointments)
-            if (a.getId().trim().equals(tid)) return a;
-        return null;
+        return byId.get(key(id));
     }
-    
+
     // Get all appointments for a patient
     public List<Appointment> getByPatientId(String patientId) {
         List<Appointment> result = new ArrayList<>();
@@ -144,69 +466,185 @@ public class AppointmentRepository {
         }
         return result;
     }
-    
+
     public void deleteByPatientId(String patientId) {
         deleteAllByPatientId(patientId);
     }
-    
+
     // Delete all appointments for a patient
     public void deleteAllByPatientId(String patientId) {
         if (patientId == null || patientId.isEmpty()) {
             System.err.println("Cannot delete appointments: patient ID is null or empty.");
             return;
         }
-        
+
         String trimmedId = patientId.trim();
-        int removedCount = 0;
-        for (Appointment a : appointments) {
-            String targetId = a.getPatientId() != null ? a.getPatientId().trim() : "";
-            if (trimmedId.equalsIgnoreCase(targetId)) {
-                removedCount++;
-            }
-        }
-        
+        List<Appointment> removed = new ArrayList<>();
+
         appointments.removeIf(appointment -> {
             String targetId = appointment.getPatientId() != null ? appointment.getPatientId().trim() : "";
-            return trimmedId.equalsIgnoreCase(targetId);
+            if (trimmedId.equalsIgnoreCase(targetId)) {
+                removed.add(appointment);
+                byId.remove(key(appointment.getId()));
+                return true;
+            }
+            return false;
         });
-        saveAll();
-        
-        System.out.println("Deleted " + removedCount + " appointment(s) for patient " + patientId);
-    }
 
-    public void saveAll() {
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(csvPath))) {
-            bw.write("appointment_id,patient_id,clinician_id,facility_id,appointment_date,");
-            bw.write("appointment_time,duration_minutes,appointment_type,status,reason_for_visit,");
-            bw.write("notes,created_date,last_modified");
-            bw.newLine();
-            
-            for (Appointment a : appointments) {
-                bw.write(escapeCsv(a.getId()) + ",");
-                bw.write(escapeCsv(a.getPatientId()) + ",");
-                bw.write(escapeCsv(a.getClinicianId()) + ",");
-                bw.write(escapeCsv(a.getFacilityId()) + ",");
-                bw.write(escapeCsv(a.getAppointmentDate()) + ",");
-                bw.write(escapeCsv(a.getAppointmentTime()) + ",");
-                bw.write(escapeCsv(a.getDurationMinutes()) + ",");
-                bw.write(escapeCsv(a.getAppointmentType()) + ",");
-                bw.write(escapeCsv(a.getStatus()) + ",");
-                bw.write(escapeCsv(a.getReasonForVisit()) + ",");
-                bw.write(escapeCsv(a.getNotes()) + ",");
-                bw.write(escapeCsv(a.getCreatedDate()) + ",");
-                bw.write(escapeCsv(a.getLastModified()));
-                bw.newLine();
+        // Remove the patient's rows from the file as it is now, not from our copy
+        DataFileLock lock = DataFileLock.forFile(csvPath);
+        try {
+            lock.acquire();
+            try {
+                List<String[]> diskRows = CsvUtils.readCsv(csvPath);
+                List<String> removedIds = new ArrayList<>();
+                diskRows.removeIf(row -> {
+                    if (row.length > 1 && trimmedId.equalsIgnoreCase(row[1].trim())) {
+                        removedIds.add(row[0].trim());
+                        return true;
+                    }
+                    return false;
+                });
+                CsvUtils.writeCsv(csvPath, HEADER, diskRows);
+                for (String id : removedIds) {
+                    journal.append(csvPath, ChangeJournal.DELETE, new String[]{id});
+                }
+            } finally {
+                lock.release();
             }
         } catch (IOException ex) {
             System.err.println("Failed to save appointments: " + ex.getMessage());
         }
+
+        for (Appointment a : removed) {
+            events.fireDeleted(a);
+        }
+
+        System.out.println("Deleted " + removed.size() + " appointment(s) for patient " + patientId);
     }
-    
-    private String escapeCsv(String value) {
-        if (value == null) return "";
-        if (value.contains(",") || value.contains("\"")) {
-            return "\"" + value.replace("\"", "\"\"") + "\"";
+
+    // Re-reads the file and applies only the rows that differ from what we have in memory
+    public void reloadChanges() {
+        try {
+            applyExternalChanges(CsvUtils.readCsv(csvPath));
+        } catch (IOException ex) {
+            System.err.println("Failed to reload appointments: " + ex.getMessage());
+        }
+    }
+
+    // Applies one change another process recorded in the shared journal
+    public void applyJournalEntry(ChangeJournal.Entry entry) {
+        String[] row = entry.getRow();
+        switch (entry.getOp()) {
+            case ChangeJournal.UPSERT:
+                applyExternalRow(row);
+                break;
+            case ChangeJournal.DELETE:
+                Appointment removed = row.length > 0 ? byId.remove(key(row[0])) : null;
+                if (removed != null) {
+                    appointments.remove(removed);
+                    events.fireDeleted(removed);
+                }
+                break;
+            default:
+                reloadChanges();
+        }
+    }
+
+    private void applyExternalRow(String[] row) {
+        if (row.length == 0 || row[0].trim().isEmpty()) {
+            return;
+        }
+        Appointment fresh = fromRow(row);
+        Appointment current = byId.get(key(fresh.getId()));
+        if (current == null) {
+            appointments.add(fresh);
+            byId.put(key(fresh.getId()), fresh);
+            events.fireInserted(fresh);
+        } else if (fresh.getVersion() >= current.getVersion() && !Arrays.equals(toRow(current), toRow(fresh))) {
+            // An entry catchUp() already applied can arrive again from the watcher after a
+            // newer save of ours - an older version never replaces a newer one
+            replace(current, fresh);
+            events.fireUpdated(fresh);
+        }
+    }
+
+    // Diffs rows read from the file against memory by appointment ID.
+    // New IDs are inserted, changed rows replace the object we had (see replace()) and
+    // missing IDs are removed - each one raises its own change event.
+    public void applyExternalChanges(List<String[]> rows) {
+        applyExternalChanges(rows, null);
+    }
+
+    // Same, but leaves the appointment 'skipId' alone (one we're in the middle of saving)
+    private void applyExternalChanges(List<String[]> rows, String skipId) {
+        Map<String, Appointment> onDisk = new LinkedHashMap<>();
+        for (String[] row : rows) {
+            if (row == null || row.length == 0 || row[0].trim().isEmpty()) {
+                continue;
+            }
+            Appointment a = fromRow(row);
+            if (skipId == null || !key(a.getId()).equals(key(skipId))) {
+                onDisk.put(key(a.getId()), a);
+            }
+        }
+
+        List<Appointment> inserted = new ArrayList<>();
+        List<Appointment> updated = new ArrayList<>();
+        List<Appointment> deleted = new ArrayList<>();
+
+        ListIterator<Appointment> it = appointments.listIterator();
+        while (it.hasNext()) {
+            Appointment current = it.next();
+            Appointment fresh = onDisk.get(key(current.getId()));
+            if (fresh == null) {
+                if (skipId == null || !key(current.getId()).equals(key(skipId))) {
+                    it.remove();
+                    byId.remove(key(current.getId()));
+                    deleted.add(current);
+                }
+            } else if (!Arrays.equals(toRow(current), toRow(fresh))) {
+                it.set(fresh);
+                byId.put(key(fresh.getId()), fresh);
+                updated.add(fresh);
+            }
+        }
+
+        for (Map.Entry<String, Appointment> entry : onDisk.entrySet()) {
+            if (!byId.containsKey(entry.getKey())) {
+                appointments.add(entry.getValue());
+                byId.put(entry.getKey(), entry.getValue());
+                inserted.add(entry.getValue());
+            }
+        }
+
+        for (Appointment a : deleted) events.fireDeleted(a);
+        for (Appointment a : inserted) events.fireInserted(a);
+        for (Appointment a : updated) events.fireUpdated(a);
+
+        if (!inserted.isEmpty() || !updated.isEmpty() || !deleted.isEmpty()) {
+            System.out.println("Reloaded appointments from " + csvPath + ": " + inserted.size() + " added, "
+                    + updated.size() + " changed, " + deleted.size() + " removed");
+        }
+    }
+
+    // Writes every appointment in memory over the file (overwrites other users' changes)
+    public void saveAll() {
+        List<String[]> rows = new ArrayList<>();
+        for (Appointment a : appointments) {
+            rows.add(toRow(a));
+        }
+        DataFileLock lock = DataFileLock.forFile(csvPath);
+        try {
+            lock.acquire();
+            try {
+                CsvUtils.writeCsv(csvPath, HEADER, rows);
+                journal.append(csvPath, ChangeJournal.RELOAD, null);
+            } finally {
+                lock.release();
+            }
+        } catch (IOException ex) {
+            System.err.println("Failed to save appointments: " + ex.getMessage());
         }
-        return value;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,437 @@
+package model;
+
+import util.IntervalTree;
+import util.PrimitiveSort;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Booked appointment times, kept per clinician, patient and facility in interval trees so
+// "is this clinician free 10:00-10:30 on Tuesday?" doesn't mean scanning every appointment.
+//
+// AppointmentRepository keeps this up to date. Times are whole minutes counted from
+// 1970-01-01 00:00 so they fit in an int; cancelled appointments and ones with an
+// unreadable date or time don't take up any time.
+//
+// Repeating appointments (AppointmentSeriesRepository keeps those here too) aren't put in
+// the trees one occurrence at a time - a series has no end, so the queries ask each of the
+// clinician's/patient's/facility's series for its occurrences in the range being checked.
+public class AppointmentSchedule {
+
+    // Used when an appointment's duration is blank or not a number
+    public static final int DEFAULT_DURATION_MINUTES = 15;
+
+    // Where one appointment went in the trees, so it can be taken out again even after the
+    // Appointment object itself has been changed
+    private static class Booking {
+        final String clinicianKey;
+        final String patientKey;
+        final String facilityKey;
+        final int start;
+        final int end;
+
+        Booking(String clinicianKey, String patientKey, String facilityKey, int start, int end) {
+            this.clinicianKey = clinicianKey;
+            this.patientKey = patientKey;
+            this.facilityKey = facilityKey;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    private final Map<String, IntervalTree<String>> byClinician = new HashMap<>();
+    private final Map<String, IntervalTree<String>> byPatient = new HashMap<>();
+    private final Map<String, IntervalTree<String>> byFacility = new HashMap<>();
+    private final Map<String, Booking> bookings = new HashMap<>();
+    // Copies of each series (so a later change to the real one can't leave stale entries
+    // behind), and which ones belong to each clinician/patient/facility
+    private final Map<String, AppointmentSeries> series = new HashMap<>();
+    private final Map<String, List<AppointmentSeries>> seriesByClinician = new HashMap<>();
+    private final Map<String, List<AppointmentSeries>> seriesByPatient = new HashMap<>();
+    private final Map<String, List<AppointmentSeries>> seriesByFacility = new HashMap<>();
+    // Booked minutes per facility per hour, for utilization reports
+    private final FacilityUtilization utilization = new FacilityUtilization();
+
+    // Adds the appointment, or moves it if it was already here
+    public synchronized void put(Appointment a) {
+        String id = key(a.getId());
+        remove(id);
+        if ("Cancelled".equalsIgnoreCase(trim(a.getStatus()))) {
+            return;
+        }
+        int start = startMinute(a.getAppointmentDate(), a.getAppointmentTime());
+        if (start < 0) {
+            return;
+        }
+        int end = start + durationOf(a);
+
+        Booking booking = new Booking(key(a.getClinicianId()), key(a.getPatientId()), key(a.getFacilityId()), start, end);
+        bookings.put(id, booking);
+        utilization.add(booking.facilityKey, start, end);
+        add(byClinician, booking.clinicianKey, booking, id);
+        add(byPatient, booking.patientKey, booking, id);
+        add(byFacility, booking.facilityKey, booking, id);
+    }
+
+    public synchronized void remove(String appointmentId) {
+        String id = key(appointmentId);
+        Booking booking = bookings.remove(id);
+        if (booking == null) {
+            return;
+        }
+        remove(byClinician, booking.clinicianKey, booking, id);
+        remove(byPatient, booking.patientKey, booking, id);
+        remove(byFacility, booking.facilityKey, booking, id);
+        utilization.remove(booking.facilityKey, booking.start, booking.end);
+    }
+
+    // Adds a repeating appointment, or replaces it if it was already here
+    public synchronized void putSeries(AppointmentSeries s) {
+        removeSeries(s.getId());
+        AppointmentSeries copy = s.copy();
+        series.put(key(copy.getId()), copy);
+        addSeries(seriesByClinician, key(copy.getClinicianId()), copy);
+        addSeries(seriesByPatient, key(copy.getPatientId()), copy);
+        addSeries(seriesByFacility, key(copy.getFacilityId()), copy);
+    }
+
+    public synchronized void removeSeries(String seriesId) {
+        AppointmentSeries copy = series.remove(key(seriesId));
+        if (copy == null) {
+            return;
+        }
+        removeSeries(seriesByClinician, key(copy.getClinicianId()), copy);
+        removeSeries(seriesByPatient, key(copy.getPatientId()), copy);
+        removeSeries(seriesByFacility, key(copy.getFacilityId()), copy);
+    }
+
+    public synchronized void clear() {
+        byClinician.clear();
+        byPatient.clear();
+        byFacility.clear();
+        bookings.clear();
+        series.clear();
+        seriesByClinician.clear();
+        seriesByPatient.clear();
+        seriesByFacility.clear();
+        utilization.clear();
+    }
+
+    public synchronized int size() {
+        return bookings.size();
+    }
+
+    // --- Listing ---
+
+    // IDs of the clinician's appointments starting in [start, end), in time order
+    public synchronized List<String> clinicianAppointmentsStarting(String clinicianId, int start, int end) {
+        return startingIn(byClinician.get(key(clinicianId)), start, end);
+    }
+
+    public synchronized List<String> facilityAppointmentsStarting(String facilityId, int start, int end) {
+        return startingIn(byFacility.get(key(facilityId)), start, end);
+    }
+
+    // The clinician's (or facility's) repeating appointments, as copies
+    public synchronized List<AppointmentSeries> clinicianSeries(String clinicianId) {
+        List<AppointmentSeries> list = seriesByClinician.get(key(clinicianId));
+        return list != null ? new ArrayList<>(list) : new ArrayList<>();
+    }
+
+    public synchronized List<AppointmentSeries> facilitySeries(String facilityId) {
+        List<AppointmentSeries> list = seriesByFacility.get(key(facilityId));
+        return list != null ? new ArrayList<>(list) : new ArrayList<>();
+    }
+
+    private static List<String> startingIn(IntervalTree<String> tree, int start, int end) {
+        List<String> ids = new ArrayList<>();
+        if (tree != null) {
+            // Overlapping isn't enough - one that started earlier belongs to the range before
+            tree.forEachOverlap(start, end, (s, e, id) -> {
+                if (s >= start) {
+                    ids.add(id);
+                }
+                return true;
+            });
+        }
+        return ids;
+    }
+
+    // Minute the clinician is next free from if they're busy at some point in [start, end),
+    // or 'start' if they're free the whole time
+    public synchronized int clinicianFreeFrom(String clinicianId, int start, int end) {
+        IntervalTree<String> tree = byClinician.get(key(clinicianId));
+        int free = tree != null ? tree.latestOverlapEnd(start, end) : start;
+        return Math.max(free, seriesFreeFrom(seriesByClinician.get(key(clinicianId)), start, end));
+    }
+
+    public synchronized int patientFreeFrom(String patientId, int start, int end) {
+        IntervalTree<String> tree = byPatient.get(key(patientId));
+        int free = tree != null ? tree.latestOverlapEnd(start, end) : start;
+        return Math.max(free, seriesFreeFrom(seriesByPatient.get(key(patientId)), start, end));
+    }
+
+    // How many appointments at the facility overlap [start, end), counting no higher than 'limit'
+    public synchronized int facilityBookings(String facilityId, int start, int end, int limit) {
+        IntervalTree<String> tree = byFacility.get(key(facilityId));
+        int[] count = {tree != null ? tree.countOverlaps(start, end, limit) : 0};
+        List<AppointmentSeries> list = seriesByFacility.get(key(facilityId));
+        if (list != null) {
+            for (AppointmentSeries s : list) {
+                if (count[0] >= limit) {
+                    break;
+                }
+                s.forEachOverlap(start, end, (os, oe, id) -> ++count[0] < limit);
+            }
+        }
+        return Math.min(count[0], limit);
+    }
+
+    // Latest end of any occurrence of these series overlapping [start, end), or 'start'
+    private static int seriesFreeFrom(List<AppointmentSeries> list, int start, int end) {
+        if (list == null) {
+            return start;
+        }
+        int[] latest = {start};
+        for (AppointmentSeries s : list) {
+            s.forEachOverlap(start, end, (os, oe, id) -> {
+                latest[0] = Math.max(latest[0], oe);
+                return true;
+            });
+        }
+        return latest[0];
+    }
+
+    // --- Utilization ---
+
+    // Minutes booked at the facility on the days [from, to]. One-off bookings come from the
+    // running counters; repeating ones are worked out for just those days.
+    public synchronized long facilityBookedMinutes(String facilityId, LocalDate from, LocalDate to) {
+        long[] total = {utilization.bookedMinutes(facilityId, from, to)};
+        int start = (int) (from.toEpochDay() * OpeningHours.MINUTES_PER_DAY);
+        int end = (int) ((to.toEpochDay() + 1) * OpeningHours.MINUTES_PER_DAY);
+        List<AppointmentSeries> list = seriesByFacility.get(key(facilityId));
+        if (list != null) {
+            for (AppointmentSeries s : list) {
+                s.forEachOverlap(start, end, (os, oe, id) -> {
+                    total[0] += Math.min(oe, end) - Math.max(os, start);
+                    return true;
+                });
+            }
+        }
+        return total[0];
+    }
+
+    // Minutes booked at the facility in each hour of the day (index 0 = midnight to 1am)
+    public synchronized int[] facilityBookedMinutesByHour(String facilityId, LocalDate day) {
+        int[] byHour = utilization.bookedMinutesByHour(facilityId, day);
+        int dayStart = (int) (day.toEpochDay() * OpeningHours.MINUTES_PER_DAY);
+        int dayEnd = dayStart + OpeningHours.MINUTES_PER_DAY;
+        List<AppointmentSeries> list = seriesByFacility.get(key(facilityId));
+        if (list != null) {
+            for (AppointmentSeries s : list) {
+                s.forEachOverlap(dayStart, dayEnd, (os, oe, id) -> {
+                    for (int h = Math.max(os, dayStart); h < Math.min(oe, dayEnd); h = (h / 60 + 1) * 60) {
+                        byHour[(h - dayStart) / 60] += Math.min(Math.min(oe, dayEnd), (h / 60 + 1) * 60) - h;
+                    }
+                    return true;
+                });
+            }
+        }
+        return byHour;
+    }
+
+    // Share of the facility's capacity booked on the days [from, to] (1.0 = full), or -1 if
+    // it isn't open at all then
+    public double facilityUtilization(Facility facility, LocalDate from, LocalDate to) {
+        long capacity = FacilityUtilization.capacityMinutes(facility, from, to);
+        return capacity > 0 ? (double) facilityBookedMinutes(facility.getFacilityId(), from, to) / capacity : -1;
+    }
+
+    // Throws if booking 'a' would double-book its clinician or patient, or take its facility
+    // over 'facilityCapacity' overlapping appointments (0 or less = no limit). The
+    // appointment's own earlier booking doesn't count, so this works for reschedules too.
+    public synchronized void checkBooking(Appointment a, int facilityCapacity) throws BookingConflictException {
+        if ("Cancelled".equalsIgnoreCase(trim(a.getStatus()))) {
+            return;
+        }
+        int start = startMinute(a.getAppointmentDate(), a.getAppointmentTime());
+        if (start < 0) {
+            return;
+        }
+        int end = start + durationOf(a);
+        String ownId = key(a.getId());
+
+        String clash = firstOverlap(byClinician.get(key(a.getClinicianId())), seriesByClinician.get(key(a.getClinicianId())),
+            start, end, ownId);
+        if (clash != null) {
+            throw new BookingConflictException(BookingConflictException.Reason.CLINICIAN_BUSY, clash,
+                "Clinician " + a.getClinicianId() + " already has appointment " + clash + " " + describe(clash) + ".");
+        }
+        clash = firstOverlap(byPatient.get(key(a.getPatientId())), seriesByPatient.get(key(a.getPatientId())),
+            start, end, ownId);
+        if (clash != null) {
+            throw new BookingConflictException(BookingConflictException.Reason.PATIENT_BUSY, clash,
+                "Patient " + a.getPatientId() + " already has appointment " + clash + " " + describe(clash) + ".");
+        }
+        if (facilityCapacity > 0) {
+            // Our own booking doesn't count - it is still in here for a reschedule
+            int[] others = new int[1];
+            IntervalTree.Visitor<String> counter = (s, e, id) -> {
+                if (!id.equals(ownId)) {
+                    others[0]++;
+                }
+                return others[0] < facilityCapacity;
+            };
+            IntervalTree<String> facilityTree = byFacility.get(key(a.getFacilityId()));
+            if (facilityTree != null) {
+                facilityTree.forEachOverlap(start, end, counter);
+            }
+            List<AppointmentSeries> facilitySeries = seriesByFacility.get(key(a.getFacilityId()));
+            if (facilitySeries != null) {
+                for (AppointmentSeries s : facilitySeries) {
+                    if (others[0] < facilityCapacity) {
+                        s.forEachOverlap(start, end, counter);
+                    }
+                }
+            }
+            if (others[0] >= facilityCapacity) {
+                throw new BookingConflictException(BookingConflictException.Reason.FACILITY_FULL, null,
+                    "Facility " + a.getFacilityId() + " is fully booked at that time (capacity " + facilityCapacity + ").");
+            }
+        }
+    }
+
+    // ID of the first booking or series occurrence other than 'ownId' overlapping [start, end), or null
+    private static String firstOverlap(IntervalTree<String> tree, List<AppointmentSeries> list,
+                                       int start, int end, String ownId) {
+        String[] found = new String[1];
+        IntervalTree.Visitor<String> finder = (s, e, id) -> {
+            if (id.equals(ownId)) {
+                return true;
+            }
+            found[0] = id;
+            return false;
+        };
+        if (tree != null) {
+            tree.forEachOverlap(start, end, finder);
+        }
+        if (list != null) {
+            for (AppointmentSeries s : list) {
+                if (found[0] == null) {
+                    s.forEachOverlap(start, end, finder);
+                }
+            }
+        }
+        return found[0];
+    }
+
+    // "on 2025-09-20 from 09:00 to 09:15"
+    private String describe(String appointmentId) {
+        Booking booking = bookings.get(appointmentId);
+        int start;
+        int end;
+        if (booking != null) {
+            start = booking.start;
+            end = booking.end;
+        } else {
+            AppointmentSeries s = AppointmentSeries.isOccurrenceId(appointmentId)
+                ? series.get(AppointmentSeries.seriesIdOf(appointmentId)) : null;
+            LocalDate date = s != null ? AppointmentSeries.dateOf(appointmentId) : null;
+            if (date == null) {
+                return "";
+            }
+            start = startMinute(date.toString(), s.getAppointmentTime());
+            end = start + durationOf(s.occurrence(date));
+        }
+        LocalDateTime from = toDateTime(start);
+        LocalDateTime to = toDateTime(end);
+        return "on " + from.toLocalDate() + " from " + from.toLocalTime() + " to " + to.toLocalTime();
+    }
+
+    private static void add(Map<String, IntervalTree<String>> trees, String key, Booking booking, String id) {
+        if (key.isEmpty()) {
+            return;
+        }
+        trees.computeIfAbsent(key, k -> new IntervalTree<>()).add(booking.start, booking.end, id);
+    }
+
+    private static void remove(Map<String, IntervalTree<String>> trees, String key, Booking booking, String id) {
+        IntervalTree<String> tree = trees.get(key);
+        if (tree == null) {
+            return;
+        }
+        tree.remove(booking.start, booking.end, id);
+        if (tree.isEmpty()) {
+            trees.remove(key);
+        }
+    }
+
+    private static void addSeries(Map<String, List<AppointmentSeries>> lists, String key, AppointmentSeries s) {
+        if (!key.isEmpty()) {
+            lists.computeIfAbsent(key, k -> new ArrayList<>()).add(s);
+        }
+    }
+
+    private static void removeSeries(Map<String, List<AppointmentSeries>> lists, String key, AppointmentSeries s) {
+        List<AppointmentSeries> list = lists.get(key);
+        if (list != null) {
+            list.remove(s);
+            if (list.isEmpty()) {
+                lists.remove(key);
+            }
+        }
+    }
+
+    // --- Converting to and from schedule minutes ---
+
+    // "2025-09-20" + "09:00" -> minutes since 1970, or -1 if either can't be read
+    public static int startMinute(String date, String time) {
+        long packedDate = PrimitiveSort.packDate(date);
+        long packedTime = PrimitiveSort.packTime(time);
+        if (packedDate == PrimitiveSort.MISSING || packedTime == PrimitiveSort.MISSING) {
+            return -1;
+        }
+        int hour = (int) (packedTime / 100);
+        int minute = (int) (packedTime % 100);
+        if (hour > 23 || minute > 59) {
+            return -1;
+        }
+        try {
+            LocalDate day = LocalDate.of((int) (packedDate / 10_000), (int) (packedDate / 100 % 100), (int) (packedDate % 100));
+            return (int) (day.toEpochDay() * OpeningHours.MINUTES_PER_DAY) + hour * 60 + minute;
+        } catch (java.time.DateTimeException ex) {
+            return -1;
+        }
+    }
+
+    public static int toMinute(LocalDateTime time) {
+        return (int) (time.toLocalDate().toEpochDay() * OpeningHours.MINUTES_PER_DAY) + time.getHour() * 60 + time.getMinute();
+    }
+
+    public static LocalDateTime toDateTime(int minute) {
+        LocalDate day = LocalDate.ofEpochDay(minute / OpeningHours.MINUTES_PER_DAY);
+        int minuteOfDay = minute % OpeningHours.MINUTES_PER_DAY;
+        return day.atTime(minuteOfDay / 60, minuteOfDay % 60);
+    }
+
+    public static int durationOf(Appointment a) {
+        try {
+            int minutes = Integer.parseInt(trim(a.getDurationMinutes()));
+            return minutes > 0 ? minutes : DEFAULT_DURATION_MINUTES;
+        } catch (NumberFormatException ex) {
+            return DEFAULT_DURATION_MINUTES;
+        }
+    }
+
+    private static String key(String id) {
+        return id != null ? id.trim() : "";
+    }
+
+    private static String trim(String text) {
+        return text != null ? text.trim() : "";
+    }
+}
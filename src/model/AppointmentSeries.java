@@ -0,0 +1,493 @@
+package model;
+
+import util.IntervalTree;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+// A repeating appointment (e.g. a chronic-care patient seen every week for two years),
+// stored as one record: the first appointment, how often it repeats, when it stops and
+// any dates that were skipped.
+//
+// The individual appointments are never stored. occurrencesBetween() works them out for
+// whatever dates are asked for, and AppointmentSchedule checks clashes against the rule
+// itself, so a two-year weekly series is one row in appointment_series.csv instead of 104
+// rows in appointments.csv.
+public class AppointmentSeries {
+
+    public static final String WEEKLY = "Weekly";
+    public static final String MONTHLY = "Monthly";
+
+    // Occurrences get IDs made from the series ID and their date, e.g. "AS001:2025-09-20"
+    private static final char OCCURRENCE_SEPARATOR = ':';
+    // Skipped dates are kept in one column - not comma separated so it never needs quoting
+    private static final String EXCEPTION_SEPARATOR = ";";
+
+    private String seriesId;
+    private String patientId;
+    private String clinicianId;
+    private String facilityId;
+    private String startDate;
+    private String appointmentTime;
+    private String durationMinutes;
+    private String appointmentType;
+    private String reasonForVisit;
+    private String notes;
+    private String frequency;
+    // Every 'interval' weeks or months
+    private int interval = 1;
+    // Last date an occurrence can fall on (blank = no end date)
+    private String endDate;
+    // How many occurrences there are, counting skipped ones (0 = no limit)
+    private int occurrenceCount;
+    // Dates that were cancelled or moved out of the series, "2025-10-01;2025-10-15"
+    private String exceptions;
+    private String createdDate;
+    private String lastModified;
+    private long version = 1;
+
+    // The fields above read into dates and minutes - worked out on first use, cleared when
+    // any of them change
+    private Rule rule;
+
+    private static class Rule {
+        LocalDate start;
+        LocalDate end;
+        int minuteOfDay = -1;
+        int duration;
+        boolean monthly;
+        int interval;
+        int count;
+        Set<LocalDate> skipped = new HashSet<>();
+
+        boolean isValid() {
+            return start != null && minuteOfDay >= 0;
+        }
+    }
+
+    public AppointmentSeries() {
+    }
+
+    public AppointmentSeries(String seriesId, String patientId, String clinicianId, String facilityId,
+                             String startDate, String appointmentTime, String durationMinutes,
+                             String appointmentType, String reasonForVisit, String notes,
+                             String frequency, int interval, String endDate, int occurrenceCount,
+                             String exceptions, String createdDate, String lastModified) {
+        this.seriesId = seriesId;
+        this.patientId = patientId;
+        this.clinicianId = clinicianId;
+        this.facilityId = facilityId;
+        this.startDate = startDate;
+        this.appointmentTime = appointmentTime;
+        this.durationMinutes = durationMinutes;
+        this.appointmentType = appointmentType;
+        this.reasonForVisit = reasonForVisit;
+        this.notes = notes;
+        this.frequency = frequency;
+        this.interval = interval;
+        this.endDate = endDate;
+        this.occurrenceCount = occurrenceCount;
+        this.exceptions = exceptions;
+        this.createdDate = createdDate;
+        this.lastModified = lastModified;
+    }
+
+    public AppointmentSeries copy() {
+        AppointmentSeries copy = new AppointmentSeries(seriesId, patientId, clinicianId, facilityId,
+            startDate, appointmentTime, durationMinutes, appointmentType, reasonForVisit, notes,
+            frequency, interval, endDate, occurrenceCount, exceptions, createdDate, lastModified);
+        copy.setVersion(version);
+        return copy;
+    }
+
+    // --- Occurrences ---
+
+    // Dates of the occurrences in [from, to), leaving out skipped ones
+    public List<LocalDate> datesBetween(LocalDate from, LocalDate to) {
+        List<LocalDate> dates = new ArrayList<>();
+        Rule r = rule();
+        if (!r.isValid()) {
+            return dates;
+        }
+        for (long k = firstIndexFrom(r, from); r.count <= 0 || k < r.count; k++) {
+            LocalDate date = nth(r, k);
+            if (!date.isBefore(to) || (r.end != null && date.isAfter(r.end))) {
+                break;
+            }
+            if (!r.skipped.contains(date)) {
+                dates.add(date);
+            }
+        }
+        return dates;
+    }
+
+    // The occurrences in [from, to) as appointments, so they can be shown and checked like
+    // any other. They only exist for as long as the caller holds on to them.
+    public List<Appointment> occurrencesBetween(LocalDate from, LocalDate to) {
+        List<Appointment> result = new ArrayList<>();
+        for (LocalDate date : datesBetween(from, to)) {
+            result.add(occurrence(date));
+        }
+        return result;
+    }
+
+    public Appointment occurrence(LocalDate date) {
+        Appointment a = new Appointment(occurrenceId(seriesId, date), patientId, clinicianId, facilityId,
+            date.toString(), appointmentTime, durationMinutes, appointmentType, "Scheduled",
+            reasonForVisit, notes, createdDate, lastModified);
+        a.setVersion(version);
+        return a;
+    }
+
+    // Whether there is a (not skipped) occurrence on this date
+    public boolean occursOn(LocalDate date) {
+        Rule r = rule();
+        if (!r.isValid() || date.isBefore(r.start) || (r.end != null && date.isAfter(r.end))) {
+            return false;
+        }
+        long k;
+        if (r.monthly) {
+            long months = monthsBetween(r.start, date);
+            if (months % r.interval != 0) {
+                return false;
+            }
+            k = months / r.interval;
+        } else {
+            long days = ChronoUnit.DAYS.between(r.start, date);
+            if (days % (7L * r.interval) != 0) {
+                return false;
+            }
+            k = days / (7L * r.interval);
+        }
+        return (r.count <= 0 || k < r.count) && nth(r, k).equals(date) && !r.skipped.contains(date);
+    }
+
+    // Calls the visitor with each occurrence overlapping [start, end), in schedule minutes
+    // (see AppointmentSchedule), stopping early if it returns false. Only the days the range
+    // covers are looked at, however long the series runs.
+    public void forEachOverlap(int start, int end, IntervalTree.Visitor<String> visitor) {
+        Rule r = rule();
+        if (!r.isValid()) {
+            return;
+        }
+        // An occurrence on an earlier day than this has finished before 'start'
+        long firstDay = Math.max(Math.floorDiv(start - r.minuteOfDay - r.duration, OpeningHours.MINUTES_PER_DAY),
+            r.start.toEpochDay());
+        long lastDay = Math.floorDiv(end - 1 - r.minuteOfDay, OpeningHours.MINUTES_PER_DAY);
+        if (r.end != null) {
+            lastDay = Math.min(lastDay, r.end.toEpochDay());
+        }
+        for (long day = firstDay; day <= lastDay; day++) {
+            LocalDate date = LocalDate.ofEpochDay(day);
+            if (!occursOn(date)) {
+                continue;
+            }
+            int occurrenceStart = (int) (day * OpeningHours.MINUTES_PER_DAY) + r.minuteOfDay;
+            int occurrenceEnd = occurrenceStart + r.duration;
+            if (occurrenceStart < end && occurrenceEnd > start
+                    && !visitor.visit(occurrenceStart, occurrenceEnd, occurrenceId(seriesId, date))) {
+                return;
+            }
+        }
+    }
+
+    // First occurrence date, or null if the start date or time can't be read
+    public LocalDate getFirstDate() {
+        Rule r = rule();
+        return r.isValid() ? r.start : null;
+    }
+
+    // "Weekly, 104 times" / "Every 2 weeks until 2026-03-01" / "Monthly"
+    public String getSummary() {
+        Rule r = rule();
+        String every = r.interval == 1 ? (r.monthly ? MONTHLY : WEEKLY)
+            : "Every " + r.interval + (r.monthly ? " months" : " weeks");
+        if (r.count > 0) {
+            every += ", " + r.count + " times";
+        }
+        if (r.end != null) {
+            every += " until " + r.end;
+        }
+        return every;
+    }
+
+    public static String occurrenceId(String seriesId, LocalDate date) {
+        return seriesId + OCCURRENCE_SEPARATOR + date;
+    }
+
+    public static boolean isOccurrenceId(String id) {
+        return id != null && id.indexOf(OCCURRENCE_SEPARATOR) > 0;
+    }
+
+    public static String seriesIdOf(String occurrenceId) {
+        int i = occurrenceId.indexOf(OCCURRENCE_SEPARATOR);
+        return i > 0 ? occurrenceId.substring(0, i).trim() : occurrenceId.trim();
+    }
+
+    // Date part of an occurrence ID, or null
+    public static LocalDate dateOf(String occurrenceId) {
+        int i = occurrenceId.indexOf(OCCURRENCE_SEPARATOR);
+        try {
+            return i > 0 ? LocalDate.parse(occurrenceId.substring(i + 1).trim()) : null;
+        } catch (DateTimeParseException ex) {
+            return null;
+        }
+    }
+
+    // Date of the k-th occurrence (from 0), before skipped dates and the end are applied.
+    // Monthly ones on the 29th-31st fall on the last day of shorter months.
+    private static LocalDate nth(Rule r, long k) {
+        return r.monthly ? r.start.plusMonths(k * r.interval) : r.start.plusWeeks(k * r.interval);
+    }
+
+    // Number of the first occurrence on or after 'from'
+    private static long firstIndexFrom(Rule r, LocalDate from) {
+        if (!from.isAfter(r.start)) {
+            return 0;
+        }
+        if (r.monthly) {
+            long k = monthsBetween(r.start, from) / r.interval;
+            return nth(r, k).isBefore(from) ? k + 1 : k;
+        }
+        long step = 7L * r.interval;
+        return (ChronoUnit.DAYS.between(r.start, from) + step - 1) / step;
+    }
+
+    // Calendar months from one date's month to the other's, ignoring the day
+    private static long monthsBetween(LocalDate from, LocalDate to) {
+        return (to.getYear() * 12L + to.getMonthValue()) - (from.getYear() * 12L + from.getMonthValue());
+    }
+
+    private Rule rule() {
+        if (rule == null) {
+            Rule r = new Rule();
+            r.start = parseDate(startDate);
+            r.end = parseDate(endDate);
+            // Schedule minutes count from 1970-01-01, so on that day they're the minute of the day
+            r.minuteOfDay = AppointmentSchedule.startMinute("1970-01-01", appointmentTime != null ? appointmentTime : "");
+            r.duration = parseDuration(durationMinutes);
+            r.monthly = MONTHLY.equalsIgnoreCase(frequency != null ? frequency.trim() : "");
+            r.interval = Math.max(1, interval);
+            r.count = Math.max(0, occurrenceCount);
+            for (String text : getExceptionList()) {
+                LocalDate date = parseDate(text);
+                if (date != null) {
+                    r.skipped.add(date);
+                }
+            }
+            rule = r;
+        }
+        return rule;
+    }
+
+    private static LocalDate parseDate(String text) {
+        if (text == null || text.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(text.trim());
+        } catch (DateTimeParseException ex) {
+            return null;
+        }
+    }
+
+    private static int parseDuration(String text) {
+        try {
+            int minutes = Integer.parseInt(text != null ? text.trim() : "");
+            return minutes > 0 ? minutes : AppointmentSchedule.DEFAULT_DURATION_MINUTES;
+        } catch (NumberFormatException ex) {
+            return AppointmentSchedule.DEFAULT_DURATION_MINUTES;
+        }
+    }
+
+    // --- Skipped dates ---
+
+    public List<String> getExceptionList() {
+        List<String> dates = new ArrayList<>();
+        if (exceptions != null) {
+            for (String part : exceptions.split(EXCEPTION_SEPARATOR)) {
+                if (!part.trim().isEmpty()) {
+                    dates.add(part.trim());
+                }
+            }
+        }
+        return dates;
+    }
+
+    // Takes one date out of the series (cancelled, or moved to a one-off appointment)
+    public void addException(LocalDate date) {
+        Set<String> dates = new TreeSet<>(getExceptionList());
+        dates.add(date.toString());
+        setExceptions(String.join(EXCEPTION_SEPARATOR, dates));
+    }
+
+    public void removeException(LocalDate date) {
+        Set<String> dates = new TreeSet<>(getExceptionList());
+        dates.remove(date.toString());
+        setExceptions(String.join(EXCEPTION_SEPARATOR, dates));
+    }
+
+    // --- Getters and setters ---
+
+    public String getId() {
+        return seriesId;
+    }
+
+    public void setId(String seriesId) {
+        this.seriesId = seriesId;
+    }
+
+    public String getPatientId() {
+        return patientId;
+    }
+
+    public void setPatientId(String patientId) {
+        this.patientId = patientId;
+    }
+
+    public String getClinicianId() {
+        return clinicianId;
+    }
+
+    public void setClinicianId(String clinicianId) {
+        this.clinicianId = clinicianId;
+    }
+
+    public String getFacilityId() {
+        return facilityId;
+    }
+
+    public void setFacilityId(String facilityId) {
+        this.facilityId = facilityId;
+    }
+
+    public String getStartDate() {
+        return startDate;
+    }
+
+    public void setStartDate(String startDate) {
+        this.startDate = startDate;
+        rule = null;
+    }
+
+    public String getAppointmentTime() {
+        return appointmentTime;
+    }
+
+    public void setAppointmentTime(String appointmentTime) {
+        this.appointmentTime = appointmentTime;
+        rule = null;
+    }
+
+    public String getDurationMinutes() {
+        return durationMinutes;
+    }
+
+    public void setDurationMinutes(String durationMinutes) {
+        this.durationMinutes = durationMinutes;
+        rule = null;
+    }
+
+    public String getAppointmentType() {
+        return appointmentType;
+    }
+
+    public void setAppointmentType(String appointmentType) {
+        this.appointmentType = appointmentType;
+    }
+
+    public String getReasonForVisit() {
+        return reasonForVisit;
+    }
+
+    public void setReasonForVisit(String reasonForVisit) {
+        this.reasonForVisit = reasonForVisit;
+    }
+
+    public String getNotes() {
+        return notes;
+    }
+
+    public void setNotes(String notes) {
+        this.notes = notes;
+    }
+
+    public String getFrequency() {
+        return frequency;
+    }
+
+    public void setFrequency(String frequency) {
+        this.frequency = frequency;
+        rule = null;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    public void setInterval(int interval) {
+        this.interval = interval;
+        rule = null;
+    }
+
+    public String getEndDate() {
+        return endDate;
+    }
+
+    public void setEndDate(String endDate) {
+        this.endDate = endDate;
+        rule = null;
+    }
+
+    public int getOccurrenceCount() {
+        return occurrenceCount;
+    }
+
+    public void setOccurrenceCount(int occurrenceCount) {
+        this.occurrenceCount = occurrenceCount;
+        rule = null;
+    }
+
+    public String getExceptions() {
+        return exceptions;
+    }
+
+    public void setExceptions(String exceptions) {
+        this.exceptions = exceptions;
+        rule = null;
+    }
+
+    public String getCreatedDate() {
+        return createdDate;
+    }
+
+    public void setCreatedDate(String createdDate) {
+        this.createdDate = createdDate;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(String lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    @Override
+    public String toString() {
+        return seriesId + " (" + getSummary() + " from " + startDate + " at " + appointmentTime + ")";
+    }
+}
@@ -0,0 +1,522 @@
+package model;
+
+import util.ChangeJournal;
+import util.CsvUtils;
+import util.DataFileLock;
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+
+// Repeating appointments (appointment_series.csv) - one row per series, however many
+// occurrences it has. See AppointmentSeries.
+//
+// Works like AppointmentRepository: EDT only, writes under the file lock with per-row
+// versions, and every change recorded in the shared journal. Each series is also kept in
+// the appointment schedule, so one-off bookings are checked against it and it is checked
+// against them.
+public class AppointmentSeriesRepository {
+
+    // A new or changed series is checked for clashes this far from its first date - an
+    // open-ended one can't be checked for ever
+    public static final int CONFLICT_CHECK_DAYS = 2 * 366;
+
+    private static AppointmentSeriesRepository instance;
+    private final List<AppointmentSeries> seriesList = new ArrayList<>();
+    private final Map<String, AppointmentSeries> byId = new HashMap<>();
+    private final String csvPath;
+    private final RepositoryEventSupport<AppointmentSeries> events = new RepositoryEventSupport<>();
+    private final ChangeJournal journal;
+    private final AppointmentRepository appointmentRepository;
+    private final AppointmentSchedule schedule;
+
+    private static final String HEADER =
+            "series_id,patient_id,clinician_id,facility_id,start_date,appointment_time," +
+            "duration_minutes,appointment_type,reason_for_visit,notes,frequency,repeat_interval," +
+            "end_date,occurrence_count,exceptions,created_date,last_modified,version";
+    private static final int COLUMN_COUNT = 18;
+    private static final int VERSION_COLUMN = 17;
+    // Columns that decide when the occurrences are and who they're with (not the skipped dates -
+    // taking a date out can't cause a clash)
+    private static final int[] BOOKING_COLUMNS = {1, 2, 3, 4, 5, 6, 10, 11, 12, 13};
+
+    public AppointmentSeriesRepository(String csvPath, AppointmentRepository appointmentRepository) {
+        this.csvPath = csvPath;
+        this.journal = ChangeJournal.forDataFile(csvPath);
+        this.appointmentRepository = appointmentRepository;
+        this.schedule = appointmentRepository.getSchedule();
+        load();
+        // Added first so the schedule is already up to date when other listeners hear about a change
+        events.addListener(this::updateSchedule);
+        if (instance == null) {
+            instance = this;
+        }
+    }
+
+    public static synchronized AppointmentSeriesRepository getInstance(String csvPath,
+                                                                      AppointmentRepository appointmentRepository) {
+        if (instance == null) {
+            instance = new AppointmentSeriesRepository(csvPath, appointmentRepository);
+        }
+        return instance;
+    }
+
+    private void load() {
+        if (!new File(csvPath).exists()) {
+            return;
+        }
+        try {
+            for (String[] row : CsvUtils.readCsv(csvPath)) {
+                if (row == null || row.length == 0 || row[0].trim().isEmpty()) {
+                    continue;
+                }
+                AppointmentSeries s = fromRow(row);
+                seriesList.add(s);
+                byId.put(key(s.getId()), s);
+                schedule.putSeries(s);
+            }
+        } catch (IOException ex) {
+            System.err.println("Failed to load appointment series: " + ex.getMessage());
+        }
+    }
+
+    private AppointmentSeries fromRow(String[] row) {
+        String[] safe = new String[COLUMN_COUNT];
+        for (int i = 0; i < COLUMN_COUNT; i++) {
+            safe[i] = (i < row.length) ? row[i] : "";
+        }
+        AppointmentSeries s = new AppointmentSeries(
+                safe[0], safe[1], safe[2], safe[3], safe[4], safe[5], safe[6], safe[7], safe[8], safe[9],
+                safe[10], parseInt(safe[11], 1), safe[12], parseInt(safe[13], 0), safe[14], safe[15], safe[16]
+        );
+        s.setVersion(parseVersion(row));
+        return s;
+    }
+
+    private String[] toRow(AppointmentSeries s) {
+        return new String[]{
+                s.getId(), s.getPatientId(), s.getClinicianId(), s.getFacilityId(),
+                s.getStartDate(), s.getAppointmentTime(), s.getDurationMinutes(),
+                s.getAppointmentType(), s.getReasonForVisit(), s.getNotes(),
+                s.getFrequency(), String.valueOf(s.getInterval()), s.getEndDate(),
+                String.valueOf(s.getOccurrenceCount()), s.getExceptions(),
+                s.getCreatedDate(), s.getLastModified(), String.valueOf(s.getVersion())
+        };
+    }
+
+    private static int parseInt(String text, int otherwise) {
+        try {
+            return Integer.parseInt(text.trim());
+        } catch (NumberFormatException ex) {
+            return otherwise;
+        }
+    }
+
+    private static long parseVersion(String[] row) {
+        if (row.length <= VERSION_COLUMN) return 1;
+        try {
+            return Long.parseLong(row[VERSION_COLUMN].trim());
+        } catch (NumberFormatException ex) {
+            return 1;
+        }
+    }
+
+    private static int indexOfRow(List<String[]> rows, String id) {
+        for (int i = 0; i < rows.size(); i++) {
+            if (rows.get(i).length > 0 && rows.get(i)[0].trim().equals(id.trim())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String key(String id) {
+        return id != null ? id.trim() : "";
+    }
+
+    // Puts another user's copy in place of ours, leaving the old object (and its version)
+    // alone so anything still holding it can't save over the newer copy
+    private void replace(AppointmentSeries current, AppointmentSeries fresh) {
+        seriesList.set(seriesList.indexOf(current), fresh);
+        byId.put(key(fresh.getId()), fresh);
+    }
+
+    // True if the change from what's on disk moves any occurrence or changes who it's with
+    private boolean changesBooking(String[] diskRow, AppointmentSeries s) {
+        String[] row = toRow(s);
+        for (int column : BOOKING_COLUMNS) {
+            String onDisk = column < diskRow.length && diskRow[column] != null ? diskRow[column].trim() : "";
+            String ours = row[column] != null ? row[column].trim() : "";
+            if (!onDisk.equals(ours)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void updateSchedule(RepositoryChangeEvent<AppointmentSeries> event) {
+        if (event.getType() == RepositoryChangeEvent.Type.DELETED) {
+            schedule.removeSeries(event.getEntity().getId());
+        } else {
+            schedule.putSeries(event.getEntity());
+        }
+    }
+
+    public void addChangeListener(RepositoryChangeListener<AppointmentSeries> listener) {
+        events.addListener(listener);
+    }
+
+    public void removeChangeListener(RepositoryChangeListener<AppointmentSeries> listener) {
+        events.removeListener(listener);
+    }
+
+    public List<AppointmentSeries> getAll() {
+        return seriesList;
+    }
+
+    public AppointmentSeries findById(String id) {
+        if (id == null) return null;
+        return byId.get(key(id));
+    }
+
+    // Every occurrence of every series with a date in [from, to)
+    public List<Appointment> occurrencesBetween(LocalDate from, LocalDate to) {
+        List<Appointment> result = new ArrayList<>();
+        for (AppointmentSeries s : seriesList) {
+            result.addAll(s.occurrencesBetween(from, to));
+        }
+        return result;
+    }
+
+    public String generateNewId(List<String[]> diskRows) {
+        int max = 0;
+        for (AppointmentSeries s : seriesList) {
+            max = Math.max(max, idNumber(s.getId()));
+        }
+        for (String[] row : diskRows) {
+            max = Math.max(max, row.length > 0 ? idNumber(row[0]) : 0);
+        }
+        return String.format("AS%03d", max + 1);
+    }
+
+    private static int idNumber(String id) {
+        try {
+            return Integer.parseInt(id.trim().substring(2));
+        } catch (Exception ex) {
+            return 0;
+        }
+    }
+
+    // Checks each occurrence in the first CONFLICT_CHECK_DAYS against the schedule like a
+    // one-off booking would be, and says which date clashes
+    private void checkOccurrences(AppointmentSeries s) throws BookingConflictException {
+        LocalDate first = s.getFirstDate();
+        if (first == null) {
+            return;
+        }
+        for (Appointment occurrence : s.occurrencesBetween(first, first.plusDays(CONFLICT_CHECK_DAYS))) {
+            try {
+                appointmentRepository.checkBooking(occurrence);
+            } catch (BookingConflictException ex) {
+                throw new BookingConflictException(ex.getReason(), ex.getConflictingAppointmentId(),
+                        "The appointment on " + occurrence.getAppointmentDate() + " can't be booked. " + ex.getMessage());
+            }
+        }
+    }
+
+    // Saves a new series - one appended row. Rejected if any of its occurrences clash.
+    // The series gets a new ID here.
+    public synchronized void add(AppointmentSeries s) throws BookingConflictException {
+        checkOccurrences(s);
+
+        DataFileLock lock = DataFileLock.forFile(csvPath);
+        try {
+            lock.acquire();
+            try {
+                if (!new File(csvPath).exists()) {
+                    CsvUtils.writeCsv(csvPath, HEADER, new ArrayList<>());
+                }
+                List<String[]> diskRows = CsvUtils.readCsv(csvPath);
+                applyExternalChanges(diskRows, null);
+                checkOccurrences(s);
+                s.setId(generateNewId(diskRows));
+                CsvUtils.appendLine(csvPath, CsvUtils.escapeRow(toRow(s)));
+                journal.append(csvPath, ChangeJournal.UPSERT, toRow(s));
+            } finally {
+                lock.release();
+            }
+        } catch (IOException ex) {
+            System.err.println("Failed to append appointment series: " + ex.getMessage());
+        }
+        seriesList.add(s);
+        byId.put(key(s.getId()), s);
+        events.fireInserted(s);
+    }
+
+    // Same optimistic versioning as AppointmentRepository.updateAppointment. Changing the
+    // times, people or repeat rule checks the occurrences for clashes again; only skipping or
+    // un-skipping dates doesn't.
+    public synchronized void update(AppointmentSeries updated) throws VersionConflictException, BookingConflictException {
+        int i = seriesList.indexOf(byId.get(key(updated.getId())));
+        if (i < 0) {
+            System.err.println("Appointment series " + updated.getId() + " not found for update.");
+            return;
+        }
+
+        DataFileLock lock = DataFileLock.forFile(csvPath);
+        try {
+            lock.acquire();
+            try {
+                List<String[]> diskRows = CsvUtils.readCsv(csvPath);
+                int row = indexOfRow(diskRows, updated.getId());
+                if (row < 0) {
+                    AppointmentSeries removed = seriesList.remove(i);
+                    byId.remove(key(removed.getId()));
+                    events.fireDeleted(removed);
+                    throw new VersionConflictException(updated.getId(),
+                            "Series " + updated.getId() + " was deleted by another user. Your changes were not saved.");
+                }
+
+                long diskVersion = parseVersion(diskRows.get(row));
+                if (diskVersion != updated.getVersion()) {
+                    AppointmentSeries latest = fromRow(diskRows.get(row));
+                    seriesList.set(i, latest);
+                    byId.put(key(latest.getId()), latest);
+                    events.fireUpdated(latest);
+                    throw new VersionConflictException(updated.getId(),
+                            "Series " + updated.getId() + " was changed by another user. " +
+                            "Your changes were not saved and the latest version has been loaded.");
+                }
+
+                if (changesBooking(diskRows.get(row), updated)) {
+                    applyExternalChanges(diskRows, updated.getId());
+                    try {
+                        checkOccurrences(updated);
+                    } catch (BookingConflictException ex) {
+                        // Put our copy back to how it is on disk
+                        AppointmentSeries saved = fromRow(diskRows.get(row));
+                        seriesList.set(seriesList.indexOf(byId.get(key(saved.getId()))), saved);
+                        byId.put(key(saved.getId()), saved);
+                        events.fireUpdated(saved);
+                        throw ex;
+                    }
+                    i = seriesList.indexOf(byId.get(key(updated.getId())));
+                }
+
+                updated.setVersion(diskVersion + 1);
+                diskRows.set(row, toRow(updated));
+                CsvUtils.writeCsv(csvPath, HEADER, diskRows);
+                journal.append(csvPath, ChangeJournal.UPSERT, toRow(updated));
+            } finally {
+                lock.release();
+            }
+        } catch (IOException ex) {
+            System.err.println("Failed to save appointment series: " + ex.getMessage());
+        }
+
+        seriesList.set(i, updated);
+        byId.put(key(updated.getId()), updated);
+        events.fireUpdated(updated);
+    }
+
+    // Cancels one occurrence by adding its date to the series' exceptions
+    public void cancelOccurrence(String occurrenceId) throws VersionConflictException {
+        AppointmentSeries s = findById(AppointmentSeries.seriesIdOf(occurrenceId));
+        LocalDate date = AppointmentSeries.dateOf(occurrenceId);
+        if (s == null || date == null) {
+            System.err.println("Series occurrence " + occurrenceId + " not found.");
+            return;
+        }
+        s.addException(date);
+        s.setLastModified(LocalDate.now().toString());
+        saveExceptions(s);
+    }
+
+    // Moves one occurrence to another date/time: the date is skipped in the series and a
+    // normal appointment booked in its place. If the new time clashes, the series is put
+    // back as it was.
+    public Appointment moveOccurrence(String occurrenceId, String newDate, String newTime)
+            throws VersionConflictException, BookingConflictException {
+        AppointmentSeries s = findById(AppointmentSeries.seriesIdOf(occurrenceId));
+        LocalDate date = AppointmentSeries.dateOf(occurrenceId);
+        if (s == null || date == null || !s.occursOn(date)) {
+            System.err.println("Series occurrence " + occurrenceId + " not found.");
+            return null;
+        }
+
+        Appointment moved = s.occurrence(date);
+        moved.setId(appointmentRepository.generateNewId());
+        moved.setAppointmentDate(newDate);
+        moved.setAppointmentTime(newTime);
+        moved.setNotes(("Moved from series " + s.getId() + " (" + date + "). " + nullToEmpty(moved.getNotes())).trim());
+        moved.setCreatedDate(LocalDate.now().toString());
+        moved.setLastModified(LocalDate.now().toString());
+        moved.setVersion(1);
+
+        // Skip the old date first, otherwise the new time can clash with it
+        cancelOccurrence(occurrenceId);
+        try {
+            appointmentRepository.add(moved);
+        } catch (BookingConflictException ex) {
+            AppointmentSeries current = findById(s.getId());
+            if (current != null) {
+                current.removeException(date);
+                saveExceptions(current);
+            }
+            throw ex;
+        }
+        return moved;
+    }
+
+    // Saves a change to the skipped dates only, which is never checked for clashes
+    private void saveExceptions(AppointmentSeries s) throws VersionConflictException {
+        try {
+            update(s);
+        } catch (BookingConflictException ex) {
+            // Can't happen - update() only checks when the times or people change
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static String nullToEmpty(String text) {
+        return text != null ? text : "";
+    }
+
+    public void delete(String seriesId) throws VersionConflictException {
+        AppointmentSeries toRemove = findById(seriesId);
+        if (toRemove == null) {
+            return;
+        }
+
+        DataFileLock lock = DataFileLock.forFile(csvPath);
+        try {
+            lock.acquire();
+            try {
+                List<String[]> diskRows = CsvUtils.readCsv(csvPath);
+                int row = indexOfRow(diskRows, seriesId);
+                if (row >= 0) {
+                    long diskVersion = parseVersion(diskRows.get(row));
+                    if (diskVersion != toRemove.getVersion()) {
+                        AppointmentSeries latest = fromRow(diskRows.get(row));
+                        replace(toRemove, latest);
+                        events.fireUpdated(latest);
+                        throw new VersionConflictException(seriesId,
+                                "Series " + seriesId + " was changed by another user. " +
+                                "Please check the latest version before cancelling it.");
+                    }
+                    diskRows.remove(row);
+                    CsvUtils.writeCsv(csvPath, HEADER, diskRows);
+                    journal.append(csvPath, ChangeJournal.DELETE, new String[]{seriesId});
+                }
+            } finally {
+                lock.release();
+            }
+        } catch (IOException ex) {
+            System.err.println("Failed to save appointment series: " + ex.getMessage());
+        }
+
+        seriesList.remove(toRemove);
+        byId.remove(key(seriesId));
+        events.fireDeleted(toRemove);
+    }
+
+    // --- Changes made by other processes ---
+
+    public void reloadChanges() {
+        if (!new File(csvPath).exists()) {
+            return;
+        }
+        try {
+            applyExternalChanges(CsvUtils.readCsv(csvPath));
+        } catch (IOException ex) {
+            System.err.println("Failed to reload appointment series: " + ex.getMessage());
+        }
+    }
+
+    public void applyJournalEntry(ChangeJournal.Entry entry) {
+        String[] row = entry.getRow();
+        switch (entry.getOp()) {
+            case ChangeJournal.UPSERT:
+                if (row.length == 0 || row[0].trim().isEmpty()) {
+                    return;
+                }
+                AppointmentSeries fresh = fromRow(row);
+                AppointmentSeries current = byId.get(key(fresh.getId()));
+                if (current == null) {
+                    seriesList.add(fresh);
+                    byId.put(key(fresh.getId()), fresh);
+                    events.fireInserted(fresh);
+                } else if (!Arrays.equals(toRow(current), toRow(fresh))) {
+                    replace(current, fresh);
+                    events.fireUpdated(fresh);
+                }
+                break;
+            case ChangeJournal.DELETE:
+                AppointmentSeries removed = row.length > 0 ? byId.remove(key(row[0])) : null;
+                if (removed != null) {
+                    seriesList.remove(removed);
+                    events.fireDeleted(removed);
+                }
+                break;
+            default:
+                reloadChanges();
+        }
+    }
+
+    public void applyExternalChanges(List<String[]> rows) {
+        applyExternalChanges(rows, null);
+    }
+
+    // Diffs rows read from the file against memory by series ID, leaving 'skipId' alone
+    private void applyExternalChanges(List<String[]> rows, String skipId) {
+        Map<String, AppointmentSeries> onDisk = new LinkedHashMap<>();
+        for (String[] row : rows) {
+            if (row == null || row.length == 0 || row[0].trim().isEmpty()) {
+                continue;
+            }
+            AppointmentSeries s = fromRow(row);
+            if (skipId == null || !key(s.getId()).equals(key(skipId))) {
+                onDisk.put(key(s.getId()), s);
+            }
+        }
+
+        List<AppointmentSeries> inserted = new ArrayList<>();
+        List<AppointmentSeries> updated = new ArrayList<>();
+        List<AppointmentSeries> deleted = new ArrayList<>();
+
+        ListIterator<AppointmentSeries> it = seriesList.listIterator();
+        while (it.hasNext()) {
+            AppointmentSeries current = it.next();
+            AppointmentSeries fresh = onDisk.get(key(current.getId()));
+            if (fresh == null) {
+                if (skipId == null || !key(current.getId()).equals(key(skipId))) {
+                    it.remove();
+                    byId.remove(key(current.getId()));
+                    deleted.add(current);
+                }
+            } else if (!Arrays.equals(toRow(current), toRow(fresh))) {
+                it.set(fresh);
+                byId.put(key(fresh.getId()), fresh);
+                updated.add(fresh);
+            }
+        }
+
+        for (Map.Entry<String, AppointmentSeries> entry : onDisk.entrySet()) {
+            if (!byId.containsKey(entry.getKey())) {
+                seriesList.add(entry.getValue());
+                byId.put(entry.getKey(), entry.getValue());
+                inserted.add(entry.getValue());
+            }
+        }
+
+        for (AppointmentSeries s : deleted) events.fireDeleted(s);
+        for (AppointmentSeries s : inserted) events.fireInserted(s);
+        for (AppointmentSeries s : updated) events.fireUpdated(s);
+    }
+}
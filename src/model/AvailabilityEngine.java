@@ -0,0 +1,132 @@
+package model;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+// Finds free appointment slots: the opening hours of the facility, minus what is already
+// booked (from AppointmentSchedule).
+//
+// A clinician is free when their workplace is open and they have nothing booked. A
+// facility is free when it is open and has fewer overlapping appointments than its
+// capacity. Each slot tried is one interval tree lookup, and a busy slot jumps straight to
+// the end of whatever is in the way rather than stepping through it minute by minute.
+public class AvailabilityEngine {
+
+    // Slots start on the quarter hour
+    public static final int SLOT_STEP_MINUTES = 15;
+    // Give up looking after this many days (e.g. a facility that is never open)
+    public static final int MAX_DAYS_AHEAD = 366;
+    // For clinicians whose workplace isn't in facilities.csv
+    public static final OpeningHours DEFAULT_HOURS = OpeningHours.parse("Mon-Fri: 9:00-17:00");
+
+    // Given a slot [start, end), returns start if it's free or a later minute to try next
+    public interface SlotCheck {
+        int nextFree(int start, int end);
+    }
+
+    private final AppointmentSchedule schedule;
+    private final ClinicianRepository clinicianRepository;
+    private final FacilityRepository facilityRepository;
+
+    public AvailabilityEngine(AppointmentRepository appointmentRepository,
+                              ClinicianRepository clinicianRepository,
+                              FacilityRepository facilityRepository) {
+        this.schedule = appointmentRepository.getSchedule();
+        this.clinicianRepository = clinicianRepository;
+        this.facilityRepository = facilityRepository;
+    }
+
+    // The next 'count' free slots of 'durationMinutes' for the clinician, starting no earlier than 'after'
+    public List<LocalDateTime> nextFreeSlotsForClinician(String clinicianId, int durationMinutes,
+                                                         LocalDateTime after, int count) {
+        return findSlots(hoursForClinician(clinicianId), durationMinutes, after, count,
+            (start, end) -> schedule.clinicianFreeFrom(clinicianId, start, end));
+    }
+
+    // The next 'count' slots where the facility is open and below capacity
+    public List<LocalDateTime> nextFreeSlotsAtFacility(String facilityId, int durationMinutes,
+                                                       LocalDateTime after, int count) {
+        Facility facility = facilityRepository != null ? facilityRepository.findById(facilityId) : null;
+        if (facility == null) {
+            return new ArrayList<>();
+        }
+        int capacity = facility.getCapacity();
+        return findSlots(facility.getParsedOpeningHours(), durationMinutes, after, count,
+            (start, end) -> capacity <= 0 || schedule.facilityBookings(facilityId, start, end, capacity) < capacity
+                ? start : start + SLOT_STEP_MINUTES);
+    }
+
+    // Whether [start, start + duration) is inside the clinician's hours and they have nothing booked
+    public boolean isClinicianFree(String clinicianId, LocalDateTime start, int durationMinutes) {
+        int from = start.getHour() * 60 + start.getMinute();
+        if (!hoursForClinician(clinicianId).isOpen(start.getDayOfWeek(), from, from + durationMinutes)) {
+            return false;
+        }
+        int minute = AppointmentSchedule.toMinute(start);
+        return schedule.clinicianFreeFrom(clinicianId, minute, minute + durationMinutes) == minute;
+    }
+
+    // Opening hours of the facility the clinician works at
+    public OpeningHours hoursForClinician(String clinicianId) {
+        Clinician clinician = clinicianRepository != null ? clinicianRepository.findById(clinicianId) : null;
+        Facility workplace = clinician != null && facilityRepository != null
+            ? facilityRepository.findById(clinician.getWorkplaceId()) : null;
+        return workplace != null ? workplace.getParsedOpeningHours() : DEFAULT_HOURS;
+    }
+
+    // Slots handed back don't overlap each other
+    private List<LocalDateTime> findSlots(OpeningHours hours, int durationMinutes, LocalDateTime after,
+                                          int count, SlotCheck check) {
+        List<LocalDateTime> slots = new ArrayList<>();
+        int from = AppointmentSchedule.toMinute(after);
+        if (after.getSecond() > 0 || after.getNano() > 0) {
+            from++;
+        }
+        while (slots.size() < count) {
+            int start = nextFreeMinute(hours, durationMinutes, from, check);
+            if (start < 0) {
+                break;
+            }
+            slots.add(AppointmentSchedule.toDateTime(start));
+            from = start + durationMinutes;
+        }
+        return slots;
+    }
+
+    // First slot start (in schedule minutes) at or after 'fromMinute' that is inside the
+    // opening hours and passes the check, or -1 if there isn't one within MAX_DAYS_AHEAD.
+    // Walks forward through the opening hours a day at a time.
+    public int nextFreeMinute(OpeningHours hours, int durationMinutes, int fromMinute, SlotCheck check) {
+        if (durationMinutes <= 0 || hours.isClosedAllWeek()) {
+            return -1;
+        }
+        long firstDay = Math.floorDiv(fromMinute, OpeningHours.MINUTES_PER_DAY);
+
+        for (long day = firstDay; day < firstDay + MAX_DAYS_AHEAD; day++) {
+            int dayStart = (int) (day * OpeningHours.MINUTES_PER_DAY);
+            DayOfWeek dayOfWeek = LocalDate.ofEpochDay(day).getDayOfWeek();
+            int[] open = hours.getHours(dayOfWeek);
+
+            for (int i = 0; i < open.length; i += 2) {
+                int candidate = roundUp(Math.max(open[i], fromMinute - dayStart));
+                int close = open[i + 1];
+                while (candidate + durationMinutes <= close) {
+                    int start = dayStart + candidate;
+                    int next = check.nextFree(start, start + durationMinutes);
+                    if (next == start) {
+                        return start;
+                    }
+                    candidate = roundUp(next - dayStart);
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static int roundUp(int minuteOfDay) {
+        return (minuteOfDay + SLOT_STEP_MINUTES - 1) / SLOT_STEP_MINUTES * SLOT_STEP_MINUTES;
+    }
+}
@@ -0,0 +1,32 @@
+package model;
+
+// Thrown when a booking or reschedule is rejected because the time is already taken - the
+// clinician or patient has another appointment then, or the facility is at capacity.
+// Nothing is saved; for a reschedule the repository puts the appointment back to how it is
+// on disk before throwing.
+public class BookingConflictException extends Exception {
+
+    public enum Reason {
+        CLINICIAN_BUSY,
+        PATIENT_BUSY,
+        FACILITY_FULL
+    }
+
+    private final Reason reason;
+    private final String conflictingAppointmentId;
+
+    public BookingConflictException(Reason reason, String conflictingAppointmentId, String message) {
+        super(message);
+        this.reason = reason;
+        this.conflictingAppointmentId = conflictingAppointmentId;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+
+    // The appointment already in the way (null for FACILITY_FULL)
+    public String getConflictingAppointmentId() {
+        return conflictingAppointmentId;
+    }
+}
@@ -0,0 +1,290 @@
+package model;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+
+// Writes a clinician's or facility's appointments for a date range as an iCalendar (.ics,
+// RFC 5545) file that Outlook, Google Calendar etc. can import or subscribe to.
+//
+// The appointments are found through the schedule's per-clinician/per-facility interval
+// trees a month at a time and written out as they're found, so only one month's IDs are
+// ever held - a diary with years of appointments doesn't get built up in memory first.
+// Repeating appointments are written as one event per occurrence (with the occurrence ID as
+// the UID) rather than as an RRULE, as a monthly series on the 31st moves to the end of
+// shorter months here, which RRULE can't say.
+//
+// For nightly syncing, 'changedSince' leaves out anything last modified before that date,
+// so only new and changed appointments are sent. Cancelled appointments are deleted from
+// the data, so there is nothing left to send for them - a client that needs to notice
+// those has to do a full export now and again.
+//
+// Times are written as local ("floating") times, the same way they are stored.
+//
+// The repositories aren't thread safe, so a caller on another thread (the API server) passes
+// its read lock. It is then only held while each month is looked up and written to a buffer,
+// and let go before the buffer goes out - so a slow download doesn't hold up everyone else.
+public class CalendarExporter {
+
+    private static final String PRODUCT_ID = "-//Healthcare Management System//Appointments//EN";
+    private static final String UID_DOMAIN = "@healthcare-management-system";
+    // Read from the trees this many days at a time
+    private static final int CHUNK_DAYS = 31;
+    // RFC 5545 lines are at most 75 bytes; longer ones carry on on the next line after a space
+    private static final int MAX_LINE_BYTES = 75;
+    private static final DateTimeFormatter LOCAL_TIME = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss");
+    private static final DateTimeFormatter UTC_TIME = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'");
+
+    private final AppointmentRepository appointmentRepository;
+    private final PatientRepository patientRepository;
+    private final ClinicianRepository clinicianRepository;
+    private final FacilityRepository facilityRepository;
+
+    public CalendarExporter(AppointmentRepository appointmentRepository, PatientRepository patientRepository,
+                            ClinicianRepository clinicianRepository, FacilityRepository facilityRepository) {
+        this.appointmentRepository = appointmentRepository;
+        this.patientRepository = patientRepository;
+        this.clinicianRepository = clinicianRepository;
+        this.facilityRepository = facilityRepository;
+    }
+
+    // One clinician's appointments on the days [from, to]. Returns how many were written.
+    public int exportClinician(String clinicianId, LocalDate from, LocalDate to, String changedSince, Writer out)
+            throws IOException {
+        return exportClinician(clinicianId, from, to, changedSince, out, null);
+    }
+
+    public int exportFacility(String facilityId, LocalDate from, LocalDate to, String changedSince, Writer out)
+            throws IOException {
+        return exportFacility(facilityId, from, to, changedSince, out, null);
+    }
+
+    // Same, taking 'lock' (if not null) around each month's lookups but never while writing to 'out'
+    public int exportClinician(String clinicianId, LocalDate from, LocalDate to, String changedSince, Writer out,
+                               Lock lock) throws IOException {
+        return export(true, clinicianId, from, to, changedSince, out, lock);
+    }
+
+    public int exportFacility(String facilityId, LocalDate from, LocalDate to, String changedSince, Writer out,
+                              Lock lock) throws IOException {
+        return export(false, facilityId, from, to, changedSince, out, lock);
+    }
+
+    // Same, straight to a file
+    public int exportClinician(String clinicianId, LocalDate from, LocalDate to, String changedSince, Path file)
+            throws IOException {
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            return exportClinician(clinicianId, from, to, changedSince, out);
+        }
+    }
+
+    public int exportFacility(String facilityId, LocalDate from, LocalDate to, String changedSince, Path file)
+            throws IOException {
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            return exportFacility(facilityId, from, to, changedSince, out);
+        }
+    }
+
+    private int export(boolean byClinician, String id, LocalDate from, LocalDate to, String changedSince,
+                       Writer out, Lock lock) throws IOException {
+        AppointmentSchedule schedule = appointmentRepository.getSchedule();
+        String stamp = LocalDateTime.now(ZoneOffset.UTC).format(UTC_TIME);
+        String since = changedSince != null ? changedSince.trim() : "";
+        // Clinician and facility names, looked up once per export (those lookups are linear scans)
+        Map<String, String> names = new HashMap<>();
+
+        String calendarName;
+        List<AppointmentSeries> seriesList;
+        lock(lock);
+        try {
+            calendarName = byClinician ? clinicianName(id) : facilityName(id);
+            seriesList = byClinician ? schedule.clinicianSeries(id) : schedule.facilitySeries(id);
+        } finally {
+            unlock(lock);
+        }
+
+        line(out, "BEGIN:VCALENDAR");
+        line(out, "VERSION:2.0");
+        line(out, "PRODID:" + PRODUCT_ID);
+        line(out, "CALSCALE:GREGORIAN");
+        line(out, "METHOD:PUBLISH");
+        line(out, "X-WR-CALNAME:" + escape(calendarName));
+
+        int written = 0;
+        for (LocalDate chunk = from; !chunk.isAfter(to); chunk = chunk.plusDays(CHUNK_DAYS)) {
+            LocalDate chunkEnd = chunk.plusDays(CHUNK_DAYS - 1).isAfter(to) ? to : chunk.plusDays(CHUNK_DAYS - 1);
+            int start = (int) (chunk.toEpochDay() * OpeningHours.MINUTES_PER_DAY);
+            int end = (int) ((chunkEnd.toEpochDay() + 1) * OpeningHours.MINUTES_PER_DAY);
+
+            // The month is written to a buffer under the lock, then sent without it
+            StringWriter buffer = new StringWriter();
+            lock(lock);
+            try {
+                List<String> ids = byClinician
+                    ? schedule.clinicianAppointmentsStarting(id, start, end)
+                    : schedule.facilityAppointmentsStarting(id, start, end);
+                for (String appointmentId : ids) {
+                    Appointment a = appointmentRepository.findById(appointmentId);
+                    if (a != null && changedSince(a.getLastModified(), since)) {
+                        event(buffer, a, stamp, names);
+                        written++;
+                    }
+                }
+                for (AppointmentSeries s : seriesList) {
+                    if (!changedSince(s.getLastModified(), since)) {
+                        continue;
+                    }
+                    for (Appointment occurrence : s.occurrencesBetween(chunk, chunkEnd.plusDays(1))) {
+                        event(buffer, occurrence, stamp, names);
+                        written++;
+                    }
+                }
+            } finally {
+                unlock(lock);
+            }
+            out.write(buffer.toString());
+        }
+
+        line(out, "END:VCALENDAR");
+        out.flush();
+        return written;
+    }
+
+    private String clinicianName(String clinicianId) {
+        Clinician clinician = clinicianRepository != null ? clinicianRepository.findById(clinicianId) : null;
+        return clinician != null ? clinician.getFullName() : clinicianId;
+    }
+
+    private String facilityName(String facilityId) {
+        Facility facility = facilityRepository != null ? facilityRepository.findById(facilityId) : null;
+        return facility != null ? facility.getFacilityName() : facilityId;
+    }
+
+    private static void lock(Lock lock) {
+        if (lock != null) {
+            lock.lock();
+        }
+    }
+
+    private static void unlock(Lock lock) {
+        if (lock != null) {
+            lock.unlock();
+        }
+    }
+
+    private void event(Writer out, Appointment a, String stamp, Map<String, String> names) throws IOException {
+        int start = AppointmentSchedule.startMinute(a.getAppointmentDate(), a.getAppointmentTime());
+        LocalDateTime begins = AppointmentSchedule.toDateTime(start);
+        LocalDateTime ends = begins.plusMinutes(AppointmentSchedule.durationOf(a));
+
+        Patient p = patientRepository != null ? patientRepository.findById(a.getPatientId()) : null;
+        String patient = p != null ? p.getFullName() : a.getPatientId();
+        String clinician = names.computeIfAbsent("C:" + a.getClinicianId(), k -> {
+            Clinician c = clinicianRepository != null ? clinicianRepository.findById(a.getClinicianId()) : null;
+            return c != null ? c.getFullName() : a.getClinicianId();
+        });
+        String facility = names.computeIfAbsent("F:" + a.getFacilityId(), k -> {
+            Facility f = facilityRepository != null ? facilityRepository.findById(a.getFacilityId()) : null;
+            return f != null ? f.getFacilityName() : a.getFacilityId();
+        });
+        String type = a.getAppointmentType() != null && !a.getAppointmentType().trim().isEmpty()
+            ? a.getAppointmentType().trim() : "Appointment";
+
+        StringBuilder description = new StringBuilder("Clinician: ").append(clinician);
+        if (a.getReasonForVisit() != null && !a.getReasonForVisit().trim().isEmpty()) {
+            description.append("\nReason: ").append(a.getReasonForVisit().trim());
+        }
+        if (a.getNotes() != null && !a.getNotes().trim().isEmpty()) {
+            description.append("\nNotes: ").append(a.getNotes().trim());
+        }
+
+        line(out, "BEGIN:VEVENT");
+        line(out, "UID:" + escape(a.getId()) + UID_DOMAIN);
+        line(out, "DTSTAMP:" + stamp);
+        line(out, "DTSTART:" + begins.format(LOCAL_TIME));
+        line(out, "DTEND:" + ends.format(LOCAL_TIME));
+        line(out, "SUMMARY:" + escape(type + " - " + patient));
+        line(out, "LOCATION:" + escape(facility));
+        line(out, "DESCRIPTION:" + escape(description.toString()));
+        line(out, "STATUS:" + ("Pending".equalsIgnoreCase(trim(a.getStatus())) ? "TENTATIVE" : "CONFIRMED"));
+        line(out, "SEQUENCE:" + a.getVersion());
+        String modified = utcDate(a.getLastModified());
+        if (modified != null) {
+            line(out, "LAST-MODIFIED:" + modified);
+        }
+        line(out, "END:VEVENT");
+    }
+
+    // Last modified on or after 'since' (anything without a readable date is sent, to be safe)
+    private static boolean changedSince(String lastModified, String since) {
+        if (since.isEmpty()) {
+            return true;
+        }
+        String modified = trim(lastModified);
+        return utcDate(modified) == null || modified.compareTo(since) >= 0;
+    }
+
+    // "2026-10-18" -> "20261018T000000Z", or null if it isn't a date
+    private static String utcDate(String date) {
+        try {
+            return LocalDate.parse(trim(date)).atStartOfDay().format(UTC_TIME);
+        } catch (java.time.format.DateTimeParseException ex) {
+            return null;
+        }
+    }
+
+    // Backslash, semicolon, comma and newline have to be escaped in text values
+    static String escape(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(text.length() + 8);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '\\': sb.append("\\\\"); break;
+                case ';': sb.append("\\;"); break;
+                case ',': sb.append("\\,"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': break;
+                default: sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    // Writes one content line, folded at 75 bytes of UTF-8 (never inside a character), with
+    // the CRLF line endings the format asks for
+    static void line(Writer out, String text) throws IOException {
+        int bytes = 0;
+        int i = 0;
+        while (i < text.length()) {
+            int codePoint = text.codePointAt(i);
+            int size = codePoint < 0x80 ? 1 : codePoint < 0x800 ? 2 : codePoint < 0x10000 ? 3 : 4;
+            if (bytes + size > MAX_LINE_BYTES) {
+                out.write("\r\n ");
+                // The space starting the next line counts towards its 75
+                bytes = 1;
+            }
+            out.write(text, i, Character.charCount(codePoint));
+            bytes += size;
+            i += Character.charCount(codePoint);
+        }
+        out.write("\r\n");
+    }
+
+    private static String trim(String s) {
+        return s != null ? s.trim() : "";
+    }
+}
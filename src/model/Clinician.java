@@ -1,5 +1,7 @@
 package model;
 
+import java.util.Set;
+
 // Clinician class - matches the clinicians.csv file structure
 public class Clinician extends Staff {
     
@@ -10,6 +12,12 @@ public class Clinician extends Staff {
     private String workplaceId;
     private String workplaceType;
     private String qualification;
+    // Display name and its lower-case search form, built on first use and cleared whenever
+    // the title, names or ID change (see namesChanged)
+    private String fullName;
+    private String searchName;
+    // speciality as a lower-case set (see Facility.parseSpecialities), built on first use
+    private Set<String> specialitySet;
     
     public Clinician() {
         super();
@@ -80,9 +88,26 @@ public class Clinician extends Staff {
     public void setId(String id) {
         this.clinicianId = id;
         setStaffId(id);
+        namesChanged();
     }
     
     public String getFullName() {
+        if (fullName == null) {
+            fullName = buildFullName();
+        }
+        return fullName;
+    }
+    
+    // Lower-case full name for "contains" searches - lower-case the search text to match
+    public String getSearchName() {
+        if (searchName == null) {
+            String name = getFullName();
+            searchName = name != null ? name.toLowerCase() : "";
+        }
+        return searchName;
+    }
+    
+    private String buildFullName() {
         String firstName = getFirstName();
         String lastName = getLastName();
         if (title != null && !title.isEmpty()) {
@@ -94,6 +119,12 @@ public class Clinician extends Staff {
         return clinicianId;
     }
     
+    @Override
+    protected void namesChanged() {
+        fullName = null;
+        searchName = null;
+    }
+    
     public String getClinicianId() {
         return clinicianId;
     }
@@ -101,6 +132,7 @@ public class Clinician extends Staff {
     public void setClinicianId(String clinicianId) {
         this.clinicianId = clinicianId;
         setStaffId(clinicianId);
+        namesChanged();
     }
     
     public String getTitle() {
@@ -109,6 +141,7 @@ public class Clinician extends Staff {
     
     public void setTitle(String title) {
         this.title = title;
+        namesChanged();
     }
     
     public String getSpeciality() {
@@ -117,6 +150,18 @@ public class Clinician extends Staff {
     
     public void setSpeciality(String speciality) {
         this.speciality = speciality;
+        this.specialitySet = null;
+    }
+    
+    public Set<String> getSpecialitySet() {
+        if (specialitySet == null) {
+            specialitySet = Facility.parseSpecialities(speciality);
+        }
+        return specialitySet;
+    }
+    
+    public boolean hasSpeciality(String speciality) {
+        return speciality != null && getSpecialitySet().contains(speciality.trim().toLowerCase());
     }
     
     public String getGmcNumber() {
@@ -11,6 +11,7 @@ public class ClinicianRepository {
     private final List<Clinician> clinicians = new ArrayList<>();
     private final String csvPath;
     private static final int EXPECTED_COLUMNS = 12;
+    private final RepositoryEventSupport<Clinician> events = new RepositoryEventSupport<>();
 
     public ClinicianRepository(String csvPath) {
         this.csvPath = csvPath;
@@ -160,6 +161,7 @@ public class ClinicianRepository {
     // Add a new clinician and append to CSV
     public void addAndAppend(Clinician c) {
         clinicians.add(c);
+        events.fireInserted(c);
         try {
             CsvUtils.appendLine(csvPath, new String[]{
                     c.getClinicianId(),
@@ -183,6 +185,15 @@ public class ClinicianRepository {
     public List<Clinician> getAll() {
         return clinicians;
     }
+    
+    // Listeners are told about every clinician that is added, updated or removed
+    public void addChangeListener(RepositoryChangeListener<Clinician> listener) {
+        events.addListener(listener);
+    }
+    
+    public void removeChangeListener(RepositoryChangeListener<Clinician> listener) {
+        events.removeListener(listener);
+    }
 
     // Update a clinician and save to CSV
     public void updateClinician(Clinician clinician) {
@@ -195,6 +206,7 @@ public class ClinicianRepository {
             if (clinicians.get(i).getClinicianId().equals(clinician.getClinicianId())) {
                 clinicians.set(i, clinician);
                 saveAll();
+                events.fireUpdated(clinician);
                 System.out.println("Successfully updated clinician " + clinician.getClinicianId());
                 return;
             }
@@ -204,8 +216,8 @@ public class ClinicianRepository {
     }
     
     public void remove(Clinician c) {
-        if (c != null) {
-            clinicians.remove(c);
+        if (c != null && clinicians.remove(c)) {
+            events.fireDeleted(c);
         }
     }
 
@@ -217,40 +229,19 @@ public class ClinicianRepository {
     
     // Save all clinicians back to CSV
     public void saveAll() {
-        try (java.io.BufferedWriter bw = new java.io.BufferedWriter(new java.io.FileWriter(csvPath))) {
-            bw.write("clinician_id,first_name,last_name,title,speciality,gmc_number,phone_number,email,workplace_id,workplace_type,employment_status,start_date");
-            bw.newLine();
-            
-            for (Clinician c : clinicians) {
-                bw.write(escapeCsv(c.getClinicianId()) + ",");
-                bw.write(escapeCsv(c.getFirstName()) + ",");
-                bw.write(escapeCsv(c.getLastName()) + ",");
-                bw.write(escapeCsv(c.getTitle()) + ",");
-                bw.write(escapeCsv(c.getSpeciality()) + ",");
-                bw.write(escapeCsv(c.getGmcNumber()) + ",");
-                bw.write(escapeCsv(c.getPhoneNumber()) + ",");
-                bw.write(escapeCsv(c.getEmail()) + ",");
-                bw.write(escapeCsv(c.getWorkplaceId()) + ",");
-                bw.write(escapeCsv(c.getWorkplaceType()) + ",");
-                bw.write(escapeCsv(c.getEmploymentStatus()) + ",");
-                bw.write(escapeCsv(c.getStartDate()));
-                bw.newLine();
-            }
-            
-        } catch (java.io.IOException ex) {
+        List<String[]> rows = new ArrayList<>();
+        for (Clinician c : clinicians) {
+            rows.add(new String[]{
+                c.getClinicianId(), c.getFirstName(), c.getLastName(), c.getTitle(), c.getSpeciality(),
+                c.getGmcNumber(), c.getPhoneNumber(), c.getEmail(), c.getWorkplaceId(), c.getWorkplaceType(),
+                c.getEmploymentStatus(), c.getStartDate()
+            });
+        }
+        try {
+            CsvUtils.writeCsv(csvPath, "clinician_id,first_name,last_name,title,speciality,gmc_number,phone_number,email,workplace_id,workplace_type,employment_status,start_date", rows);
+        } catch (IOException ex) {
             System.err.println("Failed to save clinicians to CSV file: " + csvPath);
             System.err.println("Error: " + ex.getMessage());
         }
     }
-    
-    // Escape commas and quotes in CSV values
-    private String escapeCsv(String value) {
-        if (value == null) {
-            return "";
-        }
-        if (value.contains(",") || value.contains("\"")) {
-            return "\"" + value.replace("\"", "\"\"") + "\"";
-        }
-        return value;
-    }
 }
@@ -1,5 +1,9 @@
 package model;
 
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
 // Facility class - matches the facilities.csv file structure
 public class Facility {
     
@@ -14,6 +18,10 @@ public class Facility {
     private String managerName;
     private int capacity;
     private String specialitiesOffered;
+    // openingHours parsed into times per weekday - worked out on first use, cleared when the text changes
+    private OpeningHours parsedOpeningHours;
+    // specialitiesOffered split on '|' - same: worked out on first use, cleared when the text changes
+    private Set<String> specialitySet;
     
     public Facility() {
     }
@@ -122,6 +130,14 @@ public class Facility {
     
     public void setOpeningHours(String openingHours) {
         this.openingHours = openingHours;
+        this.parsedOpeningHours = null;
+    }
+    
+    public OpeningHours getParsedOpeningHours() {
+        if (parsedOpeningHours == null) {
+            parsedOpeningHours = OpeningHours.parse(openingHours);
+        }
+        return parsedOpeningHours;
     }
     
     public String getManagerName() {
@@ -146,6 +162,32 @@ public class Facility {
     
     public void setSpecialitiesOffered(String specialitiesOffered) {
         this.specialitiesOffered = specialitiesOffered;
+        this.specialitySet = null;
+    }
+    
+    // The specialities offered, lower case (read-only)
+    public Set<String> getSpecialitySet() {
+        if (specialitySet == null) {
+            specialitySet = parseSpecialities(specialitiesOffered);
+        }
+        return specialitySet;
+    }
+    
+    public boolean offersSpeciality(String speciality) {
+        return speciality != null && getSpecialitySet().contains(speciality.trim().toLowerCase());
+    }
+    
+    // "Cardiology|Neurology" -> {"cardiology", "neurology"}, blanks left out
+    public static Set<String> parseSpecialities(String text) {
+        Set<String> set = new LinkedHashSet<>();
+        if (text != null) {
+            for (String part : text.split("\\|")) {
+                if (!part.trim().isEmpty()) {
+                    set.add(part.trim().toLowerCase());
+                }
+            }
+        }
+        return Collections.unmodifiableSet(set);
     }
     
     public String getPhone() {
@@ -161,7 +203,7 @@ public class Facility {
     }
     
     public void setSpecialities(String specialities) {
-        this.specialitiesOffered = specialities;
+        setSpecialitiesOffered(specialities);
     }
     
     @Override
@@ -0,0 +1,181 @@
+package model;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+// Booked minutes per facility and per hour, kept up to date as appointments are booked,
+// moved and cancelled (AppointmentSchedule calls add/remove), so utilization reports never
+// rescan the appointments.
+//
+// Each facility has one counter per hour, plus a Fenwick tree (running prefix sums) over
+// the day totals, so the booked minutes for any run of days are the difference of two
+// prefix sums. The counters cover the days between the earliest and latest booking seen
+// and are regrown when a booking falls outside them.
+public class FacilityUtilization {
+
+    private static final int HOURS_PER_DAY = 24;
+    // Bookings further than this from today aren't counted (a mistyped year would otherwise
+    // mean counters for centuries of days)
+    private static final int DAYS_KEPT = 10 * 366;
+
+    private static class Counters {
+        // Epoch day of the first day covered
+        long firstDay;
+        int days;
+        // Booked minutes for each hour, a day at a time
+        int[] byHour = new int[0];
+        // Fenwick tree over the day totals (index 1 = first day)
+        long[] dayTree = new long[1];
+    }
+
+    private final Map<String, Counters> byFacility = new HashMap<>();
+    // Fixed when created, so a booking is always either counted or not on both add and remove
+    private final long today = LocalDate.now().toEpochDay();
+
+    // [start, end) in schedule minutes, split across the hours it covers
+    public synchronized void add(String facilityId, int start, int end) {
+        change(facilityId, start, end, 1);
+    }
+
+    public synchronized void remove(String facilityId, int start, int end) {
+        change(facilityId, start, end, -1);
+    }
+
+    public synchronized void clear() {
+        byFacility.clear();
+    }
+
+    // Booked minutes on the days [from, to]
+    public synchronized long bookedMinutes(String facilityId, LocalDate from, LocalDate to) {
+        Counters c = byFacility.get(key(facilityId));
+        if (c == null || c.days == 0) {
+            return 0;
+        }
+        int first = (int) Math.max(from.toEpochDay() - c.firstDay, 0);
+        int last = (int) Math.min(to.toEpochDay() - c.firstDay, c.days - 1);
+        if (first > last) {
+            return 0;
+        }
+        return prefixSum(c, last + 1) - prefixSum(c, first);
+    }
+
+    // Booked minutes in each hour of the day (index 0 = midnight to 1am)
+    public synchronized int[] bookedMinutesByHour(String facilityId, LocalDate day) {
+        int[] result = new int[HOURS_PER_DAY];
+        Counters c = byFacility.get(key(facilityId));
+        long index = c != null ? day.toEpochDay() - c.firstDay : -1;
+        if (index >= 0 && index < c.days) {
+            System.arraycopy(c.byHour, (int) index * HOURS_PER_DAY, result, 0, HOURS_PER_DAY);
+        }
+        return result;
+    }
+
+    private void change(String facilityId, int start, int end, int sign) {
+        String facilityKey = key(facilityId);
+        if (facilityKey.isEmpty() || end <= start) {
+            return;
+        }
+        long firstDay = Math.floorDiv(start, OpeningHours.MINUTES_PER_DAY);
+        long lastDay = Math.floorDiv(end - 1, OpeningHours.MINUTES_PER_DAY);
+        if (firstDay < today - DAYS_KEPT || lastDay > today + DAYS_KEPT) {
+            return;
+        }
+
+        Counters c = byFacility.computeIfAbsent(facilityKey, k -> new Counters());
+        cover(c, firstDay, lastDay);
+        for (int hourStart = Math.floorDiv(start, 60) * 60; hourStart < end; hourStart += 60) {
+            int minutes = Math.min(end, hourStart + 60) - Math.max(start, hourStart);
+            long dayIndex = Math.floorDiv(hourStart, OpeningHours.MINUTES_PER_DAY) - c.firstDay;
+            int hour = Math.floorMod(hourStart, OpeningHours.MINUTES_PER_DAY) / 60;
+            c.byHour[(int) dayIndex * HOURS_PER_DAY + hour] += sign * minutes;
+            for (int i = (int) dayIndex + 1; i <= c.days; i += i & -i) {
+                c.dayTree[i] += sign * minutes;
+            }
+        }
+    }
+
+    // Total of the first 'count' days
+    private static long prefixSum(Counters c, int count) {
+        long sum = 0;
+        for (int i = count; i > 0; i -= i & -i) {
+            sum += c.dayTree[i];
+        }
+        return sum;
+    }
+
+    // Grows the counters to cover [fromDay, toDay], with room to spare on the side that grew
+    // so a run of later (or earlier) bookings doesn't regrow them every time
+    private static void cover(Counters c, long fromDay, long toDay) {
+        if (c.days > 0 && fromDay >= c.firstDay && toDay < c.firstDay + c.days) {
+            return;
+        }
+        long newFirst = fromDay;
+        long newLast = toDay;
+        if (c.days > 0) {
+            int spare = Math.max(c.days / 2, 7);
+            newFirst = fromDay < c.firstDay ? fromDay - spare : c.firstDay;
+            newLast = toDay >= c.firstDay + c.days ? toDay + spare : c.firstDay + c.days - 1;
+        }
+        int days = (int) (newLast - newFirst + 1);
+
+        int[] byHour = new int[days * HOURS_PER_DAY];
+        if (c.days > 0) {
+            System.arraycopy(c.byHour, 0, byHour, (int) (c.firstDay - newFirst) * HOURS_PER_DAY, c.days * HOURS_PER_DAY);
+        }
+        // Fenwick tree built in one pass: each node passes its total up to its parent
+        long[] dayTree = new long[days + 1];
+        for (int i = 1; i <= days; i++) {
+            for (int h = 0; h < HOURS_PER_DAY; h++) {
+                dayTree[i] += byHour[(i - 1) * HOURS_PER_DAY + h];
+            }
+            int parent = i + (i & -i);
+            if (parent <= days) {
+                dayTree[parent] += dayTree[i];
+            }
+        }
+
+        c.firstDay = newFirst;
+        c.days = days;
+        c.byHour = byHour;
+        c.dayTree = dayTree;
+    }
+
+    // --- Capacity ---
+
+    // How many minutes of each hour of the day the facility is open,
+    // e.g. 8:30-17:00 gives 30 for 8am, 60 for 9am to 4pm and 0 for the rest
+    public static int[] openMinutesByHour(OpeningHours hours, DayOfWeek day) {
+        int[] result = new int[HOURS_PER_DAY];
+        int[] open = hours.getHours(day);
+        for (int i = 0; i < open.length; i += 2) {
+            for (int h = open[i] / 60; h < HOURS_PER_DAY && h * 60 < open[i + 1]; h++) {
+                result[h] += Math.min(open[i + 1], h * 60 + 60) - Math.max(open[i], h * 60);
+            }
+        }
+        return result;
+    }
+
+    // Bookable minutes on the days [from, to]: minutes open times how many appointments the
+    // facility can hold at once (a facility with no capacity set counts as one at a time)
+    public static long capacityMinutes(Facility facility, LocalDate from, LocalDate to) {
+        OpeningHours hours = facility.getParsedOpeningHours();
+        long[] openPerWeekday = new long[7];
+        for (DayOfWeek day : DayOfWeek.values()) {
+            int[] open = hours.getHours(day);
+            for (int i = 0; i < open.length; i += 2) {
+                openPerWeekday[day.getValue() - 1] += open[i + 1] - open[i];
+            }
+        }
+        long total = 0;
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            total += openPerWeekday[day.getDayOfWeek().getValue() - 1];
+        }
+        return total * Math.max(facility.getCapacity(), 1);
+    }
+
+    private static String key(String id) {
+        return id != null ? id.trim() : "";
+    }
+}
@@ -120,32 +120,17 @@ public class MedicalRecordRepository {
     
     // Save all records back to CSV
     private void saveAll() {
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(csvPath))) {
-            bw.write("patient_id,allergies,blood_type,history");
-            bw.newLine();
-            
-            for (MedicalRecord record : records) {
-                bw.write(record.getPatientId() + ",");
-                bw.write(escapeCsv(record.getAllergies()) + ",");
-                bw.write(escapeCsv(record.getBloodType()) + ",");
-                bw.newLine();
-            }
-            
+        List<String[]> rows = new ArrayList<>();
+        for (MedicalRecord record : records) {
+            // History isn't saved - the column is left blank
+            rows.add(new String[]{record.getPatientId(), record.getAllergies(), record.getBloodType(), ""});
+        }
+        try {
+            CsvUtils.writeCsv(csvPath, "patient_id,allergies,blood_type,history", rows);
         } catch (IOException ex) {
             System.err.println("Failed to save medical records to CSV file: " + csvPath);
             System.err.println("Error: " + ex.getMessage());
         }
     }
-    
-    // Escape commas and quotes in CSV values
-    private String escapeCsv(String value) {
-        if (value == null) {
-            return "";
-        }
-        if (value.contains(",") || value.contains("\"")) {
-            return "\"" + value.replace("\"", "\"\"") + "\"";
-        }
-        return value;
-    }
 }
 
@@ -0,0 +1,175 @@
+package model;
+
+import java.time.DayOfWeek;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Facility opening hours turned from the text in facilities.csv into times per weekday.
+//
+// Handles the formats the data uses, e.g.
+//     "Mon-Fri: 8:00-18:00, Sat: 8:00-12:00"
+//     "24/7 Emergency, Outpatients: Mon-Fri 8:00-17:00"
+// Appointments are outpatient bookings, so when a facility lists both "24/7" and some
+// actual hours, the hours win. "24/7" on its own means open all day every day. A part
+// with times but no days ("Daily 9:00-17:00") applies to every day.
+public class OpeningHours {
+
+    public static final int MINUTES_PER_DAY = 24 * 60;
+
+    private static final String[] DAY_NAMES = {"mon", "tue", "wed", "thu", "fri", "sat", "sun"};
+    private static final Pattern TIME_RANGE = Pattern.compile("(\\d{1,2})[:.](\\d{2})\\s*-\\s*(\\d{1,2})[:.](\\d{2})");
+    private static final Pattern DAY_RANGE = Pattern.compile(
+        "(mon|tue|wed|thu|fri|sat|sun)[a-z]*(?:\\s*-\\s*(mon|tue|wed|thu|fri|sat|sun)[a-z]*)?");
+
+    public static final OpeningHours CLOSED = new OpeningHours(new int[7][0]);
+    public static final OpeningHours ALWAYS_OPEN = alwaysOpen();
+
+    // Per weekday (0 = Monday) sorted, non-overlapping {open, close, open, close...} in
+    // minutes from midnight
+    private final int[][] byDay;
+
+    private OpeningHours(int[][] byDay) {
+        this.byDay = byDay;
+    }
+
+    private static OpeningHours alwaysOpen() {
+        int[][] byDay = new int[7][];
+        for (int d = 0; d < 7; d++) {
+            byDay[d] = new int[]{0, MINUTES_PER_DAY};
+        }
+        return new OpeningHours(byDay);
+    }
+
+    public static OpeningHours parse(String text) {
+        if (text == null || text.trim().isEmpty()) {
+            return CLOSED;
+        }
+
+        List<List<int[]>> ranges = new ArrayList<>();
+        for (int d = 0; d < 7; d++) {
+            ranges.add(new ArrayList<>());
+        }
+        boolean anyHours = false;
+        boolean roundTheClock = false;
+
+        for (String part : text.toLowerCase().split("[,;]")) {
+            Matcher time = TIME_RANGE.matcher(part);
+            if (!time.find()) {
+                if (part.contains("24/7") || part.contains("24 hours")) {
+                    roundTheClock = true;
+                }
+                continue;
+            }
+            int open = Integer.parseInt(time.group(1)) * 60 + Integer.parseInt(time.group(2));
+            int close = Integer.parseInt(time.group(3)) * 60 + Integer.parseInt(time.group(4));
+            if (close <= open || close > MINUTES_PER_DAY) {
+                continue;
+            }
+
+            boolean[] days = new boolean[7];
+            boolean anyDays = false;
+            Matcher dayMatcher = DAY_RANGE.matcher(part.substring(0, time.start()));
+            while (dayMatcher.find()) {
+                int from = dayIndex(dayMatcher.group(1));
+                int to = dayMatcher.group(2) != null ? dayIndex(dayMatcher.group(2)) : from;
+                // Wraps round the week too, e.g. "Sat-Mon"
+                for (int d = from; ; d = (d + 1) % 7) {
+                    days[d] = true;
+                    if (d == to) break;
+                }
+                anyDays = true;
+            }
+            for (int d = 0; d < 7; d++) {
+                if (days[d] || !anyDays) {
+                    ranges.get(d).add(new int[]{open, close});
+                }
+            }
+            anyHours = true;
+        }
+
+        if (!anyHours) {
+            if (roundTheClock) {
+                return ALWAYS_OPEN;
+            }
+            System.err.println("Could not read opening hours: " + text);
+            return CLOSED;
+        }
+
+        int[][] byDay = new int[7][];
+        for (int d = 0; d < 7; d++) {
+            byDay[d] = merge(ranges.get(d));
+        }
+        return new OpeningHours(byDay);
+    }
+
+    private static int dayIndex(String name) {
+        return Arrays.asList(DAY_NAMES).indexOf(name);
+    }
+
+    // Sorts ranges and joins any that touch or overlap
+    private static int[] merge(List<int[]> ranges) {
+        ranges.sort((a, b) -> Integer.compare(a[0], b[0]));
+        List<int[]> merged = new ArrayList<>();
+        for (int[] range : ranges) {
+            int[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && range[0] <= last[1]) {
+                last[1] = Math.max(last[1], range[1]);
+            } else {
+                merged.add(new int[]{range[0], range[1]});
+            }
+        }
+        int[] flat = new int[merged.size() * 2];
+        for (int i = 0; i < merged.size(); i++) {
+            flat[i * 2] = merged.get(i)[0];
+            flat[i * 2 + 1] = merged.get(i)[1];
+        }
+        return flat;
+    }
+
+    // {open, close, open, close...} in minutes from midnight - don't modify the array
+    public int[] getHours(DayOfWeek day) {
+        return byDay[day.getValue() - 1];
+    }
+
+    public boolean isOpen(DayOfWeek day, int fromMinute, int toMinute) {
+        int[] hours = getHours(day);
+        for (int i = 0; i < hours.length; i += 2) {
+            if (fromMinute >= hours[i] && toMinute <= hours[i + 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isClosedAllWeek() {
+        for (int[] hours : byDay) {
+            if (hours.length > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int d = 0; d < 7; d++) {
+            if (byDay[d].length == 0) {
+                continue;
+            }
+            if (sb.length() > 0) sb.append(", ");
+            sb.append(DAY_NAMES[d]).append(':');
+            for (int i = 0; i < byDay[d].length; i += 2) {
+                sb.append(' ').append(formatMinute(byDay[d][i])).append('-').append(formatMinute(byDay[d][i + 1]));
+            }
+        }
+        return sb.length() > 0 ? sb.toString() : "closed";
+    }
+
+    private static String formatMinute(int minute) {
+        return String.format("%02d:%02d", minute / 60, minute % 60);
+    }
+}
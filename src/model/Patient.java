@@ -4,6 +4,9 @@ public class Patient extends User {
     private String patientId, firstName, lastName, dateOfBirth, nhsNumber, gender;
     private String phoneNumber, address, postcode, emergencyContactName, emergencyContactPhone;
     private String registrationDate, gpSurgeryId;
+    // Built from first/last name the first time they're asked for and thrown away when either
+    // name changes, so table rendering and name searches don't build a new String per row
+    private String fullName, searchName;
 
     public Patient() { 
         super(); 
@@ -37,7 +40,18 @@ public class Patient extends User {
 
     // THE FULL NAME METHOD
     public String getFullName() {
-        return ((firstName != null ? firstName : "") + " " + (lastName != null ? lastName : "")).trim();
+        if (fullName == null) {
+            fullName = ((firstName != null ? firstName : "") + " " + (lastName != null ? lastName : "")).trim();
+        }
+        return fullName;
+    }
+
+    // Lower-case full name for "contains" searches - lower-case the search text to match
+    public String getSearchName() {
+        if (searchName == null) {
+            searchName = getFullName().toLowerCase();
+        }
+        return searchName;
     }
 
     // Alias for controllers using .getName()
@@ -47,9 +61,9 @@ public class Patient extends User {
     public String getPatientId() { return patientId; }
     public void setPatientId(String id) { this.patientId = id; }
     public String getFirstName() { return firstName; }
-    public void setFirstName(String fn) { this.firstName = fn; }
+    public void setFirstName(String fn) { this.firstName = fn; fullName = null; searchName = null; }
     public String getLastName() { return lastName; }
-    public void setLastName(String ln) { this.lastName = ln; }
+    public void setLastName(String ln) { this.lastName = ln; fullName = null; searchName = null; }
     public String getDateOfBirth() { return dateOfBirth; }
     public void setDateOfBirth(String dob) { this.dateOfBirth = dob; }
     public String getNhsNumber() { return nhsNumber; }
@@ -1,5 +1,6 @@
 package model;
 
+import util.CsvUtils;
 import model.Patient;
 import java.io.*;
 import java.util.*;
@@ -7,6 +8,13 @@ import java.util.*;
 public class PatientRepository {
     private final String csvPath;
     private List<Patient> patients = new ArrayList<>();
+    private final RepositoryEventSupport<Patient> events = new RepositoryEventSupport<>();
+    
+    // Sorted indexes so the patient grid can load one page at a time ("give me the next 200
+    // after this key") without copying or sorting the whole list
+    public enum SortOrder { ID, NAME }
+    private final TreeMap<String, Patient> byId = new TreeMap<>();
+    private final TreeMap<String, Patient> byName = new TreeMap<>();
 
     public PatientRepository(String csvPath) {
         this.csvPath = csvPath;
@@ -15,29 +23,40 @@ public class PatientRepository {
 
     public synchronized void load() {
         patients.clear();
+        byId.clear();
+        byName.clear();
         File file = new File(csvPath);
         if (!file.exists()) return;
         try (BufferedReader br = new BufferedReader(new FileReader(file))) {
             br.readLine(); // skip header
             String line;
             while ((line = br.readLine()) != null) {
-                String[] v = line.split(",", -1);
-                if (v.length >= 14) {
-                    patients.add(new Patient(v[0],v[1],v[2],v[3],v[4],v[5],v[6],v[7],v[8],v[9],v[10],v[11],v[12],v[13]));
+                // Quoted values (e.g. addresses with commas) as written by saveAll. Blank
+                // columns at the end are dropped by parseLine, so put them back.
+                String[] v = Arrays.copyOf(CsvUtils.parseLine(line), 14);
+                for (int i = 0; i < v.length; i++) {
+                    if (v[i] == null) v[i] = "";
+                }
+                if (!v[0].isEmpty()) {
+                    Patient p = new Patient(v[0],v[1],v[2],v[3],v[4],v[5],v[6],v[7],v[8],v[9],v[10],v[11],v[12],v[13]);
+                    patients.add(p);
+                    index(p);
                 }
             }
         } catch (IOException e) { e.printStackTrace(); }
     }
 
     public synchronized void saveAll() {
-        try (PrintWriter pw = new PrintWriter(new FileWriter(csvPath))) {
-            pw.println("ID,First,Last,DOB,NHS,Gender,Phone,Email,Address,Postcode,EName,EPhone,RegDate,GPID");
-            for (Patient p : patients) {
-                pw.println(String.join(",", p.getPatientId(), p.getFirstName(), p.getLastName(), p.getDateOfBirth(),
-                    p.getNhsNumber(), p.getGender(), p.getPhoneNumber(), p.getEmail(), p.getAddress(), 
-                    p.getPostcode(), p.getEmergencyContactName(), p.getEmergencyContactPhone(), 
-                    p.getRegistrationDate(), p.getGpSurgeryId()));
-            }
+        List<String[]> rows = new ArrayList<>();
+        for (Patient p : patients) {
+            rows.add(new String[]{p.getPatientId(), p.getFirstName(), p.getLastName(), p.getDateOfBirth(),
+                p.getNhsNumber(), p.getGender(), p.getPhoneNumber(), p.getEmail(), p.getAddress(),
+                p.getPostcode(), p.getEmergencyContactName(), p.getEmergencyContactPhone(),
+                p.getRegistrationDate(), p.getGpSurgeryId()});
+        }
+        // Written to a temp file and moved into place, so a reader never sees half a file
+        try {
+            CsvUtils.writeCsv(csvPath, "ID,First,Last,DOB,NHS,Gender,Phone,Email,Address,Postcode,EName,EPhone,RegDate,GPID", rows);
         } catch (IOException e) { e.printStackTrace(); }
     }
 
@@ -46,21 +65,101 @@ public class PatientRepository {
     public List<Patient> getAll() { return findAll(); } // Alias for MedicalRecordController
     
     public Patient findById(String id) {
-        return patients.stream().filter(p -> p.getPatientId().equalsIgnoreCase(id.trim())).findFirst().orElse(null);
+        if (id == null) return null;
+        return byId.get(sortKey(id));
+    }
+    
+    // --- Keyset paging ---
+    
+    // The key a patient is sorted by. Name keys end with the ID so two patients with the
+    // same name still get different keys.
+    public static String sortKey(Patient p, SortOrder order) {
+        if (order == SortOrder.NAME) {
+            return safe(p.getLastName()).toLowerCase() + "\u0000" + safe(p.getFirstName()).toLowerCase()
+                + "\u0000" + sortKey(p.getPatientId());
+        }
+        return sortKey(p.getPatientId());
+    }
+    
+    private static String sortKey(String id) {
+        return id.trim().toUpperCase();
+    }
+    
+    private static String safe(String value) {
+        return value != null ? value : "";
+    }
+    
+    // Up to 'limit' patients that sort after 'afterKey' (null = from the start)
+    public List<Patient> getPage(SortOrder order, String afterKey, int limit) {
+        TreeMap<String, Patient> index = order == SortOrder.NAME ? byName : byId;
+        Collection<Patient> tail = afterKey == null ? index.values() : index.tailMap(afterKey, false).values();
+        List<Patient> page = new ArrayList<>();
+        for (Patient p : tail) {
+            if (page.size() == limit) break;
+            page.add(p);
+        }
+        return page;
+    }
+    
+    public int count() { return byId.size(); }
+    
+    private void index(Patient p) {
+        byId.put(sortKey(p, SortOrder.ID), p);
+        byName.put(sortKey(p, SortOrder.NAME), p);
+    }
+    
+    private void unindex(Patient p) {
+        byId.remove(sortKey(p, SortOrder.ID));
+        byName.remove(sortKey(p, SortOrder.NAME));
     }
     
     public List<Patient> search(String id, String name, String nhs) {
+        // Lower-case the search text once rather than once per patient
+        String idSearch = id == null ? "" : id.toLowerCase();
+        String nameSearch = name == null ? "" : name.toLowerCase();
         return patients.stream()
-            .filter(p -> (id == null || id.isEmpty() || p.getPatientId().toLowerCase().contains(id.toLowerCase())))
-            .filter(p -> (name == null || name.isEmpty() || p.getFullName().toLowerCase().contains(name.toLowerCase())))
+            .filter(p -> (idSearch.isEmpty() || p.getPatientId().toLowerCase().contains(idSearch)))
+            .filter(p -> (nameSearch.isEmpty() || p.getSearchName().contains(nameSearch)))
             .filter(p -> (nhs == null || nhs.isEmpty() || p.getNhsNumber().contains(nhs)))
             .toList();
     }
 
-    public void add(Patient p) { patients.add(p); saveAll(); }
-    public void update(Patient p) { delete(p.getPatientId()); add(p); }
-    public void delete(String id) { patients.removeIf(p -> p.getPatientId().equalsIgnoreCase(id)); saveAll(); }
+    public void add(Patient p) { patients.add(p); index(p); saveAll(); events.fireInserted(p); }
+    
+    // Replaces the patient in place so it keeps its position in the list
+    public void update(Patient p) {
+        for (int i = 0; i < patients.size(); i++) {
+            if (patients.get(i).getPatientId().equalsIgnoreCase(p.getPatientId())) {
+                unindex(patients.get(i));
+                patients.set(i, p);
+                index(p);
+                saveAll();
+                events.fireUpdated(p);
+                return;
+            }
+        }
+        add(p);
+    }
+    
+    public void delete(String id) {
+        List<Patient> removed = new ArrayList<>();
+        patients.removeIf(p -> {
+            if (p.getPatientId().equalsIgnoreCase(id)) {
+                removed.add(p);
+                unindex(p);
+                return true;
+            }
+            return false;
+        });
+        saveAll();
+        for (Patient p : removed) events.fireDeleted(p);
+    }
+    
     public void refresh() { load(); }
+    
+    // Listeners are told about every patient that is added, updated or deleted
+    public void addChangeListener(RepositoryChangeListener<Patient> listener) { events.addListener(listener); }
+    public void removeChangeListener(RepositoryChangeListener<Patient> listener) { events.removeListener(listener); }
 
     public String generateNewId() {
         int max = 0;
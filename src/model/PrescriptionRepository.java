@@ -95,43 +95,23 @@ public class PrescriptionRepository {
     }
 
     public void saveAll() {
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(csvPath))) {
-            bw.write("prescription_id,patient_id,clinician_id,appointment_id,prescription_date," +
-                     "medication_name,dosage,frequency,duration_days,quantity,instructions," +
-                     "pharmacy_name,status,issue_date,collection_date");
-            bw.newLine();
-            
-            for (Prescription p : prescriptions) {
-                bw.write(escapeCsv(p.getId()) + ",");
-                bw.write(escapeCsv(p.getPatientId()) + ",");
-                bw.write(escapeCsv(p.getClinicianId()) + ",");
-                bw.write(escapeCsv(p.getAppointmentId()) + ",");
-                bw.write(escapeCsv(p.getPrescriptionDate()) + ",");
-                bw.write(escapeCsv(p.getMedication()) + ",");
-                bw.write(escapeCsv(p.getDosage()) + ",");
-                bw.write(escapeCsv(p.getFrequency()) + ",");
-                bw.write(escapeCsv(p.getDurationDays()) + ",");
-                bw.write(escapeCsv(p.getQuantity()) + ",");
-                bw.write(escapeCsv(p.getInstructions()) + ",");
-                bw.write(escapeCsv(p.getPharmacyName()) + ",");
-                bw.write(escapeCsv(p.getStatus()) + ",");
-                bw.write(escapeCsv(p.getIssueDate()) + ",");
-                bw.write(escapeCsv(p.getCollectionDate()));
-                bw.newLine();
-            }
+        List<String[]> rows = new ArrayList<>();
+        for (Prescription p : prescriptions) {
+            rows.add(new String[]{
+                p.getId(), p.getPatientId(), p.getClinicianId(), p.getAppointmentId(), p.getPrescriptionDate(),
+                p.getMedication(), p.getDosage(), p.getFrequency(), p.getDurationDays(), p.getQuantity(),
+                p.getInstructions(), p.getPharmacyName(), p.getStatus(), p.getIssueDate(), p.getCollectionDate()
+            });
+        }
+        try {
+            CsvUtils.writeCsv(csvPath, "prescription_id,patient_id,clinician_id,appointment_id,prescription_date," +
+                "medication_name,dosage,frequency,duration_days,quantity,instructions," +
+                "pharmacy_name,status,issue_date,collection_date", rows);
         } catch (IOException ex) {
             System.err.println("Failed to save prescriptions: " + ex.getMessage());
         }
     }
 
-    private String escapeCsv(String value) {
-        if (value == null) return "";
-        if (value.contains(",") || value.contains("\"")) {
-            return "\"" + value.replace("\"", "\"\"") + "\"";
-        }
-        return value;
-    }
-
     // --- ORIGINAL FEATURE METHODS ---
 
     public String generateNewId() {
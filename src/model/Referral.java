@@ -19,6 +19,8 @@ public class Referral {
     private String notes;
     private String createdDate;
     private String lastUpdated;
+    // Row version - goes up by one on every saved change (used to detect conflicting edits)
+    private long version = 1;
     
     public Referral() {
     }
@@ -209,4 +211,21 @@ public class Referral {
     public void setLastUpdated(String lastUpdated) {
         this.lastUpdated = lastUpdated;
     }
+    
+    public long getVersion() {
+        return version;
+    }
+    
+    public void setVersion(long version) {
+        this.version = version;
+    }
+    
+    // A separate object with the same values, to change without touching this one
+    public Referral copy() {
+        Referral copy = new Referral(referralId, patientId, referringClinicianId, referredToClinicianId,
+            referringFacilityId, referredToFacilityId, referralDate, urgencyLevel, referralReason,
+            clinicalSummary, requestedInvestigations, status, appointmentId, notes, createdDate, lastUpdated);
+        copy.setVersion(version);
+        return copy;
+    }
 }
@@ -1,19 +1,38 @@
 package model;
 
+import util.ChangeJournal;
 import util.CsvUtils;
-import java.io.*;
+import util.DataFileLock;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
 
 public class ReferralRepository {
     
     private static ReferralRepository referralRepo;
     private final List<Referral> referrals;
+    // Index by referral ID (upper-cased, since IDs are matched ignoring case)
+    private final Map<String, Referral> byId = new HashMap<>();
+    private final RepositoryEventSupport<Referral> events = new RepositoryEventSupport<>();
     private final String csvPath;
-    private static final int EXPECTED_COLUMNS = 16;
+    private final ChangeJournal journal;
+    private static final int EXPECTED_COLUMNS = 17;
+    private static final int VERSION_COLUMN = 16;
+    
+    private static final String HEADER =
+        "referral_id,patient_id,referring_clinician_id,referred_to_clinician_id," +
+        "referring_facility_id,referred_to_facility_id,referral_date,urgency_level," +
+        "referral_reason,clinical_summary,requested_investigations,status," +
+        "appointment_id,notes,created_date,last_updated,version";
     
     private ReferralRepository(String csvPath) {
         this.csvPath = csvPath;
+        this.journal = ChangeJournal.forDataFile(csvPath);
         this.referrals = new ArrayList<>();
         load();
     }
@@ -40,20 +59,10 @@ public class ReferralRepository {
                     continue;
                 }
 
-                // GUARD 3: SAFE ARRAY FILLING
-                // This prevents ArrayIndexOutOfBoundsException if the CSV row is too short
-                String[] safe = new String[EXPECTED_COLUMNS];
-                for (int i = 0; i < EXPECTED_COLUMNS; i++) {
-                    safe[i] = (i < row.length) ? row[i] : "";
-                }
-                
-                Referral referral = new Referral(
-                    safe[0], safe[1], safe[2], safe[3], safe[4], safe[5],
-                    safe[6], safe[7], safe[8], safe[9], safe[10], safe[11],
-                    safe[12], safe[13], safe[14], safe[15]
-                );
+                Referral referral = fromRow(row);
                 
                 referrals.add(referral);
+                byId.put(key(referral.getReferralId()), referral);
             }
             
             System.out.println("Loaded " + referrals.size() + " referrals from " + csvPath);
@@ -65,19 +74,75 @@ public class ReferralRepository {
         }
     }
     
+    // GUARD 3: SAFE ARRAY FILLING
+    // This prevents ArrayIndexOutOfBoundsException if the CSV row is too short
+    // (rows written before the version column existed count as version 1)
+    private Referral fromRow(String[] row) {
+        String[] safe = new String[EXPECTED_COLUMNS];
+        for (int i = 0; i < EXPECTED_COLUMNS; i++) {
+            safe[i] = (i < row.length) ? row[i] : "";
+        }
+        
+        Referral referral = new Referral(
+            safe[0], safe[1], safe[2], safe[3], safe[4], safe[5],
+            safe[6], safe[7], safe[8], safe[9], safe[10], safe[11],
+            safe[12], safe[13], safe[14], safe[15]
+        );
+        referral.setVersion(parseVersion(row));
+        return referral;
+    }
+    
+    private String[] toRow(Referral r) {
+        return new String[] {
+            r.getReferralId(), r.getPatientId(), r.getReferringClinicianId(),
+            r.getReferredToClinicianId(), r.getReferringFacilityId(),
+            r.getReferredToFacilityId(), r.getReferralDate(),
+            r.getUrgencyLevel(), r.getReferralReason(),
+            r.getClinicalSummary(), r.getRequestedInvestigations(),
+            r.getStatus(), r.getAppointmentId(), r.getNotes(),
+            r.getCreatedDate(), r.getLastUpdated(),
+            String.valueOf(r.getVersion())
+        };
+    }
+    
+    private static long parseVersion(String[] row) {
+        if (row.length <= VERSION_COLUMN) return 1;
+        try {
+            return Long.parseLong(row[VERSION_COLUMN].trim());
+        } catch (NumberFormatException ex) {
+            return 1;
+        }
+    }
+    
+    private static int indexOfRow(List<String[]> rows, String id) {
+        for (int i = 0; i < rows.size(); i++) {
+            if (rows.get(i).length > 0 && rows.get(i)[0].trim().equalsIgnoreCase(id.trim())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
     public List<Referral> getAll() {
         return new ArrayList<>(referrals);
     }
     
     public Referral findById(String id) {
         if (id == null) return null;
-        String tid = id.trim();
-        for (Referral r : referrals) {
-            if (tid.equalsIgnoreCase(r.getReferralId() != null ? r.getReferralId().trim() : "")) {
-                return r;
-            }
-        }
-        return null;
+        return byId.get(key(id));
+    }
+    
+    private static String key(String id) {
+        return id != null ? id.trim().toUpperCase() : "";
+    }
+    
+    // Listeners are told about every referral that is added, updated or deleted
+    public void addChangeListener(RepositoryChangeListener<Referral> listener) {
+        events.addListener(listener);
+    }
+    
+    public void removeChangeListener(RepositoryChangeListener<Referral> listener) {
+        events.removeListener(listener);
     }
     
     public List<Referral> findByPatientId(String patientId) {
@@ -97,23 +162,158 @@ public class ReferralRepository {
     public void addAndAppend(Referral referral) {
         if (referral == null) return;
         
+        DataFileLock lock = DataFileLock.forFile(csvPath);
+        try {
+            lock.acquire();
+            try {
+                List<String[]> diskRows = CsvUtils.readCsv(csvPath);
+                if (indexOfRow(diskRows, referral.getReferralId()) >= 0) {
+                    // Another user saved a referral with this ID since we loaded - take the next free one
+                    referral.setReferralId(generateNewId(diskRows));
+                }
+                CsvUtils.appendLine(csvPath, CsvUtils.escapeRow(toRow(referral)));
+                journal.append(csvPath, ChangeJournal.UPSERT, toRow(referral));
+            } finally {
+                lock.release();
+            }
+        } catch (IOException ex) {
+            System.err.println("Failed to append referral: " + ex.getMessage());
+        }
+        
         referrals.add(referral);
+        byId.put(key(referral.getReferralId()), referral);
+        events.fireInserted(referral);
+    }
+    
+    // Optimistic concurrency: only written if the row on disk still has the version we loaded.
+    // On a conflict the latest copy replaces ours in memory and the save is rejected.
+    public void updateReferral(Referral updated) throws VersionConflictException {
+        if (updated == null) return;
+        
+        int i = referrals.indexOf(findById(updated.getReferralId()));
+        if (i < 0) {
+            System.err.println("Referral with ID " + updated.getReferralId() + " not found for update.");
+            return;
+        }
         
+        // Held from the version check until the row is written
+        DataFileLock lock = DataFileLock.forFile(csvPath);
         try {
-            String[] rowData = {
-                referral.getReferralId(), referral.getPatientId(), referral.getReferringClinicianId(),
-                referral.getReferredToClinicianId(), referral.getReferringFacilityId(),
-                referral.getReferredToFacilityId(), referral.getReferralDate(),
-                referral.getUrgencyLevel(), referral.getReferralReason(),
-                referral.getClinicalSummary(), referral.getRequestedInvestigations(),
-                referral.getStatus(), referral.getAppointmentId(), referral.getNotes(),
-                referral.getCreatedDate(), referral.getLastUpdated()
-            };
-            
-            CsvUtils.appendLine(csvPath, rowData);
+            lock.acquire();
+            try {
+                List<String[]> diskRows = CsvUtils.readCsv(csvPath);
+                int row = indexOfRow(diskRows, updated.getReferralId());
+                if (row < 0) {
+                    Referral removed = referrals.remove(i);
+                    byId.remove(key(removed.getReferralId()));
+                    events.fireDeleted(removed);
+                    throw new VersionConflictException(updated.getReferralId(),
+                        "Referral " + updated.getReferralId() + " was deleted by another user. Your changes were not saved.");
+                }
+                
+                long diskVersion = parseVersion(diskRows.get(row));
+                if (diskVersion != updated.getVersion()) {
+                    Referral latest = fromRow(diskRows.get(row));
+                    referrals.set(i, latest);
+                    byId.put(key(latest.getReferralId()), latest);
+                    events.fireUpdated(latest);
+                    throw new VersionConflictException(updated.getReferralId(),
+                        "Referral " + updated.getReferralId() + " was changed by another user. " +
+                        "Your changes were not saved and the latest version has been loaded.");
+                }
+                
+                updated.setVersion(diskVersion + 1);
+                diskRows.set(row, toRow(updated));
+                CsvUtils.writeCsv(csvPath, HEADER, diskRows);
+                journal.append(csvPath, ChangeJournal.UPSERT, toRow(updated));
+            } finally {
+                lock.release();
+            }
         } catch (IOException ex) {
-            System.err.println("Failed to append referral: " + ex.getMessage());
+            System.err.println("Failed to save referrals: " + ex.getMessage());
+        }
+        
+        referrals.set(i, updated);
+        byId.put(key(updated.getReferralId()), updated);
+        events.fireUpdated(updated);
+    }
+    
+    // Saves a batch of changed referrals with one lock and one rewrite of the file. Each one
+    // is version-checked like updateReferral(); any that another user changed or deleted are
+    // not saved, get the copy from disk loaded back into memory, and are handed back.
+    public List<Referral> updateAll(List<Referral> batch) {
+        List<Referral> saved = new ArrayList<>();
+        List<Referral> rejected = new ArrayList<>();
+        List<String[]> diskRows = new ArrayList<>();
+        Map<String, Integer> rowById = new HashMap<>();
+        
+        DataFileLock lock = DataFileLock.forFile(csvPath);
+        try {
+            lock.acquire();
+            try {
+                diskRows = CsvUtils.readCsv(csvPath);
+                for (int row = 0; row < diskRows.size(); row++) {
+                    if (diskRows.get(row).length > 0) {
+                        rowById.put(key(diskRows.get(row)[0]), row);
+                    }
+                }
+                
+                for (Referral updated : batch) {
+                    Integer row = rowById.get(key(updated.getReferralId()));
+                    if (row == null || parseVersion(diskRows.get(row)) != updated.getVersion()) {
+                        rejected.add(updated);
+                        continue;
+                    }
+                    updated.setVersion(updated.getVersion() + 1);
+                    diskRows.set(row, toRow(updated));
+                    saved.add(updated);
+                }
+                
+                if (!saved.isEmpty()) {
+                    CsvUtils.writeCsv(csvPath, HEADER, diskRows);
+                    journal.append(csvPath, ChangeJournal.RELOAD, null);
+                }
+            } finally {
+                lock.release();
+            }
+        } catch (IOException ex) {
+            System.err.println("Failed to save referrals: " + ex.getMessage());
+            // Couldn't even read the file - nothing was saved, but memory stays as the caller left it
+            if (saved.isEmpty()) {
+                return new ArrayList<>(batch);
+            }
+        }
+        
+        for (Referral r : saved) {
+            Referral current = byId.get(key(r.getReferralId()));
+            if (current != r) {
+                if (current != null) {
+                    referrals.set(referrals.indexOf(current), r);
+                } else {
+                    referrals.add(r);
+                }
+                byId.put(key(r.getReferralId()), r);
+            }
+            events.fireUpdated(r);
         }
+        
+        // Put the rejected ones back to how they are on disk
+        for (Referral r : rejected) {
+            Referral current = byId.get(key(r.getReferralId()));
+            Integer row = rowById.get(key(r.getReferralId()));
+            if (row == null) {
+                if (current != null) {
+                    referrals.remove(current);
+                    byId.remove(key(current.getReferralId()));
+                    events.fireDeleted(current);
+                }
+            } else if (current != null) {
+                Referral latest = fromRow(diskRows.get(row));
+                replace(current, latest);
+                events.fireUpdated(latest);
+            }
+        }
+        return rejected;
     }
     
     public String generateNewId() {
@@ -130,53 +330,163 @@ public class ReferralRepository {
         return String.format("R%03d", max + 1);
     }
     
+    // Next free ID looking at both memory and what is on disk right now
+    private String generateNewId(List<String[]> diskRows) {
+        int max = Integer.parseInt(generateNewId().substring(1)) - 1;
+        for (String[] row : diskRows) {
+            String id = row.length > 0 ? row[0].trim() : "";
+            if (id.startsWith("R")) {
+                try {
+                    int num = Integer.parseInt(id.substring(1));
+                    if (num > max) max = num;
+                } catch (Exception ignore) {}
+            }
+        }
+        return String.format("R%03d", max + 1);
+    }
+    
     public void deleteAllByPatientId(String patientId) {
         if (patientId == null || patientId.isEmpty()) return;
         String trimmedId = patientId.trim();
+        List<Referral> removed = new ArrayList<>();
         referrals.removeIf(r -> {
             String pId = r.getPatientId() != null ? r.getPatientId().trim() : "";
-            return trimmedId.equalsIgnoreCase(pId);
+            if (trimmedId.equalsIgnoreCase(pId)) {
+                removed.add(r);
+                byId.remove(key(r.getReferralId()));
+                return true;
+            }
+            return false;
         });
-        saveAll();
-    }
-    
-    private void saveAll() {
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(csvPath))) {
-            bw.write("referral_id,patient_id,referring_clinician_id,referred_to_clinician_id,");
-            bw.write("referring_facility_id,referred_to_facility_id,referral_date,urgency_level,");
-            bw.write("referral_reason,clinical_summary,requested_investigations,status,");
-            bw.write("appointment_id,notes,created_date,last_updated");
-            bw.newLine();
-            
-            for (Referral r : referrals) {
-                bw.write(escapeCsv(r.getReferralId()) + ",");
-                bw.write(escapeCsv(r.getPatientId()) + ",");
-                bw.write(escapeCsv(r.getReferringClinicianId()) + ",");
-                bw.write(escapeCsv(r.getReferredToClinicianId()) + ",");
-                bw.write(escapeCsv(r.getReferringFacilityId()) + ",");
-                bw.write(escapeCsv(r.getReferredToFacilityId()) + ",");
-                bw.write(escapeCsv(r.getReferralDate()) + ",");
-                bw.write(escapeCsv(r.getUrgencyLevel()) + ",");
-                bw.write(escapeCsv(r.getReferralReason()) + ",");
-                bw.write(escapeCsv(r.getClinicalSummary()) + ",");
-                bw.write(escapeCsv(r.getRequestedInvestigations()) + ",");
-                bw.write(escapeCsv(r.getStatus()) + ",");
-                bw.write(escapeCsv(r.getAppointmentId()) + ",");
-                bw.write(escapeCsv(r.getNotes()) + ",");
-                bw.write(escapeCsv(r.getCreatedDate()) + ",");
-                bw.write(escapeCsv(r.getLastUpdated()));
-                bw.newLine();
+        
+        // Remove the rows from the file as it is now, so other users' referrals are kept
+        DataFileLock lock = DataFileLock.forFile(csvPath);
+        try {
+            lock.acquire();
+            try {
+                List<String[]> diskRows = CsvUtils.readCsv(csvPath);
+                List<String> removedIds = new ArrayList<>();
+                diskRows.removeIf(row -> {
+                    if (row.length > 1 && trimmedId.equalsIgnoreCase(row[1].trim())) {
+                        removedIds.add(row[0].trim());
+                        return true;
+                    }
+                    return false;
+                });
+                CsvUtils.writeCsv(csvPath, HEADER, diskRows);
+                for (String id : removedIds) {
+                    journal.append(csvPath, ChangeJournal.DELETE, new String[]{id});
+                }
+            } finally {
+                lock.release();
             }
         } catch (IOException ex) {
             System.err.println("Failed to save referrals: " + ex.getMessage());
         }
+        
+        for (Referral r : removed) {
+            events.fireDeleted(r);
+        }
+    }
+    
+    // Re-reads the file and applies only the rows that differ from what we have in memory
+    public void reloadChanges() {
+        try {
+            applyExternalChanges(CsvUtils.readCsv(csvPath));
+        } catch (IOException ex) {
+            System.err.println("Failed to reload referrals: " + ex.getMessage());
+        }
+    }
+    
+    // Applies one change another process recorded in the shared journal
+    public void applyJournalEntry(ChangeJournal.Entry entry) {
+        String[] row = entry.getRow();
+        switch (entry.getOp()) {
+            case ChangeJournal.UPSERT:
+                applyExternalRow(row);
+                break;
+            case ChangeJournal.DELETE:
+                Referral removed = row.length > 0 ? byId.remove(key(row[0])) : null;
+                if (removed != null) {
+                    referrals.remove(removed);
+                    events.fireDeleted(removed);
+                }
+                break;
+            default:
+                reloadChanges();
+        }
+    }
+    
+    private void applyExternalRow(String[] row) {
+        if (row.length == 0 || row[0].trim().isEmpty()) {
+            return;
+        }
+        Referral fresh = fromRow(row);
+        Referral current = byId.get(key(fresh.getReferralId()));
+        if (current == null) {
+            referrals.add(fresh);
+            byId.put(key(fresh.getReferralId()), fresh);
+            events.fireInserted(fresh);
+        } else if (!Arrays.equals(toRow(current), toRow(fresh))) {
+            replace(current, fresh);
+            events.fireUpdated(fresh);
+        }
     }
     
-    private String escapeCsv(String value) {
-        if (value == null) return "";
-        if (value.contains(",") || value.contains("\"")) {
-            return "\"" + value.replace("\"", "\"\"") + "\"";
+    // Diffs rows read from the file against memory by referral ID and raises one event per
+    // inserted, changed or removed referral. Changed rows replace the object we had.
+    public void applyExternalChanges(List<String[]> rows) {
+        Map<String, Referral> onDisk = new LinkedHashMap<>();
+        for (String[] row : rows) {
+            if (row == null || row.length == 0 || row[0].trim().isEmpty() || row[0].equalsIgnoreCase("referral_id")) {
+                continue;
+            }
+            Referral r = fromRow(row);
+            onDisk.put(key(r.getReferralId()), r);
+        }
+        
+        List<Referral> inserted = new ArrayList<>();
+        List<Referral> updated = new ArrayList<>();
+        List<Referral> deleted = new ArrayList<>();
+        
+        ListIterator<Referral> it = referrals.listIterator();
+        while (it.hasNext()) {
+            Referral current = it.next();
+            Referral fresh = onDisk.get(key(current.getReferralId()));
+            if (fresh == null) {
+                it.remove();
+                byId.remove(key(current.getReferralId()));
+                deleted.add(current);
+            } else if (!Arrays.equals(toRow(current), toRow(fresh))) {
+                it.set(fresh);
+                byId.put(key(fresh.getReferralId()), fresh);
+                updated.add(fresh);
+            }
+        }
+        
+        for (Map.Entry<String, Referral> entry : onDisk.entrySet()) {
+            if (!byId.containsKey(entry.getKey())) {
+                referrals.add(entry.getValue());
+                byId.put(entry.getKey(), entry.getValue());
+                inserted.add(entry.getValue());
+            }
         }
-        return value;
+        
+        for (Referral r : deleted) events.fireDeleted(r);
+        for (Referral r : inserted) events.fireInserted(r);
+        for (Referral r : updated) events.fireUpdated(r);
+        
+        if (!inserted.isEmpty() || !updated.isEmpty() || !deleted.isEmpty()) {
+            System.out.println("Reloaded referrals from " + csvPath + ": " + inserted.size() + " added, "
+                + updated.size() + " changed, " + deleted.size() + " removed");
+        }
+    }
+    
+    // Puts another user's copy in place of ours. The old object is left as it was (version
+    // included), so a dialog still editing it gets a version conflict when it saves instead
+    // of quietly overwriting the other user's change.
+    private void replace(Referral current, Referral fresh) {
+        referrals.set(referrals.indexOf(current), fresh);
+        byId.put(key(fresh.getReferralId()), fresh);
     }
-}
\ No newline at end of file
+}
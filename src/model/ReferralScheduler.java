@@ -0,0 +1,407 @@
+package model;
+
+import util.IntervalTree;
+import util.PrimitiveSort;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Books appointments for every referral that is still waiting for one (status Pending or
+// New, no appointment yet) with the clinician it was referred to, at the earliest slot that
+// works for the clinician, the patient and the facility. Urgent referrals get first pick,
+// then older referrals, so a routine one never takes a slot an urgent one could have had.
+//
+// Runs in three steps so the slow part can be off the EDT:
+//   prepare() - EDT: copies what's needed out of the repositories
+//   plan()    - any thread: finds the slots, one parallel task per speciality
+//   commit()  - EDT: books the lot in one batch and writes the IDs back to the referrals
+// Specialities share patients and facilities, so a plan can clash with another speciality's
+// (same patient at the same time, or a facility going over capacity). The repository
+// checks every booking anyway; the few that clash are planned again one at a time.
+public class ReferralScheduler {
+
+    public static final int REFERRAL_DURATION_MINUTES = 30;
+    // How many times clashing bookings are re-planned before giving up on them
+    private static final int MAX_COMMIT_ROUNDS = 3;
+
+    // One referral waiting to be booked, with what the planner needs copied out of the
+    // repositories (they aren't safe to read from other threads)
+    private static class Job {
+        final Referral referral;
+        final String clinicianId;
+        final String facilityId;
+        final String speciality;
+        final int urgencyRank;
+        final long referralDate;
+        final int earliestMinute;
+        final OpeningHours hours;
+        final int capacity;
+        int plannedStart = -1;
+
+        Job(Referral referral, Clinician clinician, String facilityId, OpeningHours hours, int capacity, int fromMinute) {
+            this.referral = referral;
+            this.clinicianId = referral.getReferredToClinicianId().trim();
+            this.facilityId = facilityId;
+            this.speciality = clinician.getSpeciality() != null ? clinician.getSpeciality() : "";
+            this.urgencyRank = urgencyRank(referral.getUrgencyLevel());
+            this.referralDate = PrimitiveSort.packDate(referral.getReferralDate());
+            this.hours = hours;
+            this.capacity = capacity;
+            // Not before the referral was made
+            int referredMinute = AppointmentSchedule.startMinute(referral.getReferralDate(), "00:00");
+            this.earliestMinute = Math.max(fromMinute, referredMinute);
+        }
+
+        String patientId() {
+            return referral.getPatientId() != null ? referral.getPatientId().trim() : "";
+        }
+    }
+
+    // Most urgent first, then oldest referral, then referral ID so the order is repeatable
+    private static final Comparator<Job> PRIORITY = Comparator
+        .comparingInt((Job j) -> j.urgencyRank)
+        .thenComparingLong(j -> j.referralDate)
+        .thenComparing(j -> j.referral.getReferralId());
+
+    // The work between prepare() and commit()
+    public static class Batch {
+        private final List<Job> jobs = new ArrayList<>();
+        private final Result result = new Result();
+    }
+
+    // What happened - counts, how long each step took and how long patients have to wait
+    public static class Result {
+        private int considered;
+        private int scheduled;
+        private final List<String> problems = new ArrayList<>();
+        // Per urgency level: {referrals booked, total minutes waited}
+        private final Map<String, long[]> waits = new TreeMap<>();
+        private long prepareMillis;
+        private long planMillis;
+        private long commitMillis;
+
+        public int getConsidered() { return considered; }
+        public int getScheduled() { return scheduled; }
+        public List<String> getProblems() { return problems; }
+        public long getPrepareMillis() { return prepareMillis; }
+        public long getPlanMillis() { return planMillis; }
+        public long getCommitMillis() { return commitMillis; }
+
+        // Average days from referral (or from the start of the run, if later) to appointment
+        public double getMeanWaitDays(String urgency) {
+            long[] wait = waits.get(urgency);
+            return wait == null || wait[0] == 0 ? 0 : wait[1] / (double) wait[0] / OpeningHours.MINUTES_PER_DAY;
+        }
+
+        public String getSummary() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("Booked ").append(scheduled).append(" of ").append(considered).append(" waiting referrals");
+            sb.append(" (prepare ").append(prepareMillis).append("ms, plan ").append(planMillis)
+              .append("ms, save ").append(commitMillis).append("ms)");
+            for (Map.Entry<String, long[]> entry : waits.entrySet()) {
+                sb.append("\n  ").append(entry.getKey()).append(": ").append(entry.getValue()[0])
+                  .append(" booked, average wait ").append(String.format("%.1f", getMeanWaitDays(entry.getKey()))).append(" days");
+            }
+            if (!problems.isEmpty()) {
+                sb.append("\n").append(problems.size()).append(" could not be booked");
+            }
+            return sb.toString();
+        }
+    }
+
+    private final AppointmentRepository appointmentRepository;
+    private final ReferralRepository referralRepository;
+    private final ClinicianRepository clinicianRepository;
+    private final FacilityRepository facilityRepository;
+    private final AppointmentSchedule schedule;
+    private final AvailabilityEngine availability;
+
+    public ReferralScheduler(AppointmentRepository appointmentRepository, ReferralRepository referralRepository,
+                             ClinicianRepository clinicianRepository, FacilityRepository facilityRepository) {
+        this.appointmentRepository = appointmentRepository;
+        this.referralRepository = referralRepository;
+        this.clinicianRepository = clinicianRepository;
+        this.facilityRepository = facilityRepository;
+        this.schedule = appointmentRepository.getSchedule();
+        this.availability = new AvailabilityEngine(appointmentRepository, clinicianRepository, facilityRepository);
+    }
+
+    // prepare + plan + commit on the calling thread
+    public Result run(LocalDateTime from) {
+        Batch batch = prepare(from);
+        plan(batch);
+        return commit(batch);
+    }
+
+    // EDT: picks out the referrals still waiting and copies what the planner needs
+    public Batch prepare(LocalDateTime from) {
+        long started = System.currentTimeMillis();
+        Batch batch = new Batch();
+        int fromMinute = AppointmentSchedule.toMinute(from) + (from.getSecond() > 0 || from.getNano() > 0 ? 1 : 0);
+
+        for (Referral referral : referralRepository.getAll()) {
+            if (!isWaiting(referral, appointmentRepository)) {
+                continue;
+            }
+            batch.result.considered++;
+
+            String clinicianId = referral.getReferredToClinicianId();
+            Clinician clinician = clinicianId != null ? clinicianRepository.findById(clinicianId) : null;
+            if (clinician == null) {
+                batch.result.problems.add(referral.getReferralId() + ": referred-to clinician '"
+                    + (clinicianId != null ? clinicianId : "") + "' not found");
+                continue;
+            }
+
+            // The facility on the referral, or else wherever the clinician works
+            String facilityId = referral.getReferredToFacilityId();
+            if (facilityId == null || facilityId.trim().isEmpty()) {
+                facilityId = clinician.getWorkplaceId();
+            }
+            facilityId = facilityId != null ? facilityId.trim() : "";
+            Facility facility = facilityRepository != null ? facilityRepository.findById(facilityId) : null;
+            OpeningHours hours = facility != null ? facility.getParsedOpeningHours() : availability.hoursForClinician(clinicianId);
+            int capacity = facility != null ? facility.getCapacity() : 0;
+
+            batch.jobs.add(new Job(referral, clinician, facilityId, hours, capacity, fromMinute));
+        }
+        batch.result.prepareMillis = System.currentTimeMillis() - started;
+        return batch;
+    }
+
+    // Any thread: finds a slot for each job. Each speciality's clinicians are only booked by
+    // that speciality's referrals, so the specialities can be planned side by side.
+    public void plan(Batch batch) {
+        long started = System.currentTimeMillis();
+        Map<String, List<Job>> bySpeciality = new HashMap<>();
+        for (Job job : batch.jobs) {
+            bySpeciality.computeIfAbsent(job.speciality, k -> new ArrayList<>()).add(job);
+        }
+        bySpeciality.values().parallelStream().forEach(this::planGroup);
+        batch.result.planMillis = System.currentTimeMillis() - started;
+    }
+
+    // Plans one speciality's jobs in priority order. Slots taken earlier in this plan are
+    // kept in 'tentative' trees next to the real schedule.
+    private void planGroup(List<Job> jobs) {
+        jobs.sort(PRIORITY);
+        Map<String, IntervalTree<String>> tentativeClinicians = new HashMap<>();
+        Map<String, IntervalTree<String>> tentativePatients = new HashMap<>();
+        Map<String, IntervalTree<String>> tentativeFacilities = new HashMap<>();
+        // Per clinician and facility: {from, to} - no free slot for them starts in [from, to).
+        // Most jobs search from the same time, so this stops each one walking over every slot
+        // the jobs before it have taken. It's only true for the opening hours it was worked
+        // out with, which come from the referral's facility, hence the facility in the key.
+        Map<String, int[]> fullUntil = new HashMap<>();
+
+        for (Job job : jobs) {
+            String clinicianId = job.clinicianId;
+            String patientId = job.patientId();
+            IntervalTree<String> clinicianTree = tentativeClinicians.computeIfAbsent(clinicianId, k -> new IntervalTree<>());
+
+            int searchFrom = job.earliestMinute;
+            String fullKey = clinicianId + "|" + job.facilityId;
+            int[] known = fullUntil.get(fullKey);
+            boolean extendsKnown = known == null || (searchFrom >= known[0] && searchFrom <= known[1]);
+            if (known != null && extendsKnown) {
+                searchFrom = known[1];
+            }
+
+            // First where the clinician alone is free...
+            int clinicianFree = availability.nextFreeMinute(job.hours, REFERRAL_DURATION_MINUTES, searchFrom,
+                (start, end) -> Math.max(schedule.clinicianFreeFrom(clinicianId, start, end),
+                                         clinicianTree.latestOverlapEnd(start, end)));
+            if (extendsKnown && clinicianFree >= 0) {
+                fullUntil.put(fullKey, new int[]{known != null ? known[0] : job.earliestMinute, clinicianFree});
+            }
+            if (clinicianFree < 0) {
+                continue;
+            }
+
+            // ...then from there, where the patient and facility are free too
+            IntervalTree<String> patientTree = tentativePatients.get(patientId);
+            IntervalTree<String> facilityTree = tentativeFacilities.get(job.facilityId);
+            int start = availability.nextFreeMinute(job.hours, REFERRAL_DURATION_MINUTES, clinicianFree, (s, e) -> {
+                int next = Math.max(schedule.clinicianFreeFrom(clinicianId, s, e), clinicianTree.latestOverlapEnd(s, e));
+                next = Math.max(next, schedule.patientFreeFrom(patientId, s, e));
+                if (patientTree != null) {
+                    next = Math.max(next, patientTree.latestOverlapEnd(s, e));
+                }
+                if (next == s && job.capacity > 0) {
+                    int booked = schedule.facilityBookings(job.facilityId, s, e, job.capacity);
+                    if (facilityTree != null) {
+                        booked += facilityTree.countOverlaps(s, e, job.capacity);
+                    }
+                    if (booked >= job.capacity) {
+                        next = s + AvailabilityEngine.SLOT_STEP_MINUTES;
+                    }
+                }
+                return next;
+            });
+            if (start < 0) {
+                continue;
+            }
+
+            job.plannedStart = start;
+            String id = job.referral.getReferralId();
+            int end = start + REFERRAL_DURATION_MINUTES;
+            clinicianTree.add(start, end, id);
+            tentativePatients.computeIfAbsent(patientId, k -> new IntervalTree<>()).add(start, end, id);
+            tentativeFacilities.computeIfAbsent(job.facilityId, k -> new IntervalTree<>()).add(start, end, id);
+        }
+    }
+
+    // EDT: books the planned slots in one batch, re-plans any that clash, then writes each
+    // appointment ID back to its referral. A referral another user changed in the meantime
+    // isn't updated, so its appointment is taken back out again (otherwise the referral would
+    // still look unbooked and get a second appointment next run).
+    public Result commit(Batch batch) {
+        long started = System.currentTimeMillis();
+        Result result = batch.result;
+        List<Job> pending = new ArrayList<>();
+        for (Job job : batch.jobs) {
+            if (job.plannedStart >= 0) {
+                pending.add(job);
+            } else {
+                result.problems.add(job.referral.getReferralId() + ": no free slot for " + job.clinicianId
+                    + " in the next " + AvailabilityEngine.MAX_DAYS_AHEAD + " days");
+            }
+        }
+        pending.sort(PRIORITY);
+
+        String today = LocalDate.now().toString();
+        // Copies with the appointment filled in - the live referrals are only replaced by
+        // updateAll once they have been saved
+        List<Referral> changedReferrals = new ArrayList<>();
+        Map<Referral, Job> jobOfReferral = new IdentityHashMap<>();
+        Map<Referral, Appointment> appointmentOf = new IdentityHashMap<>();
+        for (int round = 0; round < MAX_COMMIT_ROUNDS && !pending.isEmpty(); round++) {
+            Map<Appointment, Job> jobOf = new IdentityHashMap<>();
+            List<Appointment> appointments = new ArrayList<>();
+            for (Job job : pending) {
+                Appointment a = toAppointment(job, today);
+                jobOf.put(a, job);
+                appointments.add(a);
+            }
+
+            List<Appointment> rejected = appointmentRepository.addAll(appointments);
+            Map<Appointment, Boolean> wasRejected = new IdentityHashMap<>();
+            for (Appointment a : rejected) {
+                wasRejected.put(a, true);
+            }
+            for (Appointment a : appointments) {
+                if (wasRejected.containsKey(a)) {
+                    continue;
+                }
+                Job job = jobOf.get(a);
+                Referral changed = job.referral.copy();
+                changed.setAppointmentId(a.getId());
+                changed.setLastUpdated(today);
+                changedReferrals.add(changed);
+                jobOfReferral.put(changed, job);
+                appointmentOf.put(changed, a);
+            }
+
+            // Clashed with another speciality's booking - the schedule now has everything, so
+            // plan these again against it one at a time
+            pending = new ArrayList<>();
+            for (Appointment a : rejected) {
+                Job job = jobOf.get(a);
+                job.plannedStart = -1;
+                pending.add(job);
+            }
+            if (!pending.isEmpty()) {
+                planGroup(pending);
+                List<Job> replanned = new ArrayList<>();
+                for (Job job : pending) {
+                    if (job.plannedStart >= 0) {
+                        replanned.add(job);
+                    } else {
+                        result.problems.add(job.referral.getReferralId() + ": no free slot for " + job.clinicianId);
+                    }
+                }
+                pending = replanned;
+            }
+        }
+        for (Job job : pending) {
+            result.problems.add(job.referral.getReferralId() + ": kept clashing with other bookings, not booked");
+        }
+
+        Map<Referral, Boolean> notSaved = new IdentityHashMap<>();
+        for (Referral referral : referralRepository.updateAll(changedReferrals)) {
+            notSaved.put(referral, true);
+            Appointment appointment = appointmentOf.get(referral);
+            try {
+                appointmentRepository.delete(appointment.getId());
+                result.problems.add(referral.getReferralId() + ": changed by another user - not booked");
+            } catch (VersionConflictException ex) {
+                result.problems.add(referral.getReferralId() + ": changed by another user, and appointment "
+                    + appointment.getId() + " could not be taken back: " + ex.getMessage());
+            }
+        }
+        for (Referral referral : changedReferrals) {
+            if (!notSaved.containsKey(referral)) {
+                recordWait(result, jobOfReferral.get(referral));
+                result.scheduled++;
+            }
+        }
+        result.commitMillis = System.currentTimeMillis() - started;
+        return result;
+    }
+
+    private Appointment toAppointment(Job job, String today) {
+        LocalDateTime start = AppointmentSchedule.toDateTime(job.plannedStart);
+        Referral referral = job.referral;
+        return new Appointment(
+            "",
+            job.patientId(),
+            job.clinicianId,
+            job.facilityId,
+            start.toLocalDate().toString(),
+            start.toLocalTime().toString(),
+            String.valueOf(REFERRAL_DURATION_MINUTES),
+            "Referral",
+            "Scheduled",
+            referral.getReferralReason() != null ? referral.getReferralReason() : "",
+            "Booked from referral " + referral.getReferralId(),
+            today,
+            today
+        );
+    }
+
+    private static void recordWait(Result result, Job job) {
+        String urgency = job.referral.getUrgencyLevel() != null && !job.referral.getUrgencyLevel().trim().isEmpty()
+            ? job.referral.getUrgencyLevel().trim() : "Unknown";
+        long[] wait = result.waits.computeIfAbsent(urgency, k -> new long[2]);
+        wait[0]++;
+        wait[1] += job.plannedStart - job.earliestMinute;
+    }
+
+    // Pending/New with no appointment (or one that no longer exists). Also used by Waitlist.
+    static boolean isWaiting(Referral referral, AppointmentRepository appointmentRepository) {
+        String status = referral.getStatus() != null ? referral.getStatus().trim() : "";
+        if (!status.equalsIgnoreCase("Pending") && !status.equalsIgnoreCase("New")) {
+            return false;
+        }
+        String appointmentId = referral.getAppointmentId();
+        return appointmentId == null || appointmentId.trim().isEmpty()
+            || appointmentRepository.findById(appointmentId) == null;
+    }
+
+    static int urgencyRank(String urgency) {
+        String u = urgency != null ? urgency.trim().toLowerCase() : "";
+        if (u.startsWith("non")) {
+            return 2;
+        }
+        if (u.contains("urgent") || u.contains("emergency")) {
+            return 0;
+        }
+        return 1;
+    }
+}
@@ -0,0 +1,33 @@
+package model;
+
+// Describes a single change made to a repository (one entity inserted, updated or deleted)
+// Listeners use this to update just the affected row instead of reloading the whole table
+public class RepositoryChangeEvent<T> {
+    
+    public enum Type {
+        INSERTED,
+        UPDATED,
+        DELETED
+    }
+    
+    private final Type type;
+    private final T entity;
+    
+    public RepositoryChangeEvent(Type type, T entity) {
+        this.type = type;
+        this.entity = entity;
+    }
+    
+    public Type getType() {
+        return type;
+    }
+    
+    public T getEntity() {
+        return entity;
+    }
+    
+    @Override
+    public String toString() {
+        return type + " " + entity;
+    }
+}
@@ -0,0 +1,7 @@
+package model;
+
+// Gets told about every insert, update and delete made through a repository
+public interface RepositoryChangeListener<T> {
+    
+    void repositoryChanged(RepositoryChangeEvent<T> event);
+}
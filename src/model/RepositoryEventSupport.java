@@ -0,0 +1,46 @@
+package model;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Helper that each repository uses to keep its listeners and send them change events
+// (works the same way as java.beans.PropertyChangeSupport)
+public class RepositoryEventSupport<T> {
+    
+    // Copy-on-write so a listener can add/remove listeners while an event is being sent
+    private final List<RepositoryChangeListener<T>> listeners = new CopyOnWriteArrayList<>();
+    
+    public void addListener(RepositoryChangeListener<T> listener) {
+        if (listener != null) {
+            listeners.add(listener);
+        }
+    }
+    
+    public void removeListener(RepositoryChangeListener<T> listener) {
+        listeners.remove(listener);
+    }
+    
+    public void fireInserted(T entity) {
+        fire(new RepositoryChangeEvent<>(RepositoryChangeEvent.Type.INSERTED, entity));
+    }
+    
+    public void fireUpdated(T entity) {
+        fire(new RepositoryChangeEvent<>(RepositoryChangeEvent.Type.UPDATED, entity));
+    }
+    
+    public void fireDeleted(T entity) {
+        fire(new RepositoryChangeEvent<>(RepositoryChangeEvent.Type.DELETED, entity));
+    }
+    
+    private void fire(RepositoryChangeEvent<T> event) {
+        for (RepositoryChangeListener<T> listener : listeners) {
+            try {
+                listener.repositoryChanged(event);
+            } catch (Exception ex) {
+                // One broken listener should not stop the others from hearing about the change
+                System.err.println("Repository listener failed on " + event + ": " + ex.getMessage());
+                ex.printStackTrace();
+            }
+        }
+    }
+}
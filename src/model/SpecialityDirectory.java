@@ -0,0 +1,275 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Who and where offers each speciality, for picking a referral's target: the clinicians with
+// that speciality and the facilities offering it, looked up by speciality in O(1) instead of
+// walking every clinician (and re-splitting every facility's specialitiesOffered) each time.
+//
+// "Near" a facility is worked out from postcodes, as there's nothing finer to go on: the
+// same facility first, then the same postcode district (e.g. B9), then the same postcode
+// area (e.g. B), then anywhere else.
+//
+// Kept up to date one clinician at a time from the clinician change events (facilities are
+// read-only), so only use it where the repositories are used (the EDT).
+public class SpecialityDirectory {
+
+    public static final int SAME_FACILITY = 0;
+    public static final int SAME_DISTRICT = 1;
+    public static final int SAME_AREA = 2;
+    public static final int ELSEWHERE = 3;
+
+    // A clinician with the speciality, where they work and how near that is
+    public static class Specialist {
+        private final Clinician clinician;
+        private final Facility workplace;
+        private final int distance;
+        // What the lists are sorted on, taken when this was made (a clinician object can be
+        // edited in place before its change event arrives)
+        private final String workplaceKey;
+        private final String clinicianKey;
+
+        private Specialist(Clinician clinician, Facility workplace, int distance) {
+            this.clinician = clinician;
+            this.workplace = workplace;
+            this.distance = distance;
+            this.workplaceKey = key(clinician.getWorkplaceId());
+            this.clinicianKey = key(clinician.getClinicianId());
+        }
+
+        public Clinician getClinician() {
+            return clinician;
+        }
+
+        // Null if their workplace isn't a known facility
+        public Facility getWorkplace() {
+            return workplace;
+        }
+
+        // SAME_FACILITY, SAME_DISTRICT, SAME_AREA or ELSEWHERE
+        public int getDistance() {
+            return distance;
+        }
+    }
+
+    // Order within the same distance
+    private static final Comparator<Specialist> BY_WORKPLACE = Comparator
+        .comparing((Specialist s) -> s.workplaceKey)
+        .thenComparing(s -> s.clinicianKey);
+
+    private final ClinicianRepository clinicianRepository;
+    private final FacilityRepository facilityRepository;
+
+    // All by lower-case speciality / ID. Each speciality's clinicians are kept sorted by
+    // workplace (distance not filled in), so a lookup only has to split them by distance.
+    private final Map<String, List<Specialist>> cliniciansBySpeciality = new HashMap<>();
+    private final Map<String, List<Facility>> facilitiesBySpeciality = new HashMap<>();
+    private final Map<String, Clinician> clinicianById = new HashMap<>();
+    private final Map<String, Facility> facilityById = new HashMap<>();
+    // Where each clinician is in the lists now, and under which specialities, by lower-case ID
+    private final Map<String, Specialist> specialistById = new HashMap<>();
+    private final Map<String, Set<String>> specialitiesById = new HashMap<>();
+    // Each speciality as it was first written, for showing
+    private final Map<String, String> displayNames = new HashMap<>();
+
+    public SpecialityDirectory(ClinicianRepository clinicianRepository, FacilityRepository facilityRepository) {
+        this.clinicianRepository = clinicianRepository;
+        this.facilityRepository = facilityRepository;
+        rebuild();
+
+        clinicianRepository.addChangeListener(this::onClinicianChanged);
+    }
+
+    public final void rebuild() {
+        cliniciansBySpeciality.clear();
+        facilitiesBySpeciality.clear();
+        clinicianById.clear();
+        facilityById.clear();
+        specialistById.clear();
+        specialitiesById.clear();
+        displayNames.clear();
+        if (facilityRepository != null) {
+            for (Facility facility : facilityRepository.getAll()) {
+                facilityById.putIfAbsent(key(facility.getFacilityId()).toLowerCase(), facility);
+                for (String speciality : facility.getSpecialitySet()) {
+                    facilitiesBySpeciality.computeIfAbsent(speciality, k -> new ArrayList<>()).add(facility);
+                }
+                addDisplayNames(facility.getSpecialitiesOffered());
+            }
+        }
+        for (Clinician clinician : clinicianRepository.getAll()) {
+            String id = key(clinician.getClinicianId()).toLowerCase();
+            if (clinicianById.putIfAbsent(id, clinician) != null) {
+                continue;
+            }
+            Specialist specialist = new Specialist(clinician, facility(clinician.getWorkplaceId()), ELSEWHERE);
+            for (String speciality : clinician.getSpecialitySet()) {
+                cliniciansBySpeciality.computeIfAbsent(speciality, k -> new ArrayList<>()).add(specialist);
+            }
+            specialistById.put(id, specialist);
+            specialitiesById.put(id, new HashSet<>(clinician.getSpecialitySet()));
+            addDisplayNames(clinician.getSpeciality());
+        }
+        for (List<Specialist> list : cliniciansBySpeciality.values()) {
+            list.sort(BY_WORKPLACE);
+        }
+    }
+
+    // One clinician in or out of the lists - a binary search per speciality they have, rather
+    // than going over every clinician. Anything but their specialities and workplace only
+    // needs the lists to point at the new clinician object.
+    private void onClinicianChanged(RepositoryChangeEvent<Clinician> event) {
+        Clinician clinician = event.getEntity();
+        String id = key(clinician.getClinicianId()).toLowerCase();
+        Specialist old = specialistById.remove(id);
+        Set<String> oldSpecialities = specialitiesById.remove(id);
+        if (old != null) {
+            for (String speciality : oldSpecialities) {
+                List<Specialist> list = cliniciansBySpeciality.get(speciality);
+                int i = list != null ? Collections.binarySearch(list, old, BY_WORKPLACE) : -1;
+                if (i >= 0) {
+                    list.remove(i);
+                    if (list.isEmpty()) {
+                        cliniciansBySpeciality.remove(speciality);
+                    }
+                }
+            }
+            clinicianById.remove(id);
+        }
+        if (event.getType() == RepositoryChangeEvent.Type.DELETED) {
+            return;
+        }
+
+        Specialist specialist = new Specialist(clinician, facility(clinician.getWorkplaceId()), ELSEWHERE);
+        for (String speciality : clinician.getSpecialitySet()) {
+            List<Specialist> list = cliniciansBySpeciality.computeIfAbsent(speciality, k -> new ArrayList<>());
+            int i = Collections.binarySearch(list, specialist, BY_WORKPLACE);
+            list.add(i >= 0 ? i : -i - 1, specialist);
+        }
+        clinicianById.put(id, clinician);
+        specialistById.put(id, specialist);
+        specialitiesById.put(id, new HashSet<>(clinician.getSpecialitySet()));
+        addDisplayNames(clinician.getSpeciality());
+    }
+
+    // Specialities that at least one clinician has (the ones a referral can be sent for), sorted
+    public List<String> specialities() {
+        List<String> list = new ArrayList<>();
+        for (String speciality : cliniciansBySpeciality.keySet()) {
+            list.add(displayNames.getOrDefault(speciality, speciality));
+        }
+        list.sort(String.CASE_INSENSITIVE_ORDER);
+        return list;
+    }
+
+    // All clinicians with the speciality, nearest to the facility first (any order of
+    // facility if it's blank or unknown)
+    public List<Specialist> specialists(String speciality, String nearFacilityId) {
+        List<Specialist> clinicians = cliniciansBySpeciality.get(key(speciality).toLowerCase());
+        if (clinicians == null) {
+            return new ArrayList<>();
+        }
+        Facility near = facility(nearFacilityId);
+        List<List<Specialist>> byDistance = new ArrayList<>();
+        for (int i = SAME_FACILITY; i <= ELSEWHERE; i++) {
+            byDistance.add(new ArrayList<>());
+        }
+        // Sorted by workplace, so the distance only changes when the workplace does
+        Facility lastWorkplace = null;
+        int distance = distance(near, null);
+        for (Specialist s : clinicians) {
+            if (s.workplace != lastWorkplace) {
+                lastWorkplace = s.workplace;
+                distance = distance(near, s.workplace);
+            }
+            byDistance.get(distance).add(new Specialist(s.clinician, s.workplace, distance));
+        }
+        List<Specialist> result = new ArrayList<>(clinicians.size());
+        for (List<Specialist> list : byDistance) {
+            result.addAll(list);
+        }
+        return result;
+    }
+
+    // Facilities offering the speciality, nearest to the facility first
+    public List<Facility> facilitiesOffering(String speciality, String nearFacilityId) {
+        List<Facility> facilities = facilitiesBySpeciality.get(key(speciality).toLowerCase());
+        if (facilities == null) {
+            return new ArrayList<>();
+        }
+        Facility near = facility(nearFacilityId);
+        List<Facility> result = new ArrayList<>(facilities);
+        result.sort(Comparator.comparingInt((Facility f) -> distance(near, f)).thenComparing(f -> key(f.getFacilityId())));
+        return result;
+    }
+
+    // The clinician's speciality as written, or null if the clinician isn't known
+    public String specialityOf(String clinicianId) {
+        Clinician clinician = clinician(clinicianId);
+        return clinician != null ? clinician.getSpeciality() : null;
+    }
+
+    public Clinician clinician(String clinicianId) {
+        return clinicianById.get(key(clinicianId).toLowerCase());
+    }
+
+    public Facility facility(String facilityId) {
+        return facilityById.get(key(facilityId).toLowerCase());
+    }
+
+    // How near 'to' is to 'from' (see the class comment)
+    public static int distance(Facility from, Facility to) {
+        if (from == null || to == null) {
+            return ELSEWHERE;
+        }
+        if (key(from.getFacilityId()).equalsIgnoreCase(key(to.getFacilityId()))) {
+            return SAME_FACILITY;
+        }
+        String fromDistrict = district(from.getPostcode());
+        if (fromDistrict.isEmpty()) {
+            return ELSEWHERE;
+        }
+        if (fromDistrict.equals(district(to.getPostcode()))) {
+            return SAME_DISTRICT;
+        }
+        return area(fromDistrict).equals(area(district(to.getPostcode()))) ? SAME_AREA : ELSEWHERE;
+    }
+
+    // "B9 5SS" -> "B9" (the outward code)
+    private static String district(String postcode) {
+        String p = key(postcode).toUpperCase();
+        int space = p.indexOf(' ');
+        return space > 0 ? p.substring(0, space) : p;
+    }
+
+    // "B91" -> "B"
+    private static String area(String district) {
+        int i = 0;
+        while (i < district.length() && Character.isLetter(district.charAt(i))) {
+            i++;
+        }
+        return district.substring(0, i);
+    }
+
+    private void addDisplayNames(String text) {
+        if (text == null) {
+            return;
+        }
+        for (String part : text.split("\\|")) {
+            if (!part.trim().isEmpty()) {
+                displayNames.putIfAbsent(part.trim().toLowerCase(), part.trim());
+            }
+        }
+    }
+
+    private static String key(String id) {
+        return id != null ? id.trim() : "";
+    }
+}
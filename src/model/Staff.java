@@ -90,6 +90,7 @@ public class Staff extends User {
     
     public void setFirstName(String firstName) {
         this.firstName = firstName;
+        namesChanged();
     }
     
     public String getLastName() {
@@ -98,6 +99,11 @@ public class Staff extends User {
     
     public void setLastName(String lastName) {
         this.lastName = lastName;
+        namesChanged();
+    }
+    
+    // Called when the first or last name changes, for subclasses that cache names
+    protected void namesChanged() {
     }
     
     public String getRole() {
@@ -13,6 +13,8 @@ public class StaffRepository {
     private final List<Clinician> clinicianList = new ArrayList<>();
     private final String staffCsvPath;
     private final String clinicianCsvPath;
+    private final RepositoryEventSupport<Staff> staffEvents = new RepositoryEventSupport<>();
+    private final RepositoryEventSupport<Clinician> clinicianEvents = new RepositoryEventSupport<>();
     
     public StaffRepository(String staffCsvPath, String clinicianCsvPath) {
         this.staffCsvPath = staffCsvPath;
@@ -130,6 +132,23 @@ public class StaffRepository {
         return new ArrayList<>(clinicianList);
     }
     
+    // Listeners are told about every staff member that is added, updated or removed
+    public void addStaffChangeListener(RepositoryChangeListener<Staff> listener) {
+        staffEvents.addListener(listener);
+    }
+    
+    public void removeStaffChangeListener(RepositoryChangeListener<Staff> listener) {
+        staffEvents.removeListener(listener);
+    }
+    
+    public void addClinicianChangeListener(RepositoryChangeListener<Clinician> listener) {
+        clinicianEvents.addListener(listener);
+    }
+    
+    public void removeClinicianChangeListener(RepositoryChangeListener<Clinician> listener) {
+        clinicianEvents.removeListener(listener);
+    }
+    
     public List<User> getAllUsers() {
         List<User> allUsers = new ArrayList<>();
         allUsers.addAll(staffList);
@@ -194,6 +213,7 @@ public class StaffRepository {
         }
         
         staffList.add(staff);
+        staffEvents.fireInserted(staff);
         
         try {
             String[] rowData = {
@@ -237,6 +257,7 @@ public class StaffRepository {
         }
         
         clinicianList.add(clinician);
+        clinicianEvents.fireInserted(clinician);
         
         try {
             String[] rowData = {
@@ -278,6 +299,7 @@ public class StaffRepository {
             if (staffList.get(i).getStaffId().equals(staff.getStaffId())) {
                 staffList.set(i, staff);
                 saveAllStaff();
+                staffEvents.fireUpdated(staff);
                 System.out.println("Successfully updated staff " + staff.getStaffId());
                 return;
             }
@@ -288,54 +310,33 @@ public class StaffRepository {
     
     // Remove a staff member and save to CSV
     public void removeStaff(Staff staff) {
-        if (staff != null) {
-            staffList.remove(staff);
+        if (staff != null && staffList.remove(staff)) {
             saveAllStaff();
+            staffEvents.fireDeleted(staff);
         }
     }
     
     // Save all staff back to CSV
     private void saveAllStaff() {
-        try (java.io.BufferedWriter bw = new java.io.BufferedWriter(new java.io.FileWriter(staffCsvPath))) {
-            bw.write("staff_id,first_name,last_name,role,department,facility_id,phone_number,email,employment_status,start_date,line_manager,access_level");
-            bw.newLine();
-            
-            for (Staff staff : staffList) {
-                bw.write(escapeCsv(staff.getStaffId()) + ",");
-                bw.write(escapeCsv(staff.getFirstName()) + ",");
-                bw.write(escapeCsv(staff.getLastName()) + ",");
-                bw.write(escapeCsv(staff.getRole()) + ",");
-                bw.write(escapeCsv(staff.getDepartment()) + ",");
-                bw.write(escapeCsv(staff.getFacilityId()) + ",");
-                bw.write(escapeCsv(staff.getPhoneNumber()) + ",");
-                bw.write(escapeCsv(staff.getEmail()) + ",");
-                bw.write(escapeCsv(staff.getEmploymentStatus()) + ",");
-                bw.write(escapeCsv(staff.getStartDate()) + ",");
-                bw.write(escapeCsv(staff.getLineManager()) + ",");
-                bw.write(escapeCsv(staff.getAccessLevel()));
-                bw.newLine();
-            }
-            
-        } catch (java.io.IOException ex) {
+        List<String[]> rows = new ArrayList<>();
+        for (Staff staff : staffList) {
+            rows.add(new String[]{
+                staff.getStaffId(), staff.getFirstName(), staff.getLastName(), staff.getRole(),
+                staff.getDepartment(), staff.getFacilityId(), staff.getPhoneNumber(), staff.getEmail(),
+                staff.getEmploymentStatus(), staff.getStartDate(), staff.getLineManager(), staff.getAccessLevel()
+            });
+        }
+        try {
+            CsvUtils.writeCsv(staffCsvPath, "staff_id,first_name,last_name,role,department,facility_id,phone_number,email,employment_status,start_date,line_manager,access_level", rows);
+        } catch (IOException ex) {
             System.err.println("Failed to save staff to CSV file: " + staffCsvPath);
             System.err.println("Error: " + ex.getMessage());
         }
     }
     
-    // Escape commas and quotes in CSV values
-    private String escapeCsv(String value) {
-        if (value == null) {
-            return "";
-        }
-        if (value.contains(",") || value.contains("\"")) {
-            return "\"" + value.replace("\"", "\"\"") + "\"";
-        }
-        return value;
-    }
-    
     public void removeClinician(Clinician clinician) {
-        if (clinician != null) {
-            clinicianList.remove(clinician);
+        if (clinician != null && clinicianList.remove(clinician)) {
+            clinicianEvents.fireDeleted(clinician);
         }
     }
 }
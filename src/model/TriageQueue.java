@@ -0,0 +1,331 @@
+package model;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+// Worklist of every referral that is still open (not completed, cancelled, closed or
+// rejected), in the order they should be seen: whichever is closest to (or furthest past)
+// its target date first.
+//
+// Each referral's target date is its referral date plus the target wait for its urgency
+// (TARGET_DAYS). Sorting on that date rather than on "how long it has waited" means the
+// order never changes just because a day goes by - an urgent referral overtakes routine ones
+// as it gets near its target without anything being re-sorted. Overdue is worked out when
+// a row is shown.
+//
+// Kept as sorted sets - one of everything, plus one per speciality, per facility and per
+// clinician the referrals were sent to - so a change to one referral is O(log n) and a page
+// of any worklist is O(log n + page size), however many referrals there are. Kept up to date
+// from the referral and clinician change events, so only use it where the repositories are
+// used (the EDT, or under the server's lock).
+public class TriageQueue {
+
+    // Target wait in days for urgent, routine and non-urgent referrals (2 weeks, 18 weeks, 26 weeks)
+    public static final int[] TARGET_DAYS = {14, 126, 182};
+    private static final String[] CLOSED_STATUSES = {"completed", "cancelled", "closed", "rejected"};
+
+    public enum Partition {
+        ALL,
+        SPECIALITY,
+        FACILITY,
+        CLINICIAN
+    }
+
+    public static class Entry {
+        private final Referral referral;
+        private final String referralId;
+        private final int urgencyRank;
+        private final long referralDay;
+        private final long dueDay;
+        private final String speciality;
+        private final String facilityId;
+        private final String clinicianId;
+        // Target date then urgency in one number, so most comparisons are a single long compare
+        // (referral date needn't be in it: target date and urgency together decide it)
+        private final long order;
+
+        private Entry(Referral referral, String speciality) {
+            this.referral = referral;
+            this.referralId = key(referral.getReferralId());
+            this.urgencyRank = ReferralScheduler.urgencyRank(referral.getUrgencyLevel());
+            this.referralDay = epochDay(referral.getReferralDate());
+            this.dueDay = referralDay + TARGET_DAYS[urgencyRank];
+            this.speciality = speciality;
+            this.facilityId = key(referral.getReferredToFacilityId());
+            this.clinicianId = key(referral.getReferredToClinicianId());
+            this.order = dueDay * TARGET_DAYS.length + urgencyRank;
+        }
+
+        // Just the sort key - where a page starts (see fromCursor)
+        private Entry(long dueDay, int urgencyRank, long referralDay, String referralId) {
+            this.referral = null;
+            this.referralId = referralId;
+            this.urgencyRank = urgencyRank;
+            this.referralDay = referralDay;
+            this.dueDay = dueDay;
+            this.speciality = "";
+            this.facilityId = "";
+            this.clinicianId = "";
+            this.order = dueDay * TARGET_DAYS.length + urgencyRank;
+        }
+
+        public Referral getReferral() {
+            return referral;
+        }
+
+        public String getSpeciality() {
+            return speciality;
+        }
+
+        public LocalDate getDueDate() {
+            return LocalDate.ofEpochDay(dueDay);
+        }
+
+        public long getDaysWaiting(LocalDate today) {
+            return today.toEpochDay() - referralDay;
+        }
+
+        // Days past the target date (0 or less = still within it)
+        public long getDaysOverdue(LocalDate today) {
+            return today.toEpochDay() - dueDay;
+        }
+
+        // This entry's place in the order as text, for paging from outside (e.g. the API):
+        // still works after the referral itself has left the list
+        public String getCursor() {
+            return dueDay + ":" + urgencyRank + ":" + referralDay + ":" + referralId;
+        }
+    }
+
+    // Soonest target date first, then most urgent, then oldest, then ID so the order is
+    // repeatable
+    private static final Comparator<Entry> ORDER = (a, b) -> {
+        int c = Long.compare(a.order, b.order);
+        return c != 0 ? c : a.referralId.compareTo(b.referralId);
+    };
+
+    private final ReferralRepository referralRepository;
+    private final ClinicianRepository clinicianRepository;
+
+    private final Map<String, Entry> byReferralId = new HashMap<>();
+    private final TreeSet<Entry> all = new TreeSet<>(ORDER);
+    private final Map<String, TreeSet<Entry>> bySpeciality = new HashMap<>();
+    private final Map<String, TreeSet<Entry>> byFacility = new HashMap<>();
+    private final Map<String, TreeSet<Entry>> byClinician = new HashMap<>();
+    // Speciality of each clinician, by ID (ClinicianRepository.findById is a linear scan,
+    // too slow once per referral when there are a million of them)
+    private final Map<String, String> specialityByClinician = new HashMap<>();
+
+    public TriageQueue(ReferralRepository referralRepository, ClinicianRepository clinicianRepository) {
+        this.referralRepository = referralRepository;
+        this.clinicianRepository = clinicianRepository;
+        rebuild();
+
+        referralRepository.addChangeListener(e -> {
+            if (e.getType() == RepositoryChangeEvent.Type.DELETED) {
+                remove(e.getEntity().getReferralId());
+            } else {
+                update(e.getEntity());
+            }
+        });
+        // The speciality partition comes from the referred-to clinician
+        clinicianRepository.addChangeListener(this::onClinicianChanged);
+    }
+
+    // Only a change of speciality matters here, and then only that clinician's referrals move
+    // (out of the old speciality's set and into the new one's) - O(k log n) for k referrals
+    // rather than re-sorting everything
+    private void onClinicianChanged(RepositoryChangeEvent<Clinician> event) {
+        Clinician clinician = event.getEntity();
+        String clinicianId = key(clinician.getClinicianId());
+        String speciality = event.getType() == RepositoryChangeEvent.Type.DELETED ? "" : specialityOf(clinician);
+        String previous = event.getType() == RepositoryChangeEvent.Type.DELETED
+            ? specialityByClinician.remove(clinicianId)
+            : specialityByClinician.put(clinicianId, speciality);
+        if (speciality.equals(previous != null ? previous : "")) {
+            return;
+        }
+        TreeSet<Entry> referred = byClinician.get(clinicianId);
+        if (referred == null) {
+            return;
+        }
+        for (Entry entry : new ArrayList<>(referred)) {
+            remove(entry.referralId);
+            add(new Entry(entry.referral, speciality));
+        }
+    }
+
+    public final void rebuild() {
+        byReferralId.clear();
+        all.clear();
+        bySpeciality.clear();
+        byFacility.clear();
+        byClinician.clear();
+        specialityByClinician.clear();
+        for (Clinician clinician : clinicianRepository.getAll()) {
+            specialityByClinician.put(key(clinician.getClinicianId()), specialityOf(clinician));
+        }
+        // Added in order, so each insert goes down the same (cached) right-hand edge of the trees
+        List<Entry> entries = new ArrayList<>();
+        for (Referral referral : referralRepository.getAll()) {
+            if (isOpen(referral)) {
+                entries.add(new Entry(referral, specialityByClinician.getOrDefault(key(referral.getReferredToClinicianId()), "")));
+            }
+        }
+        entries.sort(ORDER);
+        for (Entry entry : entries) {
+            add(entry);
+        }
+    }
+
+    // Puts a new or changed referral in its place (or takes it out if it's been closed)
+    public void update(Referral referral) {
+        remove(referral.getReferralId());
+        if (!isOpen(referral)) {
+            return;
+        }
+        add(new Entry(referral, specialityByClinician.getOrDefault(key(referral.getReferredToClinicianId()), "")));
+    }
+
+    private void add(Entry entry) {
+        byReferralId.put(entry.referralId, entry);
+        all.add(entry);
+        partitionAdd(bySpeciality, entry.speciality, entry);
+        partitionAdd(byFacility, entry.facilityId, entry);
+        partitionAdd(byClinician, entry.clinicianId, entry);
+    }
+
+    public void remove(String referralId) {
+        Entry entry = byReferralId.remove(key(referralId));
+        if (entry == null) {
+            return;
+        }
+        all.remove(entry);
+        partitionRemove(bySpeciality, entry.speciality, entry);
+        partitionRemove(byFacility, entry.facilityId, entry);
+        partitionRemove(byClinician, entry.clinicianId, entry);
+    }
+
+    // How many open referrals are in a worklist (key is ignored for ALL)
+    public int size(Partition partition, String key) {
+        NavigableSet<Entry> set = set(partition, key);
+        return set != null ? set.size() : 0;
+    }
+
+    // The specialities, facility IDs or clinician IDs that have open referrals, sorted
+    public List<String> keys(Partition partition) {
+        Map<String, TreeSet<Entry>> sets = partition == Partition.SPECIALITY ? bySpeciality
+            : partition == Partition.FACILITY ? byFacility
+            : partition == Partition.CLINICIAN ? byClinician : null;
+        List<String> keys = sets != null ? new ArrayList<>(sets.keySet()) : new ArrayList<>();
+        Collections.sort(keys);
+        return keys;
+    }
+
+    // Up to 'limit' referrals that come after 'after' in the worklist (from the top if null).
+    // 'after' doesn't have to still be on the list, so paging carries on from the right place
+    // even if that referral has since been booked or closed.
+    public List<Entry> page(Partition partition, String key, Entry after, int limit) {
+        NavigableSet<Entry> set = set(partition, key);
+        if (set == null) {
+            return new ArrayList<>();
+        }
+        return take(after != null ? set.tailSet(after, false).iterator() : set.iterator(), limit);
+    }
+
+    // Up to 'limit' referrals just before 'before', in worklist order
+    public List<Entry> pageBefore(Partition partition, String key, Entry before, int limit) {
+        NavigableSet<Entry> set = set(partition, key);
+        if (set == null || before == null) {
+            return new ArrayList<>();
+        }
+        List<Entry> page = take(set.headSet(before, false).descendingIterator(), limit);
+        Collections.reverse(page);
+        return page;
+    }
+
+    // The place a getCursor() string stands for, or null if it can't be read
+    public static Entry fromCursor(String cursor) {
+        String[] parts = cursor != null ? cursor.split(":", 4) : new String[0];
+        if (parts.length < 4) {
+            return null;
+        }
+        try {
+            return new Entry(Long.parseLong(parts[0]), Integer.parseInt(parts[1]), Long.parseLong(parts[2]), parts[3]);
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    private NavigableSet<Entry> set(Partition partition, String key) {
+        switch (partition) {
+            case SPECIALITY:
+                return bySpeciality.get(key(key));
+            case FACILITY:
+                return byFacility.get(key(key));
+            case CLINICIAN:
+                return byClinician.get(key(key));
+            default:
+                return all;
+        }
+    }
+
+    private static List<Entry> take(Iterator<Entry> it, int limit) {
+        List<Entry> page = new ArrayList<>();
+        while (page.size() < limit && it.hasNext()) {
+            page.add(it.next());
+        }
+        return page;
+    }
+
+    private static void partitionAdd(Map<String, TreeSet<Entry>> sets, String key, Entry entry) {
+        if (!key.isEmpty()) {
+            sets.computeIfAbsent(key, k -> new TreeSet<>(ORDER)).add(entry);
+        }
+    }
+
+    private static void partitionRemove(Map<String, TreeSet<Entry>> sets, String key, Entry entry) {
+        TreeSet<Entry> set = sets.get(key);
+        if (set != null) {
+            set.remove(entry);
+            if (set.isEmpty()) {
+                sets.remove(key);
+            }
+        }
+    }
+
+    private static boolean isOpen(Referral referral) {
+        String status = key(referral.getStatus()).toLowerCase();
+        for (String closed : CLOSED_STATUSES) {
+            if (status.equals(closed)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // A referral date that can't be read counts as today, so it still shows up
+    private static long epochDay(String date) {
+        try {
+            return LocalDate.parse(key(date)).toEpochDay();
+        } catch (java.time.format.DateTimeParseException ex) {
+            return LocalDate.now().toEpochDay();
+        }
+    }
+
+    private static String specialityOf(Clinician clinician) {
+        return clinician.getSpeciality() != null ? clinician.getSpeciality().trim() : "";
+    }
+
+    private static String key(String id) {
+        return id != null ? id.trim() : "";
+    }
+}
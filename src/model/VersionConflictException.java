@@ -0,0 +1,18 @@
+package model;
+
+// Thrown when a save is rejected because another user changed (or deleted) the same row
+// since it was loaded. The repository reloads the latest copy before throwing, so the
+// controller only has to tell the user and let them redo their edit.
+public class VersionConflictException extends Exception {
+    
+    private final String entityId;
+    
+    public VersionConflictException(String entityId, String message) {
+        super(message);
+        this.entityId = entityId;
+    }
+    
+    public String getEntityId() {
+        return entityId;
+    }
+}
@@ -0,0 +1,361 @@
+package model;
+
+import util.PrimitiveSort;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+// Referrals still waiting for an appointment, queued so that when an appointment is
+// cancelled the freed slot can go straight to whoever should have it next: most urgent
+// first, then whoever has waited longest.
+//
+// Each referral sits in two queues - one for the clinician it was referred to and one for
+// that clinician's speciality - so both "their own patients" and "anyone else waiting for
+// this kind of clinician" are a heap peek away. Referrals that stop waiting are only
+// flagged, not dug out of the heaps (that would be O(n)); flagged ones are dropped when they
+// reach the top, and the heaps are rebuilt if the flagged ones ever outnumber the live ones.
+//
+// Kept up to date from the referral and appointment change events, so like the
+// repositories it should only be used on the EDT.
+public class Waitlist {
+
+    // How many candidates one backfill looks at before giving up (each one is a booking
+    // check, and a slot nobody on the list can take shouldn't walk the whole list)
+    private static final int MAX_CANDIDATES = 50;
+    // Heaps aren't rebuilt until there's at least this much to throw away
+    private static final int MIN_COMPACT = 64;
+
+    public static class Entry {
+        private final Referral referral;
+        private final String clinicianId;
+        private final String speciality;
+        private final int urgencyRank;
+        private final long referralDate;
+        private final int referredMinute;
+        private boolean removed;
+
+        private Entry(Referral referral, String speciality) {
+            this.referral = referral;
+            this.clinicianId = key(referral.getReferredToClinicianId());
+            this.speciality = speciality;
+            this.urgencyRank = ReferralScheduler.urgencyRank(referral.getUrgencyLevel());
+            this.referralDate = PrimitiveSort.packDate(referral.getReferralDate());
+            this.referredMinute = AppointmentSchedule.startMinute(referral.getReferralDate(), "00:00");
+        }
+
+        public Referral getReferral() {
+            return referral;
+        }
+
+        public String getPatientId() {
+            return key(referral.getPatientId());
+        }
+
+        public String getClinicianId() {
+            return clinicianId;
+        }
+
+        // Whole days since the referral was made
+        public long getDaysWaiting(LocalDate today) {
+            return referredMinute < 0 ? 0 : today.toEpochDay() - referredMinute / OpeningHours.MINUTES_PER_DAY;
+        }
+    }
+
+    // A waiting referral and the appointment that would give it the freed slot
+    public static class Offer {
+        private final Entry entry;
+        private final Appointment appointment;
+
+        private Offer(Entry entry, Appointment appointment) {
+            this.entry = entry;
+            this.appointment = appointment;
+        }
+
+        public Entry getEntry() {
+            return entry;
+        }
+
+        public Referral getReferral() {
+            return entry.referral;
+        }
+
+        public Appointment getAppointment() {
+            return appointment;
+        }
+
+        // False when the slot belongs to another clinician of the same speciality
+        public boolean isReferredClinician() {
+            return entry.clinicianId.equalsIgnoreCase(key(appointment.getClinicianId()));
+        }
+    }
+
+    // Most urgent first, then oldest referral, then referral ID so the order is repeatable
+    private static final Comparator<Entry> PRIORITY = Comparator
+        .comparingInt((Entry e) -> e.urgencyRank)
+        .thenComparingLong(e -> e.referralDate)
+        .thenComparing(e -> e.referral.getReferralId());
+
+    private final AppointmentRepository appointmentRepository;
+    private final ReferralRepository referralRepository;
+    private final ClinicianRepository clinicianRepository;
+
+    private final Map<String, PriorityQueue<Entry>> byClinician = new HashMap<>();
+    private final Map<String, PriorityQueue<Entry>> bySpeciality = new HashMap<>();
+    private final Map<String, Entry> byReferralId = new HashMap<>();
+    // Referrals that have an appointment, by appointment ID - cancelling that appointment
+    // puts the referral back on the list
+    private final Map<String, String> referralByAppointment = new HashMap<>();
+    // Flagged entries still sitting in the heaps
+    private int removedCount;
+    // Lower-case speciality of each clinician, by ID (ClinicianRepository.findById is a
+    // linear scan, too slow once per referral)
+    private final Map<String, String> specialityByClinician = new HashMap<>();
+
+    public Waitlist(AppointmentRepository appointmentRepository, ReferralRepository referralRepository,
+                    ClinicianRepository clinicianRepository) {
+        this.appointmentRepository = appointmentRepository;
+        this.referralRepository = referralRepository;
+        this.clinicianRepository = clinicianRepository;
+        rebuild();
+
+        referralRepository.addChangeListener(this::onReferralChanged);
+        appointmentRepository.addChangeListener(this::onAppointmentChanged);
+        // A clinician's speciality decides which queue their referrals are in
+        clinicianRepository.addChangeListener(this::onClinicianChanged);
+    }
+
+    public final void rebuild() {
+        byClinician.clear();
+        bySpeciality.clear();
+        byReferralId.clear();
+        referralByAppointment.clear();
+        removedCount = 0;
+        specialityByClinician.clear();
+        for (Clinician clinician : clinicianRepository.getAll()) {
+            specialityByClinician.put(key(clinician.getClinicianId()), specialityOf(clinician));
+        }
+        for (Referral referral : referralRepository.getAll()) {
+            track(referral);
+        }
+    }
+
+    // Referrals waiting
+    public int size() {
+        return byReferralId.size();
+    }
+
+    // The best waiting referral that could take the slot 'freed' was booked in (same
+    // clinician, facility, date, time and length), or null if nobody can. Referrals in
+    // 'skip' (e.g. already offered it and turned it down) are passed over.
+    //
+    // The clinician's own referrals come first, unless someone more urgent is waiting for
+    // another clinician of the same speciality. A referral can only take the slot if it's
+    // still in the future, not before the referral was made, and the patient and facility
+    // are free then.
+    public Offer findBackfill(Appointment freed, Set<String> skip) {
+        int start = AppointmentSchedule.startMinute(freed.getAppointmentDate(), freed.getAppointmentTime());
+        if (start < 0 || start < AppointmentSchedule.toMinute(LocalDateTime.now())) {
+            return null;
+        }
+        String clinicianId = key(freed.getClinicianId());
+        Offer own = best(byClinician.get(clinicianId.toLowerCase()), freed, start, skip);
+
+        String speciality = specialityByClinician.getOrDefault(clinicianId, "");
+        Offer other = speciality.isEmpty() ? null : best(bySpeciality.get(speciality), freed, start, skip);
+        if (other != null && (own == null || other.entry.urgencyRank < own.entry.urgencyRank)) {
+            return other;
+        }
+        return own;
+    }
+
+    // Books the offer and writes the appointment ID back to the referral. If the referral was
+    // changed by another user in the meantime the booking is taken back out again.
+    public Appointment book(Offer offer) throws BookingConflictException, VersionConflictException {
+        Appointment appointment = offer.appointment;
+        appointment.setId(appointmentRepository.generateNewId());
+        appointmentRepository.add(appointment);
+
+        Referral referral = offer.entry.referral;
+        String previousAppointmentId = referral.getAppointmentId();
+        String previousLastUpdated = referral.getLastUpdated();
+        referral.setAppointmentId(appointment.getId());
+        referral.setLastUpdated(LocalDate.now().toString());
+        try {
+            referralRepository.updateReferral(referral);
+        } catch (VersionConflictException ex) {
+            referral.setAppointmentId(previousAppointmentId);
+            referral.setLastUpdated(previousLastUpdated);
+            appointmentRepository.delete(appointment.getId());
+            throw ex;
+        }
+        return appointment;
+    }
+
+    // Pops candidates off the top of the queue until one can take the slot, then puts back
+    // everyone still waiting. Flagged entries are simply dropped.
+    private Offer best(PriorityQueue<Entry> queue, Appointment freed, int start, Set<String> skip) {
+        if (queue == null) {
+            return null;
+        }
+        List<Entry> popped = new ArrayList<>();
+        Offer offer = null;
+        int checked = 0;
+        while (offer == null && checked < MAX_CANDIDATES && !queue.isEmpty()) {
+            Entry entry = queue.poll();
+            if (entry.removed) {
+                removedCount--;
+                continue;
+            }
+            popped.add(entry);
+            if (skip != null && skip.contains(entry.referral.getReferralId())) {
+                continue;
+            }
+            // Not before the referral was made, and not to the patient who just cancelled
+            if (start < entry.referredMinute || entry.getPatientId().equalsIgnoreCase(key(freed.getPatientId()))) {
+                continue;
+            }
+            checked++;
+            Appointment candidate = toAppointment(entry, freed);
+            try {
+                appointmentRepository.checkBooking(candidate);
+                offer = new Offer(entry, candidate);
+            } catch (BookingConflictException ex) {
+                // Patient busy then, or the facility is full - try the next one
+            }
+        }
+        queue.addAll(popped);
+        return offer;
+    }
+
+    private Appointment toAppointment(Entry entry, Appointment freed) {
+        Referral referral = entry.referral;
+        String today = LocalDate.now().toString();
+        return new Appointment(
+            "",
+            entry.getPatientId(),
+            key(freed.getClinicianId()),
+            key(freed.getFacilityId()),
+            freed.getAppointmentDate(),
+            freed.getAppointmentTime(),
+            String.valueOf(AppointmentSchedule.durationOf(freed)),
+            "Referral",
+            "Scheduled",
+            referral.getReferralReason() != null ? referral.getReferralReason() : "",
+            "Booked from referral " + referral.getReferralId() + " (cancellation)",
+            today,
+            today
+        );
+    }
+
+    // --- Keeping up to date ---
+
+    private void onReferralChanged(RepositoryChangeEvent<Referral> event) {
+        Referral referral = event.getEntity();
+        untrack(referral.getReferralId());
+        if (event.getType() != RepositoryChangeEvent.Type.DELETED) {
+            track(referral);
+        }
+    }
+
+    // A referral's appointment being cancelled puts it back on the list
+    private void onAppointmentChanged(RepositoryChangeEvent<Appointment> event) {
+        if (event.getType() != RepositoryChangeEvent.Type.DELETED) {
+            return;
+        }
+        String referralId = referralByAppointment.get(key(event.getEntity().getId()));
+        Referral referral = referralId != null ? referralRepository.findById(referralId) : null;
+        if (referral != null) {
+            untrack(referralId);
+            track(referral);
+        }
+    }
+
+    // A clinician whose speciality changed has their waiting referrals moved to the new
+    // speciality's queue; nothing else needs touching
+    private void onClinicianChanged(RepositoryChangeEvent<Clinician> event) {
+        Clinician clinician = event.getEntity();
+        String clinicianId = key(clinician.getClinicianId());
+        String speciality = event.getType() == RepositoryChangeEvent.Type.DELETED ? "" : specialityOf(clinician);
+        String previous = event.getType() == RepositoryChangeEvent.Type.DELETED
+            ? specialityByClinician.remove(clinicianId)
+            : specialityByClinician.put(clinicianId, speciality);
+        if (speciality.equals(previous != null ? previous : "")) {
+            return;
+        }
+        PriorityQueue<Entry> queue = byClinician.get(clinicianId.toLowerCase());
+        if (queue == null) {
+            return;
+        }
+        List<Referral> waiting = new ArrayList<>();
+        for (Entry entry : queue) {
+            if (!entry.removed) {
+                waiting.add(entry.referral);
+            }
+        }
+        for (Referral referral : waiting) {
+            untrack(referral.getReferralId());
+            track(referral);
+        }
+    }
+
+    private void track(Referral referral) {
+        String appointmentId = key(referral.getAppointmentId());
+        if (!appointmentId.isEmpty()) {
+            referralByAppointment.put(appointmentId, referral.getReferralId());
+        }
+        if (!ReferralScheduler.isWaiting(referral, appointmentRepository)) {
+            return;
+        }
+        Entry entry = new Entry(referral, specialityByClinician.getOrDefault(key(referral.getReferredToClinicianId()), ""));
+        byReferralId.put(key(referral.getReferralId()), entry);
+        if (!entry.clinicianId.isEmpty()) {
+            byClinician.computeIfAbsent(entry.clinicianId.toLowerCase(), k -> new PriorityQueue<>(PRIORITY)).add(entry);
+        }
+        if (!entry.speciality.isEmpty()) {
+            bySpeciality.computeIfAbsent(entry.speciality, k -> new PriorityQueue<>(PRIORITY)).add(entry);
+        }
+    }
+
+    private void untrack(String referralId) {
+        Entry entry = byReferralId.remove(key(referralId));
+        if (entry == null) {
+            return;
+        }
+        entry.removed = true;
+        // Once in each queue it's in
+        removedCount += (entry.clinicianId.isEmpty() ? 0 : 1) + (entry.speciality.isEmpty() ? 0 : 1);
+        if (removedCount > MIN_COMPACT && removedCount > byReferralId.size()) {
+            compact();
+        }
+    }
+
+    // Rebuilds the heaps from the live entries only
+    private void compact() {
+        byClinician.clear();
+        bySpeciality.clear();
+        for (Entry entry : byReferralId.values()) {
+            if (!entry.clinicianId.isEmpty()) {
+                byClinician.computeIfAbsent(entry.clinicianId.toLowerCase(), k -> new PriorityQueue<>(PRIORITY)).add(entry);
+            }
+            if (!entry.speciality.isEmpty()) {
+                bySpeciality.computeIfAbsent(entry.speciality, k -> new PriorityQueue<>(PRIORITY)).add(entry);
+            }
+        }
+        removedCount = 0;
+    }
+
+    private static String specialityOf(Clinician clinician) {
+        String speciality = clinician != null ? clinician.getSpeciality() : null;
+        return speciality != null ? speciality.trim().toLowerCase() : "";
+    }
+
+    private static String key(String id) {
+        return id != null ? id.trim() : "";
+    }
+}
@@ -0,0 +1,279 @@
+package model;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+// Which clinicians at a facility have the most time left on a given day, so bookings can be
+// spread across them instead of piling up on whoever is picked first.
+//
+// Booked minutes per clinician per day are counted as appointments are booked, moved and
+// cancelled (from the appointment change events). For each facility/speciality/day that is
+// asked about, the clinicians who work there are kept in a set sorted by time left, so the
+// least busy are at the front and a booking moves one clinician in one set - O(log n) either
+// way. Those sets are only made when first asked for, and only the most recent are kept.
+//
+// Repeating appointments are counted when a set is made rather than kept in the counters
+// (a series has no end), so a series change throws the sets away to be made again.
+//
+// Like the repositories it should only be used on the EDT.
+public class WorkloadBalancer {
+
+    // Sorted sets kept at once (each is one facility/speciality/day)
+    private static final int MAX_RANKINGS = 256;
+
+    public static class Candidate {
+        private final Clinician clinician;
+        private final String clinicianKey;
+        private final int capacityMinutes;
+        private final int seriesMinutes;
+        private int bookedMinutes;
+
+        private Candidate(Clinician clinician, int capacityMinutes, int seriesMinutes, int bookedMinutes) {
+            this.clinician = clinician;
+            this.clinicianKey = key(clinician.getClinicianId());
+            this.capacityMinutes = capacityMinutes;
+            this.seriesMinutes = seriesMinutes;
+            this.bookedMinutes = bookedMinutes;
+        }
+
+        public Clinician getClinician() {
+            return clinician;
+        }
+
+        // Minutes booked that day, one-off and repeating
+        public int getBookedMinutes() {
+            return bookedMinutes + seriesMinutes;
+        }
+
+        // Minutes the clinician's workplace is open that day
+        public int getCapacityMinutes() {
+            return capacityMinutes;
+        }
+
+        // Can be below 0 when they're booked past their hours
+        public int getRemainingMinutes() {
+            return capacityMinutes - getBookedMinutes();
+        }
+    }
+
+    // Most time left first, then least booked, then ID so the order is repeatable
+    private static final Comparator<Candidate> ORDER = (a, b) -> {
+        int c = Integer.compare(b.getRemainingMinutes(), a.getRemainingMinutes());
+        if (c == 0) {
+            c = Integer.compare(a.getBookedMinutes(), b.getBookedMinutes());
+        }
+        return c != 0 ? c : a.clinicianKey.compareTo(b.clinicianKey);
+    };
+
+    // The clinicians at one facility (with one speciality, or any) on one day
+    private static class Ranking {
+        final TreeSet<Candidate> sorted = new TreeSet<>(ORDER);
+        final Map<String, Candidate> byClinician = new HashMap<>();
+    }
+
+    // Where one appointment was counted, so it can be taken off again after it has changed
+    private static class Booking {
+        final String clinicianKey;
+        final long day;
+        final int minutes;
+
+        Booking(String clinicianKey, long day, int minutes) {
+            this.clinicianKey = clinicianKey;
+            this.day = day;
+            this.minutes = minutes;
+        }
+    }
+
+    private final AppointmentRepository appointmentRepository;
+    private final ClinicianRepository clinicianRepository;
+    private final FacilityRepository facilityRepository;
+
+    // Booked minutes, by clinician then epoch day
+    private final Map<String, Map<Long, Integer>> bookedByClinician = new HashMap<>();
+    private final Map<String, Booking> bookings = new HashMap<>();
+    // Workplace and speciality of each clinician, by ID (both lower case)
+    private final Map<String, String[]> placeByClinician = new HashMap<>();
+    // Clinicians working at each facility, by lower-case facility ID
+    private final Map<String, List<Clinician>> cliniciansByFacility = new HashMap<>();
+    // Least recently used set dropped first
+    private final Map<String, Ranking> rankings = new LinkedHashMap<String, Ranking>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Ranking> eldest) {
+            return size() > MAX_RANKINGS;
+        }
+    };
+
+    public WorkloadBalancer(AppointmentRepository appointmentRepository, AppointmentSeriesRepository seriesRepository,
+                            ClinicianRepository clinicianRepository, FacilityRepository facilityRepository) {
+        this.appointmentRepository = appointmentRepository;
+        this.clinicianRepository = clinicianRepository;
+        this.facilityRepository = facilityRepository;
+        rebuild();
+
+        appointmentRepository.addChangeListener(this::onAppointmentChanged);
+        if (seriesRepository != null) {
+            seriesRepository.addChangeListener(e -> rankings.clear());
+        }
+        // Moving a clinician to another facility or speciality changes who is in each set
+        clinicianRepository.addChangeListener(e -> {
+            loadPlaces();
+            rankings.clear();
+        });
+    }
+
+    public final void rebuild() {
+        bookedByClinician.clear();
+        bookings.clear();
+        rankings.clear();
+        loadPlaces();
+        for (Appointment a : appointmentRepository.getAll()) {
+            track(a);
+        }
+    }
+
+    // Up to 'limit' clinicians working at the facility on that day, most time left first.
+    // A blank speciality means any.
+    public List<Candidate> rank(String facilityId, String speciality, LocalDate day, int limit) {
+        Ranking ranking = ranking(key(facilityId), key(speciality).toLowerCase(), day.toEpochDay());
+        List<Candidate> result = new ArrayList<>();
+        Iterator<Candidate> it = ranking.sorted.iterator();
+        while (result.size() < limit && it.hasNext()) {
+            result.add(it.next());
+        }
+        return result;
+    }
+
+    // Minutes of one-off appointments the clinician has that day
+    public int bookedMinutes(String clinicianId, LocalDate day) {
+        Map<Long, Integer> days = bookedByClinician.get(key(clinicianId).toLowerCase());
+        return days != null ? days.getOrDefault(day.toEpochDay(), 0) : 0;
+    }
+
+    private Ranking ranking(String facilityId, String specialityKey, long day) {
+        String facilityKey = facilityId.toLowerCase();
+        String rankingKey = facilityKey + "|" + specialityKey + "|" + day;
+        Ranking ranking = rankings.get(rankingKey);
+        if (ranking != null) {
+            return ranking;
+        }
+        ranking = new Ranking();
+        Facility facility = facilityRepository != null ? facilityRepository.findById(facilityId) : null;
+        OpeningHours hours = facility != null ? facility.getParsedOpeningHours() : AvailabilityEngine.DEFAULT_HOURS;
+        LocalDate date = LocalDate.ofEpochDay(day);
+        int capacity = openMinutes(hours, date);
+        int dayStart = (int) (day * OpeningHours.MINUTES_PER_DAY);
+        AppointmentSchedule schedule = appointmentRepository.getSchedule();
+
+        for (Clinician clinician : cliniciansByFacility.getOrDefault(facilityKey, new ArrayList<>())) {
+            String[] place = placeByClinician.get(key(clinician.getClinicianId()).toLowerCase());
+            if (!specialityKey.isEmpty() && !place[1].equals(specialityKey)) {
+                continue;
+            }
+            int[] seriesMinutes = {0};
+            for (AppointmentSeries s : schedule.clinicianSeries(clinician.getClinicianId())) {
+                s.forEachOverlap(dayStart, dayStart + OpeningHours.MINUTES_PER_DAY, (os, oe, id) -> {
+                    seriesMinutes[0] += oe - os;
+                    return true;
+                });
+            }
+            Candidate candidate = new Candidate(clinician, capacity, seriesMinutes[0],
+                bookedMinutes(clinician.getClinicianId(), date));
+            ranking.sorted.add(candidate);
+            ranking.byClinician.put(candidate.clinicianKey.toLowerCase(), candidate);
+        }
+        rankings.put(rankingKey, ranking);
+        return ranking;
+    }
+
+    // --- Keeping up to date ---
+
+    private void onAppointmentChanged(RepositoryChangeEvent<Appointment> event) {
+        untrack(event.getEntity().getId());
+        if (event.getType() != RepositoryChangeEvent.Type.DELETED) {
+            track(event.getEntity());
+        }
+    }
+
+    private void track(Appointment a) {
+        if ("Cancelled".equalsIgnoreCase(key(a.getStatus()))) {
+            return;
+        }
+        int start = AppointmentSchedule.startMinute(a.getAppointmentDate(), a.getAppointmentTime());
+        String clinicianKey = key(a.getClinicianId()).toLowerCase();
+        if (start < 0 || clinicianKey.isEmpty()) {
+            return;
+        }
+        Booking booking = new Booking(clinicianKey, Math.floorDiv(start, OpeningHours.MINUTES_PER_DAY),
+            AppointmentSchedule.durationOf(a));
+        bookings.put(key(a.getId()), booking);
+        change(booking, booking.minutes);
+    }
+
+    private void untrack(String appointmentId) {
+        Booking booking = bookings.remove(key(appointmentId));
+        if (booking != null) {
+            change(booking, -booking.minutes);
+        }
+    }
+
+    // Adds to the clinician's day, and moves them in the sets for that day (the one for their
+    // speciality and the one for any)
+    private void change(Booking booking, int minutes) {
+        Map<Long, Integer> days = bookedByClinician.computeIfAbsent(booking.clinicianKey, k -> new HashMap<>());
+        int total = days.getOrDefault(booking.day, 0) + minutes;
+        if (total == 0) {
+            days.remove(booking.day);
+        } else {
+            days.put(booking.day, total);
+        }
+
+        String[] place = placeByClinician.get(booking.clinicianKey);
+        if (place == null || rankings.isEmpty()) {
+            return;
+        }
+        move(rankings.get(place[0] + "|" + place[1] + "|" + booking.day), booking.clinicianKey, total);
+        if (!place[1].isEmpty()) {
+            move(rankings.get(place[0] + "||" + booking.day), booking.clinicianKey, total);
+        }
+    }
+
+    private static void move(Ranking ranking, String clinicianKey, int bookedMinutes) {
+        Candidate candidate = ranking != null ? ranking.byClinician.get(clinicianKey) : null;
+        if (candidate != null) {
+            ranking.sorted.remove(candidate);
+            candidate.bookedMinutes = bookedMinutes;
+            ranking.sorted.add(candidate);
+        }
+    }
+
+    private void loadPlaces() {
+        placeByClinician.clear();
+        cliniciansByFacility.clear();
+        for (Clinician clinician : clinicianRepository.getAll()) {
+            String facilityKey = key(clinician.getWorkplaceId()).toLowerCase();
+            placeByClinician.put(key(clinician.getClinicianId()).toLowerCase(),
+                new String[]{facilityKey, key(clinician.getSpeciality()).toLowerCase()});
+            cliniciansByFacility.computeIfAbsent(facilityKey, k -> new ArrayList<>()).add(clinician);
+        }
+    }
+
+    private static int openMinutes(OpeningHours hours, LocalDate date) {
+        int[] open = hours.getHours(date.getDayOfWeek());
+        int minutes = 0;
+        for (int i = 0; i < open.length; i += 2) {
+            minutes += open[i + 1] - open[i];
+        }
+        return minutes;
+    }
+
+    private static String key(String id) {
+        return id != null ? id.trim() : "";
+    }
+}
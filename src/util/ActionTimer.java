@@ -0,0 +1,178 @@
+package util;
+
+import java.awt.AWTEvent;
+import java.awt.Toolkit;
+import java.awt.event.ActionListener;
+import java.awt.event.WindowEvent;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Times controller actions (button clicks, searches...) and keeps a latency histogram per
+// action, shown on the Developer screen.
+//
+// Controllers wrap their handlers, e.g.
+//     ActionTimer.time("AppointmentController.bookNewAppointment", this::bookNewAppointment)
+// Actions that open a modal dialog would otherwise be "running" until the dialog closes,
+// so an action stops being timed as soon as a window opens - that's the delay the user
+// actually waits through. Actions are run on the EDT only.
+public class ActionTimer {
+
+    // Bucket upper bounds in ms - the last bucket is everything slower
+    private static final long[] BUCKET_LIMITS_MS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000};
+
+    // Stats for one action name
+    public static class Histogram {
+        private final String action;
+        private final long[] buckets = new long[BUCKET_LIMITS_MS.length + 1];
+        private long count;
+        private long totalNanos;
+        private long maxNanos;
+
+        Histogram(String action) {
+            this.action = action;
+        }
+
+        void add(long nanos) {
+            long ms = nanos / 1_000_000;
+            int bucket = 0;
+            while (bucket < BUCKET_LIMITS_MS.length && ms >= BUCKET_LIMITS_MS[bucket]) {
+                bucket++;
+            }
+            buckets[bucket]++;
+            count++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+
+        Histogram copy() {
+            Histogram copy = new Histogram(action);
+            System.arraycopy(buckets, 0, copy.buckets, 0, buckets.length);
+            copy.count = count;
+            copy.totalNanos = totalNanos;
+            copy.maxNanos = maxNanos;
+            return copy;
+        }
+
+        public String getAction() { return action; }
+        public long getCount() { return count; }
+        public double getMeanMs() { return count == 0 ? 0 : totalNanos / 1e6 / count; }
+        public double getMaxMs() { return maxNanos / 1e6; }
+
+        // Upper bound of the bucket holding the given percentile (e.g. 95 -> "95% took under X ms")
+        public String getPercentileMs(double percentile) {
+            long target = (long) Math.ceil(count * percentile / 100.0);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= target && seen > 0) {
+                    return i < BUCKET_LIMITS_MS.length ? "<" + BUCKET_LIMITS_MS[i] : ">" + BUCKET_LIMITS_MS[i - 1];
+                }
+            }
+            return "-";
+        }
+
+        // "<1ms:3 <2ms:0 ..." - the raw bucket counts for the report file
+        public String describeBuckets() {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < buckets.length; i++) {
+                if (sb.length() > 0) sb.append(' ');
+                sb.append(i < BUCKET_LIMITS_MS.length ? "<" + BUCKET_LIMITS_MS[i] : ">=" + BUCKET_LIMITS_MS[i - 1]);
+                sb.append("ms:").append(buckets[i]);
+            }
+            return sb.toString();
+        }
+    }
+
+    // An action that is currently running (actions can nest, e.g. a save inside a dialog)
+    private static class Running {
+        final String action;
+        final long start = System.nanoTime();
+        boolean recorded;
+
+        Running(String action) {
+            this.action = action;
+        }
+    }
+
+    private static final Map<String, Histogram> histograms = new TreeMap<>();
+    private static final Deque<Running> running = new ArrayDeque<>();
+    private static volatile String currentAction;
+    private static boolean windowListenerAdded;
+
+    private ActionTimer() {
+    }
+
+    public static void time(String action, Runnable body) {
+        addWindowListener();
+        Running run = new Running(action);
+        running.push(run);
+        currentAction = action;
+        try {
+            body.run();
+        } finally {
+            running.pop();
+            currentAction = running.isEmpty() ? null : running.peek().action;
+            if (!run.recorded) {
+                record(action, System.nanoTime() - run.start);
+            }
+        }
+    }
+
+    // Wraps a listener so every click is timed under the given name
+    public static ActionListener timed(String action, ActionListener listener) {
+        return e -> time(action, () -> listener.actionPerformed(e));
+    }
+
+    public static void record(String action, long nanos) {
+        synchronized (histograms) {
+            histograms.computeIfAbsent(action, Histogram::new).add(nanos);
+        }
+    }
+
+    // The action running on the EDT right now (null if none) - the stall monitor reads this
+    // from its own thread
+    public static String getCurrentAction() {
+        return currentAction;
+    }
+
+    // A copy of every action's stats, sorted by action name
+    public static List<Histogram> getHistograms() {
+        synchronized (histograms) {
+            List<Histogram> copies = new ArrayList<>();
+            for (Histogram histogram : histograms.values()) {
+                copies.add(histogram.copy());
+            }
+            return copies;
+        }
+    }
+
+    public static void reset() {
+        synchronized (histograms) {
+            histograms.clear();
+        }
+    }
+
+    // When a dialog or message box opens, every running action has done its work
+    private static void addWindowListener() {
+        if (windowListenerAdded) {
+            return;
+        }
+        windowListenerAdded = true;
+        Toolkit.getDefaultToolkit().addAWTEventListener(event -> {
+            if (event.getID() != WindowEvent.WINDOW_OPENED) {
+                return;
+            }
+            long now = System.nanoTime();
+            for (Running run : running) {
+                if (!run.recorded) {
+                    run.recorded = true;
+                    record(run.action, now - run.start);
+                }
+            }
+        }, AWTEvent.WINDOW_EVENT_MASK);
+    }
+}
@@ -0,0 +1,393 @@
+package util;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Shared append-only journal kept in the data folder (journal.log).
+//
+// Every process that changes a record appends one line describing the change, with a
+// sequence number that increases across all processes. Each process tails the journal and
+// applies other processes' entries to its repositories, so they stay in step without
+// re-reading whole CSV files.
+//
+// Line format: seq|origin|file|op|stamp|row
+//   origin - random ID each process picks when it starts (so we can skip our own entries;
+//            not the PID, which two workstations sharing the folder can both have)
+//   op     - UPSERT, DELETE or RELOAD (the whole file was rewritten)
+//   stamp  - size and modified time of the data file straight after the write
+//   row    - the CSV row (for DELETE just the ID)
+public class ChangeJournal {
+
+    public static final String UPSERT = "UPSERT";
+    public static final String DELETE = "DELETE";
+    public static final String RELOAD = "RELOAD";
+
+    private static final String FILE_NAME = "journal.log";
+    // Journal is cleared on startup once it gets bigger than this
+    private static final long COMPACT_SIZE = 1024 * 1024;
+
+    public static class Entry {
+        private final long sequence;
+        private final String fileName;
+        private final String op;
+        private final String[] row;
+
+        Entry(long sequence, String fileName, String op, String[] row) {
+            this.sequence = sequence;
+            this.fileName = fileName;
+            this.op = op;
+            this.row = row;
+        }
+
+        public long getSequence() { return sequence; }
+        public String getFileName() { return fileName; }
+        public String getOp() { return op; }
+        public String[] getRow() { return row; }
+    }
+
+    // Called on the thread that polls the journal
+    public interface Listener {
+        void entryReceived(Entry entry);
+    }
+
+    private static final Map<Path, ChangeJournal> journals = new ConcurrentHashMap<>();
+
+    private final Path journalPath;
+    private final String origin = UUID.randomUUID().toString();
+    private final Map<String, List<Listener>> listeners = new ConcurrentHashMap<>();
+    // Last known size/modified stamp of each data file, from our own writes and the journal
+    private final Map<String, String> knownStamps = new ConcurrentHashMap<>();
+
+    // Tail position - only touched by poll()
+    private long offset;
+    private long lastSequence;
+
+    private ChangeJournal(Path directory) {
+        this.journalPath = directory.resolve(FILE_NAME);
+        try {
+            DataFileLock.withLock(journalPath.toString(), () -> {
+                if (Files.exists(journalPath) && Files.size(journalPath) > COMPACT_SIZE) {
+                    // Other processes notice the file got shorter and do a full reload
+                    Files.write(journalPath, new byte[0]);
+                    System.out.println("Compacted change journal " + journalPath);
+                }
+                // We have just loaded the CSV files, so start tailing from the current end
+                offset = Files.exists(journalPath) ? Files.size(journalPath) : 0;
+                lastSequence = readLastSequence();
+                return null;
+            });
+        } catch (IOException ex) {
+            System.err.println("Could not open change journal: " + ex.getMessage());
+        }
+    }
+
+    public static ChangeJournal forDirectory(String directory) {
+        Path dir = Paths.get(directory).toAbsolutePath().normalize();
+        return journals.computeIfAbsent(dir, ChangeJournal::new);
+    }
+
+    // The journal that sits next to a given data file
+    public static ChangeJournal forDataFile(String dataFilePath) {
+        Path parent = Paths.get(dataFilePath).toAbsolutePath().normalize().getParent();
+        return forDirectory(parent.toString());
+    }
+
+    public String getJournalFileName() {
+        return FILE_NAME;
+    }
+
+    public void subscribe(String fileName, Listener listener) {
+        listeners.computeIfAbsent(fileName, k -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+
+    // Records a change to a data file. Call this while still holding that file's lock so the
+    // journal order matches the order the writes hit the file.
+    public void append(String dataFilePath, String op, String[] row) {
+        Path dataFile = Paths.get(dataFilePath);
+        String fileName = dataFile.getFileName().toString();
+        String stamp = stampOf(dataFile);
+        knownStamps.put(fileName, stamp);
+
+        try {
+            DataFileLock.withLock(journalPath.toString(), () -> {
+                long seq = readLastSequence() + 1;
+                String rowText = row == null ? "" : String.join(",", CsvUtils.escapeRow(row));
+                String line = seq + "|" + origin + "|" + fileName + "|" + op + "|" + stamp + "|"
+                        + rowText.replace('\n', ' ').replace('\r', ' ') + "\n";
+                try (RandomAccessFile raf = new RandomAccessFile(journalPath.toFile(), "rw")) {
+                    raf.seek(raf.length());
+                    raf.write(line.getBytes(StandardCharsets.UTF_8));
+                }
+                return null;
+            });
+        } catch (IOException ex) {
+            System.err.println("Failed to write change journal: " + ex.getMessage());
+        }
+    }
+
+    // Reads any complete lines added since the last poll and hands other processes' entries
+    // to the subscribers. If entries were lost (gap in the sequence or the journal was
+    // compacted) every subscriber gets a RELOAD instead.
+    public synchronized void poll() {
+        List<String> lines = new ArrayList<>();
+        boolean resync = false;
+
+        try {
+            long next = readLines(offset, lines);
+            if (next < 0) {
+                resync = true;
+                next = readLines(0, lines);
+            }
+            offset = next;
+        } catch (java.io.FileNotFoundException ex) {
+            return; // nothing has been journalled yet
+        } catch (IOException ex) {
+            System.err.println("Failed to read change journal: " + ex.getMessage());
+            return;
+        }
+
+        List<Entry> entries = new ArrayList<>();
+        for (String line : lines) {
+            String[] parts = line.split("\\|", 6);
+            if (parts.length < 6) continue;
+
+            long seq;
+            try {
+                seq = Long.parseLong(parts[0]);
+            } catch (NumberFormatException ex) {
+                continue;
+            }
+            if (seq != lastSequence + 1) {
+                resync = true;
+            }
+            lastSequence = seq;
+            knownStamps.put(parts[2], parts[4]);
+
+            if (!parts[1].equals(origin)) {
+                entries.add(new Entry(seq, parts[2], parts[3], CsvUtils.parseLine(parts[5])));
+            }
+        }
+
+        if (resync) {
+            System.out.println("Change journal out of step - reloading data files");
+            for (String fileName : listeners.keySet()) {
+                dispatch(new Entry(lastSequence, fileName, RELOAD, new String[0]));
+            }
+            return;
+        }
+        for (Entry entry : entries) {
+            dispatch(entry);
+        }
+    }
+
+    // A read position of its own in the journal for one data file. For a repository that has
+    // to catch up with other processes' changes right now, while it holds the file's lock
+    // (e.g. before checking a booking), rather than when the watcher gets round to it.
+    // Create it before loading the file, so nothing written in between is missed.
+    public Cursor cursor(String dataFilePath) {
+        return new Cursor(dataFilePath);
+    }
+
+    public class Cursor {
+        private final Path dataFile;
+        private final String fileName;
+        private long cursorOffset;
+        private long cursorSequence;
+        // The data file's stamp after the last journalled write to it we have read
+        private String stamp;
+        private boolean unjournalledWrite;
+
+        private Cursor(String dataFilePath) {
+            this.dataFile = Paths.get(dataFilePath);
+            this.fileName = dataFile.getFileName().toString();
+            this.stamp = stampOf(dataFile);
+            try {
+                DataFileLock.withLock(journalPath.toString(), () -> {
+                    cursorOffset = Files.exists(journalPath) ? Files.size(journalPath) : 0;
+                    cursorSequence = readLastSequence();
+                    return null;
+                });
+            } catch (IOException ex) {
+                System.err.println("Could not open change journal: " + ex.getMessage());
+            }
+        }
+
+        // The entries for the file since the last call, or null if they don't account for
+        // everything on disk (journal compacted, entries missing, the whole file
+        // rewritten, or a write that never reached the journal) - then the caller has to
+        // re-read the file and call markUpToDate()
+        public synchronized List<Entry> read() {
+            List<String> lines = new ArrayList<>();
+            boolean complete = true;
+            unjournalledWrite = false;
+            try {
+                long next = readLines(cursorOffset, lines);
+                if (next < 0) {
+                    complete = false;
+                    next = readLines(0, lines);
+                }
+                cursorOffset = next;
+            } catch (java.io.FileNotFoundException ex) {
+                // nothing has been journalled yet
+            } catch (IOException ex) {
+                System.err.println("Failed to read change journal: " + ex.getMessage());
+                return null;
+            }
+
+            List<Entry> entries = new ArrayList<>();
+            for (String line : lines) {
+                String[] parts = line.split("\\|", 6);
+                if (parts.length < 6) continue;
+
+                long seq;
+                try {
+                    seq = Long.parseLong(parts[0]);
+                } catch (NumberFormatException ex) {
+                    continue;
+                }
+                if (seq != cursorSequence + 1) {
+                    complete = false;
+                }
+                cursorSequence = seq;
+                if (!parts[2].equals(fileName)) {
+                    continue;
+                }
+                stamp = parts[4];
+                // Our own process's entries too: another repository here may have written them,
+                // and one that was ours already changes nothing when applied again
+                if (parts[3].equals(RELOAD)) {
+                    complete = false;
+                } else {
+                    entries.add(new Entry(seq, parts[2], parts[3], CsvUtils.parseLine(parts[5])));
+                }
+            }
+            if (!stampOf(dataFile).equals(stamp)) {
+                unjournalledWrite = true;
+                return null;
+            }
+            return complete ? entries : null;
+        }
+
+        // Whether the last read() returned null because the file was written without a
+        // journal entry - then nobody else's cursor can tell, so the caller should journal
+        // a RELOAD once it has re-read the file
+        public synchronized boolean sawUnjournalledWrite() {
+            return unjournalledWrite;
+        }
+
+        // The caller has just read the whole file (holding its lock)
+        public synchronized void markUpToDate() {
+            stamp = stampOf(dataFile);
+        }
+    }
+
+    // Reads the complete lines from 'from' to the end of the journal into 'lines' and returns
+    // the offset after the last one, or -1 if the journal is now shorter than 'from' (it was
+    // compacted)
+    private long readLines(long from, List<String> lines) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(journalPath.toFile(), "r")) {
+            long length = raf.length();
+            if (length < from) {
+                return -1;
+            }
+            if (length == from) {
+                return from;
+            }
+            byte[] data = new byte[(int) (length - from)];
+            raf.seek(from);
+            raf.readFully(data);
+
+            // Only take whole lines - a writer may be half way through the last one
+            int end = lastIndexOf(data, (byte) '\n');
+            if (end < 0) {
+                return from;
+            }
+            String text = new String(data, 0, end + 1, StandardCharsets.UTF_8);
+            for (String line : text.split("\n")) {
+                if (!line.isEmpty()) lines.add(line);
+            }
+            return from + end + 1;
+        }
+    }
+
+    // True if the data file is exactly as the last journalled write left it, i.e. a
+    // change event for it has already been dealt with through the journal
+    public boolean isUpToDate(String dataFilePath) {
+        Path dataFile = Paths.get(dataFilePath);
+        String known = knownStamps.get(dataFile.getFileName().toString());
+        return known != null && known.equals(stampOf(dataFile));
+    }
+
+    private void dispatch(Entry entry) {
+        List<Listener> forFile = listeners.get(entry.getFileName());
+        if (forFile == null) return;
+        for (Listener l : forFile) {
+            try {
+                l.entryReceived(entry);
+            } catch (Exception ex) {
+                System.err.println("Journal listener failed: " + ex.getMessage());
+            }
+        }
+    }
+
+    private static String stampOf(Path file) {
+        try {
+            return Files.size(file) + ":" + Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException ex) {
+            return "";
+        }
+    }
+
+    // Sequence number on the last line of the journal, or 0 if it is empty.
+    // Reads backwards from the end so it doesn't matter how long the journal is.
+    private long readLastSequence() throws IOException {
+        if (!Files.exists(journalPath)) return 0;
+
+        try (RandomAccessFile raf = new RandomAccessFile(journalPath.toFile(), "r")) {
+            long end = raf.length() - 1; // skip the trailing newline
+            if (end <= 0) return 0;
+
+            StringBuilder digits = new StringBuilder();
+            long pos = end - 1;
+            byte[] chunk = new byte[4096];
+            long lineStart = 0;
+            outer:
+            while (pos >= 0) {
+                int size = (int) Math.min(chunk.length, pos + 1);
+                raf.seek(pos - size + 1);
+                raf.readFully(chunk, 0, size);
+                for (int i = size - 1; i >= 0; i--) {
+                    if (chunk[i] == '\n') {
+                        lineStart = pos - (size - 1 - i) + 1;
+                        break outer;
+                    }
+                }
+                pos -= size;
+            }
+
+            raf.seek(lineStart);
+            int b;
+            while ((b = raf.read()) >= '0' && b <= '9') {
+                digits.append((char) b);
+            }
+            return digits.length() == 0 ? 0 : Long.parseLong(digits.toString());
+        }
+    }
+
+    private static int lastIndexOf(byte[] data, byte value) {
+        for (int i = data.length - 1; i >= 0; i--) {
+            if (data[i] == value) return i;
+        }
+        return -1;
+    }
+}
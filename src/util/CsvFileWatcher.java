@@ -0,0 +1,119 @@
+package util;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// Watches the data directory and runs a callback when one of the registered CSV files changes.
+// Jobs usually write a file in several steps, so changes are debounced: the callback only runs
+// once the file has been quiet for DEBOUNCE_MS.
+public class CsvFileWatcher {
+
+    private static final long DEBOUNCE_MS = 500;
+
+    private final Path directory;
+    private final Map<String, Runnable> callbacks = new ConcurrentHashMap<>();
+    private final Map<String, ScheduledFuture<?>> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private WatchService watchService;
+    private Thread watchThread;
+
+    public CsvFileWatcher(String directory) {
+        this.directory = Paths.get(directory).toAbsolutePath();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "csv-reload");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // The callback runs on a background thread
+    public void register(String fileName, Runnable onChange) {
+        callbacks.put(fileName, onChange);
+    }
+
+    public void start() throws IOException {
+        watchService = FileSystems.getDefault().newWatchService();
+        directory.register(watchService,
+            StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_MODIFY);
+
+        watchThread = new Thread(this::watchLoop, "csv-watcher");
+        watchThread.setDaemon(true);
+        watchThread.start();
+
+        System.out.println("Watching " + directory + " for changes to " + callbacks.keySet());
+    }
+
+    public void stop() {
+        try {
+            if (watchService != null) {
+                watchService.close();
+            }
+        } catch (IOException ex) {
+            System.err.println("Error closing file watcher: " + ex.getMessage());
+        }
+        scheduler.shutdownNow();
+    }
+
+    private void watchLoop() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException ex) {
+                return;
+            }
+
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    // Events were lost - check every file we care about
+                    for (String fileName : callbacks.keySet()) {
+                        schedule(fileName);
+                    }
+                    continue;
+                }
+
+                Path changed = (Path) event.context();
+                String fileName = changed.getFileName().toString();
+                if (callbacks.containsKey(fileName)) {
+                    schedule(fileName);
+                }
+            }
+
+            if (!key.reset()) {
+                System.err.println("Data directory is no longer accessible: " + directory);
+                return;
+            }
+        }
+    }
+
+    // Restarts the quiet-period timer for one file
+    private void schedule(String fileName) {
+        ScheduledFuture<?> previous = pending.get(fileName);
+        if (previous != null) {
+            previous.cancel(false);
+        }
+        pending.put(fileName, scheduler.schedule(() -> {
+            pending.remove(fileName);
+            try {
+                callbacks.get(fileName).run();
+            } catch (Exception ex) {
+                System.err.println("Failed to reload " + fileName + ": " + ex.getMessage());
+                ex.printStackTrace();
+            }
+        }, DEBOUNCE_MS, TimeUnit.MILLISECONDS));
+    }
+}
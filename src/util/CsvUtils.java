@@ -5,6 +5,11 @@ import java.io.BufferedWriter;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -29,17 +34,7 @@ public class CsvUtils {
                     continue;
                 }
                 
-                // Split on commas but ignore commas inside quotes
-                String[] values = line.split(",(?=([^\"]*\"[^\"]*\")*[^\"]*$)");
-                
-                // Remove quotes and trim each value
-                for (int i = 0; i < values.length; i++) {
-                    if (values[i] != null) {
-                        values[i] = values[i].replaceAll("^\"|\"$", "").trim();
-                    }
-                }
-                
-                rows.add(values);
+                rows.add(parseLine(line));
             }
         } catch (IOException ex) {
             System.err.println("Error reading CSV file: " + filePath);
@@ -50,17 +45,132 @@ public class CsvUtils {
         return rows;
     }
     
-    // Adds a new row to the end of a CSV file
+    // Splits one CSV line into values
+    public static String[] parseLine(String line) {
+        // Split on commas but ignore commas inside quotes. A comma counts as a separator when
+        // an even number of quotes follow it on the line. This used to be done with a
+        // look-ahead regex, which re-scanned the rest of the line at every comma and was most
+        // of the time spent loading a big file - this gives the same result in one pass.
+        int quotesAfter = 0;
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) == '"') quotesAfter++;
+        }
+        
+        List<String> values = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                quotesAfter--;
+            } else if (c == ',' && quotesAfter % 2 == 0) {
+                values.add(line.substring(start, i));
+                start = i + 1;
+            }
+        }
+        values.add(line.substring(start));
+        
+        // Like String.split, drop empty values at the end (but an empty line is one empty value)
+        int count = values.size();
+        while (count > 0 && values.get(count - 1).isEmpty() && !line.isEmpty()) {
+            count--;
+        }
+        
+        // Remove the quotes round each value and trim it
+        String[] result = new String[count];
+        for (int i = 0; i < count; i++) {
+            String value = values.get(i);
+            int from = value.startsWith("\"") ? 1 : 0;
+            int to = value.length() > from && value.endsWith("\"") ? value.length() - 1 : value.length();
+            result[i] = value.substring(from, to).trim();
+        }
+        return result;
+    }
+    
+    // Adds a new row to the end of a CSV file (holding the file's lock so another
+    // process can't write at the same time)
     public static void appendLine(String filePath, String[] data) throws IOException {
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(filePath, true))) {
-            String line = String.join(",", data);
-            bw.write(line);
+        DataFileLock.withLock(filePath, () -> {
+            try (BufferedWriter bw = new BufferedWriter(new FileWriter(filePath, true))) {
+                String line = String.join(",", data);
+                bw.write(line);
+                bw.newLine();
+            } catch (IOException ex) {
+                System.err.println("Error appending to CSV file: " + filePath);
+                System.err.println("Error message: " + ex.getMessage());
+                throw ex;
+            }
+            return null;
+        });
+    }
+    
+    // Adds several rows in one go - one open of the file instead of one per row
+    public static void appendLines(String filePath, List<String[]> rows) throws IOException {
+        DataFileLock.withLock(filePath, () -> {
+            try (BufferedWriter bw = new BufferedWriter(new FileWriter(filePath, true))) {
+                for (String[] data : rows) {
+                    bw.write(String.join(",", data));
+                    bw.newLine();
+                }
+            } catch (IOException ex) {
+                System.err.println("Error appending to CSV file: " + filePath);
+                System.err.println("Error message: " + ex.getMessage());
+                throw ex;
+            }
+            return null;
+        });
+    }
+    
+    // Rewrites a whole CSV file (header + rows). The rows are written to a temp file first
+    // and then moved over the old file, so nobody ever reads a half-written file.
+    // The file's lock is held for the whole write.
+    public static void writeCsv(String filePath, String header, List<String[]> rows) throws IOException {
+        DataFileLock.withLock(filePath, () -> {
+            replaceFile(filePath, header, rows);
+            return null;
+        });
+    }
+    
+    private static void replaceFile(String filePath, String header, List<String[]> rows) throws IOException {
+        Path target = Paths.get(filePath);
+        Path dir = target.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(dir, target.getFileName().toString(), ".tmp");
+        
+        try (BufferedWriter bw = Files.newBufferedWriter(temp)) {
+            bw.write(header);
             bw.newLine();
+            for (String[] row : rows) {
+                bw.write(String.join(",", escapeRow(row)));
+                bw.newLine();
+            }
         } catch (IOException ex) {
-            System.err.println("Error appending to CSV file: " + filePath);
+            Files.deleteIfExists(temp);
+            System.err.println("Error writing CSV file: " + filePath);
             System.err.println("Error message: " + ex.getMessage());
             throw ex;
         }
+        
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+    
+    // Quotes a value if it contains a comma or a quote
+    public static String escape(String value) {
+        if (value == null) return "";
+        if (value.contains(",") || value.contains("\"")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+    
+    public static String[] escapeRow(String[] values) {
+        String[] escaped = new String[values.length];
+        for (int i = 0; i < values.length; i++) {
+            escaped[i] = escape(values[i]);
+        }
+        return escaped;
     }
 }
 
@@ -0,0 +1,102 @@
+package util;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Exclusive lock on a data file that works across processes, so several workstations
+// sharing one data folder can't interleave their writes.
+//
+// The OS lock is taken on a "<file>.lock" file next to the data file rather than the file
+// itself, because writeCsv replaces the data file with a new one. Inside this process a
+// ReentrantLock is used as well - FileChannel locks are held per process, not per thread,
+// and a repository can take the lock and then call CsvUtils which takes it again.
+public class DataFileLock {
+
+    // Work done while holding the lock
+    public interface LockedAction<T> {
+        T run() throws IOException;
+    }
+
+    private static final Map<Path, DataFileLock> locks = new ConcurrentHashMap<>();
+
+    private final Path lockFile;
+    private final ReentrantLock threadLock = new ReentrantLock();
+    private FileChannel channel;
+    private FileLock fileLock;
+
+    private DataFileLock(Path lockFile) {
+        this.lockFile = lockFile;
+    }
+
+    public static DataFileLock forFile(String filePath) {
+        Path path = Paths.get(filePath).toAbsolutePath().normalize();
+        Path lockFile = path.resolveSibling(path.getFileName() + ".lock");
+        return locks.computeIfAbsent(lockFile, DataFileLock::new);
+    }
+
+    // Runs the action while holding the lock for the given data file
+    public static <T> T withLock(String filePath, LockedAction<T> action) throws IOException {
+        DataFileLock lock = forFile(filePath);
+        lock.acquire();
+        try {
+            return action.run();
+        } finally {
+            lock.release();
+        }
+    }
+
+    public void acquire() throws IOException {
+        threadLock.lock();
+        if (threadLock.getHoldCount() > 1) {
+            return; // this thread already holds the file lock
+        }
+        try {
+            channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            // Blocks until the other process has finished its write
+            fileLock = channel.lock();
+        } catch (IOException | RuntimeException ex) {
+            closeChannel();
+            threadLock.unlock();
+            throw ex;
+        }
+    }
+
+    public void release() {
+        if (!threadLock.isHeldByCurrentThread()) {
+            return;
+        }
+        try {
+            if (threadLock.getHoldCount() == 1) {
+                try {
+                    if (fileLock != null) {
+                        fileLock.release();
+                    }
+                } catch (IOException ex) {
+                    System.err.println("Error releasing lock " + lockFile + ": " + ex.getMessage());
+                }
+                closeChannel();
+            }
+        } finally {
+            threadLock.unlock();
+        }
+    }
+
+    private void closeChannel() {
+        fileLock = null;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                System.err.println("Error closing lock file " + lockFile + ": " + ex.getMessage());
+            }
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package util;
+
+import javax.swing.SwingUtilities;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+// Watches for the Swing event thread (EDT) being blocked - the "UI froze" problem.
+//
+// A background thread posts a tiny heartbeat task to the EDT every CHECK_INTERVAL_MS. If a
+// heartbeat hasn't run after thresholdMs, something is hogging the EDT, so we grab its
+// stack trace right then (that shows what it's stuck in) and note which ActionTimer action
+// was running. Once the heartbeat finally runs we know how long the stall lasted.
+// The last MAX_STALLS stalls are kept for the Developer screen.
+public class EdtStallMonitor {
+
+    private static final int CHECK_INTERVAL_MS = 50;
+    private static final int MAX_STALLS = 100;
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    // One time the EDT was blocked
+    public static class Stall {
+        private final LocalDateTime startedAt;
+        private final String action;
+        private final String stackTrace;
+        private volatile long durationMs;
+        private volatile boolean finished;
+
+        Stall(LocalDateTime startedAt, String action, String stackTrace) {
+            this.startedAt = startedAt;
+            this.action = action;
+            this.stackTrace = stackTrace;
+        }
+
+        public String getStartedAt() { return startedAt.format(TIME_FORMAT); }
+        public String getAction() { return action != null ? action : "(no timed action)"; }
+        public String getStackTrace() { return stackTrace; }
+        public long getDurationMs() { return durationMs; }
+        public boolean isFinished() { return finished; }
+    }
+
+    private static EdtStallMonitor instance;
+
+    private final long thresholdMs;
+    private final Deque<Stall> stalls = new ArrayDeque<>();
+    private volatile Thread edtThread;
+    private volatile long heartbeatPostedAt;
+    private volatile boolean heartbeatPending;
+    private volatile boolean running;
+    private long stallCount;
+
+    private EdtStallMonitor(long thresholdMs) {
+        this.thresholdMs = thresholdMs;
+    }
+
+    // Starts the monitor once for the whole app (later calls return the same one)
+    public static synchronized EdtStallMonitor start(long thresholdMs) {
+        if (instance == null) {
+            instance = new EdtStallMonitor(thresholdMs);
+            instance.running = true;
+            Thread thread = new Thread(instance::watch, "edt-stall-monitor");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        return instance;
+    }
+
+    // null if start() was never called
+    public static synchronized EdtStallMonitor getInstance() {
+        return instance;
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    public long getThresholdMs() {
+        return thresholdMs;
+    }
+
+    public synchronized long getStallCount() {
+        return stallCount;
+    }
+
+    // Newest first
+    public synchronized List<Stall> getStalls() {
+        return new ArrayList<>(stalls);
+    }
+
+    public synchronized void clear() {
+        stalls.clear();
+        stallCount = 0;
+    }
+
+    private void watch() {
+        Stall current = null;
+        while (running) {
+            long now = System.currentTimeMillis();
+            if (!heartbeatPending) {
+                // The EDT got to the heartbeat, so any stall is over
+                current = null;
+                heartbeatPending = true;
+                heartbeatPostedAt = now;
+                SwingUtilities.invokeLater(this::heartbeat);
+            } else {
+                long waited = now - heartbeatPostedAt;
+                if (current == null && waited >= thresholdMs) {
+                    current = recordStall();
+                }
+                if (current != null && !current.finished) {
+                    current.durationMs = waited;
+                }
+            }
+
+            try {
+                Thread.sleep(CHECK_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void heartbeat() {
+        edtThread = Thread.currentThread();
+        Stall last;
+        synchronized (this) {
+            last = stalls.peekFirst();
+        }
+        if (last != null && !last.finished) {
+            // Record the exact length rather than the last 50ms check
+            last.durationMs = System.currentTimeMillis() - heartbeatPostedAt;
+            last.finished = true;
+        }
+        heartbeatPending = false;
+    }
+
+    private Stall recordStall() {
+        Thread edt = edtThread;
+        StringBuilder trace = new StringBuilder();
+        if (edt != null) {
+            for (StackTraceElement element : edt.getStackTrace()) {
+                trace.append("    at ").append(element).append('\n');
+            }
+        }
+
+        Stall stall = new Stall(LocalDateTime.now(), ActionTimer.getCurrentAction(), trace.toString());
+        synchronized (this) {
+            stalls.addFirst(stall);
+            if (stalls.size() > MAX_STALLS) {
+                stalls.removeLast();
+            }
+            stallCount++;
+        }
+        System.err.println("EDT blocked for over " + thresholdMs + "ms during " + stall.getAction());
+        return stall;
+    }
+}
@@ -0,0 +1,269 @@
+package util;
+
+// Set of [start, end) intervals that can answer "does anything overlap this range?" in
+// O(log n). Used for booked appointment times, where start/end are minutes.
+//
+// It is a treap (a binary search tree on start, kept balanced by random priorities) where
+// each node also remembers the largest end in its subtree. A whole subtree can be skipped
+// when that largest end is before the range we're looking for.
+//
+// Nodes live in parallel int arrays rather than one object each - a busy clinic can have
+// millions of appointments, and this keeps them down to a few ints apiece.
+public class IntervalTree<T> {
+
+    private static final int NIL = -1;
+
+    // Called for each overlapping interval - return false to stop looking
+    public interface Visitor<T> {
+        boolean visit(int start, int end, T value);
+    }
+
+    private int[] starts;
+    private int[] ends;
+    private int[] maxEnds;
+    private int[] lefts;
+    private int[] rights;
+    private int[] priorities;
+    private Object[] values;
+
+    private int root = NIL;
+    private int size;
+    private int used;
+    // Removed nodes are chained through 'lefts' and reused before the arrays grow
+    private int freeList = NIL;
+    private int seed = 0x2545F491;
+
+    public IntervalTree() {
+        this(16);
+    }
+
+    public IntervalTree(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 1);
+        starts = new int[capacity];
+        ends = new int[capacity];
+        maxEnds = new int[capacity];
+        lefts = new int[capacity];
+        rights = new int[capacity];
+        priorities = new int[capacity];
+        values = new Object[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        java.util.Arrays.fill(values, 0, used, null);
+        root = NIL;
+        size = 0;
+        used = 0;
+        freeList = NIL;
+    }
+
+    public void add(int start, int end, T value) {
+        int node = newNode(start, end, value);
+        root = insert(root, node);
+        size++;
+    }
+
+    // Removes one interval with this start, end and value (value compared with equals)
+    public boolean remove(int start, int end, T value) {
+        int before = size;
+        root = delete(root, start, end, value);
+        return size < before;
+    }
+
+    // True if any interval overlaps [start, end)
+    public boolean overlaps(int start, int end) {
+        int node = root;
+        while (node != NIL) {
+            if (starts[node] < end && ends[node] > start) {
+                return true;
+            }
+            // If the left side reaches past our start it either overlaps us, or every
+            // interval on the right starts too late as well - so left is the only place to look
+            int left = lefts[node];
+            if (left != NIL && maxEnds[left] > start) {
+                node = left;
+            } else {
+                node = rights[node];
+            }
+        }
+        return false;
+    }
+
+    // Visits every interval overlapping [start, end), in start order
+    public void forEachOverlap(int start, int end, Visitor<T> visitor) {
+        visit(root, start, end, visitor);
+    }
+
+    // Number of intervals overlapping [start, end), stopping early once 'limit' is reached
+    public int countOverlaps(int start, int end, int limit) {
+        int[] count = new int[1];
+        forEachOverlap(start, end, (s, e, v) -> ++count[0] < limit);
+        return count[0];
+    }
+
+    // Latest end of anything overlapping [start, end), or 'start' if nothing does. Handy for
+    // jumping straight past a run of bookings when looking for a gap.
+    public int latestOverlapEnd(int start, int end) {
+        int[] latest = {start};
+        forEachOverlap(start, end, (s, e, v) -> {
+            latest[0] = Math.max(latest[0], e);
+            return true;
+        });
+        return latest[0];
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean visit(int node, int start, int end, Visitor<T> visitor) {
+        if (node == NIL || maxEnds[node] <= start) {
+            return true;
+        }
+        if (!visit(lefts[node], start, end, visitor)) {
+            return false;
+        }
+        if (starts[node] >= end) {
+            // Everything to the right starts even later
+            return true;
+        }
+        if (ends[node] > start && !visitor.visit(starts[node], ends[node], (T) values[node])) {
+            return false;
+        }
+        return visit(rights[node], start, end, visitor);
+    }
+
+    private int insert(int node, int added) {
+        if (node == NIL) {
+            return added;
+        }
+        if (starts[added] < starts[node]) {
+            lefts[node] = insert(lefts[node], added);
+            if (priorities[lefts[node]] > priorities[node]) {
+                node = rotateRight(node);
+            }
+        } else {
+            rights[node] = insert(rights[node], added);
+            if (priorities[rights[node]] > priorities[node]) {
+                node = rotateLeft(node);
+            }
+        }
+        update(node);
+        return node;
+    }
+
+    private int delete(int node, int start, int end, Object value) {
+        if (node == NIL) {
+            return NIL;
+        }
+        if (starts[node] == start && ends[node] == end && java.util.Objects.equals(values[node], value)) {
+            int replacement = join(lefts[node], rights[node]);
+            freeNode(node);
+            size--;
+            return replacement;
+        }
+        // Equal starts can sit on either side after rotations, so look both ways for them
+        if (start < starts[node]) {
+            lefts[node] = delete(lefts[node], start, end, value);
+        } else if (start > starts[node]) {
+            rights[node] = delete(rights[node], start, end, value);
+        } else {
+            int before = size;
+            lefts[node] = delete(lefts[node], start, end, value);
+            if (size == before) {
+                rights[node] = delete(rights[node], start, end, value);
+            }
+        }
+        update(node);
+        return node;
+    }
+
+    // Merges two subtrees where everything in 'left' starts no later than 'right'
+    private int join(int left, int right) {
+        if (left == NIL) return right;
+        if (right == NIL) return left;
+        if (priorities[left] > priorities[right]) {
+            rights[left] = join(rights[left], right);
+            update(left);
+            return left;
+        }
+        lefts[right] = join(left, lefts[right]);
+        update(right);
+        return right;
+    }
+
+    private int rotateRight(int node) {
+        int left = lefts[node];
+        lefts[node] = rights[left];
+        rights[left] = node;
+        update(node);
+        update(left);
+        return left;
+    }
+
+    private int rotateLeft(int node) {
+        int right = rights[node];
+        rights[node] = lefts[right];
+        lefts[right] = node;
+        update(node);
+        update(right);
+        return right;
+    }
+
+    private void update(int node) {
+        int max = ends[node];
+        if (lefts[node] != NIL) max = Math.max(max, maxEnds[lefts[node]]);
+        if (rights[node] != NIL) max = Math.max(max, maxEnds[rights[node]]);
+        maxEnds[node] = max;
+    }
+
+    private int newNode(int start, int end, T value) {
+        int node;
+        if (freeList != NIL) {
+            node = freeList;
+            freeList = lefts[node];
+        } else {
+            if (used == starts.length) {
+                grow();
+            }
+            node = used++;
+        }
+        starts[node] = start;
+        ends[node] = end;
+        maxEnds[node] = end;
+        lefts[node] = NIL;
+        rights[node] = NIL;
+        priorities[node] = nextPriority();
+        values[node] = value;
+        return node;
+    }
+
+    private void freeNode(int node) {
+        values[node] = null;
+        lefts[node] = freeList;
+        freeList = node;
+    }
+
+    private void grow() {
+        int capacity = starts.length + (starts.length >> 1) + 1;
+        starts = java.util.Arrays.copyOf(starts, capacity);
+        ends = java.util.Arrays.copyOf(ends, capacity);
+        maxEnds = java.util.Arrays.copyOf(maxEnds, capacity);
+        lefts = java.util.Arrays.copyOf(lefts, capacity);
+        rights = java.util.Arrays.copyOf(rights, capacity);
+        priorities = java.util.Arrays.copyOf(priorities, capacity);
+        values = java.util.Arrays.copyOf(values, capacity);
+    }
+
+    // xorshift - plenty random enough for balancing and cheaper than java.util.Random
+    private int nextPriority() {
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        return seed;
+    }
+}
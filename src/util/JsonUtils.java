@@ -0,0 +1,57 @@
+package util;
+
+import java.util.List;
+import java.util.Map;
+
+// Small helpers for writing JSON by hand (we only ever need to output flat objects and lists)
+public class JsonUtils {
+
+    // Puts quotes round a string and escapes anything JSON doesn't allow inside one
+    public static String quote(String value) {
+        if (value == null) return "null";
+
+        StringBuilder sb = new StringBuilder(value.length() + 2);
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':  sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+        return sb.toString();
+    }
+
+    // Builds an object from field name -> value. Values can be strings, numbers, booleans or null.
+    public static String object(Map<String, ?> fields) {
+        StringBuilder sb = new StringBuilder("{");
+        boolean first = true;
+        for (Map.Entry<String, ?> field : fields.entrySet()) {
+            if (!first) sb.append(',');
+            first = false;
+            sb.append(quote(field.getKey())).append(':').append(value(field.getValue()));
+        }
+        return sb.append('}').toString();
+    }
+
+    // Joins values that are already JSON into an array
+    public static String array(List<String> jsonItems) {
+        return "[" + String.join(",", jsonItems) + "]";
+    }
+
+    private static String value(Object value) {
+        if (value == null) return "null";
+        if (value instanceof Number || value instanceof Boolean) return value.toString();
+        return quote(value.toString());
+    }
+}
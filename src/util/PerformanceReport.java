@@ -0,0 +1,53 @@
+package util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Plain-text dump of the ActionTimer histograms and EdtStallMonitor stalls, so a developer
+// can save what happened on a user's machine and look at it later.
+public class PerformanceReport {
+
+    private PerformanceReport() {
+    }
+
+    public static String format() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Performance report - ").append(LocalDateTime.now().withNano(0)).append("\n\n");
+
+        sb.append("== Action timings ==\n");
+        List<ActionTimer.Histogram> histograms = ActionTimer.getHistograms();
+        if (histograms.isEmpty()) {
+            sb.append("(no actions timed yet)\n");
+        }
+        for (ActionTimer.Histogram h : histograms) {
+            sb.append(String.format("%-40s count=%d mean=%.1fms p50=%sms p95=%sms max=%.1fms%n",
+                h.getAction(), h.getCount(), h.getMeanMs(), h.getPercentileMs(50),
+                h.getPercentileMs(95), h.getMaxMs()));
+            sb.append("    ").append(h.describeBuckets()).append('\n');
+        }
+
+        sb.append("\n== EDT stalls ==\n");
+        EdtStallMonitor monitor = EdtStallMonitor.getInstance();
+        if (monitor == null) {
+            sb.append("(stall monitor not running)\n");
+            return sb.toString();
+        }
+        sb.append("Threshold: ").append(monitor.getThresholdMs()).append("ms, total stalls: ")
+          .append(monitor.getStallCount()).append('\n');
+        for (EdtStallMonitor.Stall stall : monitor.getStalls()) {
+            sb.append('\n').append(stall.getStartedAt()).append("  ").append(stall.getDurationMs()).append("ms")
+              .append(stall.isFinished() ? "" : " (still blocked)")
+              .append("  during ").append(stall.getAction()).append('\n');
+            sb.append(stall.getStackTrace());
+        }
+        return sb.toString();
+    }
+
+    public static void writeTo(Path file) throws IOException {
+        Files.write(file, format().getBytes(StandardCharsets.UTF_8));
+    }
+}
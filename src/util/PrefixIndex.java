@@ -0,0 +1,143 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+// Type-ahead lookup for the picker fields.
+//
+// Each entry is an ID plus a label like "P001 - John Smith". The ID and every word of the
+// label are stored lowercased in a sorted map (word -> IDs), so everything starting with
+// what the user typed is one subMap() away, and the search stops as soon as it has
+// 'limit' results. That means a search costs about the same whether there are 100 or
+// 1,000,000 entries.
+//
+// With more than one word typed (e.g. "john sm"), the first word finds the candidates
+// and the rest must each be the start of one of that entry's words.
+public class PrefixIndex {
+
+    private final NavigableMap<String, Set<String>> idsByWord = new TreeMap<>();
+    private final NavigableMap<String, String> labelsById = new TreeMap<>();
+    private final Map<String, List<String>> wordsById = new HashMap<>();
+
+    // Adds an entry, or replaces it if the ID is already there
+    public synchronized void put(String id, String label) {
+        if (id == null) {
+            return;
+        }
+        remove(id);
+
+        List<String> words = words(id + " " + label);
+        labelsById.put(id, label);
+        wordsById.put(id, words);
+        for (String word : words) {
+            idsByWord.computeIfAbsent(word, w -> new TreeSet<>()).add(id);
+        }
+    }
+
+    public synchronized void remove(String id) {
+        List<String> words = wordsById.remove(id);
+        if (words == null) {
+            return;
+        }
+        labelsById.remove(id);
+        for (String word : words) {
+            Set<String> ids = idsByWord.get(word);
+            if (ids != null) {
+                ids.remove(id);
+                if (ids.isEmpty()) {
+                    idsByWord.remove(word);
+                }
+            }
+        }
+    }
+
+    public synchronized String getLabel(String id) {
+        return id == null ? null : labelsById.get(id);
+    }
+
+    public synchronized int size() {
+        return labelsById.size();
+    }
+
+    // Up to 'limit' labels matching what was typed. Nothing typed gives the first few by ID.
+    public synchronized List<String> search(String text, int limit) {
+        List<String> typed = words(text);
+        if (typed.isEmpty()) {
+            List<String> first = new ArrayList<>();
+            for (String label : labelsById.values()) {
+                if (first.size() == limit) {
+                    break;
+                }
+                first.add(label);
+            }
+            return first;
+        }
+
+        // LinkedHashSet because an entry can be reached through more than one word
+        Set<String> found = new LinkedHashSet<>();
+        String firstWord = typed.get(0);
+        for (Set<String> ids : startingWith(firstWord).values()) {
+            for (String id : ids) {
+                if (found.size() == limit) {
+                    return labelsFor(found);
+                }
+                if (!found.contains(id) && matchesRest(id, typed)) {
+                    found.add(id);
+                }
+            }
+        }
+        return labelsFor(found);
+    }
+
+    private NavigableMap<String, Set<String>> startingWith(String prefix) {
+        // Every word >= prefix and < the next possible prefix
+        return idsByWord.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+    }
+
+    private boolean matchesRest(String id, List<String> typed) {
+        List<String> words = wordsById.get(id);
+        for (int i = 1; i < typed.size(); i++) {
+            boolean any = false;
+            for (String word : words) {
+                if (word.startsWith(typed.get(i))) {
+                    any = true;
+                    break;
+                }
+            }
+            if (!any) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private List<String> labelsFor(Set<String> ids) {
+        List<String> labels = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            labels.add(labelsById.get(id));
+        }
+        return labels;
+    }
+
+    // Lowercased words, split on anything that isn't a letter or digit ("Dr. O'Neil" -> dr, o, neil)
+    private static List<String> words(String text) {
+        if (text == null || text.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> words = new ArrayList<>();
+        for (String word : text.toLowerCase().split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty() && !words.contains(word)) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+}
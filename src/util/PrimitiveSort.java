@@ -0,0 +1,180 @@
+package util;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+// Sorting helpers for big tables that avoid comparing Strings over and over.
+//
+// Each sort column is first turned into an int "rank" per row (0 = smallest value, equal
+// values share a rank). Dates and times are packed into longs like 202405141030 so they
+// compare as numbers; text is ranked once per distinct value using Collator keys, so names
+// sort the way people expect ("de Souza" next to "Desai") without collating every row.
+//
+// With ranks in hand, a multi-column sort is one counting sort pass per column, starting
+// from the least important column. Counting sort is stable and linear, so the earlier
+// passes' order is kept for ties. Ranks only need working out again when the rows change.
+public class PrimitiveSort {
+
+    // Above this many rows the long sort and rank lookups are spread across cores
+    private static final int PARALLEL_THRESHOLD = 50_000;
+
+    // Blank or unreadable dates/times sort after everything else
+    public static final long MISSING = Long.MAX_VALUE;
+
+    private PrimitiveSort() {
+    }
+
+    // "2024-05-14" -> 20240514
+    public static long packDate(String date) {
+        return packParts(date, '-', 3, 100);
+    }
+
+    // "10:30" -> 1030 (seconds are ignored, "9:05" works too)
+    public static long packTime(String time) {
+        return packParts(time, ':', 2, 100);
+    }
+
+    // Date and time as one number, e.g. 202405141030
+    public static long packDateTime(String date, String time) {
+        long packedDate = packDate(date);
+        long packedTime = packTime(time);
+        if (packedDate == MISSING) {
+            return MISSING;
+        }
+        return packedDate * 10_000 + (packedTime == MISSING ? 0 : packedTime);
+    }
+
+    // Reads the first 'count' numbers separated by 'separator' and packs them, giving each
+    // number after the first two decimal places ('scale'). Done by hand rather than with
+    // split() because it runs for every row of a big table.
+    private static long packParts(String text, char separator, int count, int scale) {
+        if (text == null) {
+            return MISSING;
+        }
+        long packed = 0;
+        long part = 0;
+        int parts = 0;
+        boolean digits = false;
+        for (int i = 0; i <= text.length() && parts < count; i++) {
+            char c = i < text.length() ? text.charAt(i) : separator;
+            if (c >= '0' && c <= '9') {
+                part = part * 10 + (c - '0');
+                digits = true;
+            } else if (c == separator && digits) {
+                packed = parts == 0 ? part : packed * scale + part;
+                parts++;
+                part = 0;
+                digits = false;
+            } else if (c != ' ') {
+                return MISSING;
+            }
+        }
+        return parts == count ? packed : MISSING;
+    }
+
+    // Dense ranks of numeric keys
+    public static int[] ranks(long[] keys) {
+        long[] distinct = keys.clone();
+        if (distinct.length > PARALLEL_THRESHOLD) {
+            Arrays.parallelSort(distinct);
+        } else {
+            Arrays.sort(distinct);
+        }
+        int distinctCount = dedupe(distinct);
+        long[] sorted = Arrays.copyOf(distinct, distinctCount);
+
+        int[] ranks = new int[keys.length];
+        IntStream rows = IntStream.range(0, keys.length);
+        if (keys.length > PARALLEL_THRESHOLD) {
+            rows = rows.parallel();
+        }
+        rows.forEach(i -> ranks[i] = Arrays.binarySearch(sorted, keys[i]));
+        return ranks;
+    }
+
+    // Dense ranks of text, ordered by the collator (or plain String order if it is null)
+    public static int[] ranks(String[] values, Collator collator) {
+        // Only the distinct values need sorting - usually far fewer than rows
+        Map<String, Integer> rankOf = new HashMap<>();
+        for (String value : values) {
+            rankOf.putIfAbsent(value == null ? "" : value, 0);
+        }
+        String[] distinct = rankOf.keySet().toArray(new String[0]);
+        if (collator != null) {
+            CollationKey[] collationKeys = new CollationKey[distinct.length];
+            for (int i = 0; i < distinct.length; i++) {
+                collationKeys[i] = collator.getCollationKey(distinct[i]);
+            }
+            Arrays.sort(collationKeys);
+            for (int i = 0; i < collationKeys.length; i++) {
+                distinct[i] = collationKeys[i].getSourceString();
+            }
+        } else {
+            Arrays.sort(distinct);
+        }
+        for (int i = 0; i < distinct.length; i++) {
+            rankOf.put(distinct[i], i);
+        }
+
+        int[] ranks = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            ranks[i] = rankOf.get(values[i] == null ? "" : values[i]);
+        }
+        return ranks;
+    }
+
+    // Row order for a sort on several columns. rankColumns[0] is the most important;
+    // descending[c] flips that column. Returns row indexes in sorted order.
+    public static int[] order(int rowCount, int[][] rankColumns, boolean[] descending) {
+        int[] order = new int[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+            order[i] = i;
+        }
+        int[] next = new int[rowCount];
+        for (int c = rankColumns.length - 1; c >= 0; c--) {
+            countingSortPass(order, next, rankColumns[c], descending[c]);
+            int[] swap = order;
+            order = next;
+            next = swap;
+        }
+        return order;
+    }
+
+    // Stable counting sort of 'order' by rank, written into 'out'
+    private static void countingSortPass(int[] order, int[] out, int[] ranks, boolean descending) {
+        int maxRank = 0;
+        for (int rank : ranks) {
+            maxRank = Math.max(maxRank, rank);
+        }
+        int[] counts = new int[maxRank + 2];
+        for (int row : order) {
+            int rank = descending ? maxRank - ranks[row] : ranks[row];
+            counts[rank + 1]++;
+        }
+        for (int i = 1; i < counts.length; i++) {
+            counts[i] += counts[i - 1];
+        }
+        for (int row : order) {
+            int rank = descending ? maxRank - ranks[row] : ranks[row];
+            out[counts[rank]++] = row;
+        }
+    }
+
+    // Squashes repeated values in a sorted array to the front, returns how many are left
+    private static int dedupe(long[] sorted) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int count = 1;
+        for (int i = 1; i < sorted.length; i++) {
+            if (sorted[i] != sorted[count - 1]) {
+                sorted[count++] = sorted[i];
+            }
+        }
+        return count;
+    }
+}
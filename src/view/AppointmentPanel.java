@@ -1,13 +1,22 @@
 package view;
 
+import model.Appointment;
+import util.ActionTimer;
 import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
+import javax.swing.table.JTableHeader;
+import javax.swing.table.TableCellRenderer;
 import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
 
 public class AppointmentPanel extends JPanel {
     
     private JTable appointmentsTable;
-    private DefaultTableModel tableModel;
+    private AppointmentTableModel tableModel;
     private JTextField searchField;
     private JComboBox<String> filterComboBox;
     private JButton searchButton;
@@ -15,6 +24,29 @@ public class AppointmentPanel extends JPanel {
     private JButton rescheduleButton;
     private JButton editButton;
     private JButton cancelButton;
+    private JButton autoScheduleButton;
+    // When ticked, a cancelled slot is booked for the next waiting referral without asking
+    private JCheckBox autoFillCheckBox;
+    
+    // Utilization tab
+    private JTabbedPane tabs;
+    private JComboBox<String> utilizationFacilityComboBox;
+    private JButton previousWeekButton;
+    private JButton nextWeekButton;
+    private JLabel weekLabel;
+    private JLabel utilizationSummaryLabel;
+    private UtilizationHeatmap utilizationHeatmap;
+    
+    // Referral worklist tab - one page of open referrals at a time
+    private JComboBox<String> worklistComboBox;
+    private DefaultTableModel worklistTableModel;
+    private JTable worklistTable;
+    private JButton previousPageButton;
+    private JButton nextPageButton;
+    private JLabel pageLabel;
+    private static final String[] WORKLIST_COLUMNS = {
+        "Referral ID", "Patient", "Urgency", "Referred", "Target Date", "Waiting (days)", "Speciality", "Status"
+    };
     
     // Updated columns: ID, Date, Time, Patient Name, Clinician Name, Facility, Reason, Status
     private static final String[] COLUMN_NAMES = {
@@ -27,18 +59,14 @@ public class AppointmentPanel extends JPanel {
     }
     
     private void initializeComponents() {
-        // Create table model with updated columns
-        tableModel = new DefaultTableModel(COLUMN_NAMES, 0) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;
-            }
-        };
+        // Rows are read from the appointments on demand (see AppointmentTableModel)
+        tableModel = new AppointmentTableModel(COLUMN_NAMES);
         
         appointmentsTable = new JTable(tableModel);
         appointmentsTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
         appointmentsTable.setRowHeight(25);
         appointmentsTable.getTableHeader().setReorderingAllowed(false);
+        setupSortableHeader();
         
         // Search components (simple master list search)
         searchField = new JTextField(20);
@@ -50,6 +78,33 @@ public class AppointmentPanel extends JPanel {
         rescheduleButton = new JButton("Reschedule");
         editButton = new JButton("Edit");
         cancelButton = new JButton("Cancel");
+        autoScheduleButton = new JButton("Auto-Schedule Referrals");
+        autoFillCheckBox = new JCheckBox("Auto-fill cancellations");
+        autoFillCheckBox.setToolTipText("Give a cancelled slot straight to the next waiting referral");
+        
+        // Utilization heatmap - one week of one facility, filled in by the controller
+        utilizationFacilityComboBox = new JComboBox<>();
+        previousWeekButton = new JButton("< Previous Week");
+        nextWeekButton = new JButton("Next Week >");
+        weekLabel = new JLabel();
+        utilizationSummaryLabel = new JLabel(" ");
+        utilizationHeatmap = new UtilizationHeatmap();
+        
+        // Referral worklist (read-only), filled in a page at a time by the controller
+        worklistComboBox = new JComboBox<>();
+        worklistTableModel = new DefaultTableModel(WORKLIST_COLUMNS, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false; // Read-only
+            }
+        };
+        worklistTable = new JTable(worklistTableModel);
+        worklistTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        worklistTable.setRowHeight(25);
+        worklistTable.getTableHeader().setReorderingAllowed(false);
+        previousPageButton = new JButton("< Previous");
+        nextPageButton = new JButton("Next >");
+        pageLabel = new JLabel(" ");
         
         // Disable buttons until row is selected
         rescheduleButton.setEnabled(false);
@@ -57,6 +112,36 @@ public class AppointmentPanel extends JPanel {
         cancelButton.setEnabled(false);
     }
     
+    // Click a header to sort by it (again to reverse), shift-click to add it as a tie-breaker.
+    // The header shows an arrow on each sorted column.
+    private void setupSortableHeader() {
+        JTableHeader header = appointmentsTable.getTableHeader();
+        header.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int column = appointmentsTable.convertColumnIndexToModel(header.columnAtPoint(e.getPoint()));
+                if (column < 0) {
+                    return;
+                }
+                String selectedId = getSelectedAppointmentId();
+                ActionTimer.time("AppointmentPanel.sortColumn", () -> tableModel.toggleSort(column, e.isShiftDown()));
+                int row = selectedId != null ? tableModel.findRow(selectedId) : -1;
+                if (row >= 0) {
+                    appointmentsTable.setRowSelectionInterval(row, row);
+                    appointmentsTable.scrollRectToVisible(appointmentsTable.getCellRect(row, 0, true));
+                }
+                header.repaint();
+            }
+        });
+        
+        TableCellRenderer defaultRenderer = header.getDefaultRenderer();
+        header.setDefaultRenderer((table, value, isSelected, hasFocus, row, column) -> {
+            int direction = tableModel.getSortDirection(table.convertColumnIndexToModel(column));
+            String arrow = direction > 0 ? " \u25B2" : direction < 0 ? " \u25BC" : "";
+            return defaultRenderer.getTableCellRendererComponent(table, value + arrow, isSelected, hasFocus, row, column);
+        });
+    }
+    
     private void setupLayout() {
         setLayout(new BorderLayout(15, 15));
         setBorder(BorderFactory.createEmptyBorder(15, 15, 15, 15));
@@ -76,10 +161,14 @@ public class AppointmentPanel extends JPanel {
         
         add(topPanel, BorderLayout.NORTH);
         
-        // Central Table (Center)
+        // Central Table (Center), with the utilization heatmap on a second tab
         JScrollPane tableScrollPane = new JScrollPane(appointmentsTable);
         tableScrollPane.setBorder(BorderFactory.createTitledBorder("Appointments"));
-        add(tableScrollPane, BorderLayout.CENTER);
+        tabs = new JTabbedPane();
+        tabs.addTab("Appointments", tableScrollPane);
+        tabs.addTab("Facility Utilization", createUtilizationPanel());
+        tabs.addTab("Referral Worklist", createWorklistPanel());
+        add(tabs, BorderLayout.CENTER);
         
         // Action Footer (South)
         JPanel actionPanel = createActionPanel();
@@ -107,6 +196,39 @@ public class AppointmentPanel extends JPanel {
         return searchPanel;
     }
     
+    private JPanel createUtilizationPanel() {
+        JPanel utilizationPanel = new JPanel(new BorderLayout(10, 10));
+        utilizationPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+        
+        JPanel controls = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 5));
+        controls.add(new JLabel("Facility:"));
+        controls.add(utilizationFacilityComboBox);
+        controls.add(previousWeekButton);
+        controls.add(weekLabel);
+        controls.add(nextWeekButton);
+        utilizationPanel.add(controls, BorderLayout.NORTH);
+        
+        utilizationPanel.add(utilizationHeatmap, BorderLayout.CENTER);
+        utilizationPanel.add(utilizationSummaryLabel, BorderLayout.SOUTH);
+        return utilizationPanel;
+    }
+    
+    private JPanel createWorklistPanel() {
+        JPanel worklistPanel = new JPanel(new BorderLayout(10, 10));
+        worklistPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+        
+        JPanel controls = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 5));
+        controls.add(new JLabel("Worklist:"));
+        controls.add(worklistComboBox);
+        controls.add(previousPageButton);
+        controls.add(pageLabel);
+        controls.add(nextPageButton);
+        worklistPanel.add(controls, BorderLayout.NORTH);
+        
+        worklistPanel.add(new JScrollPane(worklistTable), BorderLayout.CENTER);
+        return worklistPanel;
+    }
+    
     private JPanel createActionPanel() {
         JPanel actionPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 10, 5));
         
@@ -114,22 +236,59 @@ public class AppointmentPanel extends JPanel {
         actionPanel.add(rescheduleButton);
         actionPanel.add(editButton);
         actionPanel.add(cancelButton);
+        actionPanel.add(autoScheduleButton);
+        actionPanel.add(autoFillCheckBox);
         
         return actionPanel;
     }
     
     public void clearTable() {
-        tableModel.setRowCount(0);
+        tableModel.clear();
     }
     
-    public void addRow(Object[] rowData) {
-        tableModel.addRow(rowData);
+    // Lets a column sort by a number (e.g. a packed date) instead of its text
+    public void setNumericSortKey(int column, ToLongFunction<Appointment> key) {
+        tableModel.setNumericSortKey(column, key);
+    }
+    
+    public void setTextSortKey(int column, Function<Appointment, String> key) {
+        tableModel.setTextSortKey(column, key);
+    }
+    
+    public void setCellResolver(AppointmentTableModel.CellResolver resolver) {
+        tableModel.setCellResolver(resolver);
+    }
+    
+    public void setAppointments(List<Appointment> appointments) {
+        tableModel.setAppointments(appointments);
+    }
+    
+    public void addAppointment(Appointment appointment) {
+        tableModel.addAppointment(appointment);
+    }
+    
+    public void addAppointments(List<Appointment> appointments) {
+        tableModel.addAppointments(appointments);
     }
     
     public void refreshTable() {
         tableModel.fireTableDataChanged();
     }
     
+    // Repaints just the row showing this appointment
+    public void updateAppointment(Appointment appointment) {
+        tableModel.updateAppointment(appointment);
+    }
+    
+    public void removeRow(String appointmentId) {
+        tableModel.removeAppointment(appointmentId);
+    }
+    
+    // Finds the table row showing the given appointment ID, or -1 if it is not shown
+    public int findRow(String appointmentId) {
+        return tableModel.findRow(appointmentId);
+    }
+    
     public int getSelectedRow() {
         return appointmentsTable.getSelectedRow();
     }
@@ -137,7 +296,7 @@ public class AppointmentPanel extends JPanel {
     public String getSelectedAppointmentId() {
         int row = appointmentsTable.getSelectedRow();
         if (row >= 0) {
-            return (String) tableModel.getValueAt(row, 0); // Column 0 is ID
+            return tableModel.getAppointmentAt(row).getId();
         }
         return null;
     }
@@ -182,6 +341,67 @@ public class AppointmentPanel extends JPanel {
         return cancelButton;
     }
     
+    public JButton getAutoScheduleButton() {
+        return autoScheduleButton;
+    }
+    
+    public boolean isAutoFillSelected() {
+        return autoFillCheckBox.isSelected();
+    }
+    
+    public JTabbedPane getTabs() {
+        return tabs;
+    }
+    
+    public boolean isUtilizationShown() {
+        return tabs.getSelectedIndex() == 1;
+    }
+    
+    public JComboBox<String> getUtilizationFacilityComboBox() {
+        return utilizationFacilityComboBox;
+    }
+    
+    public JButton getPreviousWeekButton() {
+        return previousWeekButton;
+    }
+    
+    public JButton getNextWeekButton() {
+        return nextWeekButton;
+    }
+    
+    public boolean isWorklistShown() {
+        return tabs.getSelectedIndex() == 2;
+    }
+    
+    public JComboBox<String> getWorklistComboBox() {
+        return worklistComboBox;
+    }
+    
+    public JButton getPreviousPageButton() {
+        return previousPageButton;
+    }
+    
+    public JButton getNextPageButton() {
+        return nextPageButton;
+    }
+    
+    // One page of the worklist; rows in WORKLIST_COLUMNS order
+    public void setWorklistPage(String pageText, List<Object[]> rows, boolean hasPrevious, boolean hasNext) {
+        worklistTableModel.setRowCount(0);
+        for (Object[] row : rows) {
+            worklistTableModel.addRow(row);
+        }
+        pageLabel.setText(pageText);
+        previousPageButton.setEnabled(hasPrevious);
+        nextPageButton.setEnabled(hasNext);
+    }
+    
+    public void setUtilization(String week, String summary, String[] rowLabels, String[] columnLabels, double[][] values) {
+        weekLabel.setText(week);
+        utilizationSummaryLabel.setText(summary);
+        utilizationHeatmap.setData(rowLabels, columnLabels, values);
+    }
+    
     public JTable getTable() {
         return appointmentsTable;
     }
@@ -0,0 +1,262 @@
+package view;
+
+import model.Appointment;
+import util.PrimitiveSort;
+import javax.swing.table.AbstractTableModel;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+// Table model for the appointments table that works straight off the Appointment objects.
+// Only a reference per row is stored - cell values are worked out when the table asks for
+// them, so only the rows on screen ever get turned into text.
+//
+// Sorting (clicking the column headers) uses PrimitiveSort: each sorted column's rank per
+// row is worked out once and kept until the rows change, so re-sorting or adding a second
+// sort column doesn't look at the cell text again.
+public class AppointmentTableModel extends AbstractTableModel {
+
+    // Works out what to show in one cell (name lookups need the repositories, which
+    // the view doesn't have, so the controller supplies this)
+    public interface CellResolver {
+        Object valueAt(Appointment appointment, int column);
+    }
+
+    private final String[] columnNames;
+    private List<Appointment> rows = new ArrayList<>();
+    private CellResolver resolver = (appointment, column) -> column == 0 ? appointment.getId() : "";
+    
+    // Columns that sort by a number (e.g. packed dates) instead of their text
+    private final Map<Integer, ToLongFunction<Appointment>> numericSortKeys = new HashMap<>();
+    // Columns that sort by different text than they show (e.g. surname first)
+    private final Map<Integer, Function<Appointment, String>> textSortKeys = new HashMap<>();
+    // Ranks per column for the current rows (cleared whenever the rows change)
+    private final Map<Integer, int[]> rankCache = new HashMap<>();
+    // Current sort, most important column first (empty = the order rows were added in)
+    private final List<Integer> sortColumns = new ArrayList<>();
+    private final List<Boolean> sortDescending = new ArrayList<>();
+    private final Collator collator = Collator.getInstance();
+    // Row of each appointment ID. Kept as rows are appended or updated; anything that moves
+    // rows (sorting, removing, replacing the list) just marks it stale for findRow to rebuild.
+    private final Map<String, Integer> rowById = new HashMap<>();
+    private boolean rowIndexStale = true;
+
+    public AppointmentTableModel(String[] columnNames) {
+        this.columnNames = columnNames;
+    }
+
+    public void setCellResolver(CellResolver resolver) {
+        this.resolver = resolver;
+        rankCache.clear();
+        fireTableDataChanged();
+    }
+
+    public void setNumericSortKey(int column, ToLongFunction<Appointment> key) {
+        numericSortKeys.put(column, key);
+        rankCache.remove(column);
+    }
+
+    public void setTextSortKey(int column, Function<Appointment, String> key) {
+        textSortKeys.put(column, key);
+        rankCache.remove(column);
+    }
+
+    // Replaces everything shown with the given appointments (one event for the whole table).
+    // The current sort is kept.
+    public void setAppointments(List<Appointment> appointments) {
+        rows = new ArrayList<>(appointments);
+        rankCache.clear();
+        rowIndexStale = true;
+        if (!sortColumns.isEmpty()) {
+            sortRows();
+        }
+        fireTableDataChanged();
+    }
+
+    public void clear() {
+        rows = new ArrayList<>();
+        rankCache.clear();
+        rowIndexStale = true;
+        fireTableDataChanged();
+    }
+
+    // Rows added one at a time or a page at a time go on the end, so the table is no
+    // longer in sorted order after this
+    public void addAppointment(Appointment appointment) {
+        rows.add(appointment);
+        rowsAppended(rows.size() - 1);
+        int row = rows.size() - 1;
+        fireTableRowsInserted(row, row);
+    }
+
+    // Adds a page of rows with a single event
+    public void addAppointments(List<Appointment> appointments) {
+        if (appointments.isEmpty()) {
+            return;
+        }
+        int first = rows.size();
+        rows.addAll(appointments);
+        rowsAppended(first);
+        fireTableRowsInserted(first, rows.size() - 1);
+    }
+
+    // The object may have been replaced in the repository, so the row is found by ID
+    public void updateAppointment(Appointment appointment) {
+        int row = findRow(appointment.getId());
+        if (row >= 0) {
+            rows.set(row, appointment);
+            rankCache.clear();
+            fireTableRowsUpdated(row, row);
+        }
+    }
+
+    public void removeAppointment(String appointmentId) {
+        int row = findRow(appointmentId);
+        if (row >= 0) {
+            rows.remove(row);
+            rankCache.clear();
+            rowIndexStale = true;
+            fireTableRowsDeleted(row, row);
+        }
+    }
+
+    // Header click: sorts by just this column (clicking it again flips the direction).
+    // With addColumn (shift-click) the column is added as the next tie-breaker instead.
+    public void toggleSort(int column, boolean addColumn) {
+        int index = sortColumns.indexOf(column);
+        if (addColumn && index >= 0) {
+            sortDescending.set(index, !sortDescending.get(index));
+        } else if (addColumn) {
+            sortColumns.add(column);
+            sortDescending.add(false);
+        } else {
+            boolean descending = sortColumns.size() == 1 && index == 0 && !sortDescending.get(0);
+            sortColumns.clear();
+            sortDescending.clear();
+            sortColumns.add(column);
+            sortDescending.add(descending);
+        }
+        sortRows();
+        fireTableDataChanged();
+    }
+
+    // 0 = not sorted by this column, 1 = ascending, -1 = descending (for the header arrows)
+    public int getSortDirection(int column) {
+        int index = sortColumns.indexOf(column);
+        if (index < 0) {
+            return 0;
+        }
+        return sortDescending.get(index) ? -1 : 1;
+    }
+
+    private void rowsAppended(int first) {
+        rankCache.clear();
+        sortColumns.clear();
+        sortDescending.clear();
+        if (!rowIndexStale) {
+            for (int row = first; row < rows.size(); row++) {
+                rowById.putIfAbsent(rows.get(row).getId(), row);
+            }
+        }
+    }
+
+    private void sortRows() {
+        int[][] ranks = new int[sortColumns.size()][];
+        boolean[] descending = new boolean[sortColumns.size()];
+        for (int i = 0; i < sortColumns.size(); i++) {
+            ranks[i] = ranksFor(sortColumns.get(i));
+            descending[i] = sortDescending.get(i);
+        }
+        int[] order = PrimitiveSort.order(rows.size(), ranks, descending);
+
+        List<Appointment> sorted = new ArrayList<>(rows.size());
+        for (int row : order) {
+            sorted.add(rows.get(row));
+        }
+        rows = sorted;
+        rowIndexStale = true;
+
+        // The cached ranks are still right, they just need to follow their rows
+        for (Map.Entry<Integer, int[]> entry : rankCache.entrySet()) {
+            int[] old = entry.getValue();
+            int[] moved = new int[old.length];
+            for (int i = 0; i < order.length; i++) {
+                moved[i] = old[order[i]];
+            }
+            entry.setValue(moved);
+        }
+    }
+
+    private int[] ranksFor(int column) {
+        int[] ranks = rankCache.get(column);
+        if (ranks != null) {
+            return ranks;
+        }
+        ToLongFunction<Appointment> numericKey = numericSortKeys.get(column);
+        if (numericKey != null) {
+            long[] keys = new long[rows.size()];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = numericKey.applyAsLong(rows.get(i));
+            }
+            ranks = PrimitiveSort.ranks(keys);
+        } else {
+            Function<Appointment, String> textKey = textSortKeys.get(column);
+            String[] values = new String[rows.size()];
+            for (int i = 0; i < values.length; i++) {
+                Object value = textKey != null ? textKey.apply(rows.get(i)) : resolver.valueAt(rows.get(i), column);
+                values[i] = value != null ? value.toString() : "";
+            }
+            ranks = PrimitiveSort.ranks(values, collator);
+        }
+        rankCache.put(column, ranks);
+        return ranks;
+    }
+
+    public int findRow(String appointmentId) {
+        if (appointmentId == null) {
+            return -1;
+        }
+        if (rowIndexStale) {
+            rowById.clear();
+            for (int row = 0; row < rows.size(); row++) {
+                rowById.putIfAbsent(rows.get(row).getId(), row);
+            }
+            rowIndexStale = false;
+        }
+        Integer row = rowById.get(appointmentId);
+        return row != null ? row : -1;
+    }
+
+    public Appointment getAppointmentAt(int row) {
+        return rows.get(row);
+    }
+
+    @Override
+    public int getRowCount() {
+        return rows.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columnNames.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return columnNames[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        return resolver.valueAt(rows.get(row), column);
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int column) {
+        return false;
+    }
+}
@@ -0,0 +1,171 @@
+package view;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.event.FocusAdapter;
+import java.awt.event.FocusEvent;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.List;
+
+// A text field that shows a short list of matches underneath as you type.
+//
+// Used instead of a JComboBox holding every patient/clinician/facility - the field only
+// asks its Source for the top few matches, so opening a dialog doesn't depend on how
+// many there are. Items are "ID - Name" labels; getSelectedId() returns the ID part, so
+// typing a bare ID still works like the old free-text fields.
+public class AutocompleteField extends JTextField {
+
+    // Where the matches come from (usually a util.PrefixIndex)
+    public interface Source {
+        List<String> search(String text, int limit);
+    }
+
+    private static final int MAX_MATCHES = 10;
+    private static final int TYPING_DELAY_MS = 150;
+
+    private Source source;
+    private final DefaultListModel<String> matchesModel = new DefaultListModel<>();
+    private final JList<String> matchesList = new JList<>(matchesModel);
+    private final JPopupMenu popup = new JPopupMenu();
+    private final Timer typingTimer;
+    private boolean settingText; // true while we change the text ourselves
+
+    public AutocompleteField(int columns) {
+        super(columns);
+
+        matchesList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        matchesList.setFocusable(false);
+        JScrollPane scrollPane = new JScrollPane(matchesList);
+        scrollPane.setBorder(null);
+        popup.add(scrollPane);
+        popup.setFocusable(false);
+
+        // Wait for a pause in typing before searching
+        typingTimer = new Timer(TYPING_DELAY_MS, e -> showMatches());
+        typingTimer.setRepeats(false);
+
+        getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) { textChanged(); }
+            @Override
+            public void removeUpdate(DocumentEvent e) { textChanged(); }
+            @Override
+            public void changedUpdate(DocumentEvent e) { textChanged(); }
+        });
+
+        addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                handleKey(e);
+            }
+        });
+
+        matchesList.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int index = matchesList.locationToIndex(e.getPoint());
+                if (index >= 0) {
+                    pick(matchesModel.get(index));
+                }
+            }
+        });
+
+        addFocusListener(new FocusAdapter() {
+            @Override
+            public void focusLost(FocusEvent e) {
+                typingTimer.stop();
+                popup.setVisible(false);
+            }
+        });
+    }
+
+    public void setSource(Source source) {
+        this.source = source;
+    }
+
+    // The ID part of the label (or whatever was typed if it isn't a label)
+    public String getSelectedId() {
+        return getText().split(" - ")[0].trim();
+    }
+
+    // Sets the text without popping up the match list
+    public void setSelectedLabel(String label) {
+        settingText = true;
+        try {
+            setText(label);
+        } finally {
+            settingText = false;
+        }
+    }
+
+    private void textChanged() {
+        if (!settingText) {
+            typingTimer.restart();
+        }
+    }
+
+    private void showMatches() {
+        if (source == null || !isShowing()) {
+            return;
+        }
+        List<String> matches = source.search(getText(), MAX_MATCHES);
+        matchesModel.clear();
+        for (String match : matches) {
+            matchesModel.addElement(match);
+        }
+
+        if (matches.isEmpty() || (matches.size() == 1 && matches.get(0).equals(getText()))) {
+            popup.setVisible(false);
+            return;
+        }
+        matchesList.setVisibleRowCount(Math.min(matches.size(), MAX_MATCHES));
+        matchesList.setSelectedIndex(0);
+        popup.setPopupSize(getWidth(), popup.getPreferredSize().height);
+        popup.show(this, 0, getHeight());
+    }
+
+    private void handleKey(KeyEvent e) {
+        if (!popup.isVisible()) {
+            if (e.getKeyCode() == KeyEvent.VK_DOWN) {
+                showMatches();
+                e.consume();
+            }
+            return;
+        }
+        int index = matchesList.getSelectedIndex();
+        switch (e.getKeyCode()) {
+            case KeyEvent.VK_DOWN:
+                matchesList.setSelectedIndex(Math.min(index + 1, matchesModel.size() - 1));
+                matchesList.ensureIndexIsVisible(matchesList.getSelectedIndex());
+                e.consume();
+                break;
+            case KeyEvent.VK_UP:
+                matchesList.setSelectedIndex(Math.max(index - 1, 0));
+                matchesList.ensureIndexIsVisible(matchesList.getSelectedIndex());
+                e.consume();
+                break;
+            case KeyEvent.VK_ENTER:
+                if (index >= 0) {
+                    pick(matchesModel.get(index));
+                    e.consume();
+                }
+                break;
+            case KeyEvent.VK_ESCAPE:
+                popup.setVisible(false);
+                e.consume();
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void pick(String label) {
+        typingTimer.stop();
+        setSelectedLabel(label);
+        popup.setVisible(false);
+    }
+}
@@ -0,0 +1,118 @@
+package view;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.util.List;
+
+// Developer-only screen showing how long each action takes and when the UI froze
+public class DeveloperPanel extends JPanel {
+
+    private JTable timingsTable;
+    private DefaultTableModel timingsTableModel;
+    private DefaultListModel<String> stallsListModel;
+    private JList<String> stallsList;
+    private JTextArea stackTraceArea;
+    private JLabel statusLabel;
+    private JButton refreshButton;
+    private JButton resetButton;
+    private JButton dumpButton;
+
+    private static final String[] TIMING_COLUMN_NAMES = {
+        "Action", "Count", "Mean (ms)", "p50 (ms)", "p95 (ms)", "Max (ms)"
+    };
+
+    public DeveloperPanel() {
+        initializeComponents();
+        setupLayout();
+    }
+
+    private void initializeComponents() {
+        timingsTableModel = new DefaultTableModel(TIMING_COLUMN_NAMES, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) { return false; }
+        };
+        timingsTable = new JTable(timingsTableModel);
+        timingsTable.setRowHeight(25);
+        timingsTable.getTableHeader().setReorderingAllowed(false);
+
+        stallsListModel = new DefaultListModel<>();
+        stallsList = new JList<>(stallsListModel);
+        stallsList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+
+        stackTraceArea = new JTextArea(10, 40);
+        stackTraceArea.setEditable(false);
+        stackTraceArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+
+        statusLabel = new JLabel(" ");
+        refreshButton = new JButton("Refresh");
+        resetButton = new JButton("Reset");
+        dumpButton = new JButton("Save Report...");
+    }
+
+    private void setupLayout() {
+        setLayout(new BorderLayout(15, 15));
+        setBorder(BorderFactory.createEmptyBorder(15, 15, 15, 15));
+
+        JPanel headingPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 5));
+        JLabel headingLabel = new JLabel("Developer - Performance");
+        headingLabel.setFont(new Font(Font.SANS_SERIF, Font.BOLD, 18));
+        headingPanel.add(headingLabel);
+        add(headingPanel, BorderLayout.NORTH);
+
+        // Timings on top, stalls (list + the selected one's stack trace) underneath
+        JPanel mainContentPanel = new JPanel(new GridLayout(2, 1, 15, 15));
+
+        JScrollPane timingsScroll = new JScrollPane(timingsTable);
+        timingsScroll.setBorder(BorderFactory.createTitledBorder("Action Timings"));
+        mainContentPanel.add(timingsScroll);
+
+        JSplitPane stallsSplit = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT,
+            new JScrollPane(stallsList), new JScrollPane(stackTraceArea));
+        stallsSplit.setResizeWeight(0.4);
+        stallsSplit.setBorder(BorderFactory.createTitledBorder("UI Stalls (event thread blocked)"));
+        mainContentPanel.add(stallsSplit);
+
+        add(mainContentPanel, BorderLayout.CENTER);
+
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 10, 5));
+        buttonPanel.add(refreshButton);
+        buttonPanel.add(resetButton);
+        buttonPanel.add(dumpButton);
+
+        JPanel footerPanel = new JPanel(new BorderLayout());
+        footerPanel.add(statusLabel, BorderLayout.WEST);
+        footerPanel.add(buttonPanel, BorderLayout.EAST);
+        add(footerPanel, BorderLayout.SOUTH);
+    }
+
+    public void setTimingRows(List<Object[]> rows) {
+        timingsTableModel.setRowCount(0);
+        for (Object[] row : rows) {
+            timingsTableModel.addRow(row);
+        }
+    }
+
+    // Keeps the selected stall selected if it is still in the list
+    public void setStalls(List<String> stalls) {
+        int selected = stallsList.getSelectedIndex();
+        stallsListModel.clear();
+        for (String stall : stalls) {
+            stallsListModel.addElement(stall);
+        }
+        if (selected >= 0 && selected < stallsListModel.size()) {
+            stallsList.setSelectedIndex(selected);
+        }
+    }
+
+    public void setStackTrace(String text) {
+        stackTraceArea.setText(text);
+        stackTraceArea.setCaretPosition(0);
+    }
+
+    public void setStatusText(String text) { statusLabel.setText(text); }
+    public JList<String> getStallsList() { return stallsList; }
+    public JButton getRefreshButton() { return refreshButton; }
+    public JButton getResetButton() { return resetButton; }
+    public JButton getDumpButton() { return dumpButton; }
+}
@@ -2,6 +2,11 @@ package view;
 
 import javax.swing.*;
 import java.awt.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
 
 // This class creates the main navigation screen after someone logs in
 // It shows different buttons and panels depending on what role the user has
@@ -23,15 +28,30 @@ public class NavigationCard extends JPanel {
     private JButton patientDashButton;
     private JButton appointmentsButton;
     private JButton staffButton;
+    private JButton developerButton;
     private JButton logoutButton;
     
     // These are the names we use to identify each panel in the CardLayout
     // When we want to show a panel, we use one of these names
-    private static final String CARD_MEDICAL = "MEDICAL";
-    private static final String CARD_PATIENT_MGMT = "PATIENT_MGMT";
-    private static final String CARD_PATIENT_DASH = "PATIENT_DASH";
-    private static final String CARD_APPOINTMENTS = "APPOINTMENTS";
-    private static final String CARD_STAFF = "STAFF";
+    public static final String CARD_MEDICAL = "MEDICAL";
+    public static final String CARD_PATIENT_MGMT = "PATIENT_MGMT";
+    public static final String CARD_PATIENT_DASH = "PATIENT_DASH";
+    public static final String CARD_APPOINTMENTS = "APPOINTMENTS";
+    public static final String CARD_STAFF = "STAFF";
+    public static final String CARD_DEVELOPER = "DEVELOPER";
+    
+    // Cards are only built the first time they are shown (or when pre-warmed after login),
+    // so logging in doesn't have to wait for every table to load
+    private final Map<String, Supplier<JPanel>> cardFactories = new HashMap<>();
+    private final Map<String, JPanel> createdCards = new HashMap<>();
+    // The cards this role can open, in sidebar order
+    private final List<String> roleCards = new ArrayList<>();
+    private CardInitializer cardInitializer;
+    
+    // Lets the controller layer hook up a controller when a card's panel is created
+    public interface CardInitializer {
+        void cardCreated(String cardName, JPanel panel);
+    }
     
     // Constructor - this sets up the navigation when someone logs in
     // Takes the user's role so it knows which buttons to show
@@ -74,6 +94,7 @@ public class NavigationCard extends JPanel {
         patientDashButton = new JButton("Patient Dashboard");
         appointmentsButton = new JButton("Appointments");
         staffButton = new JButton("Staff Management");
+        developerButton = new JButton("Performance");
         logoutButton = new JButton("Logout");
         
         // Style buttons
@@ -82,14 +103,16 @@ public class NavigationCard extends JPanel {
         styleButton(patientDashButton);
         styleButton(appointmentsButton);
         styleButton(staffButton);
+        styleButton(developerButton);
         styleButton(logoutButton);
         
         // Add action listeners
-        medicalButton.addActionListener(e -> cardLayout.show(centerPanel, CARD_MEDICAL));
-        patientMgmtButton.addActionListener(e -> cardLayout.show(centerPanel, CARD_PATIENT_MGMT));
-        patientDashButton.addActionListener(e -> cardLayout.show(centerPanel, CARD_PATIENT_DASH));
-        appointmentsButton.addActionListener(e -> cardLayout.show(centerPanel, CARD_APPOINTMENTS));
-        staffButton.addActionListener(e -> cardLayout.show(centerPanel, CARD_STAFF));
+        medicalButton.addActionListener(e -> showCard(CARD_MEDICAL));
+        patientMgmtButton.addActionListener(e -> showCard(CARD_PATIENT_MGMT));
+        patientDashButton.addActionListener(e -> showCard(CARD_PATIENT_DASH));
+        appointmentsButton.addActionListener(e -> showCard(CARD_APPOINTMENTS));
+        staffButton.addActionListener(e -> showCard(CARD_STAFF));
+        developerButton.addActionListener(e -> showCard(CARD_DEVELOPER));
         logoutButton.addActionListener(e -> handleLogout());
     }
     
@@ -109,45 +132,77 @@ public class NavigationCard extends JPanel {
         // Add center panel with CardLayout to Center
         add(centerPanel, BorderLayout.CENTER);
         
-        // Add cards to CardLayout
-        addCardsToLayout();
+        // Register how to build each card (nothing is created yet)
+        registerCards();
     }
     
-    private void addCardsToLayout() {
+    private void registerCards() {
         // MEDICAL: MedicalRecordPanel (Vertical scrollable version)
-        MedicalRecordPanel medicalPanel = new MedicalRecordPanel();
-        JScrollPane medicalScroll = new JScrollPane(medicalPanel);
-        medicalScroll.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
-        medicalScroll.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_AS_NEEDED);
-        centerPanel.add(medicalScroll, CARD_MEDICAL);
-        
+        cardFactories.put(CARD_MEDICAL, MedicalRecordPanel::new);
         // PATIENT_MGMT: PatientManagementPanel (For staff)
-        PatientManagementPanel patientMgmtPanel = new PatientManagementPanel();
-        JScrollPane patientMgmtScroll = new JScrollPane(patientMgmtPanel);
-        patientMgmtScroll.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
-        patientMgmtScroll.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_AS_NEEDED);
-        centerPanel.add(patientMgmtScroll, CARD_PATIENT_MGMT);
-        
+        cardFactories.put(CARD_PATIENT_MGMT, PatientManagementPanel::new);
         // PATIENT_DASH: PatientDashboard (For the patient's own view)
-        PatientDashboardPanel patientDashPanel = new PatientDashboardPanel();
-        JScrollPane patientDashScroll = new JScrollPane(patientDashPanel);
-        patientDashScroll.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
-        patientDashScroll.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_AS_NEEDED);
-        centerPanel.add(patientDashScroll, CARD_PATIENT_DASH);
-        
+        cardFactories.put(CARD_PATIENT_DASH, PatientDashboardPanel::new);
         // APPOINTMENTS: AppointmentPanel
-        AppointmentPanel appointmentsPanel = new AppointmentPanel();
-        JScrollPane appointmentsScroll = new JScrollPane(appointmentsPanel);
-        appointmentsScroll.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
-        appointmentsScroll.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_AS_NEEDED);
-        centerPanel.add(appointmentsScroll, CARD_APPOINTMENTS);
-        
+        cardFactories.put(CARD_APPOINTMENTS, AppointmentPanel::new);
         // STAFF: StaffManagementPanel
-        StaffManagementPanel staffPanel = new StaffManagementPanel();
-        JScrollPane staffScroll = new JScrollPane(staffPanel);
-        staffScroll.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
-        staffScroll.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_AS_NEEDED);
-        centerPanel.add(staffScroll, CARD_STAFF);
+        cardFactories.put(CARD_STAFF, StaffManagementPanel::new);
+        // DEVELOPER: DeveloperPanel (action timings and UI stalls)
+        cardFactories.put(CARD_DEVELOPER, DeveloperPanel::new);
+    }
+    
+    public void setCardInitializer(CardInitializer cardInitializer) {
+        this.cardInitializer = cardInitializer;
+    }
+    
+    // Builds a card the first time it is needed and hands it to the initializer
+    // (which creates its controller). Returns the existing panel after that.
+    private JPanel ensureCard(String cardName) {
+        JPanel panel = createdCards.get(cardName);
+        if (panel != null) {
+            return panel;
+        }
+        Supplier<JPanel> factory = cardFactories.get(cardName);
+        if (factory == null) {
+            return null;
+        }
+        
+        panel = factory.get();
+        JScrollPane scroll = new JScrollPane(panel);
+        scroll.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
+        scroll.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_AS_NEEDED);
+        centerPanel.add(scroll, cardName);
+        createdCards.put(cardName, panel);
+        
+        if (cardInitializer != null) {
+            cardInitializer.cardCreated(cardName, panel);
+        }
+        return panel;
+    }
+    
+    // Shows the first card this role can open
+    public void showFirstCard() {
+        if (!roleCards.isEmpty()) {
+            showCard(roleCards.get(0));
+        }
+    }
+    
+    // Builds the rest of this role's cards in the background once the first screen is up.
+    // One card per EDT turn so clicks and painting can still get in between.
+    public void prewarmCards() {
+        List<String> remaining = new ArrayList<>(roleCards);
+        remaining.removeAll(createdCards.keySet());
+        prewarmNext(remaining);
+    }
+    
+    private void prewarmNext(List<String> remaining) {
+        if (remaining.isEmpty()) {
+            return;
+        }
+        SwingUtilities.invokeLater(() -> {
+            ensureCard(remaining.remove(0));
+            prewarmNext(remaining);
+        });
     }
     
     // This method decides which buttons to show based on the user's role
@@ -164,7 +219,14 @@ public class NavigationCard extends JPanel {
         sidebarPanel.add(Box.createVerticalStrut(20));
         
         // Developers can see everything - all buttons are visible
+        roleCards.clear();
         if ("Developer".equalsIgnoreCase(role)) {
+            roleCards.add(CARD_MEDICAL);
+            roleCards.add(CARD_PATIENT_MGMT);
+            roleCards.add(CARD_PATIENT_DASH);
+            roleCards.add(CARD_APPOINTMENTS);
+            roleCards.add(CARD_STAFF);
+            roleCards.add(CARD_DEVELOPER);
             sidebarPanel.add(medicalButton);
             sidebarPanel.add(Box.createVerticalStrut(10));
             sidebarPanel.add(patientMgmtButton);
@@ -174,9 +236,14 @@ public class NavigationCard extends JPanel {
             sidebarPanel.add(appointmentsButton);
             sidebarPanel.add(Box.createVerticalStrut(10));
             sidebarPanel.add(staffButton);
+            sidebarPanel.add(Box.createVerticalStrut(10));
+            sidebarPanel.add(developerButton);
         }
         // Clinicians can see Medical Records, Appointments, and Patient Management
         else if ("Clinician".equalsIgnoreCase(role)) {
+            roleCards.add(CARD_MEDICAL);
+            roleCards.add(CARD_APPOINTMENTS);
+            roleCards.add(CARD_PATIENT_MGMT);
             sidebarPanel.add(medicalButton);
             sidebarPanel.add(Box.createVerticalStrut(10));
             sidebarPanel.add(appointmentsButton);
@@ -185,21 +252,25 @@ public class NavigationCard extends JPanel {
         }
         // Admins can see Patient Management and Staff Management
         else if ("Admin".equalsIgnoreCase(role)) {
+            roleCards.add(CARD_PATIENT_MGMT);
+            roleCards.add(CARD_STAFF);
             sidebarPanel.add(patientMgmtButton);
             sidebarPanel.add(Box.createVerticalStrut(10));
             sidebarPanel.add(staffButton);
         }
         // Receptionists can see Appointments and Patient Management
         else if ("Receptionist".equalsIgnoreCase(role)) {
+            roleCards.add(CARD_APPOINTMENTS);
+            roleCards.add(CARD_PATIENT_MGMT);
             sidebarPanel.add(appointmentsButton);
             sidebarPanel.add(Box.createVerticalStrut(10));
             sidebarPanel.add(patientMgmtButton);
         }
         // Patients can only see their own dashboard
         else if ("Patient".equalsIgnoreCase(role)) {
+            // Their dashboard is the first (and only) card, so showFirstCard opens it straight away
+            roleCards.add(CARD_PATIENT_DASH);
             sidebarPanel.add(patientDashButton);
-            // Immediately show the patient dashboard when they log in
-            cardLayout.show(centerPanel, CARD_PATIENT_DASH);
         }
         
         // Add spacer to push logout button to bottom
@@ -254,77 +325,33 @@ public class NavigationCard extends JPanel {
     }
     
     public void showCard(String cardName) {
+        ensureCard(cardName);
         cardLayout.show(centerPanel, cardName);
     }
     
+    // These build the card if it hasn't been opened yet
     public MedicalRecordPanel getMedicalRecordPanel() {
-        Component[] components = centerPanel.getComponents();
-        for (Component comp : components) {
-            if (comp instanceof JScrollPane) {
-                JScrollPane scrollPane = (JScrollPane) comp;
-                Component view = scrollPane.getViewport().getView();
-                if (view instanceof MedicalRecordPanel) {
-                    return (MedicalRecordPanel) view;
-                }
-            }
-        }
-        return null;
+        return (MedicalRecordPanel) ensureCard(CARD_MEDICAL);
     }
     
     public PatientManagementPanel getPatientManagementPanel() {
-        Component[] components = centerPanel.getComponents();
-        for (Component comp : components) {
-            if (comp instanceof JScrollPane) {
-                JScrollPane scrollPane = (JScrollPane) comp;
-                Component view = scrollPane.getViewport().getView();
-                if (view instanceof PatientManagementPanel) {
-                    return (PatientManagementPanel) view;
-                }
-            }
-        }
-        return null;
+        return (PatientManagementPanel) ensureCard(CARD_PATIENT_MGMT);
     }
     
     public PatientDashboardPanel getPatientDashboardPanel() {
-        Component[] components = centerPanel.getComponents();
-        for (Component comp : components) {
-            if (comp instanceof JScrollPane) {
-                JScrollPane scrollPane = (JScrollPane) comp;
-                Component view = scrollPane.getViewport().getView();
-                if (view instanceof PatientDashboardPanel) {
-                    return (PatientDashboardPanel) view;
-                }
-            }
-        }
-        return null;
+        return (PatientDashboardPanel) ensureCard(CARD_PATIENT_DASH);
     }
     
     public AppointmentPanel getAppointmentPanel() {
-        Component[] components = centerPanel.getComponents();
-        for (Component comp : components) {
-            if (comp instanceof JScrollPane) {
-                JScrollPane scrollPane = (JScrollPane) comp;
-                Component view = scrollPane.getViewport().getView();
-                if (view instanceof AppointmentPanel) {
-                    return (AppointmentPanel) view;
-                }
-            }
-        }
-        return null;
+        return (AppointmentPanel) ensureCard(CARD_APPOINTMENTS);
     }
     
     public StaffManagementPanel getStaffManagementPanel() {
-        Component[] components = centerPanel.getComponents();
-        for (Component comp : components) {
-            if (comp instanceof JScrollPane) {
-                JScrollPane scrollPane = (JScrollPane) comp;
-                Component view = scrollPane.getViewport().getView();
-                if (view instanceof StaffManagementPanel) {
-                    return (StaffManagementPanel) view;
-                }
-            }
-        }
-        return null;
+        return (StaffManagementPanel) ensureCard(CARD_STAFF);
+    }
+    
+    public DeveloperPanel getDeveloperPanel() {
+        return (DeveloperPanel) ensureCard(CARD_DEVELOPER);
     }
 }
 
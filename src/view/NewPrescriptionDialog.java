@@ -11,7 +11,7 @@ public class NewPrescriptionDialog extends JDialog {
     private JTextField frequencyField;
     private JTextField durationField;
     private JTextArea instructionsArea;
-    private JTextField clinicianIdField;
+    private AutocompleteField clinicianIdField;
     private JButton confirmButton;
     private JButton cancelButton;
     private JLabel patientLabel;
@@ -37,7 +37,7 @@ public class NewPrescriptionDialog extends JDialog {
         instructionsArea = new JTextArea(5, 25);
         instructionsArea.setLineWrap(true);
         instructionsArea.setWrapStyleWord(true);
-        clinicianIdField = new JTextField(25);
+        clinicianIdField = new AutocompleteField(25);
         
         confirmButton = new JButton("Confirm");
         cancelButton = new JButton("Cancel");
@@ -124,7 +124,7 @@ public class NewPrescriptionDialog extends JDialog {
         gbc.gridx = 0; gbc.gridy = row; gbc.weightx = 0; gbc.weighty = 0;
         gbc.fill = GridBagConstraints.HORIZONTAL;
         gbc.anchor = GridBagConstraints.WEST;
-        formPanel.add(new JLabel("Clinician ID:"), gbc);
+        formPanel.add(new JLabel("Clinician:"), gbc);
         gbc.gridx = 1; gbc.weightx = 1.0;
         formPanel.add(clinicianIdField, gbc);
         
@@ -137,7 +137,7 @@ public class NewPrescriptionDialog extends JDialog {
     public String getFrequency() { return frequencyField.getText().trim(); }
     public String getDuration() { return durationField.getText().trim(); }
     public String getInstructions() { return instructionsArea.getText().trim(); }
-    public String getClinicianId() { return clinicianIdField.getText().trim(); }
+    public String getClinicianId() { return clinicianIdField.getSelectedId(); }
     public JButton getConfirmButton() { return confirmButton; }
     public JButton getCancelButton() { return cancelButton; }
     public boolean isConfirmed() { return confirmed; }
@@ -148,6 +148,8 @@ public class NewPrescriptionDialog extends JDialog {
     public void setFrequency(String val) { frequencyField.setText(val); }
     public void setDuration(String val) { durationField.setText(val); }
     public void setInstructions(String val) { instructionsArea.setText(val); }
-    public void setClinicianId(String val) { clinicianIdField.setText(val); }
+    public void setClinicianId(String val) { clinicianIdField.setSelectedLabel(val); }
+    // Where the clinician picker gets its matches from
+    public void setClinicianSource(AutocompleteField.Source source) { clinicianIdField.setSource(source); }
     public void setConfirmed(boolean confirmed) { this.confirmed = confirmed; }
 }
\ No newline at end of file
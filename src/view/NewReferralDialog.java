@@ -3,6 +3,7 @@ package view;
 import model.Patient;
 import javax.swing.*;
 import java.awt.*;
+import java.util.List;
 
 public class NewReferralDialog extends JDialog {
     
@@ -10,8 +11,9 @@ public class NewReferralDialog extends JDialog {
     private JTextField referralReasonField;
     private JTextArea clinicalSummaryArea;
     private JTextField requestedInvestigationsField;
-    private JTextField referringClinicianIdField;
-    private JTextField referredToClinicianIdField;
+    private AutocompleteField referringClinicianIdField;
+    private JComboBox<String> specialityComboBox;
+    private JComboBox<String> referredToClinicianComboBox;
     private JButton confirmButton;
     private JButton cancelButton;
     private JLabel patientLabel;
@@ -51,9 +53,12 @@ public class NewReferralDialog extends JDialog {
         // Requested investigations text field
         requestedInvestigationsField = new JTextField(25);
         
-        // Clinician ID fields
-        referringClinicianIdField = new JTextField(25);
-        referredToClinicianIdField = new JTextField(25);
+        // Referring clinician picker (type a name or ID)
+        referringClinicianIdField = new AutocompleteField(25);
+        
+        // Speciality, then the clinicians who have it (filled in by the controller)
+        specialityComboBox = new JComboBox<>();
+        referredToClinicianComboBox = new JComboBox<>();
         
         // Buttons
         confirmButton = new JButton("Confirm");
@@ -141,18 +146,25 @@ public class NewReferralDialog extends JDialog {
         formPanel.add(requestedInvestigationsField, gbc);
         
         row++;
-        // Referring Clinician ID
+        // Referring Clinician
         gbc.gridx = 0; gbc.gridy = row; gbc.weightx = 0;
-        formPanel.add(new JLabel("Referring Clinician ID:"), gbc);
+        formPanel.add(new JLabel("Referring Clinician:"), gbc);
         gbc.gridx = 1; gbc.weightx = 1.0;
         formPanel.add(referringClinicianIdField, gbc);
         
         row++;
-        // Referred To Clinician ID
+        // Speciality
+        gbc.gridx = 0; gbc.gridy = row; gbc.weightx = 0;
+        formPanel.add(new JLabel("Speciality:"), gbc);
+        gbc.gridx = 1; gbc.weightx = 1.0;
+        formPanel.add(specialityComboBox, gbc);
+        
+        row++;
+        // Referred To Clinician
         gbc.gridx = 0; gbc.gridy = row; gbc.weightx = 0;
-        formPanel.add(new JLabel("Referred To Clinician ID:"), gbc);
+        formPanel.add(new JLabel("Referred To Clinician:"), gbc);
         gbc.gridx = 1; gbc.weightx = 1.0;
-        formPanel.add(referredToClinicianIdField, gbc);
+        formPanel.add(referredToClinicianComboBox, gbc);
         
         return formPanel;
     }
@@ -174,14 +186,39 @@ public class NewReferralDialog extends JDialog {
         return requestedInvestigationsField.getText().trim();
     }
     
-    // Method: Get Referring Clinician ID from text field (manually entered by user)
+    // Method: Get Referring Clinician ID from the picker (the ID part of the chosen entry)
     public String getReferringClinicianId() {
-        return referringClinicianIdField.getText().trim();
+        return referringClinicianIdField.getSelectedId();
     }
     
-    // Method: Get Referred To Clinician ID from text field (manually entered by user)
+    // Method: Get Referred To Clinician ID from the list (the ID part of the chosen entry)
     public String getReferredToClinicianId() {
-        return referredToClinicianIdField.getText().trim();
+        String selected = (String) referredToClinicianComboBox.getSelectedItem();
+        return selected != null ? selected.split(" - ")[0].trim() : "";
+    }
+    
+    public String getSpeciality() {
+        String selected = (String) specialityComboBox.getSelectedItem();
+        return selected != null ? selected : "";
+    }
+    
+    // Method: Set where the referring clinician picker gets its matches from
+    public void setClinicianSource(AutocompleteField.Source source) {
+        referringClinicianIdField.setSource(source);
+    }
+    
+    // Method: Fill the speciality list (the controller listens to the combo box for changes)
+    public void setSpecialities(List<String> specialities) {
+        specialityComboBox.setModel(new DefaultComboBoxModel<>(specialities.toArray(new String[0])));
+    }
+    
+    // Method: Fill the referred-to list with "ID - Name ..." entries, first one selected
+    public void setReferredToChoices(List<String> choices) {
+        referredToClinicianComboBox.setModel(new DefaultComboBoxModel<>(choices.toArray(new String[0])));
+    }
+    
+    public JComboBox<String> getSpecialityComboBox() {
+        return specialityComboBox;
     }
     
     // Button getters
@@ -10,9 +10,13 @@ public class PatientManagementPanel extends JPanel {
     
     private JTable patientTable;
     private DefaultTableModel tableModel;
+    private RowIndex rowIndex;
     
     // Search Fields (Preserved for functionality)
     private JTextField idField, nameField, nhsField;
+    private JComboBox<String> sortComboBox;
+    private JLabel statusLabel;
+    private JScrollPane tableScrollPane;
     
     // Buttons (Renamed to match Appointment style naming)
     private JButton searchButton;
@@ -35,6 +39,7 @@ public class PatientManagementPanel extends JPanel {
             @Override
             public boolean isCellEditable(int row, int column) { return false; }
         };
+        rowIndex = new RowIndex(tableModel, 0, true);
         
         patientTable = new JTable(tableModel);
         patientTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
@@ -48,6 +53,8 @@ public class PatientManagementPanel extends JPanel {
         nameField = new JTextField(10);
         nhsField = new JTextField(10);
         searchButton = new JButton("Search");
+        sortComboBox = new JComboBox<>(new String[]{"ID", "Name"});
+        statusLabel = new JLabel(" ");
         
         // Action Buttons
         registerButton = new JButton("Register New");
@@ -86,35 +93,81 @@ public class PatientManagementPanel extends JPanel {
         searchPanel.add(new JLabel("NHS:"));
         searchPanel.add(nhsField);
         searchPanel.add(searchButton);
+        searchPanel.add(new JLabel("Sort by:"));
+        searchPanel.add(sortComboBox);
         
         topPanel.add(searchPanel);
         add(topPanel, BorderLayout.NORTH);
         
         // Central Table (Center)
-        JScrollPane tableScrollPane = new JScrollPane(patientTable);
+        tableScrollPane = new JScrollPane(patientTable);
         tableScrollPane.setBorder(BorderFactory.createTitledBorder("Patient Records"));
         add(tableScrollPane, BorderLayout.CENTER);
         
-        // Action Footer (South - Right Aligned)
+        // Action Footer (South - row count on the left, buttons on the right)
         JPanel actionPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 10, 5));
         actionPanel.add(registerButton);
         actionPanel.add(editButton);
         actionPanel.add(deleteButton);
         
-        add(actionPanel, BorderLayout.SOUTH);
+        JPanel footerPanel = new JPanel(new BorderLayout());
+        footerPanel.add(statusLabel, BorderLayout.WEST);
+        footerPanel.add(actionPanel, BorderLayout.EAST);
+        add(footerPanel, BorderLayout.SOUTH);
     }
     
     public void updateTable(List<Patient> list) {
         tableModel.setRowCount(0);
         for (Patient p : list) {
-            tableModel.addRow(new Object[]{
-                p.getPatientId(), p.getFirstName(), p.getLastName(), p.getDateOfBirth(),
-                p.getNhsNumber(), p.getGender(), p.getPhoneNumber(), p.getEmail(),
-                p.getAddress(), p.getPostcode(), p.getEmergencyContactName(),
-                p.getEmergencyContactPhone(), p.getRegistrationDate(), p.getGpSurgeryId()
-            });
+            tableModel.addRow(toRow(p));
         }
     }
+    
+    // Adds the next page of patients to the bottom of the table
+    public void appendRows(List<Patient> list) {
+        for (Patient p : list) {
+            tableModel.addRow(toRow(p));
+        }
+    }
+    
+    // --- Row-level updates (used by repository change events) ---
+    public void addPatientRow(Patient p) {
+        tableModel.addRow(toRow(p));
+    }
+    
+    public void insertPatientRow(int index, Patient p) {
+        tableModel.insertRow(index, toRow(p));
+    }
+    
+    @SuppressWarnings("unchecked")
+    public void updatePatientRow(Patient p) {
+        int row = findRow(p.getPatientId());
+        if (row < 0) return;
+        Object[] values = toRow(p);
+        java.util.Vector<Object> rowVector = tableModel.getDataVector().get(row);
+        for (int col = 0; col < values.length; col++) {
+            rowVector.set(col, values[col]);
+        }
+        tableModel.fireTableRowsUpdated(row, row);
+    }
+    
+    public void removePatientRow(String patientId) {
+        int row = findRow(patientId);
+        if (row >= 0) tableModel.removeRow(row);
+    }
+    
+    private int findRow(String patientId) {
+        return rowIndex.find(patientId);
+    }
+    
+    private Object[] toRow(Patient p) {
+        return new Object[]{
+            p.getPatientId(), p.getFirstName(), p.getLastName(), p.getDateOfBirth(),
+            p.getNhsNumber(), p.getGender(), p.getPhoneNumber(), p.getEmail(),
+            p.getAddress(), p.getPostcode(), p.getEmergencyContactName(),
+            p.getEmergencyContactPhone(), p.getRegistrationDate(), p.getGpSurgeryId()
+        };
+    }
 
     public String getSelectedPatientId() {
         int row = patientTable.getSelectedRow();
@@ -127,6 +180,9 @@ public class PatientManagementPanel extends JPanel {
     public JTextField getPatientNameField() { return nameField; }
     public JTextField getNhsNumberField() { return nhsField; }
     public JButton getSearchButton() { return searchButton; }
+    public JComboBox<String> getSortComboBox() { return sortComboBox; }
+    public JScrollPane getTableScrollPane() { return tableScrollPane; }
+    public void setStatusText(String text) { statusLabel.setText(text); }
     public JButton getRegisterButton() { return registerButton; }
     public JButton getEditButton() { return editButton; }
     public JButton getDeleteButton() { return deleteButton; }
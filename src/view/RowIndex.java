@@ -0,0 +1,72 @@
+package view;
+
+import javax.swing.event.TableModelEvent;
+import javax.swing.table.TableModel;
+import java.util.HashMap;
+import java.util.Map;
+
+// Finds the row showing an ID without walking the table. It follows the model's own events:
+// rows added at the end and rows updated in place are put straight into the index, anything
+// that moves rows (an insert in the middle, a delete, the whole table changing) just marks it
+// stale so the next find() rebuilds it once.
+class RowIndex {
+
+    private final TableModel model;
+    private final int idColumn;
+    private final boolean ignoreCase;
+    private final Map<String, Integer> rowById = new HashMap<>();
+    private boolean stale = true;
+
+    RowIndex(TableModel model, int idColumn, boolean ignoreCase) {
+        this.model = model;
+        this.idColumn = idColumn;
+        this.ignoreCase = ignoreCase;
+        model.addTableModelListener(this::tableChanged);
+    }
+
+    // The first row with this ID, or -1
+    int find(String id) {
+        if (id == null) {
+            return -1;
+        }
+        if (stale) {
+            rowById.clear();
+            put(0, model.getRowCount() - 1);
+            stale = false;
+        }
+        Integer row = rowById.get(key(id));
+        return row != null ? row : -1;
+    }
+
+    private void tableChanged(TableModelEvent e) {
+        if (stale) {
+            return;
+        }
+        int first = e.getFirstRow();
+        int last = e.getLastRow();
+        if (first == TableModelEvent.HEADER_ROW || last == Integer.MAX_VALUE || e.getType() == TableModelEvent.DELETE) {
+            stale = true;
+        } else if (e.getType() == TableModelEvent.INSERT) {
+            if (last == model.getRowCount() - 1) {
+                put(first, last);
+            } else {
+                stale = true;
+            }
+        } else {
+            put(first, last);
+        }
+    }
+
+    private void put(int first, int last) {
+        for (int row = first; row <= last; row++) {
+            Object id = model.getValueAt(row, idColumn);
+            if (id != null) {
+                rowById.putIfAbsent(key(id.toString()), row);
+            }
+        }
+    }
+
+    private String key(String id) {
+        return ignoreCase ? id.toUpperCase() : id;
+    }
+}
@@ -4,17 +4,23 @@ import model.Staff;
 import model.Clinician;
 import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class StaffManagementPanel extends JPanel {
     
     // Top table for Administrative Staff (base Staff class)
     private JTable topStaffTable;
     private DefaultTableModel topStaffTableModel;
+    private RowIndex topStaffRows;
     
     // Bottom table for Clinicians (GP, Nurse, Specialist)
     private JTable bottomClinicianTable;
     private DefaultTableModel bottomClinicianTableModel;
+    private RowIndex bottomClinicianRows;
     
     private JTextField searchField;
     private JComboBox<String> filterComboBox;
@@ -34,14 +40,16 @@ public class StaffManagementPanel extends JPanel {
         "Clinician ID", "First Name", "Last Name", "Title", "Speciality", "Email", "Phone", "Type"
     };
     
-    // All roles from staff.csv and clinicians.csv
-    private static final String[] ROLE_FILTERS = {
-        "All", "GP", "Consultant", "Nurse", "Practice Manager", "Receptionist", 
-        "Medical Secretary", "Healthcare Assistant", "Hospital Administrator", 
-        "Ward Clerk", "Porter", "Appointments Coordinator", "Medical Records Clerk", 
-        "Children's Unit Coordinator"
+    // One filter combo per facet. The values (with how many staff each would give) come
+    // from the controller, so they always match what is in the CSV files
+    private static final String[] FACET_LABELS = {
+        "Role", "Department", "Facility", "Status", "Type"
     };
     
+    private final Map<String, JComboBox<String>> facetComboBoxes = new LinkedHashMap<>();
+    // The plain value behind each combo item (index 0 is "All", stored as null)
+    private final Map<String, List<String>> facetValues = new HashMap<>();
+    
     public StaffManagementPanel() {
         initializeComponents();
         setupLayout();
@@ -55,6 +63,7 @@ public class StaffManagementPanel extends JPanel {
                 return false; // Make table non-editable
             }
         };
+        topStaffRows = new RowIndex(topStaffTableModel, 0, false);
         
         topStaffTable = new JTable(topStaffTableModel);
         topStaffTable.setRowHeight(25);
@@ -68,6 +77,7 @@ public class StaffManagementPanel extends JPanel {
                 return false; // Make table non-editable
             }
         };
+        bottomClinicianRows = new RowIndex(bottomClinicianTableModel, 0, false);
         
         bottomClinicianTable = new JTable(bottomClinicianTableModel);
         bottomClinicianTable.setRowHeight(25);
@@ -76,7 +86,14 @@ public class StaffManagementPanel extends JPanel {
         
         // Search components
         searchField = new JTextField(20);
-        filterComboBox = new JComboBox<>(ROLE_FILTERS);
+        for (String label : FACET_LABELS) {
+            JComboBox<String> comboBox = new JComboBox<>(new String[]{"All"});
+            facetComboBoxes.put(label, comboBox);
+            List<String> values = new ArrayList<>();
+            values.add(null);
+            facetValues.put(label, values);
+        }
+        filterComboBox = facetComboBoxes.get("Role");
         searchButton = new JButton("Search");
         
         addAdminStaffButton = new JButton("Add Admin/Staff");
@@ -151,8 +168,10 @@ public class StaffManagementPanel extends JPanel {
         
         searchPanel.add(new JLabel("Search:"));
         searchPanel.add(searchField);
-        searchPanel.add(new JLabel("Filter by Role:"));
-        searchPanel.add(filterComboBox);
+        for (Map.Entry<String, JComboBox<String>> entry : facetComboBoxes.entrySet()) {
+            searchPanel.add(new JLabel(entry.getKey() + ":"));
+            searchPanel.add(entry.getValue());
+        }
         searchPanel.add(searchButton);
         
         return searchPanel;
@@ -163,15 +182,7 @@ public class StaffManagementPanel extends JPanel {
         topStaffTableModel.setRowCount(0);
         
         for (Staff staff : adminStaffList) {
-            topStaffTableModel.addRow(new Object[]{
-                staff.getStaffId(),
-                staff.getFirstName(),
-                staff.getLastName(),
-                staff.getRole(),
-                staff.getDepartment(),
-                staff.getEmail(),
-                staff.getPhoneNumber()
-            });
+            topStaffTableModel.addRow(toAdminStaffRow(staff));
         }
     }
     
@@ -180,29 +191,103 @@ public class StaffManagementPanel extends JPanel {
         bottomClinicianTableModel.setRowCount(0);
         
         for (Clinician clinician : clinicianList) {
-            // Determine the type of clinician (GP, Nurse, Specialist, or generic Clinician)
-            String clinicianType = "Clinician";
-            if (clinician instanceof model.GP) {
-                clinicianType = "GP";
-            } else if (clinician instanceof model.Nurse) {
-                clinicianType = "Nurse";
-            } else if (clinician instanceof model.Specialist) {
-                clinicianType = "Specialist";
-            }
-            
-            bottomClinicianTableModel.addRow(new Object[]{
-                clinician.getClinicianId() != null ? clinician.getClinicianId() : clinician.getId(),
-                clinician.getFirstName(),
-                clinician.getLastName(),
-                clinician.getTitle(),
-                clinician.getSpeciality(),
-                clinician.getEmail(),
-                clinician.getPhoneNumber(),
-                clinicianType
-            });
+            bottomClinicianTableModel.addRow(toClinicianRow(clinician));
+        }
+    }
+    
+    // Row-level updates so a single add/edit/remove doesn't rebuild the whole table
+    public void addAdminStaffRow(Staff staff) {
+        topStaffTableModel.addRow(toAdminStaffRow(staff));
+    }
+    
+    public void updateAdminStaffRow(Staff staff) {
+        replaceRow(topStaffTableModel, staff.getStaffId(), toAdminStaffRow(staff));
+    }
+    
+    public void removeAdminStaffRow(String staffId) {
+        int row = findRow(topStaffTableModel, staffId);
+        if (row >= 0) {
+            topStaffTableModel.removeRow(row);
         }
     }
     
+    public boolean isAdminStaffShown(String staffId) {
+        return findRow(topStaffTableModel, staffId) >= 0;
+    }
+    
+    public void addClinicianRow(Clinician clinician) {
+        bottomClinicianTableModel.addRow(toClinicianRow(clinician));
+    }
+    
+    public void updateClinicianRow(Clinician clinician) {
+        replaceRow(bottomClinicianTableModel, clinician.getId(), toClinicianRow(clinician));
+    }
+    
+    public void removeClinicianRow(String clinicianId) {
+        int row = findRow(bottomClinicianTableModel, clinicianId);
+        if (row >= 0) {
+            bottomClinicianTableModel.removeRow(row);
+        }
+    }
+    
+    public boolean isClinicianShown(String clinicianId) {
+        return findRow(bottomClinicianTableModel, clinicianId) >= 0;
+    }
+    
+    private Object[] toAdminStaffRow(Staff staff) {
+        return new Object[]{
+            staff.getStaffId(),
+            staff.getFirstName(),
+            staff.getLastName(),
+            staff.getRole(),
+            staff.getDepartment(),
+            staff.getEmail(),
+            staff.getPhoneNumber()
+        };
+    }
+    
+    private Object[] toClinicianRow(Clinician clinician) {
+        // Determine the type of clinician (GP, Nurse, Specialist, or generic Clinician)
+        String clinicianType = "Clinician";
+        if (clinician instanceof model.GP) {
+            clinicianType = "GP";
+        } else if (clinician instanceof model.Nurse) {
+            clinicianType = "Nurse";
+        } else if (clinician instanceof model.Specialist) {
+            clinicianType = "Specialist";
+        }
+        
+        return new Object[]{
+            clinician.getClinicianId() != null ? clinician.getClinicianId() : clinician.getId(),
+            clinician.getFirstName(),
+            clinician.getLastName(),
+            clinician.getTitle(),
+            clinician.getSpeciality(),
+            clinician.getEmail(),
+            clinician.getPhoneNumber(),
+            clinicianType
+        };
+    }
+    
+    // Overwrites one row's values and only repaints that row
+    @SuppressWarnings("unchecked")
+    private void replaceRow(DefaultTableModel model, String id, Object[] values) {
+        int row = findRow(model, id);
+        if (row < 0) {
+            return;
+        }
+        java.util.Vector<Object> rowVector = model.getDataVector().get(row);
+        for (int col = 0; col < values.length; col++) {
+            rowVector.set(col, values[col]);
+        }
+        model.fireTableRowsUpdated(row, row);
+    }
+    
+    // Column 0 holds the ID in both tables
+    private int findRow(DefaultTableModel model, String id) {
+        return (model == topStaffTableModel ? topStaffRows : bottomClinicianRows).find(id);
+    }
+    
     public int getSelectedRow() {
         // Check which table has selection
         if (topStaffTable.getSelectedRow() >= 0) {
@@ -296,6 +381,38 @@ public class StaffManagementPanel extends JPanel {
         return filterComboBox;
     }
     
+    public JComboBox<String> getFacetComboBox(String label) {
+        return facetComboBoxes.get(label);
+    }
+    
+    // The selected value for a facet, or null when it is on "All"
+    public String getSelectedFacetValue(String label) {
+        int index = facetComboBoxes.get(label).getSelectedIndex();
+        return index > 0 ? facetValues.get(label).get(index) : null;
+    }
+    
+    // Refills a facet combo with "value (count)" items, keeping the current selection.
+    // Fires the combo's action listeners, so callers should ignore events while this runs.
+    public void setFacetOptions(String label, Map<String, Integer> counts, String selected) {
+        JComboBox<String> comboBox = facetComboBoxes.get(label);
+        List<String> values = facetValues.get(label);
+        values.clear();
+        values.add(null);
+        
+        DefaultComboBoxModel<String> model = new DefaultComboBoxModel<>();
+        model.addElement("All");
+        int selectedIndex = 0;
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            if (entry.getKey().equalsIgnoreCase(selected)) {
+                selectedIndex = values.size();
+            }
+            values.add(entry.getKey());
+            model.addElement(entry.getKey() + " (" + entry.getValue() + ")");
+        }
+        comboBox.setModel(model);
+        comboBox.setSelectedIndex(selectedIndex);
+    }
+    
     public JButton getSearchButton() {
         return searchButton;
     }
@@ -0,0 +1,107 @@
+package view;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseEvent;
+
+// Grid of coloured cells, one per row/column (e.g. weekday by hour), green when quiet
+// through yellow to red when full. A value below 0 means closed and is drawn grey.
+public class UtilizationHeatmap extends JComponent {
+
+    private static final int ROW_LABEL_WIDTH = 50;
+    private static final int COLUMN_LABEL_HEIGHT = 20;
+    private static final Color CLOSED = new Color(225, 225, 225);
+    private static final Color TEXT = Color.DARK_GRAY;
+
+    private String[] rowLabels = new String[0];
+    private String[] columnLabels = new String[0];
+    // values[row][column], 1.0 = fully booked
+    private double[][] values = new double[0][0];
+
+    public UtilizationHeatmap() {
+        setPreferredSize(new Dimension(700, 230));
+        // Tooltips are worked out from the mouse position (see getToolTipText)
+        setToolTipText("");
+    }
+
+    public void setData(String[] rowLabels, String[] columnLabels, double[][] values) {
+        this.rowLabels = rowLabels;
+        this.columnLabels = columnLabels;
+        this.values = values;
+        repaint();
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        if (rowLabels.length == 0 || columnLabels.length == 0) {
+            return;
+        }
+        Graphics2D g2 = (Graphics2D) g.create();
+        g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        FontMetrics fm = g2.getFontMetrics();
+        double cellWidth = cellWidth();
+        double cellHeight = cellHeight();
+
+        g2.setColor(TEXT);
+        for (int c = 0; c < columnLabels.length; c++) {
+            int x = ROW_LABEL_WIDTH + (int) (c * cellWidth);
+            g2.drawString(columnLabels[c], x + (int) (cellWidth - fm.stringWidth(columnLabels[c])) / 2, fm.getAscent() + 2);
+        }
+
+        for (int r = 0; r < rowLabels.length; r++) {
+            int y = COLUMN_LABEL_HEIGHT + (int) (r * cellHeight);
+            int height = (int) ((r + 1) * cellHeight) - (int) (r * cellHeight);
+            g2.setColor(TEXT);
+            g2.drawString(rowLabels[r], 4, y + (height + fm.getAscent()) / 2 - 2);
+
+            for (int c = 0; c < columnLabels.length; c++) {
+                int x = ROW_LABEL_WIDTH + (int) (c * cellWidth);
+                int width = (int) ((c + 1) * cellWidth) - (int) (c * cellWidth);
+                double value = values[r][c];
+                g2.setColor(colourFor(value));
+                g2.fillRect(x, y, width - 1, height - 1);
+                if (value >= 0 && width > fm.stringWidth("100%") + 2) {
+                    String text = Math.round(value * 100) + "%";
+                    g2.setColor(TEXT);
+                    g2.drawString(text, x + (width - fm.stringWidth(text)) / 2, y + (height + fm.getAscent()) / 2 - 2);
+                }
+            }
+        }
+        g2.dispose();
+    }
+
+    @Override
+    public String getToolTipText(MouseEvent e) {
+        if (rowLabels.length == 0 || columnLabels.length == 0) {
+            return null;
+        }
+        int c = (int) ((e.getX() - ROW_LABEL_WIDTH) / cellWidth());
+        int r = (int) ((e.getY() - COLUMN_LABEL_HEIGHT) / cellHeight());
+        if (e.getX() < ROW_LABEL_WIDTH || e.getY() < COLUMN_LABEL_HEIGHT || r >= rowLabels.length || c >= columnLabels.length) {
+            return null;
+        }
+        double value = values[r][c];
+        return rowLabels[r] + " " + columnLabels[c] + ":00 - " + (value < 0 ? "closed" : Math.round(value * 100) + "% booked");
+    }
+
+    private double cellWidth() {
+        return (double) (getWidth() - ROW_LABEL_WIDTH) / columnLabels.length;
+    }
+
+    private double cellHeight() {
+        return (double) (getHeight() - COLUMN_LABEL_HEIGHT) / rowLabels.length;
+    }
+
+    // Green (empty) -> yellow (half) -> red (full or over)
+    private static Color colourFor(double value) {
+        if (value < 0) {
+            return CLOSED;
+        }
+        double v = Math.min(value, 1.0);
+        if (v < 0.5) {
+            return new Color((int) (120 + 270 * v), 200, 120);
+        }
+        return new Color(255, (int) (200 - 200 * (v - 0.5) * 1.4), (int) (120 - 120 * (v - 0.5) * 2));
+    }
+}